@@ -0,0 +1,66 @@
+package org.mengyun.tcctransaction.api;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 默认的事务编号生成器，布局参考 Snowflake：
+ * 前 8 字节为 48 位毫秒时间戳 + 16 位序号，同一进程内单调递增；后 8 字节为节点编号。
+ * 节点编号默认在启动时由 SecureRandom 生成一次，之后生成编号不再访问 SecureRandom，也不加锁。
+ * 同一毫秒内序号用尽时借用下一毫秒，时钟回拨时继续沿用已有的时间戳递增。
+ */
+public class DefaultXidGenerator implements XidGenerator {
+
+    private static final int SEQUENCE_BITS = 16;
+
+    private final long nodeId;
+
+    /**
+     * 时间戳 << 16 | 序号
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    public DefaultXidGenerator() {
+        this(new SecureRandom().nextLong());
+    }
+
+    public DefaultXidGenerator(long nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public byte[] generate() {
+        long floor = currentTimeMillis() << SEQUENCE_BITS;
+
+        long current = state.get();
+        if (current < floor) {
+            // 进入新的毫秒，失败说明其他线程已推进，直接递增即可
+            state.compareAndSet(current, floor);
+        }
+
+        long next = state.incrementAndGet();
+
+        byte[] bytes = new byte[16];
+        putLong(bytes, 0, next);
+        putLong(bytes, 8, nodeId);
+        return bytes;
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 当前毫秒时间戳，测试中可覆盖以模拟序号用尽和时钟回拨
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private static void putLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.mengyun.tcctransaction.api;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -15,8 +17,8 @@ public class TransactionContext implements Serializable {
     private TransactionXid xid;
     //事务当前状态
     private int status;
-    //事务附加的参数
-    private Map<String, String> attachments = new ConcurrentHashMap<String, String>();
+    //事务附加的参数，首次使用时创建
+    private volatile Map<String, String> attachments;
 
     public TransactionContext() {
 
@@ -32,17 +34,27 @@ public class TransactionContext implements Serializable {
     }
 
     public TransactionXid getXid() {
-        return xid.clone();
+        return xid;
     }
 
     public void setAttachments(Map<String, String> attachments) {
         if (attachments != null && !attachments.isEmpty()) {
-            this.attachments.putAll(attachments);
+            getAttachments().putAll(attachments);
         }
     }
 
     public Map<String, String> getAttachments() {
-        return attachments;
+        Map<String, String> result = attachments;
+        if (result == null) {
+            synchronized (this) {
+                result = attachments;
+                if (result == null) {
+                    result = new ConcurrentHashMap<String, String>();
+                    attachments = result;
+                }
+            }
+        }
+        return result;
     }
 
     public void setStatus(int status) {
@@ -53,5 +65,16 @@ public class TransactionContext implements Serializable {
         return status;
     }
 
+    /**
+     * 旧版本的接收方默认 attachments 不为空，写出时补上空映射
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("xid", xid);
+        fields.put("status", status);
+        fields.put("attachments", attachments == null ? new ConcurrentHashMap<String, String>() : attachments);
+        out.writeFields();
+    }
+
 
 }
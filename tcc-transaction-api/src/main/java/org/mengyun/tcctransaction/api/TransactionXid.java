@@ -3,12 +3,13 @@ package org.mengyun.tcctransaction.api;
 
 import javax.transaction.xa.Xid;
 import java.io.Serializable;
-import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.UUID;
 
 /**
- * 事务编号，用于唯一标识一个事务。使用 UUID 算法生成，保证唯一性。
+ * 事务编号，用于唯一标识一个事务。由 XidGenerator 生成，保证唯一性。
+ * 创建后不再修改：构造方法复制传入的数组，getter 返回副本，setter 已废弃、仅供反序列化使用并会清除缓存。
+ * hashCode、存储键在首次使用时计算并缓存，因此 Transaction / TransactionContext 直接返回同一个实例，不再每次克隆。
  * Created by changmingxie on 10/26/15.
  */
 public class TransactionXid implements Xid, Serializable {
@@ -29,25 +30,64 @@ public class TransactionXid implements Xid, Serializable {
 
     private static byte[] CUSTOMIZED_TRANSACTION_ID = "UniqueIdentity".getBytes();
 
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private static final char KEY_SEPARATOR = ':';
+
+    private transient int hash;
+
+    /**
+     * 存储键：十六进制的全局事务编号和分支事务编号，以冒号分隔，可由 fromKey 还原
+     */
+    private transient String key;
+
+    /**
+     * 最近一次使用的带前缀存储键，仓库的前缀通常固定，只缓存一个
+     */
+    private transient PrefixedKey prefixedKey;
+
+    /**
+     * 事务编号生成器
+     */
+    private static volatile XidGenerator xidGenerator = new DefaultXidGenerator();
+
     public TransactionXid() {
-        globalTransactionId = uuidToByteArray(UUID.randomUUID());
-        branchQualifier = uuidToByteArray(UUID.randomUUID());
+        globalTransactionId = xidGenerator.generate();
+        branchQualifier = xidGenerator.generate();
+    }
+
+    public static void setXidGenerator(XidGenerator xidGenerator) {
+        TransactionXid.xidGenerator = xidGenerator;
+    }
+
+    public static XidGenerator getXidGenerator() {
+        return xidGenerator;
     }
 
+    /**
+     * @deprecated 仅供 Jackson 等通过 setter 反序列化的场景使用，事务编号创建后不应再修改
+     */
+    @Deprecated
     public void setGlobalTransactionId(byte[] globalTransactionId) {
-        this.globalTransactionId = globalTransactionId;
+        this.globalTransactionId = copyOf(globalTransactionId);
+        resetCache();
     }
 
+    /**
+     * @deprecated 同 setGlobalTransactionId
+     */
+    @Deprecated
     public void setBranchQualifier(byte[] branchQualifier) {
-        this.branchQualifier = branchQualifier;
+        this.branchQualifier = copyOf(branchQualifier);
+        resetCache();
     }
 
     public TransactionXid(Object uniqueIdentity) {
 
         if (uniqueIdentity == null) {
 
-            globalTransactionId = uuidToByteArray(UUID.randomUUID());
-            branchQualifier = uuidToByteArray(UUID.randomUUID());
+            globalTransactionId = xidGenerator.generate();
+            branchQualifier = xidGenerator.generate();
 
         } else {
 
@@ -58,11 +98,19 @@ public class TransactionXid implements Xid, Serializable {
     }
 
     public TransactionXid(byte[] globalTransactionId) {
-        this.globalTransactionId = globalTransactionId;
-        this.branchQualifier = uuidToByteArray(UUID.randomUUID());
+        this.globalTransactionId = copyOf(globalTransactionId);
+        this.branchQualifier = xidGenerator.generate();
     }
 
     public TransactionXid(byte[] globalTransactionId, byte[] branchQualifier) {
+        this(1, copyOf(globalTransactionId), copyOf(branchQualifier));
+    }
+
+    /**
+     * 直接使用传入的数组，调用方保证数组不会被其他地方持有
+     */
+    private TransactionXid(int formatId, byte[] globalTransactionId, byte[] branchQualifier) {
+        this.formatId = formatId;
         this.globalTransactionId = globalTransactionId;
         this.branchQualifier = branchQualifier;
     }
@@ -72,58 +120,154 @@ public class TransactionXid implements Xid, Serializable {
         return formatId;
     }
 
+    /**
+     * 返回副本，修改返回的数组不影响当前事务编号
+     */
     @Override
     public byte[] getGlobalTransactionId() {
-        return globalTransactionId;
+        return copyOf(globalTransactionId);
     }
 
     @Override
     public byte[] getBranchQualifier() {
-        return branchQualifier;
+        return copyOf(branchQualifier);
     }
 
     @Override
     public String toString() {
+        return toKey();
+    }
+
+    /**
+     * 存储键，格式为 十六进制全局事务编号:十六进制分支事务编号
+     */
+    public String toKey() {
+        String result = key;
+        if (result == null) {
+            StringBuilder builder = new StringBuilder(globalTransactionId.length * 2 + 1 + branchQualifier.length * 2);
+            appendHex(builder, globalTransactionId);
+            builder.append(KEY_SEPARATOR);
+            appendHex(builder, branchQualifier);
+            result = builder.toString();
+            key = result;
+        }
+        return result;
+    }
+
+    /**
+     * 带前缀的存储键字节，如 Redis 键
+     */
+    public byte[] toKeyBytes(String prefix) {
+        PrefixedKey cached = prefixedKey;
+        if (cached == null || !cached.prefix.equals(prefix)) {
+            cached = new PrefixedKey(prefix, (prefix + toKey()).getBytes());
+            prefixedKey = cached;
+        }
+        return cached.bytes;
+    }
+
+    /**
+     * 旧版本的存储键，即 toString 原来的格式，用于读取旧版本写入的数据以及滚动升级期间按旧格式写入
+     */
+    public String toLegacyKey() {
+        return legacyKeyOf(globalTransactionId, branchQualifier);
+    }
+
+    public static String keyOf(Xid xid) {
+        if (xid instanceof TransactionXid) {
+            return ((TransactionXid) xid).toKey();
+        }
+        return new TransactionXid(1, xid.getGlobalTransactionId(), xid.getBranchQualifier()).toKey();
+    }
+
+    public static String legacyKeyOf(Xid xid) {
+        if (xid instanceof TransactionXid) {
+            return ((TransactionXid) xid).toLegacyKey();
+        }
+        return legacyKeyOf(xid.getGlobalTransactionId(), xid.getBranchQualifier());
+    }
+
+    /**
+     * 由十六进制的编号得到旧版本的存储键
+     */
+    public static String legacyKeyOf(String globalTransactionId, String branchQualifier) {
+        return legacyKeyOf(parseHex(globalTransactionId), parseHex(branchQualifier));
+    }
+
+    private static String legacyKeyOf(byte[] globalTransactionId, byte[] branchQualifier) {
 
         StringBuilder stringBuilder = new StringBuilder();
         if (Arrays.equals(CUSTOMIZED_TRANSACTION_ID, globalTransactionId)) {
 
             stringBuilder.append(new String(globalTransactionId));
-            stringBuilder.append(":").append(new String(branchQualifier));
+            stringBuilder.append(KEY_SEPARATOR).append(new String(branchQualifier));
 
         } else {
 
             stringBuilder.append(UUID.nameUUIDFromBytes(globalTransactionId).toString());
-            stringBuilder.append(":").append(UUID.nameUUIDFromBytes(branchQualifier).toString());
+            stringBuilder.append(KEY_SEPARATOR).append(UUID.nameUUIDFromBytes(branchQualifier).toString());
         }
 
         return stringBuilder.toString();
     }
 
-    public TransactionXid clone() {
-
-        byte[] cloneGlobalTransactionId = null;
-        byte[] cloneBranchQualifier = null;
+    /**
+     * 由 toKey 的结果还原事务编号，格式不合法时抛出 IllegalArgumentException
+     */
+    public static TransactionXid fromKey(String key) {
+        int separator = key.indexOf(KEY_SEPARATOR);
+        if (separator < 0) {
+            throw new IllegalArgumentException("invalid xid key: " + key);
+        }
+        return new TransactionXid(1, parseHex(key.substring(0, separator)), parseHex(key.substring(separator + 1)));
+    }
 
-        if (globalTransactionId != null) {
-            cloneGlobalTransactionId = new byte[globalTransactionId.length];
-            System.arraycopy(globalTransactionId, 0, cloneGlobalTransactionId, 0, globalTransactionId.length);
+    private static void appendHex(StringBuilder builder, byte[] bytes) {
+        for (byte b : bytes) {
+            builder.append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
         }
+    }
 
-        if (branchQualifier != null) {
-            cloneBranchQualifier = new byte[branchQualifier.length];
-            System.arraycopy(branchQualifier, 0, cloneBranchQualifier, 0, branchQualifier.length);
+    private static byte[] parseHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("invalid hex: " + hex);
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("invalid hex: " + hex);
+            }
+            bytes[i] = (byte) ((high << 4) | low);
         }
+        return bytes;
+    }
+
+    private static byte[] copyOf(byte[] bytes) {
+        return bytes == null ? null : bytes.clone();
+    }
 
-        return new TransactionXid(cloneGlobalTransactionId, cloneBranchQualifier);
+    private void resetCache() {
+        hash = 0;
+        key = null;
+        prefixedKey = null;
+    }
+
+    public TransactionXid clone() {
+        return new TransactionXid(formatId, copyOf(globalTransactionId), copyOf(branchQualifier));
     }
 
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + this.getFormatId();
-        result = prime * result + Arrays.hashCode(branchQualifier);
-        result = prime * result + Arrays.hashCode(globalTransactionId);
+        int result = hash;
+        if (result == 0) {
+            final int prime = 31;
+            result = 1;
+            result = prime * result + this.getFormatId();
+            result = prime * result + Arrays.hashCode(branchQualifier);
+            result = prime * result + Arrays.hashCode(globalTransactionId);
+            hash = result;
+        }
         return result;
     }
 
@@ -136,7 +280,9 @@ public class TransactionXid implements Xid, Serializable {
             return false;
         }
         TransactionXid other = (TransactionXid) obj;
-        if (this.getFormatId() != other.getFormatId()) {
+        if (hash != 0 && other.hash != 0 && hash != other.hash) {
+            return false;
+        } else if (this.getFormatId() != other.getFormatId()) {
             return false;
         } else if (!Arrays.equals(branchQualifier, other.branchQualifier)) {
             return false;
@@ -146,19 +292,15 @@ public class TransactionXid implements Xid, Serializable {
         return true;
     }
 
-    private static byte[] uuidToByteArray(UUID uuid) {
-        ByteBuffer bb = ByteBuffer.wrap(new byte[16]);
-        bb.putLong(uuid.getMostSignificantBits());
-        bb.putLong(uuid.getLeastSignificantBits());
-        return bb.array();
-    }
+    private static final class PrefixedKey {
 
-    private static UUID byteArrayToUUID(byte[] bytes) {
-        ByteBuffer bb = ByteBuffer.wrap(bytes);
-        long firstLong = bb.getLong();
-        long secondLong = bb.getLong();
-        return new UUID(firstLong, secondLong);
-    }
-}
+        private final String prefix;
 
+        private final byte[] bytes;
 
+        PrefixedKey(String prefix, byte[] bytes) {
+            this.prefix = prefix;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.mengyun.tcctransaction.api;
+
+/**
+ * 事务编号生成器
+ * 用于生成全局事务编号和分支事务编号，实现必须线程安全，并保证跨节点全局唯一。
+ * 通过 TransactionXid.setXidGenerator 替换默认实现。
+ */
+public interface XidGenerator {
+
+    /**
+     * 生成一个新的 16 字节编号，每次返回新的数组
+     */
+    byte[] generate();
+}
@@ -0,0 +1,73 @@
+package org.mengyun.tcctransaction.benchmark;
+
+import org.mengyun.tcctransaction.benchmark.support.ParticipantService;
+import org.mengyun.tcctransaction.benchmark.support.Payload;
+import org.mengyun.tcctransaction.benchmark.support.TccRuntime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 经 CompensableTransactionInterceptor / ResourceCoordinatorInterceptor 调用根事务方法的开销，
+ * 包含注解解析、参与者登记、事务上下文设置以及 Terminator 反射调用 confirm / cancel 方法。
+ * participantCount 为事务中的参与者总数（含根事务方法本身）。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompensableTransactionInterceptorBenchmark {
+
+    @Param({"1", "3", "10"})
+    private int participantCount;
+
+    @Param({"64", "1024", "16384"})
+    private int argumentSize;
+
+    private TccRuntime tccRuntime;
+
+    private ParticipantService participantService;
+
+    private Payload payload;
+
+    @Setup
+    public void setUp() {
+        tccRuntime = new TccRuntime();
+        participantService = new ParticipantService(tccRuntime, participantCount - 1);
+        payload = new Payload(1L, 100L, argumentSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (tccRuntime.getTransactionRepository().size() != 0) {
+            throw new IllegalStateException("transactions left in repository: " + tccRuntime.getTransactionRepository().size());
+        }
+    }
+
+    @Benchmark
+    public Object rootConfirm() throws Throwable {
+        return tccRuntime.invoke(participantService, ParticipantService.TRANSFER_METHOD, payload, false);
+    }
+
+    @Benchmark
+    public Object rootCancel() throws Throwable {
+        try {
+            return tccRuntime.invoke(participantService, ParticipantService.TRANSFER_METHOD, payload, true);
+        } catch (ParticipantService.TryFailedException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.mengyun.tcctransaction.benchmark;
+
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.benchmark.support.Transactions;
+import org.mengyun.tcctransaction.repository.helper.ExpandTransactionSerializer;
+import org.mengyun.tcctransaction.repository.helper.TransactionSerializer;
+import org.mengyun.tcctransaction.serializer.ObjectSerializer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各序列化器在文件仓库信封（TransactionSerializer）与 Redis 仓库信封（ExpandTransactionSerializer）中的
+ * 序列化 / 反序列化吞吐量。serializedBytes 为一次序列化后的字节数，每次操作的分配量由 gc profiler 给出，
+ * 直接运行 main 方法即会带上 gc profiler。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+
+    static final String ENVELOPE_FILE = "file";
+
+    static final String ENVELOPE_REDIS = "redis";
+
+    @Param({"kryo", "jackson", "jdk"})
+    private String serializerName;
+
+    @Param({ENVELOPE_FILE, ENVELOPE_REDIS})
+    private String envelope;
+
+    @Param({"1", "5", "20"})
+    private int participantCount;
+
+    private ObjectSerializer serializer;
+
+    private Transaction transaction;
+
+    private byte[] fileContent;
+
+    private Map<byte[], byte[]> redisContent;
+
+    @Setup
+    public void setUp() {
+        serializer = Transactions.serializer(serializerName);
+        transaction = Transactions.rootWithParticipants(participantCount);
+        fileContent = TransactionSerializer.serialize(serializer, transaction);
+        redisContent = ExpandTransactionSerializer.serialize(serializer, transaction);
+    }
+
+    @Benchmark
+    public Object serialize(SerializedSize size) {
+        if (ENVELOPE_FILE.equals(envelope)) {
+            byte[] content = TransactionSerializer.serialize(serializer, transaction);
+            size.serializedBytes = content.length;
+            return content;
+        } else {
+            Map<byte[], byte[]> content = ExpandTransactionSerializer.serialize(serializer, transaction);
+            size.serializedBytes = sizeOf(content);
+            return content;
+        }
+    }
+
+    @Benchmark
+    public Transaction deserialize() {
+        if (ENVELOPE_FILE.equals(envelope)) {
+            return TransactionSerializer.deserialize(serializer, fileContent);
+        } else {
+            return ExpandTransactionSerializer.deserialize(serializer, redisContent);
+        }
+    }
+
+    static long sizeOf(Map<byte[], byte[]> content) {
+        long size = 0;
+        for (Map.Entry<byte[], byte[]> entry : content.entrySet()) {
+            size += entry.getKey().length + entry.getValue().length;
+        }
+        return size;
+    }
+
+    /**
+     * 以辅助计数器的形式报告序列化后的字节数（取最后一次的值，而不是累加）
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class SerializedSize {
+
+        public long serializedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            serializedBytes = 0;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SerializerBenchmark.class.getSimpleName())
+                .include(SerializerCloneBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
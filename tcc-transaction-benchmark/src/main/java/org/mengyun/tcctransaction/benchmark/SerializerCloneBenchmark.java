@@ -0,0 +1,51 @@
+package org.mengyun.tcctransaction.benchmark;
+
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.benchmark.support.Transactions;
+import org.mengyun.tcctransaction.serializer.ObjectSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ObjectSerializer.clone 的吞吐量，clone 不经过仓库信封，因此单独成类以免重复测量。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerCloneBenchmark {
+
+    @Param({"kryo", "jackson", "jdk"})
+    private String serializerName;
+
+    @Param({"1", "5", "20"})
+    private int participantCount;
+
+    private ObjectSerializer serializer;
+
+    private Transaction transaction;
+
+    @Setup
+    public void setUp() {
+        serializer = Transactions.serializer(serializerName);
+        transaction = Transactions.rootWithParticipants(participantCount);
+    }
+
+    @Benchmark
+    public Object cloneTransaction() {
+        return serializer.clone(transaction);
+    }
+}
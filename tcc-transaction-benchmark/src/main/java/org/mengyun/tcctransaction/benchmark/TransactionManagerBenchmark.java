@@ -0,0 +1,109 @@
+package org.mengyun.tcctransaction.benchmark;
+
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionManager;
+import org.mengyun.tcctransaction.api.Compensable;
+import org.mengyun.tcctransaction.api.TransactionContext;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.benchmark.support.ParticipantService;
+import org.mengyun.tcctransaction.benchmark.support.Payload;
+import org.mengyun.tcctransaction.benchmark.support.TccRuntime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TransactionManager 的 begin -> enlist -> commit / rollback 全流程开销，
+ * 参与者直接构造后登记，不经过拦截器。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionManagerBenchmark {
+
+    private static final Class[] RECORD_PARAMETER_TYPES = ParticipantService.RECORD_METHOD.getParameterTypes();
+
+    @Param({"1", "3", "10"})
+    private int participantCount;
+
+    @Param({"64", "1024", "16384"})
+    private int argumentSize;
+
+    private TccRuntime tccRuntime;
+
+    private TransactionManager transactionManager;
+
+    private Payload payload;
+
+    @Setup
+    public void setUp() {
+        tccRuntime = new TccRuntime();
+        transactionManager = tccRuntime.getTransactionManager();
+        payload = new Payload(1L, 100L, argumentSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (tccRuntime.getTransactionRepository().size() != 0) {
+            throw new IllegalStateException("transactions left in repository: " + tccRuntime.getTransactionRepository().size());
+        }
+    }
+
+    @Benchmark
+    public Transaction commit() {
+        Transaction transaction = beginAndEnlist();
+        try {
+            transactionManager.commit(false);
+        } finally {
+            transactionManager.cleanAfterCompletion(transaction);
+        }
+        return transaction;
+    }
+
+    @Benchmark
+    public Transaction rollback() {
+        Transaction transaction = beginAndEnlist();
+        try {
+            transactionManager.rollback(false);
+        } finally {
+            transactionManager.cleanAfterCompletion(transaction);
+        }
+        return transaction;
+    }
+
+    private Transaction beginAndEnlist() {
+
+        Transaction transaction = transactionManager.begin();
+
+        for (int i = 0; i < participantCount; i++) {
+
+            TransactionXid xid = new TransactionXid(transaction.getXid().getGlobalTransactionId());
+            Object[] args = new Object[]{new TransactionContext(xid, transaction.getStatus().getId()), payload};
+
+            Participant participant = new Participant(xid,
+                    new InvocationContext(ParticipantService.class, "recordConfirm", RECORD_PARAMETER_TYPES, args),
+                    new InvocationContext(ParticipantService.class, "recordCancel", RECORD_PARAMETER_TYPES, args),
+                    Compensable.DefaultTransactionContextEditor.class);
+
+            transactionManager.enlistParticipant(participant);
+        }
+
+        return transaction;
+    }
+}
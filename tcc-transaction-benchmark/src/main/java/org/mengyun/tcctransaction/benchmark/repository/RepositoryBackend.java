@@ -0,0 +1,198 @@
+package org.mengyun.tcctransaction.benchmark.repository;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.mengyun.tcctransaction.SystemException;
+import org.mengyun.tcctransaction.benchmark.support.InMemoryRedisServer;
+import org.mengyun.tcctransaction.repository.CachableTransactionRepository;
+import org.mengyun.tcctransaction.repository.FileSystemTransactionRepository;
+import org.mengyun.tcctransaction.repository.JdbcTransactionRepository;
+import org.mengyun.tcctransaction.repository.RedisTransactionRepository;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Scanner;
+
+/**
+ * 仓库后端及其本地替身：JDBC 使用内嵌 H2（MySQL 模式，建表语句即 dbscripts/db.sql），
+ * 文件仓库使用临时目录，Redis 使用 InMemoryRedisServer。
+ * 每个后端提供两个指向同一存储的仓库实例：writer 负责写操作，reader 只负责读，
+ * 这样 findByXid 不会命中 writer 的本地缓存，测到的是存储本身的读延迟。
+ */
+public abstract class RepositoryBackend {
+
+    public static final int MAX_CONNECTIONS = 128;
+
+    protected CachableTransactionRepository writer;
+
+    protected CachableTransactionRepository reader;
+
+    public static RepositoryBackend of(String name) {
+        if ("jdbc".equals(name)) {
+            return new JdbcBackend();
+        } else if ("file".equals(name)) {
+            return new FileBackend();
+        } else if ("redis".equals(name)) {
+            return new RedisBackend();
+        }
+        throw new IllegalArgumentException("unknown backend: " + name);
+    }
+
+    public abstract String getName();
+
+    public abstract void start() throws Exception;
+
+    public abstract void stop() throws Exception;
+
+    public CachableTransactionRepository getWriter() {
+        return writer;
+    }
+
+    public CachableTransactionRepository getReader() {
+        return reader;
+    }
+
+    static class JdbcBackend extends RepositoryBackend {
+
+        private static final String DOMAIN = "BENCHMARK";
+
+        private JdbcConnectionPool dataSource;
+
+        @Override
+        public String getName() {
+            return "jdbc(h2)";
+        }
+
+        @Override
+        public void start() throws SQLException {
+            dataSource = JdbcConnectionPool.create("jdbc:h2:mem:tcc_" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+            dataSource.setMaxConnections(MAX_CONNECTIONS);
+
+            Connection connection = dataSource.getConnection();
+            try {
+                Statement statement = connection.createStatement();
+                for (String sql : readSchema().split(";")) {
+                    if (sql.trim().length() > 0) {
+                        statement.execute(sql);
+                    }
+                }
+                statement.close();
+            } finally {
+                connection.close();
+            }
+
+            writer = repository();
+            reader = repository();
+        }
+
+        private JdbcTransactionRepository repository() {
+            JdbcTransactionRepository repository = new JdbcTransactionRepository();
+            repository.setDataSource(dataSource);
+            repository.setDomain(DOMAIN);
+            return repository;
+        }
+
+        private static String readSchema() {
+            InputStream in = RepositoryBackend.class.getClassLoader().getResourceAsStream("dbscripts/db.sql");
+            if (in == null) {
+                throw new SystemException("dbscripts/db.sql not found in classpath");
+            }
+            Scanner scanner = new Scanner(in, "UTF-8").useDelimiter("\\A");
+            try {
+                return scanner.hasNext() ? scanner.next() : "";
+            } finally {
+                scanner.close();
+            }
+        }
+
+        @Override
+        public void stop() throws SQLException {
+            Connection connection = dataSource.getConnection();
+            try {
+                connection.createStatement().execute("SHUTDOWN");
+            } finally {
+                connection.close();
+            }
+            dataSource.dispose();
+        }
+    }
+
+    static class FileBackend extends RepositoryBackend {
+
+        private File rootPath;
+
+        @Override
+        public String getName() {
+            return "file";
+        }
+
+        @Override
+        public void start() throws IOException {
+            rootPath = new File(Files.createTempDirectory("tcc-benchmark").toFile(), "transactions");
+
+            writer = repository();
+            reader = repository();
+        }
+
+        private FileSystemTransactionRepository repository() {
+            FileSystemTransactionRepository repository = new FileSystemTransactionRepository();
+            repository.setRootPath(rootPath.getAbsolutePath());
+            return repository;
+        }
+
+        @Override
+        public void stop() {
+            File[] files = rootPath.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            rootPath.delete();
+            rootPath.getParentFile().delete();
+        }
+    }
+
+    static class RedisBackend extends RepositoryBackend {
+
+        private InMemoryRedisServer server;
+
+        private JedisPool jedisPool;
+
+        @Override
+        public String getName() {
+            return "redis(in-memory)";
+        }
+
+        @Override
+        public void start() throws IOException {
+            server = new InMemoryRedisServer();
+
+            JedisPoolConfig config = new JedisPoolConfig();
+            config.setMaxTotal(MAX_CONNECTIONS);
+            config.setMaxIdle(MAX_CONNECTIONS);
+            jedisPool = new JedisPool(config, server.getHost(), server.getPort());
+
+            writer = repository();
+            reader = repository();
+        }
+
+        private RedisTransactionRepository repository() {
+            RedisTransactionRepository repository = new RedisTransactionRepository();
+            repository.setJedisPool(jedisPool);
+            return repository;
+        }
+
+        @Override
+        public void stop() throws IOException {
+            jedisPool.close();
+            server.close();
+        }
+    }
+}
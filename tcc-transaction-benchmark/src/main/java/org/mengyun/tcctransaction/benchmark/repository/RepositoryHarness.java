@@ -0,0 +1,230 @@
+package org.mengyun.tcctransaction.benchmark.repository;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.benchmark.support.Transactions;
+import org.mengyun.tcctransaction.repository.CachableTransactionRepository;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 事务日志仓库的多线程压测：每个工作线程循环执行 create -> update -> findByXid -> delete，
+ * 每隔 scanInterval 次循环再执行一次 findAllUnmodifiedSince（恢复任务的查询）。
+ * 按后端、线程数输出每种操作的吞吐量和 p50/p99/p999 延迟。
+ * <p>
+ * java -cp benchmarks.jar org.mengyun.tcctransaction.benchmark.repository.RepositoryHarness
+ * 可选参数（系统属性）：
+ * -Dbackends=jdbc,file,redis -Dthreads=1,2,4,8,16,32,64 -Dwarmup=2 -Dduration=10
+ * -Dparticipants=3 -Dresidents=200 -DscanInterval=200
+ */
+public class RepositoryHarness {
+
+    enum Operation {
+        CREATE, UPDATE, FIND_BY_XID, DELETE, FIND_ALL_UNMODIFIED_SINCE
+    }
+
+    private final RepositoryBackend backend;
+
+    private final int participantCount;
+
+    private final int scanInterval;
+
+    private final Recorder[] recorders = new Recorder[Operation.values().length];
+
+    private final AtomicLong[] errors = new AtomicLong[Operation.values().length];
+
+    private volatile boolean running;
+
+    public RepositoryHarness(RepositoryBackend backend, int participantCount, int scanInterval) {
+        this.backend = backend;
+        this.participantCount = participantCount;
+        this.scanInterval = scanInterval;
+
+        for (Operation operation : Operation.values()) {
+            recorders[operation.ordinal()] = new Recorder(3);
+            errors[operation.ordinal()] = new AtomicLong();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        String[] backends = System.getProperty("backends", "jdbc,file,redis").split(",");
+        int[] threadCounts = parseInts(System.getProperty("threads", "1,2,4,8,16,32,64"));
+        int warmupSeconds = Integer.getInteger("warmup", 2);
+        int durationSeconds = Integer.getInteger("duration", 10);
+        int participantCount = Integer.getInteger("participants", 3);
+        int residentCount = Integer.getInteger("residents", 200);
+        int scanInterval = Integer.getInteger("scanInterval", 200);
+
+        for (String name : backends) {
+
+            RepositoryBackend backend = RepositoryBackend.of(name.trim());
+            backend.start();
+
+            try {
+                RepositoryHarness harness = new RepositoryHarness(backend, participantCount, scanInterval);
+                harness.preload(residentCount);
+
+                System.out.println();
+                System.out.println(String.format("# backend: %s, participants: %d, residents: %d, duration: %ds",
+                        backend.getName(), participantCount, residentCount, durationSeconds));
+                System.out.println(String.format("%-8s %-26s %12s %10s %8s %10s %10s %10s %10s",
+                        "threads", "operation", "ops/s", "count", "errors", "p50(us)", "p99(us)", "p999(us)", "max(us)"));
+
+                for (int threads : threadCounts) {
+                    harness.run(threads, warmupSeconds);
+                    harness.report(threads, harness.run(threads, durationSeconds));
+                }
+            } finally {
+                backend.stop();
+            }
+        }
+    }
+
+    /**
+     * 预先写入一批常驻事务，模拟恢复任务扫描时仓库中已有的未完成事务
+     */
+    void preload(int residentCount) {
+        for (int i = 0; i < residentCount; i++) {
+            backend.getWriter().create(Transactions.rootWithParticipants(participantCount));
+        }
+    }
+
+    /**
+     * 以指定线程数运行一段时间，返回本轮每种操作的延迟分布（纳秒）
+     */
+    Histogram[] run(int threads, int seconds) throws InterruptedException {
+
+        for (int i = 0; i < recorders.length; i++) {
+            recorders[i].reset();
+            errors[i].set(0);
+        }
+
+        running = true;
+        final CountDownLatch done = new CountDownLatch(threads);
+        List<Thread> workers = new ArrayList<Thread>();
+
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        work();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "repository-harness-" + i);
+            workers.add(worker);
+        }
+
+        for (Thread worker : workers) {
+            worker.start();
+        }
+
+        TimeUnit.SECONDS.sleep(seconds);
+        running = false;
+        done.await();
+
+        Histogram[] histograms = new Histogram[recorders.length];
+        for (int i = 0; i < recorders.length; i++) {
+            histograms[i] = recorders[i].getIntervalHistogram();
+            histograms[i].setStartTimeStamp(0);
+            histograms[i].setEndTimeStamp(TimeUnit.SECONDS.toMillis(seconds));
+        }
+        return histograms;
+    }
+
+    private void work() {
+
+        CachableTransactionRepository writer = backend.getWriter();
+        CachableTransactionRepository reader = backend.getReader();
+
+        long iteration = 0;
+
+        while (running) {
+
+            Transaction transaction = Transactions.rootWithParticipants(participantCount);
+
+            Operation operation = Operation.CREATE;
+            long start = System.nanoTime();
+
+            try {
+                writer.create(transaction);
+                start = record(operation, start);
+
+                operation = Operation.UPDATE;
+                transaction.changeStatus(TransactionStatus.CONFIRMING);
+                writer.update(transaction);
+                start = record(operation, start);
+
+                operation = Operation.FIND_BY_XID;
+                reader.findByXid((TransactionXid) transaction.getXid());
+                start = record(operation, start);
+
+                operation = Operation.DELETE;
+                writer.delete(transaction);
+                start = record(operation, start);
+
+                if (++iteration % scanInterval == 0) {
+                    operation = Operation.FIND_ALL_UNMODIFIED_SINCE;
+                    reader.findAllUnmodifiedSince(new Date());
+                    record(operation, start);
+                }
+            } catch (RuntimeException e) {
+                errors[operation.ordinal()].incrementAndGet();
+                try {
+                    writer.delete(transaction);
+                } catch (RuntimeException ignore) {
+                }
+            }
+        }
+    }
+
+    private long record(Operation operation, long start) {
+        long end = System.nanoTime();
+        recorders[operation.ordinal()].recordValue(end - start);
+        return end;
+    }
+
+    void report(int threads, Histogram[] histograms) {
+
+        for (Operation operation : Operation.values()) {
+
+            Histogram histogram = histograms[operation.ordinal()];
+            double seconds = (histogram.getEndTimeStamp() - histogram.getStartTimeStamp()) / 1000.0;
+
+            System.out.println(String.format("%-8d %-26s %12.1f %10d %8d %10.1f %10.1f %10.1f %10.1f",
+                    threads,
+                    operation.name().toLowerCase(),
+                    histogram.getTotalCount() / seconds,
+                    histogram.getTotalCount(),
+                    errors[operation.ordinal()].get(),
+                    micros(histogram.getValueAtPercentile(50)),
+                    micros(histogram.getValueAtPercentile(99)),
+                    micros(histogram.getValueAtPercentile(99.9)),
+                    micros(histogram.getMaxValue())));
+        }
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    private static int[] parseInts(String value) {
+        String[] parts = value.split(",");
+        int[] result = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Integer.parseInt(parts[i].trim());
+        }
+        return result;
+    }
+}
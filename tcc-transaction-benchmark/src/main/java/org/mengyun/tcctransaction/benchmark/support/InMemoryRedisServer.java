@@ -0,0 +1,375 @@
+package org.mengyun.tcctransaction.benchmark.support;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 进程内的 RESP 协议服务端，只实现 RedisTransactionRepository 用到的命令：
+ * EVAL（仓库中的两段 create / update 脚本）、HGETALL、HGET、DEL、SCAN、KEYS、PING、FLUSHALL。
+ * 所有命令在同一把锁下串行执行，与 Redis 单线程执行命令的模型一致；支持 pipeline。
+ * 只用于基准测试，不做持久化。
+ */
+public class InMemoryRedisServer implements Closeable {
+
+    private static final Charset RAW = Charset.forName("ISO-8859-1");
+
+    private static final byte[] CRLF = new byte[]{'\r', '\n'};
+
+    private static final Pattern UPDATE_VERSION = Pattern.compile("'VERSION'\\) == '([^']*)'");
+
+    private final Map<String, Map<String, byte[]>> store = new HashMap<String, Map<String, byte[]>>();
+
+    private final ServerSocket serverSocket;
+
+    private final List<Socket> clients = Collections.synchronizedList(new ArrayList<Socket>());
+
+    private volatile boolean running = true;
+
+    public InMemoryRedisServer() throws IOException {
+        serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "in-memory-redis-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public String getHost() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int size() {
+        synchronized (store) {
+            return store.size();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        synchronized (clients) {
+            for (Socket client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                clients.add(socket);
+
+                Thread handler = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                }, "in-memory-redis-" + socket.getPort());
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (running) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            ByteArrayOutputStream reply = new ByteArrayOutputStream();
+
+            while (running) {
+                List<byte[]> command = readCommand(in);
+                if (command == null) {
+                    break;
+                }
+
+                // 在锁内只写内存缓冲，避免慢客户端阻塞其他连接
+                reply.reset();
+                execute(command, reply);
+                reply.writeTo(out);
+
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (IOException ignore) {
+            // client disconnected
+        } finally {
+            clients.remove(socket);
+            try {
+                socket.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private void execute(List<byte[]> command, OutputStream out) throws IOException {
+
+        String name = string(command.get(0)).toUpperCase();
+
+        synchronized (store) {
+            if ("EVAL".equals(name)) {
+                eval(command, out);
+            } else if ("HGETALL".equals(name)) {
+                Map<String, byte[]> hash = store.get(string(command.get(1)));
+                if (hash == null) {
+                    writeArrayHeader(out, 0);
+                } else {
+                    writeArrayHeader(out, hash.size() * 2);
+                    for (Map.Entry<String, byte[]> entry : hash.entrySet()) {
+                        writeBulk(out, entry.getKey().getBytes(RAW));
+                        writeBulk(out, entry.getValue());
+                    }
+                }
+            } else if ("HGET".equals(name)) {
+                Map<String, byte[]> hash = store.get(string(command.get(1)));
+                writeBulk(out, hash == null ? null : hash.get(string(command.get(2))));
+            } else if ("DEL".equals(name)) {
+                long deleted = 0;
+                for (int i = 1; i < command.size(); i++) {
+                    if (store.remove(string(command.get(i))) != null) {
+                        deleted++;
+                    }
+                }
+                writeInteger(out, deleted);
+            } else if ("SCAN".equals(name)) {
+                scan(command, out);
+            } else if ("KEYS".equals(name)) {
+                List<String> keys = matchingKeys(globToRegex(string(command.get(1))));
+                writeKeys(out, keys);
+            } else if ("PING".equals(name)) {
+                writeSimple(out, "+PONG");
+            } else if ("FLUSHALL".equals(name) || "FLUSHDB".equals(name)) {
+                store.clear();
+                writeSimple(out, "+OK");
+            } else if ("QUIT".equals(name)) {
+                writeSimple(out, "+OK");
+            } else {
+                writeSimple(out, "-ERR unknown command '" + name + "'");
+            }
+        }
+    }
+
+    /**
+     * 仓库中只有两段脚本：不存在则 hmset（create），VERSION 匹配则 hmset（update）
+     */
+    private void eval(List<byte[]> command, OutputStream out) throws IOException {
+
+        String script = string(command.get(1));
+        int keyCount = Integer.parseInt(string(command.get(2)));
+
+        if (keyCount != 1) {
+            writeSimple(out, "-ERR only single key scripts are supported");
+            return;
+        }
+
+        String key = string(command.get(3));
+        List<byte[]> args = command.subList(4, command.size());
+        Map<String, byte[]> hash = store.get(key);
+
+        if (script.contains("'exists'")) {
+            if (hash != null) {
+                writeInteger(out, 0);
+                return;
+            }
+            hash = new LinkedHashMap<String, byte[]>();
+            store.put(key, hash);
+            hmset(hash, args);
+            writeInteger(out, 1);
+            return;
+        }
+
+        Matcher matcher = UPDATE_VERSION.matcher(script);
+
+        if (matcher.find()) {
+            byte[] version = hash == null ? null : hash.get("VERSION");
+            if (version == null || !string(version).equals(matcher.group(1))) {
+                writeInteger(out, 0);
+                return;
+            }
+            hmset(hash, args);
+            writeInteger(out, 1);
+            return;
+        }
+
+        writeSimple(out, "-ERR unsupported script");
+    }
+
+    private void hmset(Map<String, byte[]> hash, List<byte[]> args) {
+        for (int i = 0; i + 1 < args.size(); i += 2) {
+            hash.put(string(args.get(i)), args.get(i + 1));
+        }
+    }
+
+    private void scan(List<byte[]> command, OutputStream out) throws IOException {
+
+        int cursor = Integer.parseInt(string(command.get(1)));
+        Pattern pattern = null;
+        int count = 10;
+
+        for (int i = 2; i + 1 < command.size(); i += 2) {
+            String option = string(command.get(i)).toUpperCase();
+            if ("MATCH".equals(option)) {
+                pattern = globToRegex(string(command.get(i + 1)));
+            } else if ("COUNT".equals(option)) {
+                count = Integer.parseInt(string(command.get(i + 1)));
+            }
+        }
+
+        List<String> all = new ArrayList<String>(store.keySet());
+        Collections.sort(all);
+
+        int end = Math.min(all.size(), cursor + count);
+        List<String> keys = new ArrayList<String>();
+
+        for (int i = cursor; i < end; i++) {
+            if (pattern == null || pattern.matcher(all.get(i)).matches()) {
+                keys.add(all.get(i));
+            }
+        }
+
+        writeArrayHeader(out, 2);
+        writeBulk(out, String.valueOf(end >= all.size() ? 0 : end).getBytes(RAW));
+        writeKeys(out, keys);
+    }
+
+    private List<String> matchingKeys(Pattern pattern) {
+        List<String> keys = new ArrayList<String>();
+        for (String key : store.keySet()) {
+            if (pattern.matcher(key).matches()) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private static Pattern globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static List<byte[]> readCommand(InputStream in) throws IOException {
+
+        int prefix = in.read();
+
+        if (prefix == -1) {
+            return null;
+        }
+
+        if (prefix != '*') {
+            throw new IOException("inline commands are not supported");
+        }
+
+        int size = Integer.parseInt(readLine(in));
+        List<byte[]> command = new ArrayList<byte[]>(size);
+
+        for (int i = 0; i < size; i++) {
+            if (in.read() != '$') {
+                throw new IOException("bulk string expected");
+            }
+
+            byte[] value = new byte[Integer.parseInt(readLine(in))];
+            int offset = 0;
+            while (offset < value.length) {
+                int read = in.read(value, offset, value.length - offset);
+                if (read == -1) {
+                    throw new EOFException();
+                }
+                offset += read;
+            }
+            readLine(in);
+            command.add(value);
+        }
+
+        return command;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1) {
+                throw new EOFException();
+            }
+            builder.append((char) c);
+        }
+        in.read(); // '\n'
+        return builder.toString();
+    }
+
+    private static void writeKeys(OutputStream out, List<String> keys) throws IOException {
+        writeArrayHeader(out, keys.size());
+        for (String key : keys) {
+            writeBulk(out, key.getBytes(RAW));
+        }
+    }
+
+    private static void writeArrayHeader(OutputStream out, int size) throws IOException {
+        writeSimple(out, "*" + size);
+    }
+
+    private static void writeInteger(OutputStream out, long value) throws IOException {
+        writeSimple(out, ":" + value);
+    }
+
+    private static void writeBulk(OutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            writeSimple(out, "$-1");
+            return;
+        }
+        writeSimple(out, "$" + value.length);
+        out.write(value);
+        out.write(CRLF);
+    }
+
+    private static void writeSimple(OutputStream out, String line) throws IOException {
+        out.write(line.getBytes(RAW));
+        out.write(CRLF);
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, RAW);
+    }
+}
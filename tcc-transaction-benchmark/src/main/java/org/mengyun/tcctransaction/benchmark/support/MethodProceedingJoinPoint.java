@@ -0,0 +1,154 @@
+package org.mengyun.tcctransaction.benchmark.support;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.aspectj.lang.reflect.SourceLocation;
+import org.aspectj.runtime.internal.AroundClosure;
+import org.mengyun.tcctransaction.SystemException;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * 不依赖 Spring AOP 的连接点，用于在基准测试中直接驱动拦截器，
+ * 与 tcc-transaction-dubbo 中的 MethodProceedingJoinPoint 行为一致。
+ */
+public class MethodProceedingJoinPoint implements ProceedingJoinPoint, JoinPoint.StaticPart {
+
+    private final Object target;
+
+    private final Method method;
+
+    private final Object[] args;
+
+    private Signature signature;
+
+    public MethodProceedingJoinPoint(Object target, Method method, Object[] args) {
+        this.target = target;
+        this.method = method;
+        this.args = args;
+    }
+
+    @Override
+    public void set$AroundClosure(AroundClosure aroundClosure) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object proceed() throws Throwable {
+        return proceed(args);
+    }
+
+    @Override
+    public Object proceed(Object[] objects) throws Throwable {
+        try {
+            return method.invoke(target, objects);
+        } catch (InvocationTargetException ex) {
+            throw ex.getTargetException();
+        } catch (IllegalAccessException ex) {
+            throw new SystemException("Could not access method [" + method + "]", ex);
+        }
+    }
+
+    @Override
+    public String toShortString() {
+        return "execution(" + method.getName() + ")";
+    }
+
+    @Override
+    public String toLongString() {
+        return "execution(" + method + ")";
+    }
+
+    @Override
+    public Object getThis() {
+        return target;
+    }
+
+    @Override
+    public Object getTarget() {
+        return target;
+    }
+
+    @Override
+    public Object[] getArgs() {
+        return args;
+    }
+
+    @Override
+    public Signature getSignature() {
+        if (signature == null) {
+            signature = new MethodSignatureImpl();
+        }
+        return signature;
+    }
+
+    @Override
+    public SourceLocation getSourceLocation() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getKind() {
+        return ProceedingJoinPoint.METHOD_EXECUTION;
+    }
+
+    @Override
+    public int getId() {
+        return 0;
+    }
+
+    @Override
+    public StaticPart getStaticPart() {
+        return this;
+    }
+
+    private class MethodSignatureImpl implements MethodSignature {
+
+        public String getName() {
+            return method.getName();
+        }
+
+        public int getModifiers() {
+            return method.getModifiers();
+        }
+
+        public Class getDeclaringType() {
+            return method.getDeclaringClass();
+        }
+
+        public String getDeclaringTypeName() {
+            return method.getDeclaringClass().getName();
+        }
+
+        public Class getReturnType() {
+            return method.getReturnType();
+        }
+
+        public Method getMethod() {
+            return method;
+        }
+
+        public Class[] getParameterTypes() {
+            return method.getParameterTypes();
+        }
+
+        public String[] getParameterNames() {
+            throw new UnsupportedOperationException();
+        }
+
+        public Class[] getExceptionTypes() {
+            return method.getExceptionTypes();
+        }
+
+        public String toShortString() {
+            return method.getName();
+        }
+
+        public String toLongString() {
+            return method.toString();
+        }
+    }
+}
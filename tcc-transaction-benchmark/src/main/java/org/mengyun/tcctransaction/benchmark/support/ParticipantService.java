@@ -0,0 +1,78 @@
+package org.mengyun.tcctransaction.benchmark.support;
+
+import org.mengyun.tcctransaction.api.Compensable;
+import org.mengyun.tcctransaction.api.TransactionContext;
+
+import java.lang.reflect.Method;
+
+/**
+ * 基准测试使用的 TCC 服务：transfer 为根事务方法，record 为嵌套的参与者方法，
+ * confirm / cancel 方法为空实现，只衡量框架自身的开销。
+ */
+public class ParticipantService {
+
+    public static final Method TRANSFER_METHOD;
+
+    public static final Method RECORD_METHOD;
+
+    static {
+        try {
+            TRANSFER_METHOD = ParticipantService.class.getMethod("transfer", Payload.class, boolean.class);
+            RECORD_METHOD = ParticipantService.class.getMethod("record", TransactionContext.class, Payload.class);
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final TryFailedException TRY_FAILED = new TryFailedException();
+
+    private TccRuntime tccRuntime;
+
+    private int nestedParticipantCount;
+
+    public ParticipantService() {
+
+    }
+
+    public ParticipantService(TccRuntime tccRuntime, int nestedParticipantCount) {
+        this.tccRuntime = tccRuntime;
+        this.nestedParticipantCount = nestedParticipantCount;
+    }
+
+    @Compensable(confirmMethod = "transferConfirm", cancelMethod = "transferCancel")
+    public void transfer(Payload payload, boolean tryFailed) throws Throwable {
+
+        for (int i = 0; i < nestedParticipantCount; i++) {
+            tccRuntime.invoke(this, RECORD_METHOD, null, payload);
+        }
+
+        if (tryFailed) {
+            throw TRY_FAILED;
+        }
+    }
+
+    public void transferConfirm(Payload payload, boolean tryFailed) {
+    }
+
+    public void transferCancel(Payload payload, boolean tryFailed) {
+    }
+
+    @Compensable(confirmMethod = "recordConfirm", cancelMethod = "recordCancel")
+    public void record(TransactionContext transactionContext, Payload payload) {
+    }
+
+    public void recordConfirm(TransactionContext transactionContext, Payload payload) {
+    }
+
+    public void recordCancel(TransactionContext transactionContext, Payload payload) {
+    }
+
+    public static class TryFailedException extends RuntimeException {
+
+        private static final long serialVersionUID = -1942263741532412046L;
+
+        public TryFailedException() {
+            super("try failed", null, false, false);
+        }
+    }
+}
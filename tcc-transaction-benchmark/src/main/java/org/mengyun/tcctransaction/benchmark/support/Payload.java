@@ -0,0 +1,41 @@
+package org.mengyun.tcctransaction.benchmark.support;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * 基准测试中参与者方法的业务参数，size 控制参数序列化后的大致字节数
+ */
+public class Payload implements Serializable {
+
+    private static final long serialVersionUID = 2817236645118211842L;
+
+    private long accountId;
+
+    private long amount;
+
+    private byte[] data;
+
+    public Payload() {
+
+    }
+
+    public Payload(long accountId, long amount, int size) {
+        this.accountId = accountId;
+        this.amount = amount;
+        this.data = new byte[size];
+        Arrays.fill(this.data, (byte) 'x');
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+}
@@ -0,0 +1,75 @@
+package org.mengyun.tcctransaction.benchmark.support;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.mengyun.tcctransaction.TransactionManager;
+import org.mengyun.tcctransaction.interceptor.CompensableTransactionInterceptor;
+import org.mengyun.tcctransaction.interceptor.ResourceCoordinatorInterceptor;
+import org.mengyun.tcctransaction.repository.MemoryTransactionRepository;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 按 tcc-transaction.xml 中的切面顺序组装的事务运行环境：
+ * CompensableTransactionInterceptor -> ResourceCoordinatorInterceptor -> 业务方法，
+ * 事务日志保存在 MemoryTransactionRepository 中，不涉及外部存储。
+ */
+public class TccRuntime {
+
+    private final MemoryTransactionRepository transactionRepository = new MemoryTransactionRepository();
+
+    private final TransactionManager transactionManager = new TransactionManager();
+
+    private final CompensableTransactionInterceptor compensableTransactionInterceptor = new CompensableTransactionInterceptor();
+
+    private final ResourceCoordinatorInterceptor resourceCoordinatorInterceptor = new ResourceCoordinatorInterceptor();
+
+    public TccRuntime() {
+        this(null);
+    }
+
+    public TccRuntime(ExecutorService executorService) {
+        transactionManager.setTransactionRepository(transactionRepository);
+        transactionManager.setExecutorService(executorService);
+
+        compensableTransactionInterceptor.setTransactionManager(transactionManager);
+        compensableTransactionInterceptor.setDelayCancelExceptions(Collections.<Class<? extends Exception>>emptySet());
+
+        resourceCoordinatorInterceptor.setTransactionManager(transactionManager);
+    }
+
+    /**
+     * 经过两个拦截器调用 @Compensable 方法，等价于 Spring 代理对象上的一次调用
+     */
+    public Object invoke(Object target, Method method, Object... args) throws Throwable {
+        return compensableTransactionInterceptor.interceptCompensableMethod(new CoordinatedJoinPoint(target, method, args));
+    }
+
+    public MemoryTransactionRepository getTransactionRepository() {
+        return transactionRepository;
+    }
+
+    public TransactionManager getTransactionManager() {
+        return transactionManager;
+    }
+
+    private class CoordinatedJoinPoint extends MethodProceedingJoinPoint {
+
+        private final Object target;
+
+        private final Method method;
+
+        CoordinatedJoinPoint(Object target, Method method, Object[] args) {
+            super(target, method, args);
+            this.target = target;
+            this.method = method;
+        }
+
+        @Override
+        public Object proceed(Object[] objects) throws Throwable {
+            ProceedingJoinPoint pjp = new MethodProceedingJoinPoint(target, method, objects);
+            return resourceCoordinatorInterceptor.interceptTransactionContextMethod(pjp);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.mengyun.tcctransaction.benchmark.support;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 模拟业务中作为参与者参数的订单 DTO，字段组成参考 sample 中的 CapitalTradeOrderDto。
+ */
+public class TradeOrderDto implements Serializable {
+
+    private static final long serialVersionUID = -3526402950862185395L;
+
+    private long selfUserId;
+
+    private long oppositeUserId;
+
+    private String orderTitle;
+
+    private String merchantOrderNo;
+
+    private BigDecimal amount;
+
+    private Date createTime;
+
+    private List<OrderLine> orderLines = new ArrayList<OrderLine>();
+
+    public TradeOrderDto() {
+
+    }
+
+    public TradeOrderDto(long selfUserId, long oppositeUserId, String merchantOrderNo, int lineCount) {
+        this.selfUserId = selfUserId;
+        this.oppositeUserId = oppositeUserId;
+        this.merchantOrderNo = merchantOrderNo;
+        this.orderTitle = "order:" + merchantOrderNo;
+        this.createTime = new Date();
+
+        BigDecimal total = BigDecimal.ZERO;
+
+        for (int i = 0; i < lineCount; i++) {
+            OrderLine orderLine = new OrderLine(1000L + i, i + 1, new BigDecimal("19.90"));
+            orderLines.add(orderLine);
+            total = total.add(orderLine.getUnitPrice().multiply(BigDecimal.valueOf(orderLine.getQuantity())));
+        }
+
+        this.amount = total;
+    }
+
+    public long getSelfUserId() {
+        return selfUserId;
+    }
+
+    public long getOppositeUserId() {
+        return oppositeUserId;
+    }
+
+    public String getOrderTitle() {
+        return orderTitle;
+    }
+
+    public String getMerchantOrderNo() {
+        return merchantOrderNo;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public Date getCreateTime() {
+        return createTime;
+    }
+
+    public List<OrderLine> getOrderLines() {
+        return orderLines;
+    }
+
+    public static class OrderLine implements Serializable {
+
+        private static final long serialVersionUID = 2380461578251434761L;
+
+        private long productId;
+
+        private int quantity;
+
+        private BigDecimal unitPrice;
+
+        public OrderLine() {
+
+        }
+
+        public OrderLine(long productId, int quantity, BigDecimal unitPrice) {
+            this.productId = productId;
+            this.quantity = quantity;
+            this.unitPrice = unitPrice;
+        }
+
+        public long getProductId() {
+            return productId;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public BigDecimal getUnitPrice() {
+            return unitPrice;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.mengyun.tcctransaction.benchmark.support;
+
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.Compensable;
+import org.mengyun.tcctransaction.api.TransactionContext;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.serializer.JacksonJsonSerializer;
+import org.mengyun.tcctransaction.serializer.JdkSerializationSerializer;
+import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
+import org.mengyun.tcctransaction.serializer.ObjectSerializer;
+
+/**
+ * 构造基准测试使用的事务对象
+ */
+public final class Transactions {
+
+    private static final Class[] PARAMETER_TYPES = new Class[]{TransactionContext.class, TradeOrderDto.class};
+
+    private Transactions() {
+    }
+
+    /**
+     * 构造一个处于 TRYING 状态的根事务，参与者的确认/取消调用上下文与 ResourceCoordinatorInterceptor 登记时一致，
+     * 参数为 TransactionContext 和一个带有若干订单明细的 TradeOrderDto。
+     */
+    public static Transaction rootWithParticipants(int participantCount) {
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+
+        for (int i = 0; i < participantCount; i++) {
+
+            TransactionXid xid = new TransactionXid(transaction.getXid().getGlobalTransactionId());
+
+            Object[] args = new Object[]{
+                    new TransactionContext(xid, TransactionStatus.TRYING.getId()),
+                    new TradeOrderDto(2000L + i, 3000L + i, "M" + System.nanoTime() + i, 3)};
+
+            transaction.enlistParticipant(new Participant(xid,
+                    new InvocationContext(ParticipantService.class, "recordConfirm", PARAMETER_TYPES, args),
+                    new InvocationContext(ParticipantService.class, "recordCancel", PARAMETER_TYPES, args),
+                    Compensable.DefaultTransactionContextEditor.class));
+        }
+
+        return transaction;
+    }
+
+    public static ObjectSerializer serializer(String name) {
+        if ("kryo".equals(name)) {
+            return new KryoPoolSerializer();
+        } else if ("jackson".equals(name)) {
+            return new JacksonJsonSerializer();
+        } else if ("jdk".equals(name)) {
+            return new JdkSerializationSerializer();
+        }
+        throw new IllegalArgumentException("unknown serializer: " + name);
+    }
+}
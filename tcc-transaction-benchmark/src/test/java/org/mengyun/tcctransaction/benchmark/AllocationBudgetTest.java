@@ -0,0 +1,152 @@
+package org.mengyun.tcctransaction.benchmark;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.benchmark.support.ParticipantService;
+import org.mengyun.tcctransaction.benchmark.support.Payload;
+import org.mengyun.tcctransaction.benchmark.support.TccRuntime;
+import org.mengyun.tcctransaction.benchmark.support.Transactions;
+import org.mengyun.tcctransaction.repository.MemoryTransactionRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+/**
+ * 根事务的内存分配预算：
+ * CompensableTransactionInterceptor -> TransactionManager -> CachableTransactionRepository（MemoryTransactionRepository），
+ * 用 ThreadMXBean.getThreadAllocatedBytes 统计当前线程每个操作分配的字节数，超过 allocation-budgets.properties 中的预算时失败。
+ */
+public class AllocationBudgetTest {
+
+    private static final int WARMUP_ITERATIONS = 20000;
+
+    private static final int MEASURE_ITERATIONS = 5000;
+
+    private static com.sun.management.ThreadMXBean threadMXBean;
+
+    private static Properties budgets;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+
+        threadMXBean = (com.sun.management.ThreadMXBean) bean;
+
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        budgets = new Properties();
+        InputStream in = AllocationBudgetTest.class.getClassLoader().getResourceAsStream("allocation-budgets.properties");
+        try {
+            budgets.load(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void rootConfirm() throws Throwable {
+        assertRootTransactionWithinBudget("rootConfirm", false);
+    }
+
+    @Test
+    public void rootCancel() throws Throwable {
+        assertRootTransactionWithinBudget("rootCancel", true);
+    }
+
+    @Test
+    public void repositoryLifecycle() throws Throwable {
+
+        final MemoryTransactionRepository repository = new MemoryTransactionRepository();
+
+        assertWithinBudget("repositoryLifecycle", new Operation() {
+            @Override
+            public void run() {
+                Transaction transaction = Transactions.rootWithParticipants(1);
+                repository.create(transaction);
+                transaction.changeStatus(TransactionStatus.CONFIRMING);
+                repository.update(transaction);
+                repository.delete(transaction);
+            }
+        });
+    }
+
+    /**
+     * 根事务包含一个嵌套参与者，try 成功时 confirm，失败时 cancel
+     */
+    private void assertRootTransactionWithinBudget(String name, final boolean tryFailed) throws Throwable {
+
+        final TccRuntime tccRuntime = new TccRuntime();
+        final ParticipantService participantService = new ParticipantService(tccRuntime, 1);
+        final Payload payload = new Payload(1, 1, 100);
+
+        assertWithinBudget(name, new Operation() {
+            @Override
+            public void run() throws Throwable {
+                try {
+                    tccRuntime.invoke(participantService, ParticipantService.TRANSFER_METHOD, payload, tryFailed);
+                } catch (ParticipantService.TryFailedException e) {
+                    if (!tryFailed) {
+                        throw e;
+                    }
+                }
+            }
+        });
+
+        Assert.assertEquals(0, tccRuntime.getTransactionRepository().size());
+    }
+
+    private void assertWithinBudget(String name, Operation operation) throws Throwable {
+
+        long budget = budget(name);
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            operation.run();
+        }
+
+        long bytesPerOperation = measure(operation) - measure(Operation.EMPTY);
+
+        Assert.assertTrue(String.format("%s allocated %d bytes per operation, budget is %d bytes", name, bytesPerOperation, budget),
+                bytesPerOperation <= budget);
+    }
+
+    private long measure(Operation operation) throws Throwable {
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            operation.run();
+        }
+
+        long after = threadMXBean.getThreadAllocatedBytes(threadId);
+        return (after - before) / MEASURE_ITERATIONS;
+    }
+
+    private long budget(String name) {
+        String value = System.getProperty("tcc.allocation.budget." + name, budgets.getProperty(name));
+        Assert.assertNotNull("no allocation budget configured for " + name, value);
+        return Long.parseLong(value.trim());
+    }
+
+    interface Operation {
+
+        Operation EMPTY = new Operation() {
+            @Override
+            public void run() {
+            }
+        };
+
+        void run() throws Throwable;
+    }
+}
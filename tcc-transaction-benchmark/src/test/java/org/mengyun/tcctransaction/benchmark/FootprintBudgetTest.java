@@ -0,0 +1,81 @@
+package org.mengyun.tcctransaction.benchmark;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionContext;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * 常驻对象的内存占用预算：
+ * 仓库缓存和恢复批次会同时持有大量 Transaction，RPC 调用会为每个参与者创建 TransactionContext，
+ * 用 JOL 的 GraphLayout 统计对象图的总字节数，超过 footprint-budgets.properties 中的预算时失败。
+ * 调用上下文不设置目标类和编辑器，避免把共享的 Class 对象计入。
+ */
+public class FootprintBudgetTest {
+
+    private static Properties budgets;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+
+        budgets = new Properties();
+        InputStream in = FootprintBudgetTest.class.getClassLoader().getResourceAsStream("footprint-budgets.properties");
+        try {
+            budgets.load(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void emptyRootTransaction() {
+        assertWithinBudget("emptyRootTransaction", new Transaction(TransactionType.ROOT));
+    }
+
+    @Test
+    public void rootTransactionWithParticipants() {
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+
+        for (int i = 0; i < 2; i++) {
+            transaction.enlistParticipant(new Participant(
+                    new InvocationContext(null, "confirm", new Class[0]),
+                    new InvocationContext(null, "cancel", new Class[0]),
+                    null));
+        }
+
+        assertWithinBudget("rootTransactionWithParticipants", transaction);
+    }
+
+    @Test
+    public void transactionContext() {
+        assertWithinBudget("transactionContext", new TransactionContext(new TransactionXid(), TransactionStatus.TRYING.getId()));
+    }
+
+    private void assertWithinBudget(String name, Object root) {
+
+        long budget = budget(name);
+
+        long bytes = GraphLayout.parseInstance(root).totalSize();
+
+        Assert.assertTrue(String.format("%s retains %d bytes, budget is %d bytes", name, bytes, budget),
+                bytes <= budget);
+    }
+
+    private long budget(String name) {
+        String value = System.getProperty("tcc.footprint.budget." + name, budgets.getProperty(name));
+        Assert.assertNotNull("no footprint budget configured for " + name, value);
+        return Long.parseLong(value.trim());
+    }
+}
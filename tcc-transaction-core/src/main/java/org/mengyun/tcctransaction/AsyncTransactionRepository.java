@@ -0,0 +1,24 @@
+package org.mengyun.tcctransaction;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 非阻塞的事务日志仓库，供 TransactionManager.commitAsync / rollbackAsync 使用
+ * 返回的 CompletionStage 在写入持久化后完成，结果与 TransactionRepository 对应方法的返回值相同，
+ * 失败时以相同的异常（如 OptimisticLockException）异常完成。
+ */
+public interface AsyncTransactionRepository {
+
+    CompletionStage<Integer> createAsync(Transaction transaction);
+
+    CompletionStage<Integer> updateAsync(Transaction transaction);
+
+    /**
+     * 只持久化状态相关字段，默认退化为完整更新
+     */
+    default CompletionStage<Integer> updateStatusAsync(Transaction transaction) {
+        return updateAsync(transaction);
+    }
+
+    CompletionStage<Integer> deleteAsync(Transaction transaction);
+}
@@ -6,6 +6,10 @@ import org.mengyun.tcctransaction.api.TransactionStatus;
 import org.mengyun.tcctransaction.api.TransactionXid;
 
 import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 
 /**
  * 参与者
@@ -60,16 +64,73 @@ public class Participant implements Serializable {
     }
     /**
      * 回滚参与者自己的事务
+     * cancel 方法返回 CompletionStage 时等待其完成
      */
     public void rollback() {
-        Terminator.invoke(new TransactionContext(xid, TransactionStatus.CANCELLING.getId()), cancelInvocationContext, transactionContextEditorClass);
+        await(Terminator.invoke(new TransactionContext(xid, TransactionStatus.CANCELLING.getId()), cancelInvocationContext, transactionContextEditorClass));
     }
     /**
      * 提交参与者自己的事务
+     * confirm 方法返回 CompletionStage 时等待其完成
      */
     public void commit() {
         // 会调用真正的commit方法（业务提供的）
-        Terminator.invoke(new TransactionContext(xid, TransactionStatus.CONFIRMING.getId()), confirmInvocationContext, transactionContextEditorClass);
+        await(Terminator.invoke(new TransactionContext(xid, TransactionStatus.CONFIRMING.getId()), confirmInvocationContext, transactionContextEditorClass));
+    }
+
+    /**
+     * 异步回滚：cancel 方法返回 CompletionStage 时不等待，直接返回该 CompletionStage；
+     * 否则 cancel 方法在当前线程上执行完后返回已完成的 CompletionStage
+     */
+    public CompletionStage<Void> rollbackAsync() {
+        try {
+            return toStage(Terminator.invoke(new TransactionContext(xid, TransactionStatus.CANCELLING.getId()), cancelInvocationContext, transactionContextEditorClass));
+        } catch (Throwable e) {
+            return failed(e);
+        }
+    }
+
+    /**
+     * 异步提交，语义同 rollbackAsync
+     */
+    public CompletionStage<Void> commitAsync() {
+        try {
+            return toStage(Terminator.invoke(new TransactionContext(xid, TransactionStatus.CONFIRMING.getId()), confirmInvocationContext, transactionContextEditorClass));
+        } catch (Throwable e) {
+            return failed(e);
+        }
+    }
+
+    private static void await(Object result) {
+        if (result instanceof CompletionStage) {
+            try {
+                ((CompletionStage<?>) result).toCompletableFuture().join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new SystemException(cause);
+            }
+        }
+    }
+
+    private static CompletionStage<Void> toStage(Object result) {
+        if (result instanceof CompletionStage) {
+            return ((CompletionStage<?>) result).thenApply(new Function<Object, Void>() {
+                @Override
+                public Void apply(Object value) {
+                    return null;
+                }
+            });
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    static <T> CompletionStage<T> failed(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        future.completeExceptionally(e);
+        return future;
     }
 
     public TransactionXid getXid() {
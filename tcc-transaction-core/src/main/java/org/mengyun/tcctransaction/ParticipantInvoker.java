@@ -0,0 +1,174 @@
+package org.mengyun.tcctransaction;
+
+import org.mengyun.tcctransaction.api.Compensable;
+import org.mengyun.tcctransaction.api.TransactionContext;
+import org.mengyun.tcctransaction.api.TransactionContextEditor;
+import org.mengyun.tcctransaction.context.MethodTransactionContextEditor;
+import org.mengyun.tcctransaction.support.FactoryBuilder;
+import org.mengyun.tcctransaction.utils.CompensableMethodUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 参与者 confirm / cancel 方法的调用器
+ * 按 (参与者运行时类, 方法名, 参数类型, 事务上下文编辑器) 缓存，方法和参数位置只解析一次，
+ * 方法展开为 (Object, Object[])Object 形式的 MethodHandle，调用时不再经过反射查找。
+ * 参与者对象和编辑器每次调用时从 FactoryBuilder 获取，不随调用器缓存；
+ * 缓存挂在参与者类的 ClassValue 上，应用重新部署后随类加载器一起回收。
+ */
+final class ParticipantInvoker {
+
+    private static final ClassValue<ConcurrentMap<Key, ParticipantInvoker>> INVOKERS = new ClassValue<ConcurrentMap<Key, ParticipantInvoker>>() {
+        @Override
+        protected ConcurrentMap<Key, ParticipantInvoker> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<Key, ParticipantInvoker>();
+        }
+    };
+
+    private final Method method;
+
+    /**
+     * 无法访问方法（如非 public 的代理类）时为空，回退到 Method.invoke
+     */
+    private final MethodHandle handle;
+
+    private final Class<? extends TransactionContextEditor> transactionContextEditorClass;
+
+    /**
+     * 编辑器按参数位置设置事务上下文时的位置，-1 表示交给编辑器处理或没有该参数
+     */
+    private final int transactionContextIndex;
+
+    private final boolean positionalEditor;
+
+    private ParticipantInvoker(Method method, MethodHandle handle,
+                               Class<? extends TransactionContextEditor> transactionContextEditorClass) {
+        this.method = method;
+        this.handle = handle;
+        this.transactionContextEditorClass = transactionContextEditorClass;
+        this.positionalEditor = transactionContextEditorClass == Compensable.DefaultTransactionContextEditor.class
+                || transactionContextEditorClass == MethodTransactionContextEditor.class;
+        this.transactionContextIndex = positionalEditor
+                ? CompensableMethodUtils.getTransactionContextParamPosition(method.getParameterTypes()) : -1;
+    }
+
+    /**
+     * 获取参与者对象并调用 confirm / cancel 方法
+     */
+    static Object invoke(InvocationContext invocationContext, Class<? extends TransactionContextEditor> transactionContextEditorClass,
+                         TransactionContext transactionContext) throws Exception {
+        //获取 参与者对象，原型或刷新过的 Bean 每次都可能不同
+        Object target = FactoryBuilder.factoryOf(invocationContext.getTargetClass()).getInstance();
+        return get(target.getClass(), invocationContext, transactionContextEditorClass)
+                .invoke(target, transactionContext, invocationContext.getArgs());
+    }
+
+    static ParticipantInvoker get(Class<?> targetType, InvocationContext invocationContext, Class<? extends TransactionContextEditor> transactionContextEditorClass)
+            throws NoSuchMethodException {
+
+        ConcurrentMap<Key, ParticipantInvoker> invokers = INVOKERS.get(targetType);
+
+        Key key = new Key(invocationContext.getMethodName(), invocationContext.getParameterTypes(), transactionContextEditorClass);
+
+        ParticipantInvoker invoker = invokers.get(key);
+        if (invoker == null) {
+            invoker = create(targetType, invocationContext, transactionContextEditorClass);
+            ParticipantInvoker existing = invokers.putIfAbsent(key, invoker);
+            if (existing != null) {
+                invoker = existing;
+            }
+        }
+        return invoker;
+    }
+
+    private static ParticipantInvoker create(Class<?> targetType, InvocationContext invocationContext, Class<? extends TransactionContextEditor> transactionContextEditorClass)
+            throws NoSuchMethodException {
+        //获得 方法
+        Method method = targetType.getMethod(invocationContext.getMethodName(), invocationContext.getParameterTypes());
+
+        MethodHandle handle;
+        try {
+            int parameterCount = method.getParameterTypes().length;
+            handle = MethodHandles.publicLookup().unreflect(method)
+                    .asType(MethodType.genericMethodType(parameterCount + 1))
+                    .asSpreader(Object[].class, parameterCount);
+        } catch (IllegalAccessException e) {
+            handle = null;
+        }
+
+        return new ParticipantInvoker(method, handle, transactionContextEditorClass);
+    }
+
+    /**
+     * 设置事务上下文到方法参数并调用，业务方法的异常包装为 InvocationTargetException，与 Method.invoke 一致
+     */
+    Object invoke(Object target, TransactionContext transactionContext, Object[] args) throws Exception {
+
+        if (positionalEditor) {
+            if (transactionContextIndex >= 0) {
+                args[transactionContextIndex] = transactionContext;
+            }
+        } else {
+            FactoryBuilder.factoryOf(transactionContextEditorClass).getInstance().set(transactionContext, target, method, args);
+        }
+
+        if (handle == null) {
+            return method.invoke(target, args);
+        }
+
+        //条件表达式作为 invokeExact 的参数时调用点类型会被推断为 Object，先赋给 Object[] 变量
+        Object[] arguments = args == null ? new Object[0] : args;
+        try {
+            return (Object) handle.invokeExact(target, arguments);
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    private static final class Key {
+
+        private final String methodName;
+
+        private final Class<?>[] parameterTypes;
+
+        private final Class<?> transactionContextEditorClass;
+
+        private final int hash;
+
+        Key(String methodName, Class<?>[] parameterTypes, Class<?> transactionContextEditorClass) {
+            this.methodName = methodName;
+            this.parameterTypes = parameterTypes;
+            this.transactionContextEditorClass = transactionContextEditorClass;
+
+            int h = methodName.hashCode();
+            h = 31 * h + Arrays.hashCode(parameterTypes);
+            h = 31 * h + (transactionContextEditorClass == null ? 0 : transactionContextEditorClass.hashCode());
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof Key)) return false;
+
+            Key that = (Key) other;
+
+            return hash == that.hash
+                    && methodName.equals(that.methodName)
+                    && Arrays.equals(parameterTypes, that.parameterTypes)
+                    && transactionContextEditorClass == that.transactionContextEditorClass;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
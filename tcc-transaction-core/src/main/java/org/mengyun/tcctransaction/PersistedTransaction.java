@@ -0,0 +1,71 @@
+package org.mengyun.tcctransaction;
+
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 事务的持久化形式，字段名称和类型与 Transaction 原来的字段一一对应
+ * Transaction 在内存中改为毫秒时间戳、参与者数组、按需创建的附带属性，序列化时先转换为本类，
+ * Kryo / Jackson / JDK 序列化写出的内容与原来相同，旧版本写入的事务日志可以直接读取。
+ */
+public final class PersistedTransaction {
+
+    /**
+     * 没有附带属性时写出的空映射，与原来总是写出 ConcurrentHashMap 保持一致；只用于写出，toTransaction 会丢弃空映射
+     */
+    static final Map<String, Object> NO_ATTACHMENTS = new ConcurrentHashMap<String, Object>(1);
+
+    private TransactionXid xid;
+
+    private TransactionStatus status;
+
+    private TransactionType transactionType;
+
+    private int retriedCount;
+
+    private Date createTime;
+
+    private Date lastUpdateTime;
+
+    private long version;
+
+    private List<Participant> participants;
+
+    private Map<String, Object> attachments;
+
+    PersistedTransaction() {
+
+    }
+
+    public static PersistedTransaction of(Transaction transaction) {
+        PersistedTransaction persisted = new PersistedTransaction();
+        persisted.xid = (TransactionXid) transaction.getXid();
+        persisted.status = transaction.getStatus();
+        persisted.transactionType = transaction.getTransactionType();
+        persisted.retriedCount = transaction.getRetriedCount();
+        persisted.createTime = new Date(transaction.getCreateTimeMillis());
+        persisted.lastUpdateTime = new Date(transaction.getLastUpdateTimeMillis());
+        persisted.version = transaction.getVersion();
+        persisted.participants = new ArrayList<Participant>(Arrays.asList(transaction.participantArray()));
+        Map<String, Object> attachments = transaction.attachmentsOrNull();
+        persisted.attachments = attachments == null ? NO_ATTACHMENTS : attachments;
+        return persisted;
+    }
+
+    public Transaction toTransaction() {
+        return new Transaction(xid, status, transactionType, retriedCount,
+                createTime == null ? 0L : createTime.getTime(),
+                lastUpdateTime == null ? 0L : lastUpdateTime.getTime(),
+                version,
+                participants == null ? null : participants.toArray(new Participant[participants.size()]),
+                attachments);
+    }
+}
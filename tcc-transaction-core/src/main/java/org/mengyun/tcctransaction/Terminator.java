@@ -2,42 +2,77 @@ package org.mengyun.tcctransaction;
 
 import org.mengyun.tcctransaction.api.TransactionContext;
 import org.mengyun.tcctransaction.api.TransactionContextEditor;
-import org.mengyun.tcctransaction.support.FactoryBuilder;
+import org.mengyun.tcctransaction.metrics.ParticipantProfiler;
+import org.mengyun.tcctransaction.metrics.jfr.ParticipantEvent;
+import org.mengyun.tcctransaction.metrics.jfr.TccEvents;
+import org.mengyun.tcctransaction.support.TargetConcurrencyLimiter;
 import org.mengyun.tcctransaction.utils.StringUtils;
 
-import java.lang.reflect.Method;
-
 /**
  * 执行器
  * Created by changmingxie on 10/30/15.
  */
 public final class Terminator {
 
+    /**
+     * 参与者调用分析，为空时不做统计
+     */
+    private static volatile ParticipantProfiler participantProfiler;
+
     public Terminator() {
 
     }
 
+    public static void setParticipantProfiler(ParticipantProfiler participantProfiler) {
+        Terminator.participantProfiler = participantProfiler;
+    }
+
+    public static ParticipantProfiler getParticipantProfiler() {
+        return participantProfiler;
+    }
+
     public static Object invoke(TransactionContext transactionContext, InvocationContext invocationContext, Class<? extends TransactionContextEditor> transactionContextEditorClass) {
 
 
         if (StringUtils.isNotEmpty(invocationContext.getMethodName())) {
 
+            //只有异步 confirm / cancel 任务中的调用才会受限
+            TargetConcurrencyLimiter.Permit permit = TargetConcurrencyLimiter.enter(invocationContext.getTargetClass());
+
             try {
-                //获取 参与者对象
-                Object target = FactoryBuilder.factoryOf(invocationContext.getTargetClass()).getInstance();
-
-                Method method = null;
-                //获得 方法
-                method = target.getClass().getMethod(invocationContext.getMethodName(), invocationContext.getParameterTypes());
-                //设置 事务上下文 到 方法参数
-                FactoryBuilder.factoryOf(transactionContextEditorClass).getInstance().set(transactionContext, target, method, invocationContext.getArgs());
-                // 反射调用真正的方法（本地或者远程）
-                return method.invoke(target, invocationContext.getArgs());
-
-            } catch (Exception e) {
-                throw new SystemException(e);
+                return doInvoke(transactionContext, invocationContext, transactionContextEditorClass);
+            } finally {
+                if (permit != null) {
+                    permit.exit();
+                }
             }
         }
         return null;
     }
+
+    private static Object doInvoke(TransactionContext transactionContext, InvocationContext invocationContext, Class<? extends TransactionContextEditor> transactionContextEditorClass) {
+
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        ParticipantEvent event = TccEvents.participant(transactionContext.getStatus());
+
+        try {
+            //获取 参与者对象和缓存的调用器，设置 事务上下文 到 方法参数，调用真正的方法（本地或者远程）
+            Object result = ParticipantInvoker.invoke(invocationContext, transactionContextEditorClass, transactionContext);
+            success = true;
+            return result;
+
+        } catch (Exception e) {
+            throw new SystemException(e);
+        } finally {
+            ParticipantProfiler profiler = participantProfiler;
+            if (profiler != null) {
+                profiler.record(invocationContext.getTargetClass(), invocationContext.getMethodName(),
+                        transactionContext.getStatus(), success, System.nanoTime() - startNanos);
+            }
+            if (event != null) {
+                event.finish(transactionContext.getXid(), invocationContext.getTargetClass(), invocationContext.getMethodName(), success);
+            }
+        }
+    }
 }
@@ -1,26 +1,75 @@
 package org.mengyun.tcctransaction;
 
 
+import com.alibaba.fastjson.annotation.JSONField;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonValue;
 import org.mengyun.tcctransaction.api.TransactionContext;
 import org.mengyun.tcctransaction.api.TransactionStatus;
 import org.mengyun.tcctransaction.api.TransactionXid;
 import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.support.Clock;
+import org.mengyun.tcctransaction.support.SystemClock;
+import org.mengyun.tcctransaction.support.TargetConcurrencyLimiter;
 
 import javax.transaction.xa.Xid;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * 事务
+ * 仓库缓存和恢复批次中会同时持有大量事务，字段保持紧凑：时间为毫秒时间戳，参与者为写时复制的数组，
+ * 附带属性在首次使用时才创建。序列化时转换为 PersistedTransaction，持久化格式与原来相同。
  * Created by changmingxie on 10/26/15.
  */
 public class Transaction implements Serializable {
 
     private static final long serialVersionUID = 7291423944314337931L;
+
+    /**
+     * JDK 序列化沿用原来的字段名称和类型
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("xid", TransactionXid.class),
+            new ObjectStreamField("status", TransactionStatus.class),
+            new ObjectStreamField("transactionType", TransactionType.class),
+            new ObjectStreamField("retriedCount", int.class),
+            new ObjectStreamField("createTime", Date.class),
+            new ObjectStreamField("lastUpdateTime", Date.class),
+            new ObjectStreamField("version", long.class),
+            new ObjectStreamField("participants", List.class),
+            new ObjectStreamField("attachments", Map.class)
+    };
+
+    private static final Participant[] NO_PARTICIPANTS = new Participant[0];
+
+    private static final AtomicIntegerFieldUpdater<Transaction> PENDING_ENLISTMENTS = AtomicIntegerFieldUpdater.newUpdater(Transaction.class, "pendingEnlistments");
+
+    private static volatile Clock clock = SystemClock.INSTANCE;
     /**
      * 事务编号
      */
@@ -38,28 +87,67 @@ public class Transaction implements Serializable {
      */
     private volatile int retriedCount = 0;
     /**
-     * 创建时间
+     * 创建时间，毫秒
      */
-    private Date createTime = new Date();
+    private long createTime;
     /**
-     * 最后更新时间
+     * 最后更新时间，毫秒
      */
-    private Date lastUpdateTime = new Date();
+    private long lastUpdateTime;
     /**
      * 版本号
      */
     private long version = 1;
     /**
-     * 参与者集合
+     * 参与者集合，加入参与者时整体替换，读取时无需加锁
+     */
+    private volatile Participant[] participants = NO_PARTICIPANTS;
+    /**
+     * 附带属性映射，首次使用时创建
+     */
+    private volatile Map<String, Object> attachments;
+    /**
+     * 发起事务的 @Compensable 方法，仅在内存中用于指标统计，不持久化
      */
-    private List<Participant> participants = new ArrayList<Participant>();
+    private transient Method compensableMethod;
     /**
-     * 附带属性映射
+     * 事务在当前进程中开始（或被恢复）的时间，System.nanoTime，不持久化
      */
-    private Map<String, Object> attachments = new ConcurrentHashMap<String, Object>();
+    private transient long beginNanos;
+    /**
+     * 已加入但尚未写入事务日志的参与者数量，不持久化
+     * 由加入参与者的线程递增，写入事务日志的线程按写入前读到的数量递减
+     */
+    private transient volatile int pendingEnlistments;
+    /**
+     * 写入尚未持久化的参与者时互斥使用，与 this 分开，写日志期间不阻塞其他线程加入参与者和读取附带属性，不持久化
+     */
+    private transient volatile Object enlistmentFlushLock;
 
     public Transaction() {
+        this.createTime = clock.currentTimeMillis();
+        this.lastUpdateTime = createTime;
+    }
+
+    Transaction(TransactionXid xid, TransactionStatus status, TransactionType transactionType, int retriedCount,
+                long createTime, long lastUpdateTime, long version, Participant[] participants, Map<String, Object> attachments) {
+        this.xid = xid;
+        this.status = status;
+        this.transactionType = transactionType;
+        this.retriedCount = retriedCount;
+        this.createTime = createTime;
+        this.lastUpdateTime = lastUpdateTime;
+        this.version = version;
+        this.participants = participants == null || participants.length == 0 ? NO_PARTICIPANTS : participants;
+        this.attachments = attachments == null || attachments.isEmpty() ? null : attachments;
+    }
+
+    public static void setClock(Clock clock) {
+        Transaction.clock = clock;
+    }
 
+    public static Clock getClock() {
+        return clock;
     }
 
     /**
@@ -69,6 +157,7 @@ public class Transaction implements Serializable {
       * @param transactionContext
      */
     public Transaction(TransactionContext transactionContext) {
+        this();
         this.xid = transactionContext.getXid(); // 事务上下文的 xid
         this.status = TransactionStatus.TRYING; //尝试中状态
         this.transactionType = TransactionType.BRANCH;//分支事务
@@ -80,6 +169,7 @@ public class Transaction implements Serializable {
      * @param transactionType 事务类型
      */
     public Transaction(TransactionType transactionType) {
+        this();
         this.xid = new TransactionXid();
         this.status = TransactionStatus.TRYING;//尝试中状态
         this.transactionType = transactionType;
@@ -87,20 +177,27 @@ public class Transaction implements Serializable {
 
     public Transaction(Object uniqueIdentity,TransactionType transactionType) {
 
+        this();
         this.xid = new TransactionXid(uniqueIdentity);
         this.status = TransactionStatus.TRYING;
         this.transactionType = transactionType;
     }
     /**
      * 添加参与者
+     * 事务被传播到多个线程时可能并发调用，与 getParticipantsSnapshot 互斥
      */
     public void enlistParticipant(Participant participant) {
-        participants.add(participant);
+        synchronized (this) {
+            Participant[] current = participants;
+            Participant[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = participant;
+            participants = next;
+        }
     }
 
 
     public Xid getXid() {
-        return xid.clone();
+        return xid;
     }
 
     public TransactionStatus getStatus() {
@@ -108,7 +205,29 @@ public class Transaction implements Serializable {
     }
 
 
+    /**
+     * 只读的参与者列表，通过 enlistParticipant 加入参与者
+     */
     public List<Participant> getParticipants() {
+        return Collections.unmodifiableList(Arrays.asList(participants));
+    }
+
+    /**
+     * 参与者列表的快照，可以在其他线程加入参与者的同时安全遍历
+     */
+    @JSONField(serialize = false)
+    @JsonIgnore
+    public List<Participant> getParticipantsSnapshot() {
+        return getParticipants();
+    }
+
+    @JSONField(serialize = false)
+    @JsonIgnore
+    public int getParticipantCount() {
+        return participants.length;
+    }
+
+    Participant[] participantArray() {
         return participants;
     }
 
@@ -139,6 +258,158 @@ public class Transaction implements Serializable {
         }
     }
 
+    /**
+     * 并发提交 TCC 事务，最多同时调用 maxParallelism 个参与者（含当前线程）
+     * 所有参与者都会被调用，其中任一失败时抛出第一个异常，其余异常作为 suppressed 附加，
+     * 调用方据此保留事务日志，交给恢复任务重试。
+     */
+    public void commit(Executor executor, int maxParallelism) {
+        terminate(true, executor, maxParallelism);
+    }
+
+    /**
+     * 并发回滚 TCC 事务，语义同 commit(Executor, int)
+     */
+    public void rollback(Executor executor, int maxParallelism) {
+        terminate(false, executor, maxParallelism);
+    }
+
+    private void terminate(final boolean commit, Executor executor, int maxParallelism) {
+
+        int workers = Math.min(maxParallelism, participants.length);
+
+        if (workers <= 1 || executor == null) {
+            if (commit) {
+                commit();
+            } else {
+                rollback();
+            }
+            return;
+        }
+
+        final Participant[] snapshot = participants;
+
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch completed = new CountDownLatch(snapshot.length);
+        final Queue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>();
+
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                int index;
+                while ((index = next.getAndIncrement()) < snapshot.length) {
+                    try {
+                        if (commit) {
+                            snapshot[index].commit();
+                        } else {
+                            snapshot[index].rollback();
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    } finally {
+                        completed.countDown();
+                    }
+                }
+            }
+        };
+
+        // 在受限的异步 confirm / cancel 任务中时，工作任务沿用同一个限流器
+        TargetConcurrencyLimiter limiter = TargetConcurrencyLimiter.current();
+        Runnable worker = limiter != null ? limiter.bind(task) : task;
+
+        for (int i = 1; i < workers; i++) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+
+        // 当前线程也参与执行；只等待已被领取的参与者，尚未开始的工作任务取不到参与者会直接结束，不会因线程池排队而死锁
+        task.run();
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                completed.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        Throwable failure = failures.poll();
+        if (failure != null) {
+            for (Throwable other : failures) {
+                failure.addSuppressed(other);
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            throw new SystemException(failure);
+        }
+    }
+
+    /**
+     * 异步提交 TCC 事务：依次发起所有参与者的 confirm，不等待返回 CompletionStage 的参与者完成。
+     * 全部完成后返回的 CompletionStage 完成；任一失败时以第一个异常完成，其余异常作为 suppressed 附加。
+     */
+    public CompletionStage<Void> commitAsync() {
+        return terminateAsync(true);
+    }
+
+    /**
+     * 异步回滚 TCC 事务，语义同 commitAsync
+     */
+    public CompletionStage<Void> rollbackAsync() {
+        return terminateAsync(false);
+    }
+
+    private CompletionStage<Void> terminateAsync(boolean commit) {
+
+        Participant[] snapshot = participants;
+
+        final Queue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>();
+        CompletableFuture<?>[] stages = new CompletableFuture<?>[snapshot.length];
+
+        for (int i = 0; i < snapshot.length; i++) {
+            CompletionStage<Void> stage = commit ? snapshot[i].commitAsync() : snapshot[i].rollbackAsync();
+
+            stages[i] = stage.handle(new BiFunction<Void, Throwable, Void>() {
+                @Override
+                public Void apply(Void value, Throwable e) {
+                    if (e != null) {
+                        failures.add(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                    }
+                    return null;
+                }
+            }).toCompletableFuture();
+        }
+
+        return CompletableFuture.allOf(stages).thenApply(new Function<Void, Void>() {
+            @Override
+            public Void apply(Void value) {
+                Throwable failure = failures.poll();
+                if (failure != null) {
+                    for (Throwable other : failures) {
+                        failure.addSuppressed(other);
+                    }
+                    if (failure instanceof RuntimeException) {
+                        throw (RuntimeException) failure;
+                    }
+                    throw new SystemException(failure);
+                }
+                return null;
+            }
+        });
+    }
+
     public int getRetriedCount() {
         return retriedCount;
     }
@@ -152,6 +423,20 @@ public class Transaction implements Serializable {
     }
 
     public Map<String, Object> getAttachments() {
+        Map<String, Object> result = attachments;
+        if (result == null) {
+            synchronized (this) {
+                result = attachments;
+                if (result == null) {
+                    result = new ConcurrentHashMap<String, Object>();
+                    attachments = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    Map<String, Object> attachmentsOrNull() {
         return attachments;
     }
 
@@ -168,20 +453,126 @@ public class Transaction implements Serializable {
     }
 
     public Date getLastUpdateTime() {
-        return lastUpdateTime;
+        return new Date(lastUpdateTime);
     }
 
     public void setLastUpdateTime(Date date) {
-        this.lastUpdateTime = date;
+        this.lastUpdateTime = date.getTime();
     }
 
     public Date getCreateTime() {
+        return new Date(createTime);
+    }
+
+    @JSONField(serialize = false)
+    @JsonIgnore
+    public long getLastUpdateTimeMillis() {
+        return lastUpdateTime;
+    }
+
+    public void setLastUpdateTimeMillis(long lastUpdateTime) {
+        this.lastUpdateTime = lastUpdateTime;
+    }
+
+    @JSONField(serialize = false)
+    @JsonIgnore
+    public long getCreateTimeMillis() {
         return createTime;
     }
 
     public void updateTime() {
-        this.lastUpdateTime = new Date();
+        this.lastUpdateTime = clock.currentTimeMillis();
     }
 
+    @JSONField(serialize = false)
+    @JsonIgnore
+    public Method getCompensableMethod() {
+        return compensableMethod;
+    }
+
+    public void setCompensableMethod(Method compensableMethod) {
+        this.compensableMethod = compensableMethod;
+    }
+
+    long getBeginNanos() {
+        return beginNanos;
+    }
+
+    void setBeginNanos(long beginNanos) {
+        this.beginNanos = beginNanos;
+    }
+
+    int getPendingEnlistments() {
+        return pendingEnlistments;
+    }
+
+    void addPendingEnlistment() {
+        PENDING_ENLISTMENTS.incrementAndGet(this);
+    }
+
+    /**
+     * 写入事务日志成功后调用，count 为写入前读到的数量，写入期间新加入的参与者仍然待写入
+     */
+    void removePendingEnlistments(int count) {
+        if (count > 0) {
+            PENDING_ENLISTMENTS.addAndGet(this, -count);
+        }
+    }
 
+    Object getEnlistmentFlushLock() {
+        Object lock = enlistmentFlushLock;
+        if (lock == null) {
+            synchronized (this) {
+                lock = enlistmentFlushLock;
+                if (lock == null) {
+                    lock = new Object();
+                    enlistmentFlushLock = lock;
+                }
+            }
+        }
+        return lock;
+    }
+
+    @JsonValue
+    private PersistedTransaction toPersisted() {
+        return PersistedTransaction.of(this);
+    }
+
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    private static Transaction fromPersisted(PersistedTransaction persisted) {
+        return persisted.toTransaction();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("xid", xid);
+        fields.put("status", status);
+        fields.put("transactionType", transactionType);
+        fields.put("retriedCount", retriedCount);
+        fields.put("createTime", new Date(createTime));
+        fields.put("lastUpdateTime", new Date(lastUpdateTime));
+        fields.put("version", version);
+        fields.put("participants", new ArrayList<Participant>(Arrays.asList(participants)));
+        fields.put("attachments", attachments == null ? PersistedTransaction.NO_ATTACHMENTS : attachments);
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        xid = (TransactionXid) fields.get("xid", null);
+        status = (TransactionStatus) fields.get("status", null);
+        transactionType = (TransactionType) fields.get("transactionType", null);
+        retriedCount = fields.get("retriedCount", 0);
+        Date createDate = (Date) fields.get("createTime", null);
+        createTime = createDate == null ? 0L : createDate.getTime();
+        Date lastUpdateDate = (Date) fields.get("lastUpdateTime", null);
+        lastUpdateTime = lastUpdateDate == null ? 0L : lastUpdateDate.getTime();
+        version = fields.get("version", 0L);
+        List<Participant> participantList = (List<Participant>) fields.get("participants", null);
+        participants = participantList == null || participantList.isEmpty()
+                ? NO_PARTICIPANTS : participantList.toArray(new Participant[participantList.size()]);
+        Map<String, Object> attachmentMap = (Map<String, Object>) fields.get("attachments", null);
+        attachments = attachmentMap == null || attachmentMap.isEmpty() ? null : attachmentMap;
+    }
 }
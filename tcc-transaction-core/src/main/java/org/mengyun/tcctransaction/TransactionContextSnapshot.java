@@ -0,0 +1,90 @@
+package org.mengyun.tcctransaction;
+
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+
+/**
+ * 当前线程活动事务的快照
+ * TransactionManager 用 ThreadLocal 保存活动事务，Try 方法把工作交给线程池时，工作线程看不到事务，
+ * 参与者不会被加入。在提交任务的线程上 capture，在工作线程上 attach / detach（或直接使用 wrap），
+ * 工作线程即可在同一个事务中加入参与者。
+ */
+public final class TransactionContextSnapshot {
+
+    private static final TransactionContextSnapshot EMPTY = new TransactionContextSnapshot(new Transaction[0]);
+
+    /**
+     * 栈顶在前
+     */
+    private final Transaction[] transactions;
+
+    private TransactionContextSnapshot(Transaction[] transactions) {
+        this.transactions = transactions;
+    }
+
+    /**
+     * 捕获当前线程的活动事务
+     */
+    public static TransactionContextSnapshot capture() {
+        Deque<Transaction> current = TransactionManager.currentTransactions();
+        if (current == null || current.isEmpty()) {
+            return EMPTY;
+        }
+        return new TransactionContextSnapshot(current.toArray(new Transaction[current.size()]));
+    }
+
+    public boolean isEmpty() {
+        return transactions.length == 0;
+    }
+
+    /**
+     * 在当前线程上恢复快照中的活动事务，返回的对象交给 detach 用于还原
+     */
+    public Object attach() {
+        Deque<Transaction> deque = null;
+        if (transactions.length > 0) {
+            deque = new LinkedList<Transaction>();
+            for (Transaction transaction : transactions) {
+                deque.addLast(transaction);
+            }
+        }
+        return TransactionManager.bindTransactions(deque);
+    }
+
+    /**
+     * 还原 attach 之前的活动事务
+     */
+    @SuppressWarnings("unchecked")
+    public void detach(Object previous) {
+        TransactionManager.bindTransactions((Deque<Transaction>) previous);
+    }
+
+    public Runnable wrap(final Runnable task) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                Object previous = attach();
+                try {
+                    task.run();
+                } finally {
+                    detach(previous);
+                }
+            }
+        };
+    }
+
+    public <T> Callable<T> wrap(final Callable<T> task) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                Object previous = attach();
+                try {
+                    return task.call();
+                } finally {
+                    detach(previous);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,79 @@
+package org.mengyun.tcctransaction;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 传播活动事务的 Executor / ExecutorService 包装
+ * 每个任务在提交时捕获提交线程的活动事务，在工作线程上执行期间恢复，执行完后还原工作线程原来的状态。
+ */
+public final class TransactionExecutors {
+
+    private TransactionExecutors() {
+
+    }
+
+    public static Executor propagating(final Executor executor) {
+        if (executor instanceof ExecutorService) {
+            return propagating((ExecutorService) executor);
+        }
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executor.execute(TransactionContextSnapshot.capture().wrap(command));
+            }
+        };
+    }
+
+    public static ExecutorService propagating(ExecutorService executorService) {
+        if (executorService instanceof PropagatingExecutorService) {
+            return executorService;
+        }
+        return new PropagatingExecutorService(executorService);
+    }
+
+    /**
+     * submit / invokeAll / invokeAny 都经由 execute 提交，在 execute 中捕获并传播活动事务
+     */
+    private static final class PropagatingExecutorService extends AbstractExecutorService {
+
+        private final ExecutorService delegate;
+
+        PropagatingExecutorService(ExecutorService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(TransactionContextSnapshot.capture().wrap(command));
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -5,10 +5,23 @@ import org.mengyun.tcctransaction.api.TransactionContext;
 import org.mengyun.tcctransaction.api.TransactionStatus;
 import org.mengyun.tcctransaction.api.TransactionXid;
 import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.metrics.PersistenceOperation;
+import org.mengyun.tcctransaction.metrics.TransactionListener;
+import org.mengyun.tcctransaction.metrics.TransactionListenerAdapter;
+import org.mengyun.tcctransaction.metrics.jfr.TccEvents;
+import org.mengyun.tcctransaction.metrics.jfr.TransactionBeginEvent;
+import org.mengyun.tcctransaction.repository.ExecutorAsyncTransactionRepository;
+import org.mengyun.tcctransaction.support.TargetConcurrencyLimiter;
 
+import java.lang.reflect.Method;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutorService;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * 事务管理器
@@ -20,6 +33,10 @@ public class TransactionManager {
     static final Logger logger = Logger.getLogger(TransactionManager.class.getSimpleName());
     //用于持久化事务日志
     private TransactionRepository transactionRepository;
+    //commitAsync / rollbackAsync 使用的非阻塞仓库，未设置时使用 executorAsyncTransactionRepository
+    private AsyncTransactionRepository asyncTransactionRepository;
+    //把 transactionRepository 的写入放到 executorService 上执行，在 setTransactionRepository / setExecutorService 中创建
+    private AsyncTransactionRepository executorAsyncTransactionRepository;
     /**
      * 当前线程事务队列
      * Deque:double ended queue 双端队列
@@ -28,13 +45,55 @@ public class TransactionManager {
     private static final ThreadLocal<Deque<Transaction>> CURRENT = new ThreadLocal<Deque<Transaction>>();
 
     private ExecutorService executorService;
+    //confirm / cancel 时同时调用的参与者数量上限，大于 1 时在 executorService 上并发调用
+    private int maxParticipantParallelism = 1;
+    //异步 confirm / cancel 任务按参与者目标类限流，为空时不限制
+    private TargetConcurrencyLimiter asyncTerminateConcurrencyLimiter;
+    //为 true 时参与者加入事务后不立即更新事务日志，由 flushEnlistments 或后续的状态更新一并写入；
+    //事务自身的参与者在第一次远程调用之前才写入，此前进程崩溃时恢复任务不会调用它的 cancel
+    private boolean coalesceEnlistmentWrites = false;
+
+    private static final TransactionListener NOOP_LISTENER = new TransactionListenerAdapter() {
+    };
+    //事务生命周期监听器，用于指标统计
+    private TransactionListener transactionListener = NOOP_LISTENER;
 
     public void setTransactionRepository(TransactionRepository transactionRepository) {
         this.transactionRepository = transactionRepository;
+        buildExecutorAsyncTransactionRepository();
+    }
+
+    public void setAsyncTransactionRepository(AsyncTransactionRepository asyncTransactionRepository) {
+        this.asyncTransactionRepository = asyncTransactionRepository;
     }
 
     public void setExecutorService(ExecutorService executorService) {
         this.executorService = executorService;
+        buildExecutorAsyncTransactionRepository();
+    }
+
+    public void setMaxParticipantParallelism(int maxParticipantParallelism) {
+        this.maxParticipantParallelism = maxParticipantParallelism;
+    }
+
+    public void setAsyncTerminateConcurrencyLimiter(TargetConcurrencyLimiter asyncTerminateConcurrencyLimiter) {
+        this.asyncTerminateConcurrencyLimiter = asyncTerminateConcurrencyLimiter;
+    }
+
+    public TargetConcurrencyLimiter getAsyncTerminateConcurrencyLimiter() {
+        return asyncTerminateConcurrencyLimiter;
+    }
+
+    public void setCoalesceEnlistmentWrites(boolean coalesceEnlistmentWrites) {
+        this.coalesceEnlistmentWrites = coalesceEnlistmentWrites;
+    }
+
+    public void setTransactionListener(TransactionListener transactionListener) {
+        this.transactionListener = transactionListener != null ? transactionListener : NOOP_LISTENER;
+    }
+
+    public TransactionListener getTransactionListener() {
+        return transactionListener;
     }
 
     public TransactionManager() {
@@ -43,9 +102,21 @@ public class TransactionManager {
     }
 
     public Transaction begin(Object uniqueIdentify) {
+        return begin(uniqueIdentify, null);
+    }
+
+    public Transaction begin(Object uniqueIdentify, Method compensableMethod) {
+        long startNanos = System.nanoTime();
+        TransactionBeginEvent event = TccEvents.transactionBegin();
         Transaction transaction = new Transaction(uniqueIdentify,TransactionType.ROOT);
-        transactionRepository.create(transaction);
+        transaction.setCompensableMethod(compensableMethod);
+        transaction.setBeginNanos(startNanos);
+        create(transaction);
         registerTransaction(transaction);
+        transactionListener.onBegin(transaction, System.nanoTime() - startNanos);
+        if (event != null) {
+            event.finish(transaction);
+        }
         return transaction;
     }
 
@@ -55,12 +126,19 @@ public class TransactionManager {
      * @return
      */
     public Transaction begin() {
+        long startNanos = System.nanoTime();
+        TransactionBeginEvent event = TccEvents.transactionBegin();
         //创建 根事务
         Transaction transaction = new Transaction(TransactionType.ROOT);
+        transaction.setBeginNanos(startNanos);
         //存储 事务，持久化事务日志
-        transactionRepository.create(transaction);
+        create(transaction);
         //注册 事务，将创建的事务保存在ThreadLocal类型的队列中
         registerTransaction(transaction);
+        transactionListener.onBegin(transaction, System.nanoTime() - startNanos);
+        if (event != null) {
+            event.finish(transaction);
+        }
         return transaction;
     }
 
@@ -72,12 +150,24 @@ public class TransactionManager {
      * @return 分支事务
      */
     public Transaction propagationNewBegin(TransactionContext transactionContext) {
+        return propagationNewBegin(transactionContext, null);
+    }
+
+    public Transaction propagationNewBegin(TransactionContext transactionContext, Method compensableMethod) {
+        long startNanos = System.nanoTime();
+        TransactionBeginEvent event = TccEvents.transactionBegin();
         //创建 分支事务
         Transaction transaction = new Transaction(transactionContext);
+        transaction.setCompensableMethod(compensableMethod);
+        transaction.setBeginNanos(startNanos);
         //存储 事务，事务日志 持久化
-        transactionRepository.create(transaction);
+        create(transaction);
         //注册 事务 到 事务管理器
         registerTransaction(transaction);
+        transactionListener.onBegin(transaction, System.nanoTime() - startNanos);
+        if (event != null) {
+            event.finish(transaction);
+        }
         return transaction;
     }
 
@@ -90,10 +180,17 @@ public class TransactionManager {
      * @throws NoExistedTransactionException
      */
     public Transaction propagationExistBegin(TransactionContext transactionContext) throws NoExistedTransactionException {
+        return propagationExistBegin(transactionContext, null);
+    }
+
+    public Transaction propagationExistBegin(TransactionContext transactionContext, Method compensableMethod) throws NoExistedTransactionException {
+        long startNanos = System.nanoTime();
         //查询 事务
-        Transaction transaction = transactionRepository.findByXid(transactionContext.getXid());
+        Transaction transaction = findByXid(transactionContext.getXid());
 
         if (transaction != null) {
+            transaction.setCompensableMethod(compensableMethod);
+            transaction.setBeginNanos(startNanos);
             //设置 事务 状态，设置事务状态为 CONFIRMING 或 CANCELLING
             transaction.changeStatus(TransactionStatus.valueOf(transactionContext.getStatus()));
             //注册事务到当前线程事务队列
@@ -112,22 +209,20 @@ public class TransactionManager {
     public void commit(boolean asyncCommit) {
         //获取 事务
         final Transaction transaction = getCurrentTransaction();
+        tryEnd(transaction);
         //设置 事务状态 为 CONFIRMING
         transaction.changeStatus(TransactionStatus.CONFIRMING);
         //更新 事务
-        transactionRepository.update(transaction);
+        updateStatus(transaction);
         //提交 事务，删除 事务
         if (asyncCommit) {
             try {
-                Long statTime = System.currentTimeMillis();
-
-                executorService.submit(new Runnable() {
+                executorService.submit(asyncTerminateTask(new Runnable() {
                     @Override
                     public void run() {
                         commitTransaction(transaction);
                     }
-                });
-                logger.debug("async submit cost time:" + (System.currentTimeMillis() - statTime));
+                }));
             } catch (Throwable commitException) {
                 logger.warn("compensable transaction async submit confirm failed, recovery job will try to confirm later.", commitException);
                 throw new ConfirmingException(commitException);
@@ -144,20 +239,21 @@ public class TransactionManager {
     public void rollback(boolean asyncRollback) {
         //获取 事务
         final Transaction transaction = getCurrentTransaction();
+        tryEnd(transaction);
         //设置 事务状态 为 CANCELLING
         transaction.changeStatus(TransactionStatus.CANCELLING);
         //更新 事务
-        transactionRepository.update(transaction);
+        updateStatus(transaction);
         //回滚 事务，删除 事务
         if (asyncRollback) {
 
             try {
-                executorService.submit(new Runnable() {
+                executorService.submit(asyncTerminateTask(new Runnable() {
                     @Override
                     public void run() {
                         rollbackTransaction(transaction);
                     }
-                });
+                }));
             } catch (Throwable rollbackException) {
                 logger.warn("compensable transaction async rollback failed, recovery job will try to rollback later.", rollbackException);
                 throw new CancellingException(rollbackException);
@@ -169,12 +265,124 @@ public class TransactionManager {
     }
 
 
+    /**
+     * 非阻塞提交事务
+     * 与 commit 相同地把当前事务置为 CONFIRMING 并持久化，但调用线程不等待事务日志写入和参与者 confirm：
+     * 返回的 CompletionStage 在事务日志删除后完成。状态持久化失败时以该异常完成，
+     * confirm 或删除失败时以 ConfirmingException 完成，事务日志保留，交给恢复任务重试。
+     * confirm 方法返回 CompletionStage 的参与者不占用线程等待；其余参与者在完成事务日志写入的线程上执行。
+     */
+    public CompletionStage<Void> commitAsync() {
+        //未配置非阻塞仓库时在改变事务状态之前失败
+        getAsyncTransactionRepository();
+        final Transaction transaction = getCurrentTransaction();
+        tryEnd(transaction);
+        transaction.changeStatus(TransactionStatus.CONFIRMING);
+
+        return updateStatusAsync(transaction).thenCompose(new Function<Integer, CompletionStage<Void>>() {
+            @Override
+            public CompletionStage<Void> apply(Integer result) {
+                return commitTransactionAsync(transaction);
+            }
+        });
+    }
+
+    /**
+     * 非阻塞回滚事务，语义同 commitAsync，失败时以 CancellingException 完成
+     */
+    public CompletionStage<Void> rollbackAsync() {
+        getAsyncTransactionRepository();
+        final Transaction transaction = getCurrentTransaction();
+        tryEnd(transaction);
+        transaction.changeStatus(TransactionStatus.CANCELLING);
+
+        return updateStatusAsync(transaction).thenCompose(new Function<Integer, CompletionStage<Void>>() {
+            @Override
+            public CompletionStage<Void> apply(Integer result) {
+                return rollbackTransactionAsync(transaction);
+            }
+        });
+    }
+
+    private CompletionStage<Void> commitTransactionAsync(final Transaction transaction) {
+        return terminateAsync(transaction, true);
+    }
+
+    private CompletionStage<Void> rollbackTransactionAsync(final Transaction transaction) {
+        return terminateAsync(transaction, false);
+    }
+
+    private CompletionStage<Void> terminateAsync(final Transaction transaction, final boolean commit) {
+
+        final long startNanos;
+        CompletionStage<Void> participants;
+
+        try {
+            if (commit) {
+                transactionListener.onConfirmStart(transaction);
+            } else {
+                transactionListener.onCancelStart(transaction);
+            }
+            startNanos = System.nanoTime();
+            participants = commit ? transaction.commitAsync() : transaction.rollbackAsync();
+        } catch (Throwable e) {
+            return Participant.failed(terminateFailure(e, commit));
+        }
+
+        return participants.whenComplete(new BiConsumer<Void, Throwable>() {
+            @Override
+            public void accept(Void value, Throwable e) {
+                if (commit) {
+                    transactionListener.onConfirmEnd(transaction, e == null, System.nanoTime() - startNanos);
+                } else {
+                    transactionListener.onCancelEnd(transaction, e == null, System.nanoTime() - startNanos);
+                }
+            }
+        }).thenCompose(new Function<Void, CompletionStage<Integer>>() {
+            @Override
+            public CompletionStage<Integer> apply(Void value) {
+                return persistAsync(transaction, PersistenceOperation.DELETE);
+            }
+        }).handle(new BiFunction<Integer, Throwable, Void>() {
+            @Override
+            public Void apply(Integer result, Throwable e) {
+                if (e != null) {
+                    throw terminateFailure(e, commit);
+                }
+                return null;
+            }
+        });
+    }
+
+    private RuntimeException terminateFailure(Throwable e, boolean commit) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (commit) {
+            logger.warn("compensable transaction confirm failed, recovery job will try to confirm later.", cause);
+            return new ConfirmingException(cause);
+        }
+        logger.warn("compensable transaction rollback failed, recovery job will try to rollback later.", cause);
+        return new CancellingException(cause);
+    }
+
+    private Runnable asyncTerminateTask(Runnable task) {
+        TargetConcurrencyLimiter limiter = asyncTerminateConcurrencyLimiter;
+        return limiter != null ? limiter.bind(task) : task;
+    }
+
     private void commitTransaction(Transaction transaction) {
         try {
-            //提交 事务
-            transaction.commit();
+            transactionListener.onConfirmStart(transaction);
+            long startNanos = System.nanoTime();
+            boolean success = false;
+            try {
+                //提交 事务
+                transaction.commit(executorService, maxParticipantParallelism);
+                success = true;
+            } finally {
+                transactionListener.onConfirmEnd(transaction, success, System.nanoTime() - startNanos);
+            }
             //从事务日志仓库中删除这个事务日志
-            transactionRepository.delete(transaction);
+            delete(transaction);
         } catch (Throwable commitException) {
             logger.warn("compensable transaction confirm failed, recovery job will try to confirm later.", commitException);
             //转为抛出ConfirmingException异常，这样会导致事务在事务日志中不被删除，recovery会去处理长时间没有被删除的事务
@@ -184,8 +392,16 @@ public class TransactionManager {
 
     private void rollbackTransaction(Transaction transaction) {
         try {
-            transaction.rollback();
-            transactionRepository.delete(transaction);
+            transactionListener.onCancelStart(transaction);
+            long startNanos = System.nanoTime();
+            boolean success = false;
+            try {
+                transaction.rollback(executorService, maxParticipantParallelism);
+                success = true;
+            } finally {
+                transactionListener.onCancelEnd(transaction, success, System.nanoTime() - startNanos);
+            }
+            delete(transaction);
         } catch (Throwable rollbackException) {
             logger.warn("compensable transaction rollback failed, recovery job will try to rollback later.", rollbackException);
             throw new CancellingException(rollbackException);
@@ -204,6 +420,26 @@ public class TransactionManager {
         return null;
     }
 
+    /**
+     * 当前线程的事务队列，供 TransactionContextSnapshot 捕获
+     */
+    static Deque<Transaction> currentTransactions() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 替换当前线程的事务队列，为空时清除，返回原来的队列
+     */
+    static Deque<Transaction> bindTransactions(Deque<Transaction> transactions) {
+        Deque<Transaction> previous = CURRENT.get();
+        if (transactions == null || transactions.isEmpty()) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(transactions);
+        }
+        return previous;
+    }
+
     /**
      * 判断当前事务管理中是否还有活动的事务
      * @return
@@ -239,6 +475,9 @@ public class TransactionManager {
                 if (CURRENT.get().size() == 0) {
                     CURRENT.remove();
                 }
+                //分支事务的 Try 阶段，或者延迟回滚的根事务，在清理时才离开 Try 阶段
+                tryEnd(transaction);
+                transactionListener.onCleanup(transaction, System.nanoTime() - transaction.getBeginNanos());
             } else {
                 throw new SystemException("Illegal transaction when clean after completion");
             }
@@ -250,8 +489,172 @@ public class TransactionManager {
      * @param participant
      */
     public void enlistParticipant(Participant participant) {
+        long startNanos = System.nanoTime();
         Transaction transaction = this.getCurrentTransaction();
+        //通过 TransactionContextSnapshot 传播到其他线程时，多个线程可能同时加入参与者；
+        //加入只在锁内替换参与者数组，先加入再计数，写日志在锁外进行
         transaction.enlistParticipant(participant);//将参与者加入事务的参与者列表中
-        transactionRepository.update(transaction);//更新事务日志
+        transaction.addPendingEnlistment();
+        if (!coalesceEnlistmentWrites) {
+            flushEnlistments(transaction);//更新事务日志
+        }
+        transactionListener.onEnlist(transaction, participant, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 将当前事务中尚未写入的参与者一次性写入事务日志
+     * 在可能离开本进程的参与者 Try 执行之前、以及事务自身的 Try 结束时调用，之前缓冲的参与者合并为一次写入，
+     * 保证远程参与者在执行 Try 之前、所有参与者在被要求 confirm / cancel 之前都已持久化。
+     * commit / rollback 中的状态更新会写入完整的事务，同样视为一次写入。
+     */
+    public void flushEnlistments() {
+        Transaction transaction = getCurrentTransaction();
+        if (transaction != null) {
+            flushEnlistments(transaction);
+        }
+    }
+
+    /**
+     * 同一事务的写日志互斥，避免并发更新同一事务对象的版本号；等待期间其他线程已写入时不再重复写入
+     */
+    private void flushEnlistments(Transaction transaction) {
+        if (transaction.getPendingEnlistments() > 0) {
+            synchronized (transaction.getEnlistmentFlushLock()) {
+                if (transaction.getPendingEnlistments() > 0) {
+                    update(transaction);
+                }
+            }
+        }
+    }
+
+    /**
+     * 事务离开 TRYING 状态时通知监听器，每个事务只通知一次
+     */
+    private void tryEnd(Transaction transaction) {
+        if (transaction.getStatus() == TransactionStatus.TRYING && transaction.getBeginNanos() != 0) {
+            transactionListener.onTryEnd(transaction, System.nanoTime() - transaction.getBeginNanos());
+        }
+    }
+
+    private void create(Transaction transaction) {
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            transactionRepository.create(transaction);
+            success = true;
+        } finally {
+            transactionListener.onPersist(transaction, PersistenceOperation.CREATE, success, System.nanoTime() - startNanos);
+        }
+    }
+
+    private void update(Transaction transaction) {
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        //写入前读取，序列化时读到的参与者至少包含这些
+        int flushed = transaction.getPendingEnlistments();
+        try {
+            transactionRepository.update(transaction);
+            transaction.removePendingEnlistments(flushed);
+            success = true;
+        } finally {
+            transactionListener.onPersist(transaction, PersistenceOperation.UPDATE, success, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * 参与者都已写入事务日志时，只持久化状态字段；否则连同尚未写入的参与者一起完整更新
+     */
+    private void updateStatus(Transaction transaction) {
+        if (transaction.getPendingEnlistments() > 0) {
+            update(transaction);
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            transactionRepository.updateStatus(transaction);
+            success = true;
+        } finally {
+            transactionListener.onPersist(transaction, PersistenceOperation.UPDATE_STATUS, success, System.nanoTime() - startNanos);
+        }
+    }
+
+    private CompletionStage<Integer> updateStatusAsync(Transaction transaction) {
+        return persistAsync(transaction, transaction.getPendingEnlistments() > 0 ? PersistenceOperation.UPDATE : PersistenceOperation.UPDATE_STATUS);
+    }
+
+    private CompletionStage<Integer> persistAsync(final Transaction transaction, final PersistenceOperation operation) {
+        final long startNanos = System.nanoTime();
+        final int flushed = operation == PersistenceOperation.UPDATE ? transaction.getPendingEnlistments() : 0;
+        AsyncTransactionRepository repository = getAsyncTransactionRepository();
+
+        CompletionStage<Integer> stage;
+        try {
+            switch (operation) {
+                case UPDATE:
+                    stage = repository.updateAsync(transaction);
+                    break;
+                case UPDATE_STATUS:
+                    stage = repository.updateStatusAsync(transaction);
+                    break;
+                case DELETE:
+                    stage = repository.deleteAsync(transaction);
+                    break;
+                default:
+                    stage = repository.createAsync(transaction);
+            }
+        } catch (Throwable e) {
+            stage = Participant.failed(e);
+        }
+
+        return stage.whenComplete(new BiConsumer<Integer, Throwable>() {
+            @Override
+            public void accept(Integer result, Throwable e) {
+                if (e == null) {
+                    transaction.removePendingEnlistments(flushed);
+                }
+                transactionListener.onPersist(transaction, operation, e == null, System.nanoTime() - startNanos);
+            }
+        });
+    }
+
+    private AsyncTransactionRepository getAsyncTransactionRepository() {
+        if (asyncTransactionRepository != null) {
+            return asyncTransactionRepository;
+        }
+        if (executorAsyncTransactionRepository == null) {
+            throw new SystemException("commitAsync / rollbackAsync require an asyncTransactionRepository or an executorService");
+        }
+        return executorAsyncTransactionRepository;
+    }
+
+    private void buildExecutorAsyncTransactionRepository() {
+        executorAsyncTransactionRepository = transactionRepository != null && executorService != null
+                ? new ExecutorAsyncTransactionRepository(transactionRepository, executorService) : null;
+    }
+
+    private void delete(Transaction transaction) {
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            transactionRepository.delete(transaction);
+            success = true;
+        } finally {
+            transactionListener.onPersist(transaction, PersistenceOperation.DELETE, success, System.nanoTime() - startNanos);
+        }
+    }
+
+    private Transaction findByXid(TransactionXid xid) {
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        Transaction transaction = null;
+        try {
+            transaction = transactionRepository.findByXid(xid);
+            success = true;
+            return transaction;
+        } finally {
+            transactionListener.onPersist(transaction, PersistenceOperation.FIND, success, System.nanoTime() - startNanos);
+        }
     }
 }
@@ -2,7 +2,6 @@ package org.mengyun.tcctransaction;
 
 import org.mengyun.tcctransaction.api.TransactionXid;
 
-import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -15,6 +14,14 @@ public interface TransactionRepository {
 
     int update(Transaction transaction);
 
+    /**
+     * 只持久化事务状态、重试次数、版本号和更新时间，同样按版本号做乐观锁检查
+     * 调用方需保证事务日志中的参与者已经是最新的；默认实现退化为 update
+     */
+    default int updateStatus(Transaction transaction) {
+        return update(transaction);
+    }
+
     int delete(Transaction transaction);
 
     Transaction findByXid(TransactionXid xid);
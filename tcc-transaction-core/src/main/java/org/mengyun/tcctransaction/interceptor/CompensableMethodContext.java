@@ -1,15 +1,11 @@
 package org.mengyun.tcctransaction.interceptor;
 
 import org.aspectj.lang.ProceedingJoinPoint;
-import org.aspectj.lang.reflect.MethodSignature;
 import org.mengyun.tcctransaction.api.Compensable;
 import org.mengyun.tcctransaction.api.Propagation;
 import org.mengyun.tcctransaction.api.TransactionContext;
-import org.mengyun.tcctransaction.api.UniqueIdentity;
 import org.mengyun.tcctransaction.common.MethodRole;
-import org.mengyun.tcctransaction.support.FactoryBuilder;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 
 /**
@@ -19,6 +15,8 @@ public class CompensableMethodContext {
 
     ProceedingJoinPoint pjp = null;
 
+    CompensableMethodDescriptor descriptor = null;
+
     Method method = null;
 
     Compensable compensable = null;
@@ -29,11 +27,19 @@ public class CompensableMethodContext {
 
     public CompensableMethodContext(ProceedingJoinPoint pjp) {
         this.pjp = pjp;
-        this.method = getCompensableMethod();
-        this.compensable = method.getAnnotation(Compensable.class);
-        this.propagation = compensable.propagation();
-        this.transactionContext = FactoryBuilder.factoryOf(compensable.transactionContextEditor()).getInstance().get(pjp.getTarget(), method, pjp.getArgs());
+        this.descriptor = CompensableMethodRegistry.get(pjp);
+        if (descriptor == null) {
+            throw new RuntimeException(String.format("join point not found method, point is : %s", pjp.getSignature().getName()));
+        }
+        this.method = descriptor.getMethod();
+        this.compensable = descriptor.getAnnotation();
+        this.propagation = descriptor.getPropagation();
+        this.transactionContext = descriptor.getTransactionContext(pjp.getTarget(), pjp.getArgs());
+
+    }
 
+    public CompensableMethodDescriptor getDescriptor() {
+        return descriptor;
     }
 
     public Compensable getAnnotation() {
@@ -53,35 +59,7 @@ public class CompensableMethodContext {
     }
 
     public Object getUniqueIdentity() {
-        Annotation[][] annotations = this.getMethod().getParameterAnnotations();
-
-        for (int i = 0; i < annotations.length; i++) {
-            for (Annotation annotation : annotations[i]) {
-                if (annotation.annotationType().equals(UniqueIdentity.class)) {
-
-                    Object[] params = pjp.getArgs();
-                    Object unqiueIdentity = params[i];
-
-                    return unqiueIdentity;
-                }
-            }
-        }
-
-        return null;
-    }
-
-
-    private Method getCompensableMethod() {
-        Method method = ((MethodSignature) (pjp.getSignature())).getMethod();
-
-        if (method.getAnnotation(Compensable.class) == null) {
-            try {
-                method = pjp.getTarget().getClass().getMethod(method.getName(), method.getParameterTypes());
-            } catch (NoSuchMethodException e) {
-                return null;
-            }
-        }
-        return method;
+        return descriptor.getUniqueIdentity(pjp.getArgs());
     }
 
     /**
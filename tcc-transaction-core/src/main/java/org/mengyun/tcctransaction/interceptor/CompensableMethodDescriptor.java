@@ -0,0 +1,241 @@
+package org.mengyun.tcctransaction.interceptor;
+
+import org.mengyun.tcctransaction.api.Compensable;
+import org.mengyun.tcctransaction.api.Propagation;
+import org.mengyun.tcctransaction.api.TransactionContext;
+import org.mengyun.tcctransaction.api.TransactionContextEditor;
+import org.mengyun.tcctransaction.api.UniqueIdentity;
+import org.mengyun.tcctransaction.context.MethodTransactionContextEditor;
+import org.mengyun.tcctransaction.support.FactoryBuilder;
+import org.mengyun.tcctransaction.utils.CompensableMethodUtils;
+import org.mengyun.tcctransaction.utils.ReflectionUtils;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @Compensable 方法的不可变描述，按 (切点方法, 目标类) 解析一次后由 CompensableMethodRegistry 缓存
+ * 两个拦截器每次调用只需查表，不再重复解析方法、读取注解和扫描参数。
+ */
+public final class CompensableMethodDescriptor {
+
+    /**
+     * 带 @Compensable 注解的方法（切点方法上没有注解时为目标类上的实现方法）
+     */
+    private final Method method;
+
+    private final Compensable compensable;
+
+    private final Propagation propagation;
+
+    private final String confirmMethodName;
+
+    private final String cancelMethodName;
+
+    private final boolean asyncConfirm;
+
+    private final boolean asyncCancel;
+
+    /**
+     * 参与者 confirm / cancel 时通过 FactoryBuilder 获取实例的类，即声明该方法的接口，找不到时为目标类
+     */
+    private final Class<?> declaringType;
+
+    /**
+     * 参数类型，参与者的 InvocationContext 共享同一个数组，不可修改
+     */
+    private final Class<?>[] parameterTypes;
+
+    /**
+     * @UniqueIdentity 参数的位置，-1 表示没有
+     */
+    private final int uniqueIdentityIndex;
+
+    /**
+     * TransactionContext 参数的位置，-1 表示没有
+     */
+    private final int transactionContextIndex;
+
+    private final Class<? extends TransactionContextEditor> transactionContextEditorClass;
+
+    private final TransactionContextEditor transactionContextEditor;
+
+    /**
+     * 编辑器按参数位置读写事务上下文时直接使用 transactionContextIndex
+     */
+    private final boolean positionalEditor;
+
+    private final Set<Class<? extends Exception>> delayCancelExceptions;
+
+    private volatile DelayCancelExceptions mergedDelayCancelExceptions;
+
+    private CompensableMethodDescriptor(Method method, Class<?> targetClass) {
+        this.method = method;
+        this.compensable = method.getAnnotation(Compensable.class);
+        this.propagation = compensable.propagation();
+        this.confirmMethodName = compensable.confirmMethod();
+        this.cancelMethodName = compensable.cancelMethod();
+        this.asyncConfirm = compensable.asyncConfirm();
+        this.asyncCancel = compensable.asyncCancel();
+        this.parameterTypes = method.getParameterTypes();
+        this.declaringType = ReflectionUtils.getDeclaringType(targetClass, method.getName(), parameterTypes);
+        this.uniqueIdentityIndex = findUniqueIdentityIndex(method);
+        this.transactionContextIndex = CompensableMethodUtils.getTransactionContextParamPosition(parameterTypes);
+        this.transactionContextEditorClass = compensable.transactionContextEditor();
+        this.transactionContextEditor = FactoryBuilder.factoryOf(transactionContextEditorClass).getInstance();
+        this.positionalEditor = transactionContextEditorClass == Compensable.DefaultTransactionContextEditor.class
+                || transactionContextEditorClass == MethodTransactionContextEditor.class;
+        this.delayCancelExceptions = Collections.unmodifiableSet(
+                new HashSet<Class<? extends Exception>>(Arrays.asList(compensable.delayCancelExceptions())));
+    }
+
+    /**
+     * 解析切点方法，切点方法上没有 @Compensable 时查找目标类上的同名方法，找不到时返回 null
+     */
+    static CompensableMethodDescriptor resolve(Method signatureMethod, Class<?> targetClass) {
+        Method method = signatureMethod;
+
+        if (method.getAnnotation(Compensable.class) == null) {
+            try {
+                method = targetClass.getMethod(signatureMethod.getName(), signatureMethod.getParameterTypes());
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+            if (method.getAnnotation(Compensable.class) == null) {
+                return null;
+            }
+        }
+
+        return new CompensableMethodDescriptor(method, targetClass);
+    }
+
+    private static int findUniqueIdentityIndex(Method method) {
+        Annotation[][] annotations = method.getParameterAnnotations();
+
+        for (int i = 0; i < annotations.length; i++) {
+            for (Annotation annotation : annotations[i]) {
+                if (annotation.annotationType().equals(UniqueIdentity.class)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public Compensable getAnnotation() {
+        return compensable;
+    }
+
+    public Propagation getPropagation() {
+        return propagation;
+    }
+
+    public String getConfirmMethodName() {
+        return confirmMethodName;
+    }
+
+    public String getCancelMethodName() {
+        return cancelMethodName;
+    }
+
+    public boolean isAsyncConfirm() {
+        return asyncConfirm;
+    }
+
+    public boolean isAsyncCancel() {
+        return asyncCancel;
+    }
+
+    public Class<?> getDeclaringType() {
+        return declaringType;
+    }
+
+    public Class<?>[] getParameterTypes() {
+        return parameterTypes;
+    }
+
+    public int getUniqueIdentityIndex() {
+        return uniqueIdentityIndex;
+    }
+
+    public int getTransactionContextIndex() {
+        return transactionContextIndex;
+    }
+
+    public Class<? extends TransactionContextEditor> getTransactionContextEditorClass() {
+        return transactionContextEditorClass;
+    }
+
+    public TransactionContextEditor getTransactionContextEditor() {
+        return transactionContextEditor;
+    }
+
+    /**
+     * 是否不传播事务上下文，此类参与者只会在本进程内执行 Try
+     */
+    public boolean isNullableTransactionContext() {
+        return transactionContextEditorClass == Compensable.NullableTransactionContextEditor.class;
+    }
+
+    public Object getUniqueIdentity(Object[] args) {
+        return uniqueIdentityIndex >= 0 ? args[uniqueIdentityIndex] : null;
+    }
+
+    public TransactionContext getTransactionContext(Object target, Object[] args) {
+        if (positionalEditor) {
+            return transactionContextIndex >= 0 ? (TransactionContext) args[transactionContextIndex] : null;
+        }
+        return transactionContextEditor.get(target, method, args);
+    }
+
+    public void setTransactionContext(TransactionContext transactionContext, Object target, Method signatureMethod, Object[] args) {
+        if (positionalEditor) {
+            if (transactionContextIndex >= 0) {
+                args[transactionContextIndex] = transactionContext;
+            }
+            return;
+        }
+        transactionContextEditor.set(transactionContext, target, signatureMethod, args);
+    }
+
+    /**
+     * 注解上的延迟回滚异常
+     */
+    public Set<Class<? extends Exception>> getDelayCancelExceptions() {
+        return delayCancelExceptions;
+    }
+
+    /**
+     * 全局与注解上的延迟回滚异常的并集，按 defaults 的实例缓存最近一次的结果
+     */
+    public Set<Class<? extends Exception>> getDelayCancelExceptions(Set<Class<? extends Exception>> defaults) {
+        DelayCancelExceptions merged = mergedDelayCancelExceptions;
+        if (merged == null || merged.defaults != defaults) {
+            Set<Class<? extends Exception>> all = new HashSet<Class<? extends Exception>>(defaults);
+            all.addAll(delayCancelExceptions);
+            merged = new DelayCancelExceptions(defaults, Collections.unmodifiableSet(all));
+            mergedDelayCancelExceptions = merged;
+        }
+        return merged.all;
+    }
+
+    private static final class DelayCancelExceptions {
+
+        private final Set<Class<? extends Exception>> defaults;
+
+        private final Set<Class<? extends Exception>> all;
+
+        DelayCancelExceptions(Set<Class<? extends Exception>> defaults, Set<Class<? extends Exception>> all) {
+            this.defaults = defaults;
+            this.all = all;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.mengyun.tcctransaction.interceptor;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * CompensableMethodDescriptor 缓存，按切点方法和目标类查找
+ * 同一个接口方法可能有多个实现类，描述中的注解和声明类型依赖目标类，因此按两级映射缓存。
+ */
+public final class CompensableMethodRegistry {
+
+    private static final ConcurrentMap<Method, ConcurrentMap<Class<?>, CompensableMethodDescriptor>> DESCRIPTORS =
+            new ConcurrentHashMap<Method, ConcurrentMap<Class<?>, CompensableMethodDescriptor>>();
+
+    private CompensableMethodRegistry() {
+
+    }
+
+    /**
+     * 切点方法及目标类上都找不到 @Compensable 时返回 null
+     */
+    public static CompensableMethodDescriptor get(ProceedingJoinPoint pjp) {
+        return get(((MethodSignature) pjp.getSignature()).getMethod(), pjp.getTarget().getClass());
+    }
+
+    public static CompensableMethodDescriptor get(Method signatureMethod, Class<?> targetClass) {
+
+        ConcurrentMap<Class<?>, CompensableMethodDescriptor> byTarget = DESCRIPTORS.get(signatureMethod);
+        if (byTarget == null) {
+            ConcurrentMap<Class<?>, CompensableMethodDescriptor> created = new ConcurrentHashMap<Class<?>, CompensableMethodDescriptor>(2);
+            byTarget = DESCRIPTORS.putIfAbsent(signatureMethod, created);
+            if (byTarget == null) {
+                byTarget = created;
+            }
+        }
+
+        CompensableMethodDescriptor descriptor = byTarget.get(targetClass);
+        if (descriptor == null) {
+            descriptor = CompensableMethodDescriptor.resolve(signatureMethod, targetClass);
+            if (descriptor == null) {
+                return null;
+            }
+            CompensableMethodDescriptor existing = byTarget.putIfAbsent(targetClass, descriptor);
+            if (existing != null) {
+                descriptor = existing;
+            }
+        }
+        return descriptor;
+    }
+}
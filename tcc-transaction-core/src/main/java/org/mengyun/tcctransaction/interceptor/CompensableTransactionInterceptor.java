@@ -13,7 +13,6 @@ import org.mengyun.tcctransaction.utils.ReflectionUtils;
 import org.mengyun.tcctransaction.utils.TransactionUtils;
 
 import java.lang.reflect.Method;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -27,14 +26,19 @@ public class CompensableTransactionInterceptor {
 
     private TransactionManager transactionManager;
 
-    private Set<Class<? extends Exception>> delayCancelExceptions = new HashSet<Class<? extends Exception>>();
+    private volatile Set<Class<? extends Exception>> delayCancelExceptions = new HashSet<Class<? extends Exception>>();
 
     public void setTransactionManager(TransactionManager transactionManager) {
         this.transactionManager = transactionManager;
     }
 
+    /**
+     * 每次设置都替换为新的集合，方法描述按集合实例缓存合并后的延迟回滚异常
+     */
     public void setDelayCancelExceptions(Set<Class<? extends Exception>> delayCancelExceptions) {
-        this.delayCancelExceptions.addAll(delayCancelExceptions);
+        Set<Class<? extends Exception>> merged = new HashSet<Class<? extends Exception>>(this.delayCancelExceptions);
+        merged.addAll(delayCancelExceptions);
+        this.delayCancelExceptions = merged;
     }
 
     public Object interceptCompensableMethod(ProceedingJoinPoint pjp) throws Throwable {
@@ -65,17 +69,15 @@ public class CompensableTransactionInterceptor {
 
         Transaction transaction = null;
 
-        boolean asyncConfirm = compensableMethodContext.getAnnotation().asyncConfirm();
+        boolean asyncConfirm = compensableMethodContext.getDescriptor().isAsyncConfirm();
 
-        boolean asyncCancel = compensableMethodContext.getAnnotation().asyncCancel();
+        boolean asyncCancel = compensableMethodContext.getDescriptor().isAsyncCancel();
 
-        Set<Class<? extends Exception>> allDelayCancelExceptions = new HashSet<Class<? extends Exception>>();
-        allDelayCancelExceptions.addAll(this.delayCancelExceptions);
-        allDelayCancelExceptions.addAll(Arrays.asList(compensableMethodContext.getAnnotation().delayCancelExceptions()));
+        Set<Class<? extends Exception>> allDelayCancelExceptions = compensableMethodContext.getDescriptor().getDelayCancelExceptions(this.delayCancelExceptions);
 
         try {
             //发起 根事务，TCC Try 阶段开始
-            transaction = transactionManager.begin(compensableMethodContext.getUniqueIdentity());
+            transaction = transactionManager.begin(compensableMethodContext.getUniqueIdentity(), compensableMethodContext.getMethod());
 
             try {
                 //执行方法原逻辑( 即 Try 逻辑 )
@@ -87,6 +89,9 @@ public class CompensableTransactionInterceptor {
                     logger.warn(String.format("compensable transaction trying failed. transaction content:%s", JSON.toJSONString(transaction)), tryingException);
                     //回滚事务
                     transactionManager.rollback(asyncCancel);
+                } else {
+                    //延迟回滚，由恢复任务取消事务日志中的参与者
+                    flushEnlistmentsQuietly(tryingException);
                 }
 
                 throw tryingException;
@@ -113,21 +118,21 @@ public class CompensableTransactionInterceptor {
         Transaction transaction = null;
 
 
-        boolean asyncConfirm = compensableMethodContext.getAnnotation().asyncConfirm();
+        boolean asyncConfirm = compensableMethodContext.getDescriptor().isAsyncConfirm();
 
-        boolean asyncCancel = compensableMethodContext.getAnnotation().asyncCancel();
+        boolean asyncCancel = compensableMethodContext.getDescriptor().isAsyncCancel();
 
         try {
 
             switch (TransactionStatus.valueOf(compensableMethodContext.getTransactionContext().getStatus())) {
                 case TRYING:
                     // 传播发起分支事务
-                    transaction = transactionManager.propagationNewBegin(compensableMethodContext.getTransactionContext());
+                    transaction = transactionManager.propagationNewBegin(compensableMethodContext.getTransactionContext(), compensableMethodContext.getMethod());
                     return compensableMethodContext.proceed();
                 case CONFIRMING:
                     try {
                         // 传播获取分支事务
-                        transaction = transactionManager.propagationExistBegin(compensableMethodContext.getTransactionContext());
+                        transaction = transactionManager.propagationExistBegin(compensableMethodContext.getTransactionContext(), compensableMethodContext.getMethod());
                         // 提交事务
                         transactionManager.commit(asyncConfirm);
                     } catch (NoExistedTransactionException excepton) {
@@ -138,7 +143,7 @@ public class CompensableTransactionInterceptor {
 
                     try {
                         // 传播获取分支事务
-                        transaction = transactionManager.propagationExistBegin(compensableMethodContext.getTransactionContext());
+                        transaction = transactionManager.propagationExistBegin(compensableMethodContext.getTransactionContext(), compensableMethodContext.getMethod());
                         // 回滚事务
                         transactionManager.rollback(asyncCancel);
                     } catch (NoExistedTransactionException exception) {
@@ -157,6 +162,15 @@ public class CompensableTransactionInterceptor {
         return ReflectionUtils.getNullValue(method.getReturnType());
     }
 
+    private void flushEnlistmentsQuietly(Throwable tryingException) {
+        try {
+            transactionManager.flushEnlistments();
+        } catch (Throwable flushException) {
+            tryingException.addSuppressed(flushException);
+            logger.error("compensable transaction flush enlistments failed after trying failed.", flushException);
+        }
+    }
+
     private boolean isDelayCancelException(Throwable throwable, Set<Class<? extends Exception>> delayCancelExceptions) {
 
         if (delayCancelExceptions != null) {
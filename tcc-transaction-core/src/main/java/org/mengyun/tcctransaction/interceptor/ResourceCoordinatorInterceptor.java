@@ -6,15 +6,9 @@ import org.mengyun.tcctransaction.InvocationContext;
 import org.mengyun.tcctransaction.Participant;
 import org.mengyun.tcctransaction.Transaction;
 import org.mengyun.tcctransaction.TransactionManager;
-import org.mengyun.tcctransaction.api.Compensable;
 import org.mengyun.tcctransaction.api.TransactionContext;
 import org.mengyun.tcctransaction.api.TransactionStatus;
 import org.mengyun.tcctransaction.api.TransactionXid;
-import org.mengyun.tcctransaction.support.FactoryBuilder;
-import org.mengyun.tcctransaction.utils.CompensableMethodUtils;
-import org.mengyun.tcctransaction.utils.ReflectionUtils;
-
-import java.lang.reflect.Method;
 
 /**
  * 资源协调者拦截器
@@ -33,12 +27,14 @@ public class ResourceCoordinatorInterceptor {
 
         Transaction transaction = transactionManager.getCurrentTransaction();
 
+        boolean local = false;
+
         if (transaction != null) {
 
             switch (transaction.getStatus()) {
                 case TRYING:
                     //添加事务参与者
-                    enlistParticipant(pjp);
+                    local = enlistParticipant(pjp);
                     break;
                 case CONFIRMING:
                     break;
@@ -46,54 +42,80 @@ public class ResourceCoordinatorInterceptor {
                     break;
             }
         }
-        //执行方法原逻辑
-        return pjp.proceed(pjp.getArgs());
+
+        if (!local) {
+            //执行方法原逻辑
+            return pjp.proceed(pjp.getArgs());
+        }
+
+        Throwable tryingException = null;
+        try {
+            return pjp.proceed(pjp.getArgs());
+        } catch (Throwable e) {
+            tryingException = e;
+            throw e;
+        } finally {
+            // 事务自身的 Try 结束（包括失败），持久化 Try 期间仍未写入的参与者
+            flushAfterTry(tryingException);
+        }
     }
 
     /**
      * 添加参与者
      * @param pjp
+     * @return 是否为事务自身的 @Compensable 方法，其 Try 在本进程内执行
      * @throws IllegalAccessException
      * @throws InstantiationException
      */
-    private void enlistParticipant(ProceedingJoinPoint pjp) throws IllegalAccessException, InstantiationException {
-        // 获得 @Compensable 注解
-        Method method = CompensableMethodUtils.getCompensableMethod(pjp);
-        if (method == null) {
+    private boolean enlistParticipant(ProceedingJoinPoint pjp) throws IllegalAccessException, InstantiationException {
+        // 获得 @Compensable 方法描述
+        CompensableMethodDescriptor descriptor = CompensableMethodRegistry.get(pjp);
+        if (descriptor == null) {
             throw new RuntimeException(String.format("join point not found method, point is : %s", pjp.getSignature().getName()));
         }
-        Compensable compensable = method.getAnnotation(Compensable.class);
-        // 获得 确认执行业务方法 和 取消执行业务方法
-        String confirmMethodName = compensable.confirmMethod();
-        String cancelMethodName = compensable.cancelMethod();
         // 获取 当前线程事务第一个(头部)元素
         Transaction transaction = transactionManager.getCurrentTransaction();
         // 创建 事务编号
         TransactionXid xid = new TransactionXid(transaction.getXid().getGlobalTransactionId());
 
-        if (FactoryBuilder.factoryOf(compensable.transactionContextEditor()).getInstance().get(pjp.getTarget(), method, pjp.getArgs()) == null) {
-            FactoryBuilder.factoryOf(compensable.transactionContextEditor()).getInstance().set(new TransactionContext(xid, TransactionStatus.TRYING.getId()), pjp.getTarget(), ((MethodSignature) pjp.getSignature()).getMethod(), pjp.getArgs());
+        if (descriptor.getTransactionContext(pjp.getTarget(), pjp.getArgs()) == null) {
+            descriptor.setTransactionContext(new TransactionContext(xid, TransactionStatus.TRYING.getId()), pjp.getTarget(), ((MethodSignature) pjp.getSignature()).getMethod(), pjp.getArgs());
         }
-        // 获得类
-        Class targetClass = ReflectionUtils.getDeclaringType(pjp.getTarget().getClass(), method.getName(), method.getParameterTypes());
         // 创建 确认执行方法调用上下文 和 取消执行方法调用上下文
-        InvocationContext confirmInvocation = new InvocationContext(targetClass,
-                confirmMethodName,
-                method.getParameterTypes(), pjp.getArgs());
+        InvocationContext confirmInvocation = new InvocationContext(descriptor.getDeclaringType(),
+                descriptor.getConfirmMethodName(),
+                descriptor.getParameterTypes(), pjp.getArgs());
 
-        InvocationContext cancelInvocation = new InvocationContext(targetClass,
-                cancelMethodName,
-                method.getParameterTypes(), pjp.getArgs());
+        InvocationContext cancelInvocation = new InvocationContext(descriptor.getDeclaringType(),
+                descriptor.getCancelMethodName(),
+                descriptor.getParameterTypes(), pjp.getArgs());
         // 创建 事务参与者
         Participant participant =
                 new Participant(
                         xid,
                         confirmInvocation,
                         cancelInvocation,
-                        compensable.transactionContextEditor());
+                        descriptor.getTransactionContextEditorClass());
+        // 事务自身的 @Compensable 方法，Try 就是方法体，在第一次远程调用之前或 Try 结束时与其他参与者一起写入
+        boolean local = transaction.getParticipantCount() == 0 && descriptor.getMethod().equals(transaction.getCompensableMethod());
         // 添加 事务参与者 到 事务
         transactionManager.enlistParticipant(participant);
+        // 其他参与者的 Try 可能随事务上下文离开本进程，执行之前先持久化已加入的参与者
+        if (!local) {
+            transactionManager.flushEnlistments();
+        }
+        return local;
+    }
 
+    private void flushAfterTry(Throwable tryingException) {
+        try {
+            transactionManager.flushEnlistments();
+        } catch (RuntimeException flushException) {
+            if (tryingException == null) {
+                throw flushException;
+            }
+            tryingException.addSuppressed(flushException);
+        }
     }
 
 
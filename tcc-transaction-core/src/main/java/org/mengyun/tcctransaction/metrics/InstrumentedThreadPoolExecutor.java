@@ -0,0 +1,175 @@
+package org.mengyun.tcctransaction.metrics;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带统计的线程池，用于异步 confirm / cancel
+ * 统计任务排队时间、执行时间，以及线程池饱和后被拒绝的次数。
+ * 拒绝策略为 CallerRunsPolicy 时，被拒绝的任务在提交线程（即业务请求线程）上同步执行，
+ * 单独统计次数和耗时，并按间隔打印告警，用于发现异步提交已退化为同步。
+ */
+public class InstrumentedThreadPoolExecutor extends ThreadPoolExecutor {
+
+    static final Logger logger = Logger.getLogger(InstrumentedThreadPoolExecutor.class.getSimpleName());
+
+    private static final long WARN_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final LatencyHistogram taskWaitTime = new LatencyHistogram();
+
+    private final LatencyHistogram taskRunTime = new LatencyHistogram();
+
+    private final LatencyHistogram callerRunTime = new LatencyHistogram();
+
+    private final LongAdder rejectedTasks = new LongAdder();
+
+    private final LongAdder callerRunsTasks = new LongAdder();
+
+    private final AtomicLong lastWarnMillis = new AtomicLong();
+
+    public InstrumentedThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                                          BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory,
+                                          RejectedExecutionHandler handler) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
+        super.setRejectedExecutionHandler(new CountingRejectedExecutionHandler(handler));
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        super.execute(new TimedTask(command, System.nanoTime()));
+    }
+
+    @Override
+    public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+        super.setRejectedExecutionHandler(new CountingRejectedExecutionHandler(handler));
+    }
+
+    @Override
+    public RejectedExecutionHandler getRejectedExecutionHandler() {
+        return ((CountingRejectedExecutionHandler) super.getRejectedExecutionHandler()).delegate;
+    }
+
+    /**
+     * 当前排队的任务数
+     */
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    public int getQueueRemainingCapacity() {
+        return getQueue().remainingCapacity();
+    }
+
+    /**
+     * 任务从提交到开始执行的时间（纳秒）
+     */
+    public LatencyHistogram getTaskWaitTime() {
+        return taskWaitTime;
+    }
+
+    /**
+     * 任务执行时间（纳秒），包含在提交线程上执行的任务
+     */
+    public LatencyHistogram getTaskRunTime() {
+        return taskRunTime;
+    }
+
+    /**
+     * 被拒绝后在提交线程上同步执行的耗时（纳秒）
+     */
+    public LatencyHistogram getCallerRunTime() {
+        return callerRunTime;
+    }
+
+    public long getRejectedCount() {
+        return rejectedTasks.sum();
+    }
+
+    /**
+     * 被拒绝后由 CallerRunsPolicy 在提交线程上执行的次数
+     */
+    public long getCallerRunsCount() {
+        return callerRunsTasks.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[pool=%d, active=%d, queue=%d/%d, completed=%d, rejected=%d, callerRuns=%d, wait.p99=%.1fms, run.p99=%.1fms]",
+                getClass().getSimpleName(), getPoolSize(), getActiveCount(), getQueueDepth(),
+                getQueueDepth() + getQueueRemainingCapacity(), getCompletedTaskCount(), getRejectedCount(),
+                getCallerRunsCount(), taskWaitTime.getValueAtPercentile(99, TimeUnit.MILLISECONDS),
+                taskRunTime.getValueAtPercentile(99, TimeUnit.MILLISECONDS));
+    }
+
+    private void warnSaturated() {
+        long now = System.currentTimeMillis();
+        long last = lastWarnMillis.get();
+        if (now - last >= WARN_INTERVAL_MILLIS && lastWarnMillis.compareAndSet(last, now)) {
+            logger.warn("async terminate executor is saturated, tasks are running on the caller thread. " + this);
+        }
+    }
+
+    private class TimedTask implements Runnable {
+
+        private final Runnable task;
+
+        private final long submitNanos;
+
+        TimedTask(Runnable task, long submitNanos) {
+            this.task = task;
+            this.submitNanos = submitNanos;
+        }
+
+        @Override
+        public void run() {
+            long startNanos = System.nanoTime();
+            taskWaitTime.record(startNanos - submitNanos);
+            try {
+                task.run();
+            } finally {
+                taskRunTime.record(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    private class CountingRejectedExecutionHandler implements RejectedExecutionHandler {
+
+        private final RejectedExecutionHandler delegate;
+
+        CountingRejectedExecutionHandler(RejectedExecutionHandler delegate) {
+            if (delegate == null) {
+                throw new NullPointerException();
+            }
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            rejectedTasks.increment();
+
+            if (delegate instanceof CallerRunsPolicy && !executor.isShutdown()) {
+                callerRunsTasks.increment();
+                warnSaturated();
+
+                long startNanos = System.nanoTime();
+                try {
+                    delegate.rejectedExecution(runnable, executor);
+                } finally {
+                    callerRunTime.record(System.nanoTime() - startNanos);
+                }
+            } else {
+                delegate.rejectedExecution(runnable, executor);
+            }
+        }
+    }
+}
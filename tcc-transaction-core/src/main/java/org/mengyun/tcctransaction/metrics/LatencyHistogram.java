@@ -0,0 +1,112 @@
+package org.mengyun.tcctransaction.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 线程安全的对数-线性延迟直方图（与 HdrHistogram 的桶划分方式相同）
+ * 每个 2 的幂区间划分为 16 个线性子桶，相对误差不超过 1/16，可记录的最大值为 2^41 - 1 纳秒，约 36.6 分钟，更大的值按最大值记录。
+ * record 只做数组下标计算和原子自增，不分配对象，可以在生产环境常开。
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int MAX_BUCKET = 36;
+
+    private static final long MAX_TRACKABLE_VALUE = (2L * SUB_BUCKET_HALF_COUNT << MAX_BUCKET) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_BUCKET + 2) * SUB_BUCKET_HALF_COUNT);
+
+    private final LongAdder totalCount = new LongAdder();
+
+    private final LongAdder totalValue = new LongAdder();
+
+    private final AtomicLong maxValue = new AtomicLong();
+
+    public void record(long nanos) {
+
+        long value = nanos < 0 ? 0 : Math.min(nanos, MAX_TRACKABLE_VALUE);
+
+        counts.incrementAndGet(indexOf(value));
+        totalCount.increment();
+        totalValue.add(value);
+
+        long max = maxValue.get();
+        while (value > max && !maxValue.compareAndSet(max, value)) {
+            max = maxValue.get();
+        }
+    }
+
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    public double getMean() {
+        long count = totalCount.sum();
+        return count == 0 ? 0 : (double) totalValue.sum() / count;
+    }
+
+    /**
+     * @param percentile 0 - 100
+     * @return 对应分位的值（所在桶的上界），无数据时返回 0
+     */
+    public long getValueAtPercentile(double percentile) {
+
+        long[] snapshot = new long[counts.length()];
+        long count = 0;
+
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+
+        if (count == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * count));
+        long accumulated = 0;
+
+        for (int i = 0; i < snapshot.length; i++) {
+            accumulated += snapshot[i];
+            if (accumulated >= target) {
+                return Math.min(highestValueOf(i), getMax());
+            }
+        }
+
+        return getMax();
+    }
+
+    public double getValueAtPercentile(double percentile, TimeUnit unit) {
+        return (double) getValueAtPercentile(percentile) / unit.toNanos(1);
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        totalCount.reset();
+        totalValue.reset();
+        maxValue.set(0);
+    }
+
+    static int indexOf(long value) {
+        int bucket = 63 - Long.numberOfLeadingZeros(value | (2 * SUB_BUCKET_HALF_COUNT - 1)) - SUB_BUCKET_BITS;
+        return (bucket << SUB_BUCKET_BITS) + (int) (value >>> bucket);
+    }
+
+    static long highestValueOf(int index) {
+        int bucket = Math.max(0, (index >> SUB_BUCKET_BITS) - 1);
+        long subBucket = index - ((long) bucket << SUB_BUCKET_BITS);
+        return ((subBucket + 1) << bucket) - 1;
+    }
+}
@@ -0,0 +1,133 @@
+package org.mengyun.tcctransaction.metrics;
+
+import org.mengyun.tcctransaction.api.TransactionStatus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 参与者调用分析
+ * 由 Terminator 在每次 confirm / cancel 调用后记录耗时与是否失败，按目标类 + 方法名分别统计，
+ * 可以随时查询当前 domain 中最慢和失败最多的参与者。
+ * 记录时按类、方法名两级查找，不分配对象。
+ */
+public class ParticipantProfiler {
+
+    private String domain = "default";
+
+    private final ConcurrentHashMap<Class<?>, ConcurrentHashMap<String, ParticipantStats>> participantStats
+            = new ConcurrentHashMap<Class<?>, ConcurrentHashMap<String, ParticipantStats>>();
+
+    public ParticipantProfiler() {
+    }
+
+    public ParticipantProfiler(String domain) {
+        this.domain = domain;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    public void record(Class<?> targetClass, String methodName, int status, boolean success, long elapsedNanos) {
+
+        ConcurrentHashMap<String, ParticipantStats> methods = participantStats.get(targetClass);
+
+        if (methods == null) {
+            ConcurrentHashMap<String, ParticipantStats> created = new ConcurrentHashMap<String, ParticipantStats>();
+            methods = participantStats.putIfAbsent(targetClass, created);
+            if (methods == null) {
+                methods = created;
+            }
+        }
+
+        ParticipantStats stats = methods.get(methodName);
+
+        if (stats == null) {
+            ParticipantStats created = new ParticipantStats(targetClass, methodName, TransactionStatus.valueOf(status));
+            stats = methods.putIfAbsent(methodName, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+
+        stats.record(success, elapsedNanos);
+    }
+
+    public ParticipantStats getParticipantStats(Class<?> targetClass, String methodName) {
+        ConcurrentHashMap<String, ParticipantStats> methods = participantStats.get(targetClass);
+        return methods == null ? null : methods.get(methodName);
+    }
+
+    public List<ParticipantStats> getAllParticipantStats() {
+        List<ParticipantStats> all = new ArrayList<ParticipantStats>();
+        for (ConcurrentHashMap<String, ParticipantStats> methods : participantStats.values()) {
+            all.addAll(methods.values());
+        }
+        return all;
+    }
+
+    /**
+     * 按 p99 延迟从高到低排列的前 limit 个参与者
+     */
+    public List<ParticipantStats> getSlowestParticipants(int limit) {
+
+        final List<ParticipantStats> all = getAllParticipantStats();
+        final Map<ParticipantStats, Long> p99 = new IdentityHashMap<ParticipantStats, Long>();
+
+        for (ParticipantStats stats : all) {
+            p99.put(stats, stats.getLatency().getValueAtPercentile(99));
+        }
+
+        Collections.sort(all, new Comparator<ParticipantStats>() {
+            @Override
+            public int compare(ParticipantStats o1, ParticipantStats o2) {
+                int result = Long.compare(p99.get(o2), p99.get(o1));
+                return result != 0 ? result : Double.compare(o2.getLatency().getMean(), o1.getLatency().getMean());
+            }
+        });
+
+        return top(all, limit);
+    }
+
+    /**
+     * 按失败次数从高到低排列的前 limit 个参与者，不包含没有失败过的参与者
+     */
+    public List<ParticipantStats> getMostFailingParticipants(int limit) {
+
+        List<ParticipantStats> failing = new ArrayList<ParticipantStats>();
+
+        for (ParticipantStats stats : getAllParticipantStats()) {
+            if (stats.getFailureCount() > 0) {
+                failing.add(stats);
+            }
+        }
+
+        Collections.sort(failing, new Comparator<ParticipantStats>() {
+            @Override
+            public int compare(ParticipantStats o1, ParticipantStats o2) {
+                int result = Long.compare(o2.getFailureCount(), o1.getFailureCount());
+                return result != 0 ? result : Double.compare(o2.getFailureRate(), o1.getFailureRate());
+            }
+        });
+
+        return top(failing, limit);
+    }
+
+    public void reset() {
+        participantStats.clear();
+    }
+
+    private static List<ParticipantStats> top(List<ParticipantStats> sorted, int limit) {
+        return sorted.size() > limit ? new ArrayList<ParticipantStats>(sorted.subList(0, limit)) : sorted;
+    }
+}
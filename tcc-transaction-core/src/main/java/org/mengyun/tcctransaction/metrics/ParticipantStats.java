@@ -0,0 +1,76 @@
+package org.mengyun.tcctransaction.metrics;
+
+import org.mengyun.tcctransaction.api.TransactionStatus;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个参与者方法（目标类 + 方法名）的 confirm / cancel 调用统计
+ */
+public class ParticipantStats {
+
+    private final Class<?> targetClass;
+
+    private final String methodName;
+
+    private final TransactionStatus status;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final LongAdder failures = new LongAdder();
+
+    ParticipantStats(Class<?> targetClass, String methodName, TransactionStatus status) {
+        this.targetClass = targetClass;
+        this.methodName = methodName;
+        this.status = status;
+    }
+
+    void record(boolean success, long elapsedNanos) {
+        latency.record(elapsedNanos);
+        if (!success) {
+            failures.increment();
+        }
+    }
+
+    public Class<?> getTargetClass() {
+        return targetClass;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     * 第一次调用时所处的阶段，CONFIRMING 或 CANCELLING
+     */
+    public TransactionStatus getStatus() {
+        return status;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getInvocationCount() {
+        return latency.getCount();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public double getFailureRate() {
+        long count = latency.getCount();
+        return count == 0 ? 0 : (double) failures.sum() / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s.%s(%s) count=%d failures=%d p50=%.1fms p99=%.1fms max=%.1fms",
+                targetClass.getName(), methodName, status, getInvocationCount(), getFailureCount(),
+                latency.getValueAtPercentile(50, TimeUnit.MILLISECONDS),
+                latency.getValueAtPercentile(99, TimeUnit.MILLISECONDS),
+                (double) latency.getMax() / TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
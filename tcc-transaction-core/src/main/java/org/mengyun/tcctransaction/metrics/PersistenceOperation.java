@@ -0,0 +1,22 @@
+package org.mengyun.tcctransaction.metrics;
+
+/**
+ * 事务日志的持久化操作
+ */
+public enum PersistenceOperation {
+
+    CREATE,
+
+    UPDATE,
+
+    /**
+     * 只更新状态、重试次数、版本号和更新时间，不重新序列化参与者
+     */
+    UPDATE_STATUS,
+
+    DELETE,
+
+    FIND,
+
+    FIND_ALL
+}
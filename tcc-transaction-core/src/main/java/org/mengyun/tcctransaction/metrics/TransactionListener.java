@@ -0,0 +1,45 @@
+package org.mengyun.tcctransaction.metrics;
+
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Transaction;
+
+/**
+ * 事务生命周期监听器
+ * 由 TransactionManager 在事务各阶段同步回调，耗时参数的单位均为纳秒。
+ * 回调发生在业务线程（或异步提交线程）上，实现必须足够轻量且不能抛出异常。
+ */
+public interface TransactionListener {
+
+    /**
+     * 根事务或分支事务开始，elapsedNanos 包含创建事务日志的耗时
+     */
+    void onBegin(Transaction transaction, long elapsedNanos);
+
+    /**
+     * 登记参与者，elapsedNanos 包含更新事务日志的耗时
+     */
+    void onEnlist(Transaction transaction, Participant participant, long elapsedNanos);
+
+    /**
+     * Try 阶段结束，tryNanos 为从事务开始到离开 TRYING 状态（或被清理）的耗时
+     */
+    void onTryEnd(Transaction transaction, long tryNanos);
+
+    void onConfirmStart(Transaction transaction);
+
+    void onConfirmEnd(Transaction transaction, boolean success, long elapsedNanos);
+
+    void onCancelStart(Transaction transaction);
+
+    void onCancelEnd(Transaction transaction, boolean success, long elapsedNanos);
+
+    /**
+     * 事务日志读写，FIND 操作未查到事务时 transaction 为 null
+     */
+    void onPersist(Transaction transaction, PersistenceOperation operation, boolean success, long elapsedNanos);
+
+    /**
+     * 事务从当前线程中清理，lifetimeNanos 为从事务开始到清理的耗时
+     */
+    void onCleanup(Transaction transaction, long lifetimeNanos);
+}
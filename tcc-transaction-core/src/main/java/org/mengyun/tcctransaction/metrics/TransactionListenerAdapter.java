@@ -0,0 +1,46 @@
+package org.mengyun.tcctransaction.metrics;
+
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Transaction;
+
+/**
+ * TransactionListener 的空实现，只关心部分事件的监听器可以继承该类
+ */
+public abstract class TransactionListenerAdapter implements TransactionListener {
+
+    @Override
+    public void onBegin(Transaction transaction, long elapsedNanos) {
+    }
+
+    @Override
+    public void onEnlist(Transaction transaction, Participant participant, long elapsedNanos) {
+    }
+
+    @Override
+    public void onTryEnd(Transaction transaction, long tryNanos) {
+    }
+
+    @Override
+    public void onConfirmStart(Transaction transaction) {
+    }
+
+    @Override
+    public void onConfirmEnd(Transaction transaction, boolean success, long elapsedNanos) {
+    }
+
+    @Override
+    public void onCancelStart(Transaction transaction) {
+    }
+
+    @Override
+    public void onCancelEnd(Transaction transaction, boolean success, long elapsedNanos) {
+    }
+
+    @Override
+    public void onPersist(Transaction transaction, PersistenceOperation operation, boolean success, long elapsedNanos) {
+    }
+
+    @Override
+    public void onCleanup(Transaction transaction, long lifetimeNanos) {
+    }
+}
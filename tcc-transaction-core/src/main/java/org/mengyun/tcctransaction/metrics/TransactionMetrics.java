@@ -0,0 +1,150 @@
+package org.mengyun.tcctransaction.metrics;
+
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Transaction;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 默认的事务指标收集器
+ * 按 domain 汇总，同时按发起事务的 @Compensable 方法分别统计各阶段延迟与失败次数。
+ * 恢复任务加载的事务没有对应的方法，只计入 domain 汇总。
+ * 方法统计在第一次出现时创建，之后的记录不再分配对象。
+ */
+public class TransactionMetrics implements TransactionListener {
+
+    private String domain = "default";
+
+    private final TransactionStats domainStats = new TransactionStats();
+
+    private final ConcurrentHashMap<Method, TransactionStats> methodStats = new ConcurrentHashMap<Method, TransactionStats>();
+
+    public TransactionMetrics() {
+    }
+
+    public TransactionMetrics(String domain) {
+        this.domain = domain;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    public TransactionStats getDomainStats() {
+        return domainStats;
+    }
+
+    public Map<Method, TransactionStats> getMethodStats() {
+        return Collections.unmodifiableMap(methodStats);
+    }
+
+    public TransactionStats getMethodStats(Method method) {
+        return methodStats.get(method);
+    }
+
+    @Override
+    public void onBegin(Transaction transaction, long elapsedNanos) {
+        domainStats.getBeginLatency().record(elapsedNanos);
+
+        TransactionStats stats = statsOf(transaction);
+        if (stats != null) {
+            stats.getBeginLatency().record(elapsedNanos);
+        }
+    }
+
+    @Override
+    public void onEnlist(Transaction transaction, Participant participant, long elapsedNanos) {
+        domainStats.getEnlistLatency().record(elapsedNanos);
+
+        TransactionStats stats = statsOf(transaction);
+        if (stats != null) {
+            stats.getEnlistLatency().record(elapsedNanos);
+        }
+    }
+
+    @Override
+    public void onTryEnd(Transaction transaction, long tryNanos) {
+        domainStats.getTryLatency().record(tryNanos);
+
+        TransactionStats stats = statsOf(transaction);
+        if (stats != null) {
+            stats.getTryLatency().record(tryNanos);
+        }
+    }
+
+    @Override
+    public void onConfirmStart(Transaction transaction) {
+    }
+
+    @Override
+    public void onConfirmEnd(Transaction transaction, boolean success, long elapsedNanos) {
+        domainStats.recordConfirm(success, elapsedNanos);
+
+        TransactionStats stats = statsOf(transaction);
+        if (stats != null) {
+            stats.recordConfirm(success, elapsedNanos);
+        }
+    }
+
+    @Override
+    public void onCancelStart(Transaction transaction) {
+    }
+
+    @Override
+    public void onCancelEnd(Transaction transaction, boolean success, long elapsedNanos) {
+        domainStats.recordCancel(success, elapsedNanos);
+
+        TransactionStats stats = statsOf(transaction);
+        if (stats != null) {
+            stats.recordCancel(success, elapsedNanos);
+        }
+    }
+
+    @Override
+    public void onPersist(Transaction transaction, PersistenceOperation operation, boolean success, long elapsedNanos) {
+        domainStats.recordPersist(operation, success, elapsedNanos);
+
+        TransactionStats stats = statsOf(transaction);
+        if (stats != null) {
+            stats.recordPersist(operation, success, elapsedNanos);
+        }
+    }
+
+    @Override
+    public void onCleanup(Transaction transaction, long lifetimeNanos) {
+        domainStats.getLifetimeLatency().record(lifetimeNanos);
+
+        TransactionStats stats = statsOf(transaction);
+        if (stats != null) {
+            stats.getLifetimeLatency().record(lifetimeNanos);
+        }
+    }
+
+    private TransactionStats statsOf(Transaction transaction) {
+
+        Method method = transaction == null ? null : transaction.getCompensableMethod();
+
+        if (method == null) {
+            return null;
+        }
+
+        TransactionStats stats = methodStats.get(method);
+
+        if (stats == null) {
+            TransactionStats created = new TransactionStats();
+            stats = methodStats.putIfAbsent(method, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+
+        return stats;
+    }
+}
@@ -0,0 +1,18 @@
+package org.mengyun.tcctransaction.metrics;
+
+/**
+ * 事务日志仓库内部事件监听器
+ * 由 CachableTransactionRepository 及其子类回调，用于统计序列化后的数据大小和本地缓存命中情况。
+ */
+public interface TransactionRepositoryListener {
+
+    /**
+     * 写入或读取一条事务日志，bytes 为序列化后的大小
+     */
+    void onPayload(PersistenceOperation operation, int bytes);
+
+    /**
+     * 按 xid 查询事务时访问本地缓存
+     */
+    void onCacheAccess(boolean hit);
+}
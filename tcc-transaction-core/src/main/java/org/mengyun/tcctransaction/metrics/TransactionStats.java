@@ -0,0 +1,117 @@
+package org.mengyun.tcctransaction.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一组事务（同一个方法或同一个 domain）的计数器与各阶段延迟直方图
+ */
+public class TransactionStats {
+
+    private final LatencyHistogram beginLatency = new LatencyHistogram();
+
+    private final LatencyHistogram enlistLatency = new LatencyHistogram();
+
+    private final LatencyHistogram tryLatency = new LatencyHistogram();
+
+    private final LatencyHistogram confirmLatency = new LatencyHistogram();
+
+    private final LatencyHistogram cancelLatency = new LatencyHistogram();
+
+    private final LatencyHistogram lifetimeLatency = new LatencyHistogram();
+
+    private final LatencyHistogram[] persistenceLatency = new LatencyHistogram[PersistenceOperation.values().length];
+
+    private final LongAdder confirmFailures = new LongAdder();
+
+    private final LongAdder cancelFailures = new LongAdder();
+
+    private final LongAdder[] persistenceFailures = new LongAdder[PersistenceOperation.values().length];
+
+    public TransactionStats() {
+        for (PersistenceOperation operation : PersistenceOperation.values()) {
+            persistenceLatency[operation.ordinal()] = new LatencyHistogram();
+            persistenceFailures[operation.ordinal()] = new LongAdder();
+        }
+    }
+
+    void recordConfirm(boolean success, long elapsedNanos) {
+        confirmLatency.record(elapsedNanos);
+        if (!success) {
+            confirmFailures.increment();
+        }
+    }
+
+    void recordCancel(boolean success, long elapsedNanos) {
+        cancelLatency.record(elapsedNanos);
+        if (!success) {
+            cancelFailures.increment();
+        }
+    }
+
+    void recordPersist(PersistenceOperation operation, boolean success, long elapsedNanos) {
+        persistenceLatency[operation.ordinal()].record(elapsedNanos);
+        if (!success) {
+            persistenceFailures[operation.ordinal()].increment();
+        }
+    }
+
+    public LatencyHistogram getBeginLatency() {
+        return beginLatency;
+    }
+
+    public LatencyHistogram getEnlistLatency() {
+        return enlistLatency;
+    }
+
+    public LatencyHistogram getTryLatency() {
+        return tryLatency;
+    }
+
+    public LatencyHistogram getConfirmLatency() {
+        return confirmLatency;
+    }
+
+    public LatencyHistogram getCancelLatency() {
+        return cancelLatency;
+    }
+
+    public LatencyHistogram getLifetimeLatency() {
+        return lifetimeLatency;
+    }
+
+    public LatencyHistogram getPersistenceLatency(PersistenceOperation operation) {
+        return persistenceLatency[operation.ordinal()];
+    }
+
+    public long getBeginCount() {
+        return beginLatency.getCount();
+    }
+
+    public long getEnlistCount() {
+        return enlistLatency.getCount();
+    }
+
+    public long getConfirmCount() {
+        return confirmLatency.getCount();
+    }
+
+    public long getConfirmFailureCount() {
+        return confirmFailures.sum();
+    }
+
+    public long getCancelCount() {
+        return cancelLatency.getCount();
+    }
+
+    public long getCancelFailureCount() {
+        return cancelFailures.sum();
+    }
+
+    public long getPersistenceFailureCount(PersistenceOperation operation) {
+        return persistenceFailures[operation.ordinal()].sum();
+    }
+
+    public long getCleanupCount() {
+        return lifetimeLatency.getCount();
+    }
+}
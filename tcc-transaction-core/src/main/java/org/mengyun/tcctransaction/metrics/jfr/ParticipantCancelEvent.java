@@ -0,0 +1,23 @@
+package org.mengyun.tcctransaction.metrics.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.mengyun.tcctransaction.TccParticipantCancel")
+@Label("TCC Participant Cancel")
+@Description("Invocation of a participant cancel method")
+public class ParticipantCancelEvent extends ParticipantEvent {
+
+    private static final EventType TYPE = EventType.getEventType(ParticipantCancelEvent.class);
+
+    static ParticipantCancelEvent start() {
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+        ParticipantCancelEvent event = new ParticipantCancelEvent();
+        event.begin();
+        return event;
+    }
+}
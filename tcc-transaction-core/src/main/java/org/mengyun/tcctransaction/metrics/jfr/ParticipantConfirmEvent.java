@@ -0,0 +1,23 @@
+package org.mengyun.tcctransaction.metrics.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.mengyun.tcctransaction.TccParticipantConfirm")
+@Label("TCC Participant Confirm")
+@Description("Invocation of a participant confirm method")
+public class ParticipantConfirmEvent extends ParticipantEvent {
+
+    private static final EventType TYPE = EventType.getEventType(ParticipantConfirmEvent.class);
+
+    static ParticipantConfirmEvent start() {
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+        ParticipantConfirmEvent event = new ParticipantConfirmEvent();
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,35 @@
+package org.mengyun.tcctransaction.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * Terminator 调用参与者 confirm / cancel 方法
+ */
+@Category("TCC Transaction")
+public abstract class ParticipantEvent extends Event {
+
+    @Label("Xid")
+    String xid;
+
+    @Label("Target Class")
+    Class<?> targetClass;
+
+    @Label("Method")
+    String methodName;
+
+    @Label("Success")
+    boolean success;
+
+    public void finish(Object xid, Class<?> targetClass, String methodName, boolean success) {
+        end();
+        if (shouldCommit()) {
+            this.xid = String.valueOf(xid);
+            this.targetClass = targetClass;
+            this.methodName = methodName;
+            this.success = success;
+            commit();
+        }
+    }
+}
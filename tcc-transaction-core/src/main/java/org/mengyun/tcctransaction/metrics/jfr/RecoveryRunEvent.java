@@ -0,0 +1,70 @@
+package org.mengyun.tcctransaction.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+import org.mengyun.tcctransaction.recover.RecoveryRun;
+import org.mengyun.tcctransaction.recover.RecoveryRun.Outcome;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TransactionRecovery 的一轮恢复，持续时间包含加载和逐个恢复
+ */
+@Name("org.mengyun.tcctransaction.TccRecoveryRun")
+@Label("TCC Recovery Run")
+@Category("TCC Transaction")
+@Description("One run of the transaction recovery job")
+public class RecoveryRunEvent extends Event {
+
+    private static final EventType TYPE = EventType.getEventType(RecoveryRunEvent.class);
+
+    @Label("Loaded")
+    int loaded;
+
+    @Label("Recovered")
+    int recovered;
+
+    @Label("Failed")
+    int failed;
+
+    @Label("Skipped Max Retry")
+    int skippedMaxRetry;
+
+    @Label("Skipped Branch Grace")
+    int skippedBranchGrace;
+
+    @Label("Ignored")
+    int ignored;
+
+    @Label("Oldest Transaction Age")
+    @Timespan(Timespan.MILLISECONDS)
+    long oldestTransactionAge;
+
+    static RecoveryRunEvent start() {
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+        RecoveryRunEvent event = new RecoveryRunEvent();
+        event.begin();
+        return event;
+    }
+
+    public void finish(RecoveryRun run) {
+        end();
+        if (shouldCommit()) {
+            loaded = run.getLoadedCount();
+            recovered = run.getCount(Outcome.RECOVERED);
+            failed = run.getCount(Outcome.FAILED);
+            skippedMaxRetry = run.getCount(Outcome.SKIPPED_MAX_RETRY);
+            skippedBranchGrace = run.getCount(Outcome.SKIPPED_BRANCH_GRACE);
+            ignored = run.getCount(Outcome.IGNORED);
+            oldestTransactionAge = run.getOldestTransactionAge(TimeUnit.MILLISECONDS);
+            commit();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.mengyun.tcctransaction.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.metrics.PersistenceOperation;
+
+/**
+ * CachableTransactionRepository 的一次 create / update / delete
+ */
+@Name("org.mengyun.tcctransaction.TccRepositoryWrite")
+@Label("TCC Repository Write")
+@Category("TCC Transaction")
+@Description("Create, update or delete of a transaction log record")
+public class RepositoryWriteEvent extends Event {
+
+    private static final EventType TYPE = EventType.getEventType(RepositoryWriteEvent.class);
+
+    //当前线程正在进行的写操作，序列化时把数据大小记到上面
+    private static final ThreadLocal<RepositoryWriteEvent> CURRENT = new ThreadLocal<RepositoryWriteEvent>();
+
+    @Label("Xid")
+    String xid;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Status")
+    String status;
+
+    @Label("Repository")
+    Class<?> repository;
+
+    @Label("Payload Bytes")
+    @DataAmount
+    int payloadBytes;
+
+    @Label("Success")
+    boolean success;
+
+    static RepositoryWriteEvent start() {
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+        RepositoryWriteEvent event = new RepositoryWriteEvent();
+        CURRENT.set(event);
+        event.begin();
+        return event;
+    }
+
+    static void payload(int bytes) {
+        RepositoryWriteEvent event = CURRENT.get();
+        if (event != null) {
+            event.payloadBytes += bytes;
+        }
+    }
+
+    public void finish(Object repository, PersistenceOperation operation, Transaction transaction, boolean success) {
+        end();
+        CURRENT.remove();
+        if (shouldCommit()) {
+            this.xid = String.valueOf(transaction.getXid());
+            this.operation = operation.name();
+            this.status = transaction.getStatus().name();
+            this.repository = repository.getClass();
+            this.success = success;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.mengyun.tcctransaction.metrics.jfr;
+
+import org.mengyun.tcctransaction.api.TransactionStatus;
+
+/**
+ * JFR 事件入口
+ * 事件类继承 jdk.jfr.Event，只有运行时存在 JFR（JDK 8u262 及以上）时才会被加载，
+ * 否则各方法返回 null，调用方据此跳过埋点。
+ * 本类和调用方只以声明类型使用事件类，不做子类到父类的赋值，避免校验字节码时提前加载事件类。
+ * 可通过 -Dtcc.jfr.enabled=false 关闭。
+ */
+public final class TccEvents {
+
+    private static final boolean ENABLED = isAvailable();
+
+    private TccEvents() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public static TransactionBeginEvent transactionBegin() {
+        return ENABLED ? TransactionBeginEvent.start() : null;
+    }
+
+    /**
+     * @param status 事务上下文中的状态，CONFIRMING 对应 TccParticipantConfirm，其余对应 TccParticipantCancel
+     */
+    public static ParticipantEvent participant(int status) {
+        return ENABLED ? ParticipantEvents.start(status) : null;
+    }
+
+    public static RepositoryWriteEvent repositoryWrite() {
+        return ENABLED ? RepositoryWriteEvent.start() : null;
+    }
+
+    /**
+     * 把序列化后的数据大小记到当前线程正在进行的 RepositoryWriteEvent 上
+     */
+    public static void repositoryPayload(int bytes) {
+        if (ENABLED) {
+            RepositoryWriteEvent.payload(bytes);
+        }
+    }
+
+    public static RecoveryRunEvent recoveryRun() {
+        return ENABLED ? RecoveryRunEvent.start() : null;
+    }
+
+    /**
+     * 按状态选择具体的事件类型
+     * 不能放在 ParticipantEvent 中：JDK 8 的 JFR 在改写父类时加载子类会导致重复定义。
+     */
+    private static class ParticipantEvents {
+
+        static ParticipantEvent start(int status) {
+            if (status == TransactionStatus.CONFIRMING.getId()) {
+                return ParticipantConfirmEvent.start();
+            }
+            return ParticipantCancelEvent.start();
+        }
+    }
+
+    private static boolean isAvailable() {
+
+        if (!Boolean.parseBoolean(System.getProperty("tcc.jfr.enabled", "true"))) {
+            return false;
+        }
+
+        try {
+            Class.forName("jdk.jfr.Event", false, TccEvents.class.getClassLoader());
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.mengyun.tcctransaction.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.mengyun.tcctransaction.Transaction;
+
+/**
+ * 发起根事务或分支事务，持续时间包含事务日志的 create
+ */
+@Name("org.mengyun.tcctransaction.TccTransactionBegin")
+@Label("TCC Transaction Begin")
+@Category("TCC Transaction")
+@Description("Begin of a root or branch transaction, including the initial repository write")
+public class TransactionBeginEvent extends Event {
+
+    private static final EventType TYPE = EventType.getEventType(TransactionBeginEvent.class);
+
+    @Label("Xid")
+    String xid;
+
+    @Label("Transaction Type")
+    String transactionType;
+
+    @Label("Compensable Method")
+    String compensableMethod;
+
+    static TransactionBeginEvent start() {
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+        TransactionBeginEvent event = new TransactionBeginEvent();
+        event.begin();
+        return event;
+    }
+
+    public void finish(Transaction transaction) {
+        end();
+        if (shouldCommit()) {
+            xid = String.valueOf(transaction.getXid());
+            transactionType = transaction.getTransactionType().name();
+            compensableMethod = transaction.getCompensableMethod() == null ? null : transaction.getCompensableMethod().getName();
+            commit();
+        }
+    }
+}
@@ -22,4 +22,35 @@ public interface RecoverConfig {
     public int getAsyncTerminateThreadMaxPoolSize();
 
     public int getAsyncTerminateThreadWorkQueueSize();
+
+    /**
+     * confirm / cancel 时同时调用的参与者数量上限（含当前线程），默认 1，即按顺序调用
+     */
+    default int getMaxParticipantParallelism() {
+        return 1;
+    }
+
+    /**
+     * 是否合并 Try 阶段加入参与者时的事务日志更新，默认 false，即每加入一个参与者更新一次。
+     * 为 true 时事务自身的参与者与第一个远程参与者一起写入（没有远程参与者时在 Try 结束时写入），
+     * 在此之前进程崩溃，恢复任务不会调用事务自身的 cancel，其本地 Try 需要随本地事务一起回滚或可以忽略
+     */
+    default boolean isCoalesceEnlistmentWrites() {
+        return false;
+    }
+
+    /**
+     * 异步 confirm / cancel 是否使用每任务一个虚拟线程的执行器代替平台线程池，默认 false；
+     * 运行时 JDK 不支持虚拟线程时仍使用平台线程池
+     */
+    default boolean isAsyncTerminateVirtualThreads() {
+        return false;
+    }
+
+    /**
+     * 使用虚拟线程时，每个参与者目标类同时进行的 confirm / cancel 调用数上限，默认 64
+     */
+    default int getAsyncTerminateMaxConcurrencyPerTarget() {
+        return 64;
+    }
 }
@@ -0,0 +1,9 @@
+package org.mengyun.tcctransaction.recover;
+
+/**
+ * 每轮事务恢复结束后通知，用于上报恢复统计
+ */
+public interface RecoveryListener {
+
+    void onRecoveryRun(RecoveryRun run);
+}
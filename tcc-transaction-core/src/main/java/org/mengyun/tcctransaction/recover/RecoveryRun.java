@@ -0,0 +1,184 @@
+package org.mengyun.tcctransaction.recover;
+
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.common.TransactionType;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一轮事务恢复的统计
+ * 记录加载数量与耗时、按事务状态和类型划分的处理结果，以及最早创建的未完成事务的年龄，
+ * 用于判断恢复积压是否在增长。
+ */
+public class RecoveryRun {
+
+    /**
+     * 单个事务在本轮恢复中的处理结果
+     */
+    public enum Outcome {
+        /**
+         * confirm / cancel 成功并删除了事务日志
+         */
+        RECOVERED,
+        /**
+         * confirm / cancel 或更新事务日志时抛出异常，下一轮重试
+         */
+        FAILED,
+        /**
+         * 重试次数超过 maxRetryCount，不再重试
+         */
+        SKIPPED_MAX_RETRY,
+        /**
+         * 分支事务还在宽限期内（maxRetryCount * recoverDuration），交给根事务驱动
+         */
+        SKIPPED_BRANCH_GRACE,
+        /**
+         * 超过宽限期但仍处于 TRYING 的分支事务，恢复任务不处理
+         */
+        IGNORED
+    }
+
+    private static final int STATUS_COUNT = TransactionStatus.values().length;
+
+    private static final int TYPE_COUNT = TransactionType.values().length;
+
+    private final long startTime;
+
+    private long loadNanos;
+
+    private long runNanos;
+
+    private int loadedCount;
+
+    private final int[] counts = new int[Outcome.values().length * STATUS_COUNT * TYPE_COUNT];
+
+    private int optimisticLockFailures;
+
+    private long oldestCreateTime = Long.MAX_VALUE;
+
+    private Object oldestXid;
+
+    RecoveryRun(long startTime) {
+        this.startTime = startTime;
+    }
+
+    void loaded(int loadedCount, long loadNanos) {
+        this.loadedCount = loadedCount;
+        this.loadNanos = loadNanos;
+    }
+
+    /**
+     * @param status 事务被加载时的状态，恢复过程中状态会被修改
+     */
+    void record(Transaction transaction, TransactionStatus status, Outcome outcome) {
+        counts[index(outcome, status, transaction.getTransactionType())]++;
+
+        long createTime = transaction.getCreateTimeMillis();
+        if (outcome != Outcome.RECOVERED && createTime < oldestCreateTime) {
+            oldestCreateTime = createTime;
+            oldestXid = transaction.getXid();
+        }
+    }
+
+    void optimisticLockFailed() {
+        optimisticLockFailures++;
+    }
+
+    void finished(long runNanos) {
+        this.runNanos = runNanos;
+    }
+
+    private static int index(Outcome outcome, TransactionStatus status, TransactionType type) {
+        return (outcome.ordinal() * STATUS_COUNT + status.ordinal()) * TYPE_COUNT + type.ordinal();
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public int getLoadedCount() {
+        return loadedCount;
+    }
+
+    public long getLoadTime(TimeUnit unit) {
+        return unit.convert(loadNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 本轮总耗时，包含加载
+     */
+    public long getRunTime(TimeUnit unit) {
+        return unit.convert(runNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public int getCount(Outcome outcome) {
+        int count = 0;
+        for (TransactionStatus status : TransactionStatus.values()) {
+            for (TransactionType type : TransactionType.values()) {
+                count += counts[index(outcome, status, type)];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param status 事务被加载时的状态（恢复时会改为 CONFIRMING / CANCELLING）
+     */
+    public int getCount(Outcome outcome, TransactionStatus status, TransactionType type) {
+        return counts[index(outcome, status, type)];
+    }
+
+    public int getRecoveredCount() {
+        return getCount(Outcome.RECOVERED);
+    }
+
+    public int getFailedCount() {
+        return getCount(Outcome.FAILED);
+    }
+
+    public int getSkippedCount() {
+        return getCount(Outcome.SKIPPED_MAX_RETRY) + getCount(Outcome.SKIPPED_BRANCH_GRACE) + getCount(Outcome.IGNORED);
+    }
+
+    /**
+     * 失败中由乐观锁冲突导致的次数，通常是与业务线程或其他节点并发处理同一事务
+     */
+    public int getOptimisticLockFailureCount() {
+        return optimisticLockFailures;
+    }
+
+    /**
+     * 本轮结束后仍未完成的事务中，最早创建的事务距本轮开始的时间；没有未完成事务时返回 0
+     */
+    public long getOldestTransactionAge(TimeUnit unit) {
+        if (oldestXid == null) {
+            return 0;
+        }
+        return unit.convert(Math.max(0, startTime - oldestCreateTime), TimeUnit.MILLISECONDS);
+    }
+
+    public Object getOldestTransactionXid() {
+        return oldestXid;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("loaded:").append(loadedCount)
+                .append(", loadTime:").append(getLoadTime(TimeUnit.MILLISECONDS)).append("ms")
+                .append(", runTime:").append(getRunTime(TimeUnit.MILLISECONDS)).append("ms");
+
+        for (Outcome outcome : Outcome.values()) {
+            builder.append(", ").append(outcome.name().toLowerCase()).append(":").append(getCount(outcome));
+        }
+
+        builder.append(", optimisticLockFailures:").append(optimisticLockFailures)
+                .append(", oldestAge:").append(getOldestTransactionAge(TimeUnit.SECONDS)).append("s");
+
+        if (oldestXid != null) {
+            builder.append(", oldestXid:").append(oldestXid);
+        }
+        return builder.toString();
+    }
+}
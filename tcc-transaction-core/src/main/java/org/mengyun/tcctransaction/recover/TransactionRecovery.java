@@ -8,6 +8,9 @@ import org.mengyun.tcctransaction.Transaction;
 import org.mengyun.tcctransaction.TransactionRepository;
 import org.mengyun.tcctransaction.api.TransactionStatus;
 import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.metrics.jfr.RecoveryRunEvent;
+import org.mengyun.tcctransaction.metrics.jfr.TccEvents;
+import org.mengyun.tcctransaction.recover.RecoveryRun.Outcome;
 import org.mengyun.tcctransaction.support.TransactionConfigurator;
 
 import java.util.Calendar;
@@ -23,11 +26,35 @@ public class TransactionRecovery {
 
     private TransactionConfigurator transactionConfigurator;
 
+    private RecoveryListener recoveryListener;
+
+    private volatile RecoveryRun lastRun;
+
     public void startRecover() {
 
+        RecoveryRunEvent event = TccEvents.recoveryRun();
+        long startNanos = System.nanoTime();
+        RecoveryRun run = new RecoveryRun(System.currentTimeMillis());
+
         List<Transaction> transactions = loadErrorTransactions();
+        run.loaded(transactions.size(), System.nanoTime() - startNanos);
+
+        recoverErrorTransactions(transactions, run);
+        run.finished(System.nanoTime() - startNanos);
+
+        lastRun = run;
+
+        if (run.getLoadedCount() > 0) {
+            logger.info("recover finished. " + run);
+        }
+
+        if (event != null) {
+            event.finish(run);
+        }
 
-        recoverErrorTransactions(transactions);
+        if (recoveryListener != null) {
+            recoveryListener.onRecoveryRun(run);
+        }
     }
 
     private List<Transaction> loadErrorTransactions() {
@@ -41,22 +68,26 @@ public class TransactionRecovery {
         return transactionRepository.findAllUnmodifiedSince(new Date(currentTimeInMillis - recoverConfig.getRecoverDuration() * 1000));
     }
 
-    private void recoverErrorTransactions(List<Transaction> transactions) {
+    private void recoverErrorTransactions(List<Transaction> transactions, RecoveryRun run) {
 
 
         for (Transaction transaction : transactions) {
 
+            TransactionStatus loadedStatus = transaction.getStatus();
+
             if (transaction.getRetriedCount() > transactionConfigurator.getRecoverConfig().getMaxRetryCount()) {
 
                 logger.error(String.format("recover failed with max retry count,will not try again. txid:%s, status:%s,retried count:%d,transaction content:%s", transaction.getXid(), transaction.getStatus().getId(), transaction.getRetriedCount(), JSON.toJSONString(transaction)));
+                run.record(transaction, loadedStatus, Outcome.SKIPPED_MAX_RETRY);
                 continue;
             }
 
             if (transaction.getTransactionType().equals(TransactionType.BRANCH)
-                    && (transaction.getCreateTime().getTime() +
+                    && (transaction.getCreateTimeMillis() +
                     transactionConfigurator.getRecoverConfig().getMaxRetryCount() *
                             transactionConfigurator.getRecoverConfig().getRecoverDuration() * 1000
                     > System.currentTimeMillis())) {
+                run.record(transaction, loadedStatus, Outcome.SKIPPED_BRANCH_GRACE);
                 continue;
             }
             
@@ -66,23 +97,30 @@ public class TransactionRecovery {
                 if (transaction.getStatus().equals(TransactionStatus.CONFIRMING)) {
 
                     transaction.changeStatus(TransactionStatus.CONFIRMING);
-                    transactionConfigurator.getTransactionRepository().update(transaction);
+                    transactionConfigurator.getTransactionRepository().updateStatus(transaction);
                     transaction.commit();
                     transactionConfigurator.getTransactionRepository().delete(transaction);
+                    run.record(transaction, loadedStatus, Outcome.RECOVERED);
 
                 } else if (transaction.getStatus().equals(TransactionStatus.CANCELLING)
                         || transaction.getTransactionType().equals(TransactionType.ROOT)) {
 
                     transaction.changeStatus(TransactionStatus.CANCELLING);
-                    transactionConfigurator.getTransactionRepository().update(transaction);
+                    transactionConfigurator.getTransactionRepository().updateStatus(transaction);
                     transaction.rollback();
                     transactionConfigurator.getTransactionRepository().delete(transaction);
+                    run.record(transaction, loadedStatus, Outcome.RECOVERED);
+                } else {
+                    run.record(transaction, loadedStatus, Outcome.IGNORED);
                 }
 
             } catch (Throwable throwable) {
 
+                run.record(transaction, loadedStatus, Outcome.FAILED);
+
                 if (throwable instanceof OptimisticLockException
                         || ExceptionUtils.getRootCause(throwable) instanceof OptimisticLockException) {
+                    run.optimisticLockFailed();
                     logger.warn(String.format("optimisticLockException happened while recover. txid:%s, status:%s,retried count:%d,transaction content:%s", transaction.getXid(), transaction.getStatus().getId(), transaction.getRetriedCount(), JSON.toJSONString(transaction)), throwable);
                 } else {
                     logger.error(String.format("recover failed, txid:%s, status:%s,retried count:%d,transaction content:%s", transaction.getXid(), transaction.getStatus().getId(), transaction.getRetriedCount(), JSON.toJSONString(transaction)), throwable);
@@ -91,6 +129,17 @@ public class TransactionRecovery {
         }
     }
 
+    /**
+     * 最近一轮恢复的统计，尚未执行过时返回 null
+     */
+    public RecoveryRun getLastRun() {
+        return lastRun;
+    }
+
+    public void setRecoveryListener(RecoveryListener recoveryListener) {
+        this.recoveryListener = recoveryListener;
+    }
+
     public void setTransactionConfigurator(TransactionConfigurator transactionConfigurator) {
         this.transactionConfigurator = transactionConfigurator;
     }
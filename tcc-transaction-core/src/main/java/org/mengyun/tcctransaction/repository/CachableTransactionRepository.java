@@ -3,33 +3,88 @@ package org.mengyun.tcctransaction.repository;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import org.apache.log4j.Logger;
 import org.mengyun.tcctransaction.ConcurrentTransactionException;
 import org.mengyun.tcctransaction.OptimisticLockException;
 import org.mengyun.tcctransaction.Transaction;
 import org.mengyun.tcctransaction.TransactionRepository;
 import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.metrics.PersistenceOperation;
+import org.mengyun.tcctransaction.metrics.TransactionRepositoryListener;
+import org.mengyun.tcctransaction.metrics.jfr.RepositoryWriteEvent;
+import org.mengyun.tcctransaction.metrics.jfr.TccEvents;
 
 import javax.transaction.xa.Xid;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Created by changmingxie on 10/30/15.
  */
 public abstract class CachableTransactionRepository implements TransactionRepository {
 
+    private static final Logger logger = Logger.getLogger(CachableTransactionRepository.class.getSimpleName());
+
     private int expireDuration = 120;
 
+    /**
+     * 延迟删除：大于 0 时 delete 只记录待删除的事务，攒够一批或每隔 deferredDeleteIntervalMillis 批量删除，默认 0 关闭。
+     * 待删除的事务只对本进程的 findByXid / findAllUnmodifiedSince 不可见，其他节点的恢复任务仍然能读到，
+     * 可能在删除前再次 confirm / cancel；进程退出前未删除的事务日志同样会被恢复任务再次处理。
+     * 因此只有参与者的 confirm / cancel 是幂等的才能开启（与恢复任务的要求一致），
+     * 并且 deferredDeleteIntervalMillis 应远小于恢复任务的 recoverDuration。不再使用时调用 close。
+     */
+    private int deferredDeleteBatchSize = 0;
+
+    private long deferredDeleteIntervalMillis = 1000;
+
+    private final Queue<Transaction> pendingDeletes = new ConcurrentLinkedQueue<Transaction>();
+
+    private final Set<Xid> pendingDeleteXids = ConcurrentHashMap.newKeySet();
+
+    private final ReentrantLock purgeLock = new ReentrantLock();
+
+    private volatile ScheduledExecutorService purgeScheduler;
+
+    private volatile boolean closed;
+
+    /**
+     * 组提交：大于 0 时并发线程的 create / update / delete 合并成一批（最多 groupCommitMaxBatchSize 条）
+     * 一次写入，调用线程在自己所在的批次写入完成后返回
+     */
+    private volatile GroupCommitWriter groupCommitWriter;
+
     private Cache<Xid, Transaction> transactionXidCompensableTransactionCache;
 
+    private TransactionRepositoryListener repositoryListener;
+
     @Override
     public int create(Transaction transaction) {
-        int result = doCreate(transaction);
-        if (result > 0) {
-            putToCache(transaction);
-        } else {
-            throw new ConcurrentTransactionException("transaction xid duplicated. xid:" + transaction.getXid().toString());
+        RepositoryWriteEvent event = TccEvents.repositoryWrite();
+        int result = 0;
+
+        try {
+            result = write(PersistenceOperation.CREATE, transaction);
+            if (result > 0) {
+                putToCache(transaction);
+            } else {
+                throw new ConcurrentTransactionException("transaction xid duplicated. xid:" + transaction.getXid().toString());
+            }
+        } finally {
+            if (event != null) {
+                event.finish(this, PersistenceOperation.CREATE, transaction, result > 0);
+            }
         }
 
         return result;
@@ -37,10 +92,11 @@ public abstract class CachableTransactionRepository implements TransactionReposi
 
     @Override
     public int update(Transaction transaction) {
+        RepositoryWriteEvent event = TccEvents.repositoryWrite();
         int result = 0;
 
         try {
-            result = doUpdate(transaction);
+            result = write(PersistenceOperation.UPDATE, transaction);
             if (result > 0) {
                 putToCache(transaction);
             } else {
@@ -50,6 +106,33 @@ public abstract class CachableTransactionRepository implements TransactionReposi
             if (result <= 0) {
                 removeFromCache(transaction);
             }
+            if (event != null) {
+                event.finish(this, PersistenceOperation.UPDATE, transaction, result > 0);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public int updateStatus(Transaction transaction) {
+        RepositoryWriteEvent event = TccEvents.repositoryWrite();
+        int result = 0;
+
+        try {
+            result = write(PersistenceOperation.UPDATE_STATUS, transaction);
+            if (result > 0) {
+                putToCache(transaction);
+            } else {
+                throw new OptimisticLockException();
+            }
+        } finally {
+            if (result <= 0) {
+                removeFromCache(transaction);
+            }
+            if (event != null) {
+                event.finish(this, PersistenceOperation.UPDATE_STATUS, transaction, result > 0);
+            }
         }
 
         return result;
@@ -57,21 +140,189 @@ public abstract class CachableTransactionRepository implements TransactionReposi
 
     @Override
     public int delete(Transaction transaction) {
+
+        if (deferredDeleteBatchSize > 0) {
+            removeFromCache(transaction);
+            deferDelete(transaction);
+            return 1;
+        }
+
+        RepositoryWriteEvent event = TccEvents.repositoryWrite();
         int result = 0;
 
         try {
-            result = doDelete(transaction);
+            result = write(PersistenceOperation.DELETE, transaction);
 
         } finally {
             removeFromCache(transaction);
+            if (event != null) {
+                event.finish(this, PersistenceOperation.DELETE, transaction, result > 0);
+            }
         }
         return result;
     }
 
+    private int write(PersistenceOperation operation, Transaction transaction) {
+
+        GroupCommitWriter writer = groupCommitWriter;
+        if (writer != null) {
+            return writer.submit(new WriteRequest(operation, transaction));
+        }
+
+        return execute(operation, transaction);
+    }
+
+    private int execute(PersistenceOperation operation, Transaction transaction) {
+        switch (operation) {
+            case CREATE:
+                return doCreate(transaction);
+            case UPDATE:
+                return doUpdate(transaction);
+            case UPDATE_STATUS:
+                return doUpdateStatus(transaction);
+            case DELETE:
+                return doDelete(transaction);
+            default:
+                throw new IllegalArgumentException("unsupported write operation:" + operation);
+        }
+    }
+
+    /**
+     * 只有一个请求的批次同样交给 doWriteBatch，由子类决定写入方式（如 JDBC 使用独立连接）
+     */
+    void writeBatch(List<WriteRequest> requests) {
+        doWriteBatch(requests);
+    }
+
+    private void deferDelete(Transaction transaction) {
+
+        if (purgeScheduler == null) {
+            startPurgeScheduler();
+        }
+
+        pendingDeleteXids.add(transaction.getXid());
+        pendingDeletes.add(transaction);
+
+        if (closed) {
+            // close 之后没有后台线程，直接删除
+            flushDeletes();
+        } else if (pendingDeleteXids.size() >= deferredDeleteBatchSize && purgeLock.tryLock()) {
+            try {
+                purge();
+            } finally {
+                purgeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 立即删除所有待删除的事务日志
+     */
+    public void flushDeletes() {
+        purgeLock.lock();
+        try {
+            while (!pendingDeletes.isEmpty()) {
+                if (!purge()) {
+                    break;
+                }
+            }
+        } finally {
+            purgeLock.unlock();
+        }
+    }
+
+    /**
+     * 删除一批待删除的事务，失败时放回队列等待下次重试
+     */
+    private boolean purge() {
+
+        List<Transaction> batch = new ArrayList<Transaction>(deferredDeleteBatchSize);
+        Transaction transaction;
+        while (batch.size() < deferredDeleteBatchSize && (transaction = pendingDeletes.poll()) != null) {
+            batch.add(transaction);
+        }
+
+        if (batch.isEmpty()) {
+            return true;
+        }
+
+        RepositoryWriteEvent event = TccEvents.repositoryWrite();
+        boolean success = false;
+
+        try {
+            doDeleteBatch(batch);
+            success = true;
+            for (Transaction deleted : batch) {
+                pendingDeleteXids.remove(deleted.getXid());
+            }
+        } catch (Throwable e) {
+            pendingDeletes.addAll(batch);
+            logger.warn(String.format("batch delete of %d transactions failed, will retry later.", batch.size()), e);
+        } finally {
+            if (event != null) {
+                event.finish(this, PersistenceOperation.DELETE, batch.get(0), success);
+            }
+        }
+        return success;
+    }
+
+    /**
+     * 停止延迟删除的后台线程并删除所有待删除的事务日志，Spring 中配置为 destroy-method
+     */
+    public void close() {
+
+        ScheduledExecutorService scheduler;
+
+        synchronized (this) {
+            closed = true;
+            scheduler = purgeScheduler;
+            purgeScheduler = null;
+        }
+
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(deferredDeleteIntervalMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        flushDeletes();
+    }
+
+    private synchronized void startPurgeScheduler() {
+        if (purgeScheduler == null && !closed) {
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "tcc-transaction-purge");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    flushDeletes();
+                }
+            }, deferredDeleteIntervalMillis, deferredDeleteIntervalMillis, TimeUnit.MILLISECONDS);
+            purgeScheduler = scheduler;
+        }
+    }
+
     @Override
     public Transaction findByXid(TransactionXid transactionXid) {
+        if (!pendingDeleteXids.isEmpty() && pendingDeleteXids.contains(transactionXid)) {
+            return null;
+        }
+
         Transaction transaction = findFromCache(transactionXid);
 
+        if (repositoryListener != null) {
+            repositoryListener.onCacheAccess(transaction != null);
+        }
+
         if (transaction == null) {
             transaction = doFindOne(transactionXid);
 
@@ -86,7 +337,26 @@ public abstract class CachableTransactionRepository implements TransactionReposi
     @Override
     public List<Transaction> findAllUnmodifiedSince(Date date) {
 
-        List<Transaction> transactions = doFindAllUnmodifiedSince(date);
+        List<Transaction> transactions;
+
+        if (deferredDeleteBatchSize > 0) {
+            // 扫描期间暂停批量删除，否则刚读到的事务可能在过滤前被删除并移出待删除集合
+            purgeLock.lock();
+            try {
+                transactions = doFindAllUnmodifiedSince(date);
+
+                Iterator<Transaction> iterator = transactions.iterator();
+                while (iterator.hasNext()) {
+                    if (pendingDeleteXids.contains(iterator.next().getXid())) {
+                        iterator.remove();
+                    }
+                }
+            } finally {
+                purgeLock.unlock();
+            }
+        } else {
+            transactions = doFindAllUnmodifiedSince(date);
+        }
 
         for (Transaction transaction : transactions) {
             putToCache(transaction);
@@ -115,12 +385,76 @@ public abstract class CachableTransactionRepository implements TransactionReposi
         this.expireDuration = durationInSeconds;
     }
 
+    public void setDeferredDeleteBatchSize(int deferredDeleteBatchSize) {
+        this.deferredDeleteBatchSize = deferredDeleteBatchSize;
+    }
+
+    public void setGroupCommitMaxBatchSize(int groupCommitMaxBatchSize) {
+        this.groupCommitWriter = groupCommitMaxBatchSize > 0 ? new GroupCommitWriter(this, groupCommitMaxBatchSize) : null;
+    }
+
+    public void setDeferredDeleteIntervalMillis(long deferredDeleteIntervalMillis) {
+        this.deferredDeleteIntervalMillis = deferredDeleteIntervalMillis;
+    }
+
+    /**
+     * 已调用 delete 但尚未批量删除的事务数量
+     */
+    public int getPendingDeleteCount() {
+        return pendingDeleteXids.size();
+    }
+
+    public void setRepositoryListener(TransactionRepositoryListener repositoryListener) {
+        this.repositoryListener = repositoryListener;
+    }
+
+    /**
+     * 子类在序列化或反序列化一条事务日志后调用，报告数据大小
+     */
+    protected void recordPayload(PersistenceOperation operation, int bytes) {
+        if (repositoryListener != null) {
+            repositoryListener.onPayload(operation, bytes);
+        }
+        if (operation != PersistenceOperation.FIND && operation != PersistenceOperation.FIND_ALL) {
+            TccEvents.repositoryPayload(bytes);
+        }
+    }
+
     protected abstract int doCreate(Transaction transaction);
 
     protected abstract int doUpdate(Transaction transaction);
 
+    /**
+     * 只更新状态相关字段，子类不支持时退化为完整更新
+     */
+    protected int doUpdateStatus(Transaction transaction) {
+        return doUpdate(transaction);
+    }
+
     protected abstract int doDelete(Transaction transaction);
 
+    /**
+     * 批量删除，子类可以覆盖为一次往返完成
+     */
+    protected void doDeleteBatch(List<Transaction> transactions) {
+        for (Transaction transaction : transactions) {
+            doDelete(transaction);
+        }
+    }
+
+    /**
+     * 组提交写入一批请求，每个请求的结果通过 complete / fail 返回；子类可以覆盖为一次往返完成
+     */
+    protected void doWriteBatch(List<WriteRequest> requests) {
+        for (WriteRequest request : requests) {
+            try {
+                request.complete(execute(request.getOperation(), request.getTransaction()));
+            } catch (Throwable e) {
+                request.fail(e);
+            }
+        }
+    }
+
     protected abstract Transaction doFindOne(Xid xid);
 
     protected abstract List<Transaction> doFindAllUnmodifiedSince(Date date);
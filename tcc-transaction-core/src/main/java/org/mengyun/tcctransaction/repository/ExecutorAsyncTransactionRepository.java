@@ -0,0 +1,86 @@
+package org.mengyun.tcctransaction.repository;
+
+import org.mengyun.tcctransaction.AsyncTransactionRepository;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionRepository;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * 把阻塞的 TransactionRepository 适配为 AsyncTransactionRepository：写入在 executor 上执行，调用线程不等待
+ * 现有的 JDBC / Redis / 文件仓库都是阻塞实现，使用真正异步驱动的仓库可以直接实现 AsyncTransactionRepository。
+ * executor 为空时在调用线程上同步写入，返回已完成的 CompletionStage。
+ */
+public class ExecutorAsyncTransactionRepository implements AsyncTransactionRepository {
+
+    private final TransactionRepository delegate;
+
+    private final Executor executor;
+
+    public ExecutorAsyncTransactionRepository(TransactionRepository delegate, Executor executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletionStage<Integer> createAsync(final Transaction transaction) {
+        return supply(new Supplier<Integer>() {
+            @Override
+            public Integer get() {
+                return delegate.create(transaction);
+            }
+        });
+    }
+
+    @Override
+    public CompletionStage<Integer> updateAsync(final Transaction transaction) {
+        return supply(new Supplier<Integer>() {
+            @Override
+            public Integer get() {
+                return delegate.update(transaction);
+            }
+        });
+    }
+
+    @Override
+    public CompletionStage<Integer> updateStatusAsync(final Transaction transaction) {
+        return supply(new Supplier<Integer>() {
+            @Override
+            public Integer get() {
+                return delegate.updateStatus(transaction);
+            }
+        });
+    }
+
+    @Override
+    public CompletionStage<Integer> deleteAsync(final Transaction transaction) {
+        return supply(new Supplier<Integer>() {
+            @Override
+            public Integer get() {
+                return delegate.delete(transaction);
+            }
+        });
+    }
+
+    public TransactionRepository getDelegate() {
+        return delegate;
+    }
+
+    private CompletionStage<Integer> supply(Supplier<Integer> write) {
+
+        if (executor != null) {
+            return CompletableFuture.supplyAsync(write, executor);
+        }
+
+        CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+        try {
+            future.complete(write.get());
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
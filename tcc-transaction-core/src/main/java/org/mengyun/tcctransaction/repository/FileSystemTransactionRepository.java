@@ -1,7 +1,11 @@
 package org.mengyun.tcctransaction.repository;
 
+import org.apache.log4j.Logger;
 import org.mengyun.tcctransaction.ConcurrentTransactionException;
+import org.mengyun.tcctransaction.SystemException;
 import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.metrics.PersistenceOperation;
 import org.mengyun.tcctransaction.repository.helper.TransactionSerializer;
 import org.mengyun.tcctransaction.serializer.JacksonJsonSerializer;
 import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
@@ -14,6 +18,8 @@ import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by changming.xie on 2/24/16.
@@ -21,12 +27,25 @@ import java.util.List;
  */
 public class FileSystemTransactionRepository extends CachableTransactionRepository {
 
+    private static final Logger logger = Logger.getLogger(FileSystemTransactionRepository.class.getSimpleName());
+
     private String rootPath = "/tcc";
 
     private volatile boolean initialized;
 
     private ObjectSerializer serializer = new KryoPoolSerializer();
 
+    /**
+     * 从旧版本文件名读到的事务（新格式的存储键），之后的更新、删除仍写回旧文件，直到执行 migrateLegacyFiles
+     */
+    private final Set<String> legacyKeys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 为 true 时新事务仍按旧版本的格式命名文件，旧版本节点能读取、更新、删除新节点写入的事务。
+     * 升级顺序：滚动升级期间保持 true；所有节点升级完成后在所有节点上改为 false，再执行一次 migrateLegacyFiles。
+     */
+    private boolean writeLegacyKeys = true;
+
     public void setSerializer(ObjectSerializer serializer) {
         this.serializer = serializer;
     }
@@ -35,6 +54,21 @@ public class FileSystemTransactionRepository extends CachableTransactionReposito
         this.rootPath = rootPath;
     }
 
+    public void setWriteLegacyKeys(boolean writeLegacyKeys) {
+        this.writeLegacyKeys = writeLegacyKeys;
+    }
+
+    /**
+     * 不支持组提交：每个事务是一个单独的文件，一批写入仍然需要每个文件各 force 一次，合并成批没有收益
+     */
+    @Override
+    public void setGroupCommitMaxBatchSize(int groupCommitMaxBatchSize) {
+        if (groupCommitMaxBatchSize > 0) {
+            logger.warn("group commit is not supported by FileSystemTransactionRepository, groupCommitMaxBatchSize ignored.");
+        }
+        super.setGroupCommitMaxBatchSize(0);
+    }
+
     @Override
     protected int doCreate(Transaction transaction) {
         return createFile(transaction);
@@ -50,25 +84,54 @@ public class FileSystemTransactionRepository extends CachableTransactionReposito
         return 1;
     }
 
+    /**
+     * 原地改写文件头中的状态字段，不重新序列化 CONTENT；旧格式的文件退化为整体重写
+     */
+    @Override
+    protected int doUpdateStatus(Transaction transaction) {
+
+        transaction.updateVersion();
+        transaction.updateTime();
+
+        if (!writeStatus(transaction)) {
+            writeFile(transaction);
+        }
+        return 1;
+    }
+
     @Override
     protected int doDelete(Transaction transaction) {
 
-        String fullFileName = getFullFileName(transaction.getXid());
-        File file = new File(fullFileName);
+        File file = new File(resolveFullFileName(transaction.getXid()));
         if (file.exists()) {
-            return file.delete() ? 1 : 0;
+            if (!file.delete()) {
+                return 0;
+            }
         }
+        legacyKeys.remove(TransactionXid.keyOf(transaction.getXid()));
         return 1;
     }
 
+    /**
+     * 先读新格式的文件名，不存在时读旧版本的文件名，不改名，滚动升级期间旧版本节点仍能读到
+     */
     @Override
     protected Transaction doFindOne(Xid xid) {
 
-        String fullFileName = getFullFileName(xid);
-        File file = new File(fullFileName);
+        File file = new File(getFullFileName(xid));
 
         if (file.exists()) {
-            return readTransaction(file);
+            return readTransaction(file, PersistenceOperation.FIND);
+        }
+
+        File legacyFile = new File(getLegacyFullFileName(xid));
+
+        if (legacyFile.exists()) {
+            Transaction transaction = readTransaction(legacyFile, PersistenceOperation.FIND);
+            if (transaction != null) {
+                legacyKeys.add(TransactionXid.keyOf(xid));
+            }
+            return transaction;
         }
 
         return null;
@@ -82,7 +145,7 @@ public class FileSystemTransactionRepository extends CachableTransactionReposito
         List<Transaction> allUnmodifiedSince = new ArrayList<Transaction>();
 
         for (Transaction transaction : allTransactions) {
-            if (transaction.getLastUpdateTime().compareTo(date) < 0) {
+            if (transaction.getLastUpdateTimeMillis() < date.getTime()) {
                 allUnmodifiedSince.add(transaction);
             }
         }
@@ -98,15 +161,79 @@ public class FileSystemTransactionRepository extends CachableTransactionReposito
         File[] files = path.listFiles();
 
         for (File file : files) {
-            Transaction transaction = readTransaction(file);
-            transactions.add(transaction);
+            Transaction transaction = readTransaction(file, PersistenceOperation.FIND_ALL);
+            // 扫描期间文件可能已被批量清理删除
+            if (transaction != null) {
+                String key = TransactionXid.keyOf(transaction.getXid());
+                if (!file.getName().equals(key)) {
+                    legacyKeys.add(key);
+                }
+                transactions.add(transaction);
+            }
         }
 
         return transactions;
     }
 
     private String getFullFileName(Xid xid) {
-        return String.format("%s/%s", rootPath, xid);
+        return rootPath + "/" + TransactionXid.keyOf(xid);
+    }
+
+    /**
+     * 旧版本以 UUID.nameUUIDFromBytes 格式的编号作为文件名
+     */
+    private String getLegacyFullFileName(Xid xid) {
+        return rootPath + "/" + TransactionXid.legacyKeyOf(xid);
+    }
+
+    /**
+     * 更新、删除使用的文件名：writeLegacyKeys 时新格式的文件不存在就使用旧版本的文件名；
+     * 否则从旧版本文件名读到且新格式的文件不存在时使用旧版本的文件名
+     */
+    private String resolveFullFileName(Xid xid) {
+        String fullFileName = getFullFileName(xid);
+        if (writeLegacyKeys) {
+            return new File(fullFileName).exists() ? fullFileName : getLegacyFullFileName(xid);
+        }
+        if (!legacyKeys.isEmpty() && legacyKeys.contains(TransactionXid.keyOf(xid)) && !new File(fullFileName).exists()) {
+            return getLegacyFullFileName(xid);
+        }
+        return fullFileName;
+    }
+
+    /**
+     * 把旧版本文件名的事务文件改名为新格式的文件名，返回改名的文件数
+     * 读取时不会改名，所有节点升级完成并关闭 writeLegacyKeys 后单独执行一次；新格式的文件已存在时保留旧文件并跳过
+     */
+    public int migrateLegacyFiles() {
+
+        if (writeLegacyKeys) {
+            throw new SystemException("writeLegacyKeys must be turned off on every node before migrating legacy files");
+        }
+
+        File[] files = new File(rootPath).listFiles();
+        if (files == null) {
+            return 0;
+        }
+
+        int migrated = 0;
+
+        for (File file : files) {
+            Transaction transaction = readTransaction(file, PersistenceOperation.FIND_ALL);
+            if (transaction == null) {
+                continue;
+            }
+
+            String key = TransactionXid.keyOf(transaction.getXid());
+            File expectedFile = new File(rootPath, key);
+
+            if (!file.getName().equals(key) && !expectedFile.exists() && file.renameTo(expectedFile)) {
+                migrated++;
+            }
+        }
+
+        legacyKeys.clear();
+        return migrated;
     }
 
     private void makeDirIfNecessary() {
@@ -135,13 +262,14 @@ public class FileSystemTransactionRepository extends CachableTransactionReposito
     private int createFile(Transaction transaction) {
         makeDirIfNecessary();
 
-        String filePath = getFullFileName(transaction.getXid());
+        String filePath = writeLegacyKeys ? getLegacyFullFileName(transaction.getXid()) : getFullFileName(transaction.getXid());
 
         FileChannel channel = null;
         RandomAccessFile raf = null;
         File file = null;
 
         byte[] content = TransactionSerializer.serialize(serializer, transaction);
+        recordPayload(PersistenceOperation.CREATE, content.length);
 
         try {
 
@@ -186,12 +314,13 @@ public class FileSystemTransactionRepository extends CachableTransactionReposito
 
         makeDirIfNecessary();
 
-        String filePath = getFullFileName(transaction.getXid());
+        String filePath = resolveFullFileName(transaction.getXid());
 
         FileChannel channel = null;
         RandomAccessFile raf = null;
 
         byte[] content = TransactionSerializer.serialize(serializer, transaction);
+        recordPayload(PersistenceOperation.UPDATE, content.length);
 
         try {
 
@@ -220,7 +349,49 @@ public class FileSystemTransactionRepository extends CachableTransactionReposito
         }
     }
 
-    private Transaction readTransaction(File file) {
+    private boolean writeStatus(Transaction transaction) {
+
+        String filePath = resolveFullFileName(transaction.getXid());
+
+        RandomAccessFile raf = null;
+
+        byte[] status = TransactionSerializer.serializeStatus(transaction);
+
+        try {
+
+            raf = new RandomAccessFile(filePath, "rw");
+
+            if (raf.length() < 5 || !TransactionSerializer.isCurrentFormat(raf.readInt(), raf.readByte())) {
+                return false;
+            }
+
+            recordPayload(PersistenceOperation.UPDATE_STATUS, status.length);
+
+            FileChannel channel = raf.getChannel();
+            ByteBuffer buffer = ByteBuffer.wrap(status);
+            long position = TransactionSerializer.statusOffset(transaction);
+
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+
+            channel.force(true);
+            return true;
+
+        } catch (Exception e) {
+            throw new TransactionIOException(e);
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    throw new TransactionIOException(e);
+                }
+            }
+        }
+    }
+
+    private Transaction readTransaction(File file, PersistenceOperation operation) {
 
         FileInputStream fis = null;
         try {
@@ -229,10 +400,13 @@ public class FileSystemTransactionRepository extends CachableTransactionReposito
             byte[] content = new byte[(int) file.length()];
 
             fis.read(content);
+            recordPayload(operation, content.length);
 
             if (content != null) {
                 return TransactionSerializer.deserialize(serializer, content);
             }
+        } catch (FileNotFoundException e) {
+            return null;
         } catch (Exception e) {
             throw new TransactionIOException(e);
         } finally {
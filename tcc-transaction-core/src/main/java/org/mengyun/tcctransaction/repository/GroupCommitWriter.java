@@ -0,0 +1,74 @@
+package org.mengyun.tcctransaction.repository;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 跨线程组提交：并发的写请求排队，由其中一个调用线程（leader）把队列中的请求作为一批交给仓库一次写入，
+ * 其余线程等待自己所在的批次落盘后返回。不使用后台线程，也不额外等待凑批：
+ * 上一批写入期间到达的请求自然组成下一批。
+ */
+class GroupCommitWriter {
+
+    private final CachableTransactionRepository repository;
+
+    private final int maxBatchSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition batchCompleted = lock.newCondition();
+
+    private final Queue<WriteRequest> queue = new ArrayDeque<WriteRequest>();
+
+    private boolean writing;
+
+    GroupCommitWriter(CachableTransactionRepository repository, int maxBatchSize) {
+        this.repository = repository;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    int submit(WriteRequest request) {
+
+        lock.lock();
+        try {
+            queue.add(request);
+
+            while (!request.done) {
+                if (writing) {
+                    batchCompleted.awaitUninterruptibly();
+                    continue;
+                }
+
+                writing = true;
+                List<WriteRequest> batch = new ArrayList<WriteRequest>(Math.min(queue.size(), maxBatchSize));
+                while (batch.size() < maxBatchSize && !queue.isEmpty()) {
+                    batch.add(queue.poll());
+                }
+
+                lock.unlock();
+                try {
+                    repository.writeBatch(batch);
+                } catch (Throwable e) {
+                    for (WriteRequest each : batch) {
+                        each.fail(e);
+                    }
+                } finally {
+                    lock.lock();
+                    for (WriteRequest each : batch) {
+                        each.done = true;
+                    }
+                    writing = false;
+                    batchCompleted.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return request.resultOrThrow();
+    }
+}
@@ -1,8 +1,10 @@
 package org.mengyun.tcctransaction.repository;
 
 
+import org.apache.log4j.Logger;
 import org.mengyun.tcctransaction.Transaction;
 import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.metrics.PersistenceOperation;
 import org.mengyun.tcctransaction.serializer.JacksonJsonSerializer;
 import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
 import org.mengyun.tcctransaction.serializer.ObjectSerializer;
@@ -14,13 +16,18 @@ import javax.transaction.xa.Xid;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by changmingxie on 10/30/15.
  */
 public class JdbcTransactionRepository extends CachableTransactionRepository {
 
+    private static final Logger logger = Logger.getLogger(JdbcTransactionRepository.class.getSimpleName());
+
     private String domain;
 
     private String tbSuffix;
@@ -65,26 +72,9 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
         try {
             connection = this.getConnection();
 
-            StringBuilder builder = new StringBuilder();
-            builder.append("INSERT INTO " + getTableName() +
-                    "(GLOBAL_TX_ID,BRANCH_QUALIFIER,TRANSACTION_TYPE,CONTENT,STATUS,RETRIED_COUNT,CREATE_TIME,LAST_UPDATE_TIME,VERSION");
-            builder.append(StringUtils.isNotEmpty(domain) ? ",DOMAIN ) VALUES (?,?,?,?,?,?,?,?,?,?)" : ") VALUES (?,?,?,?,?,?,?,?,?)");
-
-            stmt = connection.prepareStatement(builder.toString());
+            stmt = connection.prepareStatement(getInsertSql());
 
-            stmt.setBytes(1, transaction.getXid().getGlobalTransactionId());
-            stmt.setBytes(2, transaction.getXid().getBranchQualifier());
-            stmt.setInt(3, transaction.getTransactionType().getId());
-            stmt.setBytes(4, serializer.serialize(transaction));
-            stmt.setInt(5, transaction.getStatus().getId());
-            stmt.setInt(6, transaction.getRetriedCount());
-            stmt.setTimestamp(7, new java.sql.Timestamp(transaction.getCreateTime().getTime()));
-            stmt.setTimestamp(8, new java.sql.Timestamp(transaction.getLastUpdateTime().getTime()));
-            stmt.setLong(9, transaction.getVersion());
-
-            if (StringUtils.isNotEmpty(domain)) {
-                stmt.setString(10, domain);
-            }
+            bindInsert(stmt, transaction);
 
             stmt.executeUpdate();
             return 1;
@@ -106,7 +96,7 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
         Connection connection = null;
         PreparedStatement stmt = null;
 
-        java.util.Date lastUpdateTime = transaction.getLastUpdateTime();
+        long lastUpdateTime = transaction.getLastUpdateTimeMillis();
         long currentVersion = transaction.getVersion();
 
         transaction.updateTime();
@@ -115,33 +105,53 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
         try {
             connection = this.getConnection();
 
-            StringBuilder builder = new StringBuilder();
-            builder.append("UPDATE " + getTableName() + " SET " +
-                    "CONTENT = ?,STATUS = ?,LAST_UPDATE_TIME = ?, RETRIED_COUNT = ?,VERSION = VERSION+1 WHERE GLOBAL_TX_ID = ? AND BRANCH_QUALIFIER = ? AND VERSION = ?");
+            stmt = connection.prepareStatement(getUpdateSql());
 
-            builder.append(StringUtils.isNotEmpty(domain) ? " AND DOMAIN = ?" : "");
+            bindUpdate(stmt, transaction, currentVersion);
 
-            stmt = connection.prepareStatement(builder.toString());
+            int result = stmt.executeUpdate();
 
-            stmt.setBytes(1, serializer.serialize(transaction));
-            stmt.setInt(2, transaction.getStatus().getId());
-            stmt.setTimestamp(3, new Timestamp(transaction.getLastUpdateTime().getTime()));
+            return result;
 
-            stmt.setInt(4, transaction.getRetriedCount());
-            stmt.setBytes(5, transaction.getXid().getGlobalTransactionId());
-            stmt.setBytes(6, transaction.getXid().getBranchQualifier());
-            stmt.setLong(7, currentVersion);
+        } catch (Throwable e) {
+            transaction.setLastUpdateTimeMillis(lastUpdateTime);
+            transaction.setVersion(currentVersion);
+            throw new TransactionIOException(e);
+        } finally {
+            closeStatement(stmt);
+            this.releaseConnection(connection);
+        }
+    }
 
-            if (StringUtils.isNotEmpty(domain)) {
-                stmt.setString(8, domain);
-            }
+    @Override
+    protected int doUpdateStatus(Transaction transaction) {
+        Connection connection = null;
+        PreparedStatement stmt = null;
+
+        long lastUpdateTime = transaction.getLastUpdateTimeMillis();
+        long currentVersion = transaction.getVersion();
+
+        transaction.updateTime();
+        transaction.updateVersion();
+
+        try {
+            connection = this.getConnection();
+
+            stmt = connection.prepareStatement(getUpdateStatusSql());
+
+            bindUpdateStatus(stmt, transaction, currentVersion);
 
             int result = stmt.executeUpdate();
 
+            if (result <= 0) {
+                transaction.setLastUpdateTimeMillis(lastUpdateTime);
+                transaction.setVersion(currentVersion);
+            }
+
             return result;
 
         } catch (Throwable e) {
-            transaction.setLastUpdateTime(lastUpdateTime);
+            transaction.setLastUpdateTimeMillis(lastUpdateTime);
             transaction.setVersion(currentVersion);
             throw new TransactionIOException(e);
         } finally {
@@ -157,22 +167,36 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
         try {
             connection = this.getConnection();
 
-            StringBuilder builder = new StringBuilder();
-            builder.append("DELETE FROM " + getTableName() +
-                    " WHERE GLOBAL_TX_ID = ? AND BRANCH_QUALIFIER = ?");
+            stmt = connection.prepareStatement(getDeleteSql());
 
-            builder.append(StringUtils.isNotEmpty(domain) ? " AND DOMAIN = ?" : "");
+            bindDelete(stmt, transaction);
 
-            stmt = connection.prepareStatement(builder.toString());
+            return stmt.executeUpdate();
 
-            stmt.setBytes(1, transaction.getXid().getGlobalTransactionId());
-            stmt.setBytes(2, transaction.getXid().getBranchQualifier());
+        } catch (SQLException e) {
+            throw new TransactionIOException(e);
+        } finally {
+            closeStatement(stmt);
+            this.releaseConnection(connection);
+        }
+    }
 
-            if (StringUtils.isNotEmpty(domain)) {
-                stmt.setString(3, domain);
+    @Override
+    protected void doDeleteBatch(List<Transaction> transactions) {
+        Connection connection = null;
+        PreparedStatement stmt = null;
+
+        try {
+            connection = this.getConnection();
+
+            stmt = connection.prepareStatement(getDeleteSql());
+
+            for (Transaction transaction : transactions) {
+                bindDelete(stmt, transaction);
+                stmt.addBatch();
             }
 
-            return stmt.executeUpdate();
+            stmt.executeBatch();
 
         } catch (SQLException e) {
             throw new TransactionIOException(e);
@@ -182,6 +206,204 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
         }
     }
 
+    /**
+     * 组提交：同一批请求使用一个独立连接、按操作类型各执行一次 JDBC batch，最后一次 commit。
+     * 所有路径（包括只有一个请求的批次和失败后的逐条重放）都不使用 getConnection()，
+     * 避免与 leader 线程上的业务事务连接（如 Spring 管理的连接）混用，使其他线程的写入随业务事务回滚。
+     * 批量执行失败（如主键冲突）时整体回滚，再在同一连接上逐条执行并提交，让每个请求得到各自的结果。
+     */
+    @Override
+    protected void doWriteBatch(List<WriteRequest> requests) {
+
+        Connection connection = null;
+
+        try {
+            connection = this.dataSource.getConnection();
+            connection.setAutoCommit(false);
+
+            if (requests.size() == 1 || !tryWriteBatch(connection, requests)) {
+                replay(connection, requests);
+            }
+
+        } catch (Throwable e) {
+            for (WriteRequest request : requests) {
+                request.fail(e);
+            }
+        } finally {
+            if (connection != null) {
+                try {
+                    connection.setAutoCommit(true);
+                    connection.close();
+                } catch (SQLException e) {
+                    logger.warn("close group commit connection failed.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 整批写入并提交，失败时回滚、恢复版本号并返回 false
+     */
+    private boolean tryWriteBatch(Connection connection, List<WriteRequest> requests) {
+
+        Map<PersistenceOperation, List<WriteRequest>> groups = new EnumMap<PersistenceOperation, List<WriteRequest>>(PersistenceOperation.class);
+        for (WriteRequest request : requests) {
+            List<WriteRequest> group = groups.get(request.getOperation());
+            if (group == null) {
+                group = new ArrayList<WriteRequest>();
+                groups.put(request.getOperation(), group);
+            }
+            group.add(request);
+        }
+
+        Map<Transaction, Long> versions = new IdentityHashMap<Transaction, Long>();
+        Map<Transaction, Long> lastUpdateTimes = new IdentityHashMap<Transaction, Long>();
+
+        try {
+            for (Map.Entry<PersistenceOperation, List<WriteRequest>> entry : groups.entrySet()) {
+                executeBatch(connection, entry.getKey(), entry.getValue(), versions, lastUpdateTimes);
+            }
+
+            connection.commit();
+
+            for (WriteRequest request : requests) {
+                if (versions.containsKey(request.getTransaction()) && request.getResult() <= 0) {
+                    restore(request.getTransaction(), versions, lastUpdateTimes);
+                }
+            }
+            return true;
+
+        } catch (Throwable e) {
+            rollback(connection);
+
+            for (Transaction transaction : versions.keySet()) {
+                restore(transaction, versions, lastUpdateTimes);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 在独立连接上逐条执行，每条单独提交
+     */
+    private void replay(Connection connection, List<WriteRequest> requests) {
+
+        Map<Transaction, Long> versions = new IdentityHashMap<Transaction, Long>();
+        Map<Transaction, Long> lastUpdateTimes = new IdentityHashMap<Transaction, Long>();
+
+        for (WriteRequest request : requests) {
+
+            PreparedStatement stmt = null;
+
+            try {
+                stmt = prepare(connection, request.getOperation());
+                bind(stmt, request.getOperation(), request.getTransaction(), versions, lastUpdateTimes);
+
+                int result = stmt.executeUpdate();
+                connection.commit();
+
+                request.complete(result);
+
+                if (versions.containsKey(request.getTransaction()) && result <= 0) {
+                    restore(request.getTransaction(), versions, lastUpdateTimes);
+                }
+
+            } catch (Throwable e) {
+                rollback(connection);
+
+                if (versions.containsKey(request.getTransaction())) {
+                    restore(request.getTransaction(), versions, lastUpdateTimes);
+                }
+
+                if (request.getOperation() == PersistenceOperation.CREATE && e instanceof SQLIntegrityConstraintViolationException) {
+                    request.complete(0);
+                } else {
+                    request.fail(new TransactionIOException(e));
+                }
+            } finally {
+                closeStatement(stmt);
+            }
+        }
+    }
+
+    private void executeBatch(Connection connection, PersistenceOperation operation, List<WriteRequest> group,
+                              Map<Transaction, Long> versions, Map<Transaction, Long> lastUpdateTimes) throws SQLException {
+
+        PreparedStatement stmt = null;
+
+        try {
+            stmt = prepare(connection, operation);
+
+            for (WriteRequest request : group) {
+                bind(stmt, operation, request.getTransaction(), versions, lastUpdateTimes);
+                stmt.addBatch();
+            }
+
+            int[] counts = stmt.executeBatch();
+
+            for (int i = 0; i < group.size(); i++) {
+                // 驱动无法返回影响行数时按成功处理
+                group.get(i).complete(counts[i] == Statement.SUCCESS_NO_INFO ? 1 : counts[i]);
+            }
+        } finally {
+            closeStatement(stmt);
+        }
+    }
+
+    private PreparedStatement prepare(Connection connection, PersistenceOperation operation) throws SQLException {
+        switch (operation) {
+            case CREATE:
+                return connection.prepareStatement(getInsertSql());
+            case UPDATE:
+                return connection.prepareStatement(getUpdateSql());
+            case UPDATE_STATUS:
+                return connection.prepareStatement(getUpdateStatusSql());
+            default:
+                return connection.prepareStatement(getDeleteSql());
+        }
+    }
+
+    /**
+     * 绑定一条写请求的参数，更新类请求先记录写入前的版本号和更新时间
+     */
+    private void bind(PreparedStatement stmt, PersistenceOperation operation, Transaction transaction,
+                      Map<Transaction, Long> versions, Map<Transaction, Long> lastUpdateTimes) throws SQLException {
+
+        switch (operation) {
+            case CREATE:
+                bindInsert(stmt, transaction);
+                break;
+            case UPDATE:
+            case UPDATE_STATUS:
+                long currentVersion = transaction.getVersion();
+                versions.put(transaction, currentVersion);
+                lastUpdateTimes.put(transaction, transaction.getLastUpdateTimeMillis());
+                transaction.updateTime();
+                transaction.updateVersion();
+                if (operation == PersistenceOperation.UPDATE) {
+                    bindUpdate(stmt, transaction, currentVersion);
+                } else {
+                    bindUpdateStatus(stmt, transaction, currentVersion);
+                }
+                break;
+            default:
+                bindDelete(stmt, transaction);
+        }
+    }
+
+    private void restore(Transaction transaction, Map<Transaction, Long> versions, Map<Transaction, Long> lastUpdateTimes) {
+        transaction.setVersion(versions.get(transaction));
+        transaction.setLastUpdateTimeMillis(lastUpdateTimes.get(transaction));
+    }
+
+    private void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            logger.warn("rollback group commit failed.", e);
+        }
+    }
+
     protected Transaction doFindOne(Xid xid) {
 
         List<Transaction> transactions = doFind(Arrays.asList(xid));
@@ -221,7 +443,7 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
 
             ResultSet resultSet = stmt.executeQuery();
 
-            this.constructTransactions(resultSet, transactions);
+            this.constructTransactions(resultSet, transactions, PersistenceOperation.FIND_ALL);
         } catch (Throwable e) {
             throw new TransactionIOException(e);
         } finally {
@@ -288,8 +510,13 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
     }
 
     protected void constructTransactions(ResultSet resultSet, List<Transaction> transactions) throws SQLException {
+        constructTransactions(resultSet, transactions, PersistenceOperation.FIND);
+    }
+
+    protected void constructTransactions(ResultSet resultSet, List<Transaction> transactions, PersistenceOperation operation) throws SQLException {
         while (resultSet.next()) {
             byte[] transactionBytes = resultSet.getBytes(3);
+            recordPayload(operation, transactionBytes.length);
             Transaction transaction = (Transaction) serializer.deserialize(transactionBytes);
             transaction.changeStatus(TransactionStatus.valueOf(resultSet.getInt(4)));
             transaction.setLastUpdateTime(resultSet.getDate(7));
@@ -328,6 +555,101 @@ public class JdbcTransactionRepository extends CachableTransactionRepository {
         }
     }
 
+    private String getInsertSql() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("INSERT INTO " + getTableName() +
+                "(GLOBAL_TX_ID,BRANCH_QUALIFIER,TRANSACTION_TYPE,CONTENT,STATUS,RETRIED_COUNT,CREATE_TIME,LAST_UPDATE_TIME,VERSION");
+        builder.append(StringUtils.isNotEmpty(domain) ? ",DOMAIN ) VALUES (?,?,?,?,?,?,?,?,?,?)" : ") VALUES (?,?,?,?,?,?,?,?,?)");
+        return builder.toString();
+    }
+
+    private void bindInsert(PreparedStatement stmt, Transaction transaction) throws SQLException {
+
+        byte[] content = serializer.serialize(transaction);
+        recordPayload(PersistenceOperation.CREATE, content.length);
+
+        stmt.setBytes(1, transaction.getXid().getGlobalTransactionId());
+        stmt.setBytes(2, transaction.getXid().getBranchQualifier());
+        stmt.setInt(3, transaction.getTransactionType().getId());
+        stmt.setBytes(4, content);
+        stmt.setInt(5, transaction.getStatus().getId());
+        stmt.setInt(6, transaction.getRetriedCount());
+        stmt.setTimestamp(7, new java.sql.Timestamp(transaction.getCreateTimeMillis()));
+        stmt.setTimestamp(8, new java.sql.Timestamp(transaction.getLastUpdateTimeMillis()));
+        stmt.setLong(9, transaction.getVersion());
+
+        if (StringUtils.isNotEmpty(domain)) {
+            stmt.setString(10, domain);
+        }
+    }
+
+    private String getUpdateSql() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("UPDATE " + getTableName() + " SET " +
+                "CONTENT = ?,STATUS = ?,LAST_UPDATE_TIME = ?, RETRIED_COUNT = ?,VERSION = VERSION+1 WHERE GLOBAL_TX_ID = ? AND BRANCH_QUALIFIER = ? AND VERSION = ?");
+        builder.append(StringUtils.isNotEmpty(domain) ? " AND DOMAIN = ?" : "");
+        return builder.toString();
+    }
+
+    private void bindUpdate(PreparedStatement stmt, Transaction transaction, long currentVersion) throws SQLException {
+
+        byte[] content = serializer.serialize(transaction);
+        recordPayload(PersistenceOperation.UPDATE, content.length);
+
+        stmt.setBytes(1, content);
+        stmt.setInt(2, transaction.getStatus().getId());
+        stmt.setTimestamp(3, new Timestamp(transaction.getLastUpdateTimeMillis()));
+
+        stmt.setInt(4, transaction.getRetriedCount());
+        stmt.setBytes(5, transaction.getXid().getGlobalTransactionId());
+        stmt.setBytes(6, transaction.getXid().getBranchQualifier());
+        stmt.setLong(7, currentVersion);
+
+        if (StringUtils.isNotEmpty(domain)) {
+            stmt.setString(8, domain);
+        }
+    }
+
+    private String getUpdateStatusSql() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("UPDATE " + getTableName() + " SET " +
+                "STATUS = ?,LAST_UPDATE_TIME = ?, RETRIED_COUNT = ?,VERSION = VERSION+1 WHERE GLOBAL_TX_ID = ? AND BRANCH_QUALIFIER = ? AND VERSION = ?");
+        builder.append(StringUtils.isNotEmpty(domain) ? " AND DOMAIN = ?" : "");
+        return builder.toString();
+    }
+
+    private void bindUpdateStatus(PreparedStatement stmt, Transaction transaction, long currentVersion) throws SQLException {
+
+        stmt.setInt(1, transaction.getStatus().getId());
+        stmt.setTimestamp(2, new Timestamp(transaction.getLastUpdateTimeMillis()));
+        stmt.setInt(3, transaction.getRetriedCount());
+        stmt.setBytes(4, transaction.getXid().getGlobalTransactionId());
+        stmt.setBytes(5, transaction.getXid().getBranchQualifier());
+        stmt.setLong(6, currentVersion);
+
+        if (StringUtils.isNotEmpty(domain)) {
+            stmt.setString(7, domain);
+        }
+    }
+
+    private String getDeleteSql() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("DELETE FROM " + getTableName() +
+                " WHERE GLOBAL_TX_ID = ? AND BRANCH_QUALIFIER = ?");
+        builder.append(StringUtils.isNotEmpty(domain) ? " AND DOMAIN = ?" : "");
+        return builder.toString();
+    }
+
+    private void bindDelete(PreparedStatement stmt, Transaction transaction) throws SQLException {
+
+        stmt.setBytes(1, transaction.getXid().getGlobalTransactionId());
+        stmt.setBytes(2, transaction.getXid().getBranchQualifier());
+
+        if (StringUtils.isNotEmpty(domain)) {
+            stmt.setString(3, domain);
+        }
+    }
+
     private String getTableName() {
         return StringUtils.isNotEmpty(tbSuffix) ? "TCC_TRANSACTION" + tbSuffix : "TCC_TRANSACTION";
     }
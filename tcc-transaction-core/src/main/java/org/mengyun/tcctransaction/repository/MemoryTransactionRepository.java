@@ -0,0 +1,156 @@
+package org.mengyun.tcctransaction.repository;
+
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.metrics.PersistenceOperation;
+import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
+import org.mengyun.tcctransaction.serializer.ObjectSerializer;
+
+import javax.transaction.xa.Xid;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 内存事务日志仓库
+ * 事务日志只保存在当前进程内存中，进程重启后丢失，仅用于单元测试、基准测试等不需要持久化的场景。
+ * 为了和其他仓库保持相同的开销模型，事务仍然会被序列化后保存，并按版本号做乐观锁检查。
+ */
+public class MemoryTransactionRepository extends CachableTransactionRepository {
+
+    private final ConcurrentMap<Xid, Record> records = new ConcurrentHashMap<Xid, Record>();
+
+    private ObjectSerializer serializer = new KryoPoolSerializer();
+
+    public void setSerializer(ObjectSerializer serializer) {
+        this.serializer = serializer;
+    }
+
+    public int size() {
+        return records.size();
+    }
+
+    public void clear() {
+        records.clear();
+    }
+
+    @Override
+    protected int doCreate(Transaction transaction) {
+        Record record = new Record(transaction, serializer.serialize(transaction));
+        recordPayload(PersistenceOperation.CREATE, record.content.length);
+        return records.putIfAbsent(transaction.getXid(), record) == null ? 1 : 0;
+    }
+
+    @Override
+    protected int doUpdate(Transaction transaction) {
+
+        long lastUpdateTime = transaction.getLastUpdateTimeMillis();
+        long currentVersion = transaction.getVersion();
+
+        transaction.updateTime();
+        transaction.updateVersion();
+
+        Xid xid = transaction.getXid();
+        Record current = records.get(xid);
+
+        if (current != null && current.version == currentVersion) {
+            Record updated = new Record(transaction, serializer.serialize(transaction));
+            recordPayload(PersistenceOperation.UPDATE, updated.content.length);
+            if (records.replace(xid, current, updated)) {
+                return 1;
+            }
+        }
+
+        transaction.setLastUpdateTimeMillis(lastUpdateTime);
+        transaction.setVersion(currentVersion);
+        return 0;
+    }
+
+    @Override
+    protected int doUpdateStatus(Transaction transaction) {
+
+        long lastUpdateTime = transaction.getLastUpdateTimeMillis();
+        long currentVersion = transaction.getVersion();
+
+        transaction.updateTime();
+        transaction.updateVersion();
+
+        Xid xid = transaction.getXid();
+        Record current = records.get(xid);
+
+        if (current != null && current.version == currentVersion) {
+            Record updated = new Record(transaction, current.content);
+            if (records.replace(xid, current, updated)) {
+                return 1;
+            }
+        }
+
+        transaction.setLastUpdateTimeMillis(lastUpdateTime);
+        transaction.setVersion(currentVersion);
+        return 0;
+    }
+
+    @Override
+    protected int doDelete(Transaction transaction) {
+        return records.remove(transaction.getXid()) != null ? 1 : 0;
+    }
+
+    @Override
+    protected Transaction doFindOne(Xid xid) {
+        Record record = records.get(xid);
+
+        if (record != null) {
+            recordPayload(PersistenceOperation.FIND, record.content.length);
+            return record.toTransaction(serializer);
+        }
+        return null;
+    }
+
+    @Override
+    protected List<Transaction> doFindAllUnmodifiedSince(Date date) {
+
+        List<Transaction> allUnmodifiedSince = new ArrayList<Transaction>();
+
+        for (Record record : records.values()) {
+            recordPayload(PersistenceOperation.FIND_ALL, record.content.length);
+            Transaction transaction = record.toTransaction(serializer);
+            if (transaction.getLastUpdateTimeMillis() < date.getTime()) {
+                allUnmodifiedSince.add(transaction);
+            }
+        }
+
+        return allUnmodifiedSince;
+    }
+
+    private static class Record {
+
+        private final long version;
+
+        private final TransactionStatus status;
+
+        private final int retriedCount;
+
+        private final long lastUpdateTime;
+
+        private final byte[] content;
+
+        Record(Transaction transaction, byte[] content) {
+            this.version = transaction.getVersion();
+            this.status = transaction.getStatus();
+            this.retriedCount = transaction.getRetriedCount();
+            this.lastUpdateTime = transaction.getLastUpdateTimeMillis();
+            this.content = content;
+        }
+
+        Transaction toTransaction(ObjectSerializer serializer) {
+            Transaction transaction = (Transaction) serializer.deserialize(content);
+            transaction.changeStatus(status);
+            transaction.resetRetriedCount(retriedCount);
+            transaction.setLastUpdateTimeMillis(lastUpdateTime);
+            transaction.setVersion(version);
+            return transaction;
+        }
+    }
+}
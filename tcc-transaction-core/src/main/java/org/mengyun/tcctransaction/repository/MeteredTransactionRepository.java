@@ -0,0 +1,261 @@
+package org.mengyun.tcctransaction.repository;
+
+import org.mengyun.tcctransaction.ConcurrentTransactionException;
+import org.mengyun.tcctransaction.OptimisticLockException;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionRepository;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.metrics.LatencyHistogram;
+import org.mengyun.tcctransaction.metrics.PersistenceOperation;
+import org.mengyun.tcctransaction.metrics.TransactionRepositoryListener;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带统计的事务日志仓库
+ * 包装任意 TransactionRepository，统计每种操作的延迟与失败次数，以及乐观锁冲突（OptimisticLockException）
+ * 和 xid 重复（ConcurrentTransactionException）的次数。
+ * 被包装的仓库是 CachableTransactionRepository 时，还会统计序列化后的数据大小和本地缓存命中率。
+ * <p>
+ * 在 Spring 中使用时，被包装的仓库需要设置 autowire-candidate="false"，
+ * 以便 SpringTransactionConfigurator 按类型注入的是本仓库。
+ */
+public class MeteredTransactionRepository implements TransactionRepository, TransactionRepositoryListener {
+
+    private TransactionRepository delegate;
+
+    private final OperationStats[] operationStats = new OperationStats[PersistenceOperation.values().length];
+
+    private final LongAdder optimisticLockFailures = new LongAdder();
+
+    private final LongAdder concurrentTransactionFailures = new LongAdder();
+
+    private final LongAdder cacheHits = new LongAdder();
+
+    private final LongAdder cacheMisses = new LongAdder();
+
+    public MeteredTransactionRepository() {
+        for (PersistenceOperation operation : PersistenceOperation.values()) {
+            operationStats[operation.ordinal()] = new OperationStats();
+        }
+    }
+
+    public MeteredTransactionRepository(TransactionRepository delegate) {
+        this();
+        setDelegate(delegate);
+    }
+
+    public void setDelegate(TransactionRepository delegate) {
+        this.delegate = delegate;
+
+        if (delegate instanceof CachableTransactionRepository) {
+            ((CachableTransactionRepository) delegate).setRepositoryListener(this);
+        }
+    }
+
+    public TransactionRepository getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public int create(Transaction transaction) {
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            int result = delegate.create(transaction);
+            success = true;
+            return result;
+        } catch (ConcurrentTransactionException e) {
+            concurrentTransactionFailures.increment();
+            throw e;
+        } finally {
+            record(PersistenceOperation.CREATE, success, startNanos);
+        }
+    }
+
+    @Override
+    public int update(Transaction transaction) {
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            int result = delegate.update(transaction);
+            success = true;
+            return result;
+        } catch (OptimisticLockException e) {
+            optimisticLockFailures.increment();
+            throw e;
+        } finally {
+            record(PersistenceOperation.UPDATE, success, startNanos);
+        }
+    }
+
+    @Override
+    public int updateStatus(Transaction transaction) {
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            int result = delegate.updateStatus(transaction);
+            success = true;
+            return result;
+        } catch (OptimisticLockException e) {
+            optimisticLockFailures.increment();
+            throw e;
+        } finally {
+            record(PersistenceOperation.UPDATE_STATUS, success, startNanos);
+        }
+    }
+
+    @Override
+    public int delete(Transaction transaction) {
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            int result = delegate.delete(transaction);
+            success = true;
+            return result;
+        } finally {
+            record(PersistenceOperation.DELETE, success, startNanos);
+        }
+    }
+
+    @Override
+    public Transaction findByXid(TransactionXid xid) {
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            Transaction transaction = delegate.findByXid(xid);
+            success = true;
+            return transaction;
+        } finally {
+            record(PersistenceOperation.FIND, success, startNanos);
+        }
+    }
+
+    @Override
+    public List<Transaction> findAllUnmodifiedSince(Date date) {
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            List<Transaction> transactions = delegate.findAllUnmodifiedSince(date);
+            success = true;
+            return transactions;
+        } finally {
+            record(PersistenceOperation.FIND_ALL, success, startNanos);
+        }
+    }
+
+    @Override
+    public void onPayload(PersistenceOperation operation, int bytes) {
+        operationStats[operation.ordinal()].recordPayload(bytes);
+    }
+
+    @Override
+    public void onCacheAccess(boolean hit) {
+        if (hit) {
+            cacheHits.increment();
+        } else {
+            cacheMisses.increment();
+        }
+    }
+
+    private void record(PersistenceOperation operation, boolean success, long startNanos) {
+        OperationStats stats = operationStats[operation.ordinal()];
+        stats.latency.record(System.nanoTime() - startNanos);
+        if (!success) {
+            stats.failures.increment();
+        }
+    }
+
+    public LatencyHistogram getLatency(PersistenceOperation operation) {
+        return operationStats[operation.ordinal()].latency;
+    }
+
+    public long getCount(PersistenceOperation operation) {
+        return operationStats[operation.ordinal()].latency.getCount();
+    }
+
+    public long getFailureCount(PersistenceOperation operation) {
+        return operationStats[operation.ordinal()].failures.sum();
+    }
+
+    public long getPayloadCount(PersistenceOperation operation) {
+        return operationStats[operation.ordinal()].payloadCount.sum();
+    }
+
+    public long getPayloadBytes(PersistenceOperation operation) {
+        return operationStats[operation.ordinal()].payloadBytes.sum();
+    }
+
+    public long getMaxPayloadBytes(PersistenceOperation operation) {
+        return operationStats[operation.ordinal()].maxPayloadBytes.get();
+    }
+
+    public double getMeanPayloadBytes(PersistenceOperation operation) {
+        long count = getPayloadCount(operation);
+        return count == 0 ? 0 : (double) getPayloadBytes(operation) / count;
+    }
+
+    public long getOptimisticLockFailureCount() {
+        return optimisticLockFailures.sum();
+    }
+
+    /**
+     * update / updateStatus 中因版本冲突失败的比例
+     */
+    public double getOptimisticLockFailureRate() {
+        long count = getCount(PersistenceOperation.UPDATE) + getCount(PersistenceOperation.UPDATE_STATUS);
+        return count == 0 ? 0 : (double) optimisticLockFailures.sum() / count;
+    }
+
+    public long getConcurrentTransactionFailureCount() {
+        return concurrentTransactionFailures.sum();
+    }
+
+    /**
+     * create 中因 xid 重复失败的比例
+     */
+    public double getConcurrentTransactionFailureRate() {
+        long count = getCount(PersistenceOperation.CREATE);
+        return count == 0 ? 0 : (double) concurrentTransactionFailures.sum() / count;
+    }
+
+    public long getCacheHitCount() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMissCount() {
+        return cacheMisses.sum();
+    }
+
+    public double getCacheHitRatio() {
+        long hits = cacheHits.sum();
+        long total = hits + cacheMisses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    private static class OperationStats {
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private final LongAdder failures = new LongAdder();
+
+        private final LongAdder payloadCount = new LongAdder();
+
+        private final LongAdder payloadBytes = new LongAdder();
+
+        private final AtomicLong maxPayloadBytes = new AtomicLong();
+
+        void recordPayload(int bytes) {
+            payloadCount.increment();
+            payloadBytes.add(bytes);
+
+            long max = maxPayloadBytes.get();
+            while (bytes > max && !maxPayloadBytes.compareAndSet(max, bytes)) {
+                max = maxPayloadBytes.get();
+            }
+        }
+    }
+}
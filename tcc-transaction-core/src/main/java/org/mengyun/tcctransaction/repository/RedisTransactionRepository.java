@@ -1,7 +1,10 @@
 package org.mengyun.tcctransaction.repository;
 
 import org.apache.log4j.Logger;
+import org.mengyun.tcctransaction.SystemException;
 import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.metrics.PersistenceOperation;
 import org.mengyun.tcctransaction.repository.helper.ExpandTransactionSerializer;
 import org.mengyun.tcctransaction.repository.helper.JedisCallback;
 import org.mengyun.tcctransaction.repository.helper.RedisHelper;
@@ -12,6 +15,7 @@ import redis.clients.jedis.*;
 
 import javax.transaction.xa.Xid;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by changming.xie on 2/24/16.
@@ -25,6 +29,16 @@ public class RedisTransactionRepository extends CachableTransactionRepository {
 
     private static final Logger logger = Logger.getLogger(RedisTransactionRepository.class.getSimpleName());
 
+    private static final byte[] GLOBAL_TX_ID = "GLOBAL_TX_ID".getBytes();
+
+    private static final byte[] BRANCH_QUALIFIER = "BRANCH_QUALIFIER".getBytes();
+
+    /**
+     * 写入 KEYS[1]；带另一种格式的键时（KEYS[2]），两个键都不存在才创建
+     */
+    private static final byte[] CREATE_SCRIPT = ("if redis.call('exists', KEYS[1]) == 0 and (#KEYS == 1 or redis.call('exists', KEYS[2]) == 0) then " +
+            "redis.call('hmset', KEYS[1], unpack(ARGV)); return 1; end; return 0;").getBytes();
+
     private JedisPool jedisPool;
 
     private String keyPrefix = "TCC:";
@@ -35,6 +49,17 @@ public class RedisTransactionRepository extends CachableTransactionRepository {
 
     private boolean isForbiddenKeys = false;
 
+    /**
+     * 从旧版本的键读到的事务（新格式的存储键），之后的更新、删除同时考虑旧版本的键，直到执行 migrateLegacyKeys
+     */
+    private final Set<String> legacyKeys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 为 true 时新事务仍按旧版本的格式写键，旧版本节点能读取、更新、删除新节点写入的事务。
+     * 升级顺序：滚动升级期间保持 true；所有节点升级完成后在所有节点上改为 false，再执行一次 migrateLegacyKeys。
+     */
+    private boolean writeLegacyKeys = true;
+
     public void setKeyPrefix(String keyPrefix) {
         this.keyPrefix = keyPrefix;
     }
@@ -79,6 +104,10 @@ public class RedisTransactionRepository extends CachableTransactionRepository {
         isForbiddenKeys = forbiddenKeys;
     }
 
+    public void setWriteLegacyKeys(boolean writeLegacyKeys) {
+        this.writeLegacyKeys = writeLegacyKeys;
+    }
+
     @Override
     protected int doCreate(final Transaction transaction) {
 
@@ -90,15 +119,9 @@ public class RedisTransactionRepository extends CachableTransactionRepository {
                 public Long doInJedis(Jedis jedis) {
 
 
-                    List<byte[]> params = new ArrayList<byte[]>();
-
-                    for (Map.Entry<byte[], byte[]> entry : ExpandTransactionSerializer.serialize(serializer, transaction).entrySet()) {
-                        params.add(entry.getKey());
-                        params.add(entry.getValue());
-                    }
+                    List<byte[]> params = serialize(transaction, PersistenceOperation.CREATE);
 
-                    Object result = jedis.eval("if redis.call('exists', KEYS[1]) == 0 then redis.call('hmset', KEYS[1], unpack(ARGV)); return 1; end; return 0;".getBytes(),
-                            Arrays.asList(RedisHelper.getRedisKey(keyPrefix, transaction.getXid())), params);
+                    Object result = jedis.eval(CREATE_SCRIPT, keysOf(transaction.getXid()), params);
 
                     return (Long) result;
                 }
@@ -122,16 +145,37 @@ public class RedisTransactionRepository extends CachableTransactionRepository {
                     transaction.updateTime();
                     transaction.updateVersion();
 
-                    List<byte[]> params = new ArrayList<byte[]>();
+                    List<byte[]> params = serialize(transaction, PersistenceOperation.UPDATE);
 
-                    for (Map.Entry<byte[], byte[]> entry : ExpandTransactionSerializer.serialize(serializer, transaction).entrySet()) {
-                        params.add(entry.getKey());
-                        params.add(entry.getValue());
-                    }
+                    Object result = jedis.eval(versionCheckedScript(transaction.getVersion() - 1),
+                            keysOf(transaction.getXid()), params);
+
+                    return (Long) result;
+                }
+            });
+
+            return statusCode.intValue();
+        } catch (Exception e) {
+            throw new TransactionIOException(e);
+        }
+    }
 
-                    Object result = jedis.eval(String.format("if redis.call('hget',KEYS[1],'VERSION') == '%s' then redis.call('hmset', KEYS[1], unpack(ARGV)); return 1; end; return 0;",
-                                    transaction.getVersion() - 1).getBytes(),
-                            Arrays.asList(RedisHelper.getRedisKey(keyPrefix, transaction.getXid())), params);
+    @Override
+    protected int doUpdateStatus(final Transaction transaction) {
+
+        try {
+
+            Long statusCode = RedisHelper.execute(jedisPool, new JedisCallback<Long>() {
+                @Override
+                public Long doInJedis(Jedis jedis) {
+
+                    transaction.updateTime();
+                    transaction.updateVersion();
+
+                    List<byte[]> params = serialize(transaction, PersistenceOperation.UPDATE_STATUS);
+
+                    Object result = jedis.eval(versionCheckedScript(transaction.getVersion() - 1),
+                            keysOf(transaction.getXid()), params);
 
                     return (Long) result;
                 }
@@ -151,30 +195,126 @@ public class RedisTransactionRepository extends CachableTransactionRepository {
                 @Override
                 public Long doInJedis(Jedis jedis) {
 
-                    return jedis.del(RedisHelper.getRedisKey(keyPrefix, transaction.getXid()));
+                    List<byte[]> keys = keysOf(transaction.getXid());
+                    return jedis.del(keys.toArray(new byte[keys.size()][]));
                 }
             });
 
+            legacyKeys.remove(TransactionXid.keyOf(transaction.getXid()));
             return result.intValue();
         } catch (Exception e) {
             throw new TransactionIOException(e);
         }
     }
 
+    @Override
+    protected void doDeleteBatch(final List<Transaction> transactions) {
+        try {
+
+            RedisHelper.execute(jedisPool, new JedisCallback<Object>() {
+                @Override
+                public Object doInJedis(Jedis jedis) {
+
+                    Pipeline pipeline = jedis.pipelined();
+
+                    for (Transaction transaction : transactions) {
+                        List<byte[]> keys = keysOf(transaction.getXid());
+                        pipeline.del(keys.toArray(new byte[keys.size()][]));
+                    }
+
+                    pipeline.sync();
+
+                    for (Transaction transaction : transactions) {
+                        legacyKeys.remove(TransactionXid.keyOf(transaction.getXid()));
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            throw new TransactionIOException(e);
+        }
+    }
+
+    /**
+     * 组提交：一批请求在同一个连接上 pipeline 发送，一次往返完成；
+     * 开启 appendfsync always 时同一批命令共享一次 AOF fsync
+     */
+    @Override
+    protected void doWriteBatch(final List<WriteRequest> requests) {
+
+        if (requests.size() == 1) {
+            super.doWriteBatch(requests);
+            return;
+        }
+
+        try {
+
+            RedisHelper.execute(jedisPool, new JedisCallback<Object>() {
+                @Override
+                public Object doInJedis(Jedis jedis) {
+
+                    Pipeline pipeline = jedis.pipelined();
+
+                    List<Response<?>> responses = new ArrayList<Response<?>>(requests.size());
+
+                    for (WriteRequest request : requests) {
+
+                        Transaction transaction = request.getTransaction();
+                        List<byte[]> keys = keysOf(transaction.getXid());
+
+                        switch (request.getOperation()) {
+                            case CREATE:
+                                responses.add(pipeline.eval(CREATE_SCRIPT, keys, serialize(transaction, PersistenceOperation.CREATE)));
+                                break;
+                            case UPDATE:
+                            case UPDATE_STATUS:
+                                transaction.updateTime();
+                                transaction.updateVersion();
+                                responses.add(pipeline.eval(versionCheckedScript(transaction.getVersion() - 1), keys,
+                                        serialize(transaction, request.getOperation())));
+                                break;
+                            default:
+                                responses.add(pipeline.del(keys.toArray(new byte[keys.size()][])));
+                        }
+                    }
+
+                    pipeline.sync();
+
+                    for (int i = 0; i < requests.size(); i++) {
+                        try {
+                            requests.get(i).complete(((Long) responses.get(i).get()).intValue());
+                        } catch (Exception e) {
+                            requests.get(i).fail(new TransactionIOException(e));
+                        }
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            throw new TransactionIOException(e);
+        }
+    }
+
     @Override
     protected Transaction doFindOne(final Xid xid) {
 
         try {
-            Long startTime = System.currentTimeMillis();
             Map<byte[], byte[]> content = RedisHelper.execute(jedisPool, new JedisCallback<Map<byte[], byte[]>>() {
                 @Override
                 public Map<byte[], byte[]> doInJedis(Jedis jedis) {
-                    return jedis.hgetAll(RedisHelper.getRedisKey(keyPrefix, xid));
+                    Map<byte[], byte[]> content = jedis.hgetAll(RedisHelper.getRedisKey(keyPrefix, xid));
+                    // 新格式的键不存在时读旧版本写入的键，不改名，滚动升级期间旧版本节点仍能读到
+                    if (content.isEmpty()) {
+                        content = jedis.hgetAll(RedisHelper.getLegacyRedisKey(keyPrefix, xid));
+                        if (!content.isEmpty()) {
+                            legacyKeys.add(TransactionXid.keyOf(xid));
+                        }
+                    }
+                    return content;
                 }
             });
-            logger.info("redis find cost time :" + (System.currentTimeMillis() - startTime));
-
             if (content != null && content.size() > 0) {
+                recordPayload(PersistenceOperation.FIND, sizeOf(content));
                 return ExpandTransactionSerializer.deserialize(serializer, content);
             }
             return null;
@@ -191,7 +331,7 @@ public class RedisTransactionRepository extends CachableTransactionRepository {
         List<Transaction> allUnmodifiedSince = new ArrayList<Transaction>();
 
         for (Transaction transaction : allTransactions) {
-            if (transaction.getLastUpdateTime().compareTo(date) < 0) {
+            if (transaction.getLastUpdateTimeMillis() < date.getTime()) {
                 allUnmodifiedSince.add(transaction);
             }
         }
@@ -204,33 +344,12 @@ public class RedisTransactionRepository extends CachableTransactionRepository {
 
         try {
 
-            final Set<byte[]> keys = RedisHelper.execute(jedisPool, new JedisCallback<Set<byte[]>>() {
+            final List<byte[]> keys = new ArrayList<byte[]>(RedisHelper.execute(jedisPool, new JedisCallback<Set<byte[]>>() {
                 @Override
                 public Set<byte[]> doInJedis(Jedis jedis) {
-
-                    if (isSupportScan) {
-                        List<String> allKeys = new ArrayList<String>();
-                        String cursor = RedisHelper.SCAN_INIT_CURSOR;
-                        ScanParams scanParams = RedisHelper.buildDefaultScanParams(keyPrefix + "*", fetchKeySize);
-                        do {
-                            ScanResult<String> scanResult = jedis.scan(cursor, scanParams);
-                            allKeys.addAll(scanResult.getResult());
-                            cursor = scanResult.getStringCursor();
-                        } while (!cursor.equals(RedisHelper.SCAN_INIT_CURSOR));
-
-                        Set<byte[]> allKeySet = new HashSet<byte[]>();
-
-                        for (String key : allKeys) {
-                            allKeySet.add(key.getBytes());
-                        }
-                        logger.info(String.format("find all key by scan command with pattern:%s allKeySet.size()=%d", keyPrefix + "*", allKeySet.size()));
-                        return allKeySet;
-                    } else {
-                        return jedis.keys((keyPrefix + "*").getBytes());
-                    }
-
+                    return findAllKeys(jedis);
                 }
-            });
+            }));
 
 
             return RedisHelper.execute(jedisPool, new JedisCallback<List<Transaction>>() {
@@ -245,11 +364,17 @@ public class RedisTransactionRepository extends CachableTransactionRepository {
                     List<Object> result = pipeline.syncAndReturnAll();
 
                     List<Transaction> list = new ArrayList<Transaction>();
-                    for (Object data : result) {
+                    for (int i = 0; i < result.size(); i++) {
+                        Object data = result.get(i);
 
                         if (data != null && ((Map<byte[], byte[]>) data).size() > 0) {
 
-                            list.add(ExpandTransactionSerializer.deserialize(serializer, (Map<byte[], byte[]>) data));
+                            recordPayload(PersistenceOperation.FIND_ALL, sizeOf((Map<byte[], byte[]>) data));
+                            Transaction transaction = ExpandTransactionSerializer.deserialize(serializer, (Map<byte[], byte[]>) data);
+                            if (!Arrays.equals(keys.get(i), RedisHelper.getRedisKey(keyPrefix, transaction.getXid()))) {
+                                legacyKeys.add(TransactionXid.keyOf(transaction.getXid()));
+                            }
+                            list.add(transaction);
                         }
 
                     }
@@ -262,4 +387,136 @@ public class RedisTransactionRepository extends CachableTransactionRepository {
             throw new TransactionIOException(e);
         }
     }
+
+    /**
+     * 创建、更新、删除使用的键，脚本写入第一个键，第一个键不存在时更新第二个键：
+     * writeLegacyKeys 时旧版本的键在前；否则从旧版本的键读到的事务在新格式的键之后带上旧版本的键
+     */
+    private List<byte[]> keysOf(Xid xid) {
+        byte[] key = RedisHelper.getRedisKey(keyPrefix, xid);
+        if (writeLegacyKeys) {
+            return Arrays.asList(RedisHelper.getLegacyRedisKey(keyPrefix, xid), key);
+        }
+        if (!legacyKeys.isEmpty() && legacyKeys.contains(TransactionXid.keyOf(xid))) {
+            return Arrays.asList(key, RedisHelper.getLegacyRedisKey(keyPrefix, xid));
+        }
+        return Collections.singletonList(key);
+    }
+
+    /**
+     * 把旧版本写入的键改名为新格式的键，返回改名的键数
+     * 读取时不会改名，所有节点升级完成并关闭 writeLegacyKeys 后单独执行一次；新格式的键已存在时保留旧键并跳过
+     */
+    public int migrateLegacyKeys() {
+
+        if (writeLegacyKeys) {
+            throw new SystemException("writeLegacyKeys must be turned off on every node before migrating legacy keys");
+        }
+
+        try {
+            int migrated = RedisHelper.execute(jedisPool, new JedisCallback<Integer>() {
+                @Override
+                public Integer doInJedis(Jedis jedis) {
+
+                    int migrated = 0;
+
+                    for (byte[] legacyKey : findAllKeys(jedis)) {
+
+                        byte[] globalTransactionId = jedis.hget(legacyKey, GLOBAL_TX_ID);
+                        byte[] branchQualifier = jedis.hget(legacyKey, BRANCH_QUALIFIER);
+
+                        if (globalTransactionId == null || branchQualifier == null) {
+                            continue;
+                        }
+
+                        byte[] key = RedisHelper.getRedisKey(keyPrefix, new TransactionXid(globalTransactionId, branchQualifier));
+
+                        if (Arrays.equals(legacyKey, key)) {
+                            continue;
+                        }
+
+                        if (jedis.renamenx(legacyKey, key) > 0) {
+                            migrated++;
+                        } else {
+                            logger.warn(String.format("legacy key %s not migrated, key %s already exists", new String(legacyKey), new String(key)));
+                        }
+                    }
+                    return migrated;
+                }
+            });
+
+            legacyKeys.clear();
+            return migrated;
+        } catch (Exception e) {
+            throw new TransactionIOException(e);
+        }
+    }
+
+    private Set<byte[]> findAllKeys(Jedis jedis) {
+
+        if (isSupportScan) {
+            List<String> allKeys = new ArrayList<String>();
+            String cursor = RedisHelper.SCAN_INIT_CURSOR;
+            ScanParams scanParams = RedisHelper.buildDefaultScanParams(keyPrefix + "*", fetchKeySize);
+            do {
+                ScanResult<String> scanResult = jedis.scan(cursor, scanParams);
+                allKeys.addAll(scanResult.getResult());
+                cursor = scanResult.getStringCursor();
+            } while (!cursor.equals(RedisHelper.SCAN_INIT_CURSOR));
+
+            Set<byte[]> allKeySet = new HashSet<byte[]>();
+
+            for (String key : allKeys) {
+                allKeySet.add(key.getBytes());
+            }
+            logger.info(String.format("find all key by scan command with pattern:%s allKeySet.size()=%d", keyPrefix + "*", allKeySet.size()));
+            return allKeySet;
+        } else {
+            return jedis.keys((keyPrefix + "*").getBytes());
+        }
+    }
+
+    private List<byte[]> serialize(Transaction transaction, PersistenceOperation operation) {
+
+        List<byte[]> params;
+
+        if (operation == PersistenceOperation.UPDATE_STATUS) {
+            params = ExpandTransactionSerializer.serializeStatus(transaction);
+        } else {
+            params = new ArrayList<byte[]>();
+
+            for (Map.Entry<byte[], byte[]> entry : ExpandTransactionSerializer.serialize(serializer, transaction).entrySet()) {
+                params.add(entry.getKey());
+                params.add(entry.getValue());
+            }
+        }
+
+        recordPayload(operation, sizeOf(params));
+        return params;
+    }
+
+    /**
+     * 带旧版本的键时（KEYS[2]），新格式的键不存在则改写旧版本的键
+     */
+    private static byte[] versionCheckedScript(long expectedVersion) {
+        return String.format("local key = KEYS[1]; if #KEYS > 1 and redis.call('exists', key) == 0 then key = KEYS[2]; end; " +
+                        "if redis.call('hget',key,'VERSION') == '%s' then redis.call('hmset', key, unpack(ARGV)); return 1; end; return 0;",
+                expectedVersion).getBytes();
+    }
+
+    private static int sizeOf(List<byte[]> params) {
+        int size = 0;
+        for (byte[] param : params) {
+            size += param.length;
+        }
+        return size;
+    }
+
+    private static int sizeOf(Map<byte[], byte[]> content) {
+        int size = 0;
+        for (Map.Entry<byte[], byte[]> entry : content.entrySet()) {
+            size += entry.getKey().length + entry.getValue().length;
+        }
+        return size;
+    }
 }
@@ -0,0 +1,65 @@
+package org.mengyun.tcctransaction.repository;
+
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.metrics.PersistenceOperation;
+
+/**
+ * 组提交中的一次写请求，operation 为 CREATE / UPDATE / UPDATE_STATUS / DELETE 之一
+ * 子类在 doWriteBatch 中为每个请求调用 complete 或 fail，失败优先
+ */
+public final class WriteRequest {
+
+    private final PersistenceOperation operation;
+
+    private final Transaction transaction;
+
+    private int result;
+
+    private Throwable failure;
+
+    boolean done;
+
+    WriteRequest(PersistenceOperation operation, Transaction transaction) {
+        this.operation = operation;
+        this.transaction = transaction;
+    }
+
+    public PersistenceOperation getOperation() {
+        return operation;
+    }
+
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    public void complete(int result) {
+        this.result = result;
+    }
+
+    public void fail(Throwable failure) {
+        if (this.failure == null) {
+            this.failure = failure;
+        }
+    }
+
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    public int getResult() {
+        return result;
+    }
+
+    int resultOrThrow() {
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw new TransactionIOException(failure);
+        }
+        return result;
+    }
+}
@@ -10,7 +10,9 @@ import org.mengyun.tcctransaction.serializer.ObjectSerializer;
 import org.mengyun.tcctransaction.utils.ByteUtils;
 
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -27,14 +29,33 @@ public class ExpandTransactionSerializer {
         map.put("STATUS".getBytes(), ByteUtils.intToBytes(transaction.getStatus().getId()));
         map.put("TRANSACTION_TYPE".getBytes(), ByteUtils.intToBytes(transaction.getTransactionType().getId()));
         map.put("RETRIED_COUNT".getBytes(), ByteUtils.intToBytes(transaction.getRetriedCount()));
-        map.put("CREATE_TIME".getBytes(), DateFormatUtils.format(transaction.getCreateTime(), "yyyy-MM-dd HH:mm:ss").getBytes());
-        map.put("LAST_UPDATE_TIME".getBytes(), DateFormatUtils.format(transaction.getLastUpdateTime(), "yyyy-MM-dd HH:mm:ss").getBytes());
+        map.put("CREATE_TIME".getBytes(), DateFormatUtils.format(transaction.getCreateTimeMillis(), "yyyy-MM-dd HH:mm:ss").getBytes());
+        map.put("LAST_UPDATE_TIME".getBytes(), DateFormatUtils.format(transaction.getLastUpdateTimeMillis(), "yyyy-MM-dd HH:mm:ss").getBytes());
         map.put("VERSION".getBytes(), ByteUtils.longToBytes(transaction.getVersion()));
         map.put("CONTENT".getBytes(), serializer.serialize(transaction));
         map.put("CONTENT_VIEW".getBytes(), JSON.toJSONString(transaction).getBytes());
         return map;
     }
 
+    /**
+     * 只包含状态相关字段的 hmset 参数，用于 updateStatus
+     * 不重写 CONTENT 和 CONTENT_VIEW，tcc-transaction-server 展示时状态等字段以各自的字段为准
+     */
+    public static List<byte[]> serializeStatus(Transaction transaction) {
+
+        List<byte[]> params = new ArrayList<byte[]>(8);
+
+        params.add("STATUS".getBytes());
+        params.add(ByteUtils.intToBytes(transaction.getStatus().getId()));
+        params.add("RETRIED_COUNT".getBytes());
+        params.add(ByteUtils.intToBytes(transaction.getRetriedCount()));
+        params.add("LAST_UPDATE_TIME".getBytes());
+        params.add(DateFormatUtils.format(transaction.getLastUpdateTimeMillis(), "yyyy-MM-dd HH:mm:ss").getBytes());
+        params.add("VERSION".getBytes());
+        params.add(ByteUtils.longToBytes(transaction.getVersion()));
+        return params;
+    }
+
     public static Transaction deserialize(ObjectSerializer serializer, Map<byte[], byte[]> map1) {
 
         Map<String, byte[]> propertyMap = new HashMap<String, byte[]>();
@@ -1,6 +1,7 @@
 package org.mengyun.tcctransaction.repository.helper;
 
 import org.apache.log4j.Logger;
+import org.mengyun.tcctransaction.api.TransactionXid;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.ScanParams;
@@ -20,7 +21,25 @@ public class RedisHelper {
     private static Logger logger = Logger.getLogger(RedisHelper.class);
 
     public static byte[] getRedisKey(String keyPrefix, Xid xid) {
-        return new StringBuilder().append(keyPrefix).append(xid.toString()).toString().getBytes();
+        if (xid instanceof TransactionXid) {
+            return ((TransactionXid) xid).toKeyBytes(keyPrefix);
+        }
+        return new StringBuilder().append(keyPrefix).append(TransactionXid.keyOf(xid)).toString().getBytes();
+    }
+
+    /**
+     * 旧版本写入的键，键中的编号为 UUID.nameUUIDFromBytes 的结果
+     */
+    public static byte[] getLegacyRedisKey(String keyPrefix, Xid xid) {
+        return new StringBuilder().append(keyPrefix).append(TransactionXid.legacyKeyOf(xid)).toString().getBytes();
+    }
+
+    /**
+     * 由十六进制的编号得到旧版本写入的键
+     */
+    public static byte[] getLegacyRedisKey(String keyPrefix, String globalTransactionId, String branchQualifier) {
+        return new StringBuilder().append(keyPrefix)
+                .append(TransactionXid.legacyKeyOf(globalTransactionId, branchQualifier)).toString().getBytes();
     }
 
     public static byte[] getRedisKey(String keyPrefix, String globalTransactionId, String branchQualifier) {
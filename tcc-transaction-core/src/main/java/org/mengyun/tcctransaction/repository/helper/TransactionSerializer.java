@@ -1,35 +1,127 @@
 package org.mengyun.tcctransaction.repository.helper;
 
+import org.mengyun.tcctransaction.SystemException;
 import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionStatus;
 import org.mengyun.tcctransaction.serializer.ObjectSerializer;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
+ * 文件仓库使用的事务信封
+ * 外层字段按固定的二进制格式写入，只有 CONTENT 交给 ObjectSerializer 序列化，
+ * 因为内置的序列化器都只能处理 Transaction，无法序列化外层的 Map。
+ * 读取时兼容旧版本以 ObjectSerializer 序列化整个 Map 的格式。
  * Created by changming.xie on 9/15/16.
  */
 public class TransactionSerializer {
 
+    private static final int MAGIC = 0x54434354; // "TCCT"
+
+    private static final byte FORMAT_VERSION = 1;
+
     public static byte[] serialize(ObjectSerializer serializer, Transaction transaction) {
-        Map<String, Object> map = new HashMap<String, Object>();
-
-        map.put("GLOBAL_TX_ID", transaction.getXid().getGlobalTransactionId());
-        map.put("BRANCH_QUALIFIER", transaction.getXid().getBranchQualifier());
-        map.put("STATUS", transaction.getStatus().getId());
-        map.put("TRANSACTION_TYPE", transaction.getTransactionType().getId());
-        map.put("RETRIED_COUNT", transaction.getRetriedCount());
-        map.put("CREATE_TIME", transaction.getCreateTime());
-        map.put("LAST_UPDATE_TIME", transaction.getLastUpdateTime());
-        map.put("VERSION", transaction.getVersion());
-        map.put("CONTENT", serializer.serialize(transaction));
-
-        return serializer.serialize(map);
+
+        byte[] globalTransactionId = transaction.getXid().getGlobalTransactionId();
+        byte[] branchQualifier = transaction.getXid().getBranchQualifier();
+        byte[] content = serializer.serialize(transaction);
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 1 + 4 + globalTransactionId.length + 4 + branchQualifier.length
+                + 4 * 3 + 8 * 3 + 4 + content.length);
+
+        buffer.putInt(MAGIC);
+        buffer.put(FORMAT_VERSION);
+        buffer.putInt(globalTransactionId.length).put(globalTransactionId);
+        buffer.putInt(branchQualifier.length).put(branchQualifier);
+        buffer.putInt(transaction.getStatus().getId());
+        buffer.putInt(transaction.getTransactionType().getId());
+        buffer.putInt(transaction.getRetriedCount());
+        buffer.putLong(transaction.getCreateTimeMillis());
+        buffer.putLong(transaction.getLastUpdateTimeMillis());
+        buffer.putLong(transaction.getVersion());
+        buffer.putInt(content.length).put(content);
+
+        return buffer.array();
     }
 
     public static Transaction deserialize(ObjectSerializer serializer, byte[] value) {
 
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+
+        if (value.length < 5 || buffer.getInt() != MAGIC) {
+            return deserializeLegacy(serializer, value);
+        }
+
+        if (buffer.get() != FORMAT_VERSION) {
+            throw new SystemException("unsupported transaction format version: " + value[4]);
+        }
+
+        try {
+            skip(buffer); // GLOBAL_TX_ID
+            skip(buffer); // BRANCH_QUALIFIER
+            int status = buffer.getInt();
+            buffer.getInt(); // TRANSACTION_TYPE
+            int retriedCount = buffer.getInt();
+            buffer.getLong(); // CREATE_TIME
+            long lastUpdateTime = buffer.getLong();
+            long version = buffer.getLong();
+
+            byte[] content = new byte[buffer.getInt()];
+            buffer.get(content);
+
+            Transaction transaction = (Transaction) serializer.deserialize(content);
+            // updateStatus 只改写外层字段，CONTENT 中的状态可能是旧的
+            transaction.changeStatus(TransactionStatus.valueOf(status));
+            transaction.resetRetriedCount(retriedCount);
+            transaction.setLastUpdateTimeMillis(lastUpdateTime);
+            transaction.setVersion(version);
+            return transaction;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new SystemException("truncated transaction content", e);
+        }
+    }
+
+    /**
+     * 当前格式中 STATUS 字段的偏移量，其后依次是 TRANSACTION_TYPE、RETRIED_COUNT、CREATE_TIME、LAST_UPDATE_TIME、VERSION
+     */
+    public static int statusOffset(Transaction transaction) {
+        return 4 + 1 + 4 + transaction.getXid().getGlobalTransactionId().length + 4 + transaction.getXid().getBranchQualifier().length;
+    }
+
+    /**
+     * 从 STATUS 到 VERSION 的定长字段，用于原地改写事务状态
+     */
+    public static byte[] serializeStatus(Transaction transaction) {
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 * 3 + 8 * 3);
+
+        buffer.putInt(transaction.getStatus().getId());
+        buffer.putInt(transaction.getTransactionType().getId());
+        buffer.putInt(transaction.getRetriedCount());
+        buffer.putLong(transaction.getCreateTimeMillis());
+        buffer.putLong(transaction.getLastUpdateTimeMillis());
+        buffer.putLong(transaction.getVersion());
+
+        return buffer.array();
+    }
+
+    /**
+     * 文件头是否为当前格式
+     */
+    public static boolean isCurrentFormat(int magic, byte formatVersion) {
+        return magic == MAGIC && formatVersion == FORMAT_VERSION;
+    }
+
+    private static void skip(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        buffer.position(buffer.position() + length);
+    }
+
+    private static Transaction deserializeLegacy(ObjectSerializer serializer, byte[] value) {
+
         Map<String, Object> map = (Map<String, Object>) serializer.deserialize(value);
 
         byte[] content = (byte[]) map.get("CONTENT");
@@ -26,6 +26,8 @@ public class KryoPoolSerializer implements ObjectSerializer<Transaction> {
             //Fix the NPE bug when deserializing Collections.
             ((Kryo.DefaultInstantiatorStrategy) kryo.getInstantiatorStrategy())
                     .setFallbackInstantiatorStrategy(new StdInstantiatorStrategy());
+            // 只替换默认序列化器，不注册类 ID，写出的类名编码与原来相同
+            kryo.addDefaultSerializer(Transaction.class, new TransactionKryoSerializer(kryo));
 
             return kryo;
         }
@@ -0,0 +1,37 @@
+package org.mengyun.tcctransaction.serializer;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
+import org.mengyun.tcctransaction.PersistedTransaction;
+import org.mengyun.tcctransaction.Transaction;
+
+/**
+ * Transaction 的 Kryo 序列化器
+ * 按 PersistedTransaction 的字段写出，字段名称和类型与 Transaction 原来的字段相同，写出的内容与 FieldSerializer 直接处理旧版 Transaction 一致。
+ */
+public class TransactionKryoSerializer extends Serializer<Transaction> {
+
+    private final FieldSerializer<PersistedTransaction> delegate;
+
+    public TransactionKryoSerializer(Kryo kryo) {
+        this.delegate = new FieldSerializer<PersistedTransaction>(kryo, PersistedTransaction.class);
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output, Transaction transaction) {
+        delegate.write(kryo, output, PersistedTransaction.of(transaction));
+    }
+
+    @Override
+    public Transaction read(Kryo kryo, Input input, Class<Transaction> type) {
+        return delegate.read(kryo, input, PersistedTransaction.class).toTransaction();
+    }
+
+    @Override
+    public Transaction copy(Kryo kryo, Transaction original) {
+        return delegate.copy(kryo, PersistedTransaction.of(original)).toTransaction();
+    }
+}
@@ -0,0 +1,57 @@
+package org.mengyun.tcctransaction.support;
+
+/**
+ * 由后台线程按固定间隔刷新的时钟，读取时只访问一个 volatile 字段
+ * 精度为刷新间隔，事务时间只用于恢复任务按秒级阈值筛选，毫秒级误差不影响语义。
+ * 不再使用时调用 shutdown 停止后台线程。
+ */
+public class CachedClock implements Clock {
+
+    private final long resolutionMillis;
+
+    private volatile long now = System.currentTimeMillis();
+
+    private volatile boolean running = true;
+
+    private final Thread ticker;
+
+    public CachedClock(long resolutionMillis) {
+        if (resolutionMillis <= 0) {
+            throw new IllegalArgumentException("resolutionMillis must be positive: " + resolutionMillis);
+        }
+        this.resolutionMillis = resolutionMillis;
+        this.ticker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, "tcc-cached-clock");
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    public long getResolutionMillis() {
+        return resolutionMillis;
+    }
+
+    public void shutdown() {
+        running = false;
+        ticker.interrupt();
+    }
+
+    private void tick() {
+        while (running) {
+            now = System.currentTimeMillis();
+            try {
+                Thread.sleep(resolutionMillis);
+            } catch (InterruptedException e) {
+                // shutdown 时退出，否则继续刷新
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.mengyun.tcctransaction.support;
+
+/**
+ * 事务创建时间、最后更新时间使用的时钟，通过 Transaction.setClock 替换
+ */
+public interface Clock {
+
+    /**
+     * 当前时间，毫秒
+     */
+    long currentTimeMillis();
+}
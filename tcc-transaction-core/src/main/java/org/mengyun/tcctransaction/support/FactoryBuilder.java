@@ -1,8 +1,10 @@
 package org.mengyun.tcctransaction.support;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
 
 /**
  * 工厂 Builder
@@ -16,13 +18,20 @@ public final class FactoryBuilder {
     }
 
     /**
-     * Bean 工厂集合
+     * Bean 工厂集合，注册很少、遍历频繁，使用写时复制
      */
-    private static List<BeanFactory> beanFactories = new ArrayList<BeanFactory>();
+    private static final List<BeanFactory> beanFactories = new CopyOnWriteArrayList<BeanFactory>();
     /**
      * 类 与 Bean工厂 的映射
      */
-    private static ConcurrentHashMap<Class, SingeltonFactory> classFactoryMap = new ConcurrentHashMap<Class, SingeltonFactory>();
+    private static final ConcurrentHashMap<Class, SingeltonFactory> classFactoryMap = new ConcurrentHashMap<Class, SingeltonFactory>();
+
+    private static final Function<Class, SingeltonFactory> CREATE_FACTORY = new Function<Class, SingeltonFactory>() {
+        @Override
+        public SingeltonFactory apply(Class clazz) {
+            return new SingeltonFactory(clazz, true);
+        }
+    };
 
     /**
      * 获取指定类单例工厂
@@ -31,21 +40,13 @@ public final class FactoryBuilder {
      * @return 单例工厂
      */
     public static <T> SingeltonFactory<T> factoryOf(Class<T> clazz) {
-
-        if (!classFactoryMap.containsKey(clazz)) {
-            //优先从 Bean 工厂集合 获取
-            for (BeanFactory beanFactory : beanFactories) {
-                if (beanFactory.isFactoryOf(clazz)) {
-                    classFactoryMap.putIfAbsent(clazz, new SingeltonFactory<T>(clazz, beanFactory.getBean(clazz)));
-                }
-            }
-            //查找不到，创建 SingeltonFactory
-            if (!classFactoryMap.containsKey(clazz)) {
-                classFactoryMap.putIfAbsent(clazz, new SingeltonFactory<T>(clazz));
-            }
+        // 已存在时直接返回，避免 computeIfAbsent 锁住哈希桶
+        SingeltonFactory<T> factory = classFactoryMap.get(clazz);
+        if (factory == null) {
+            // 只创建持有者，实例在首次 getInstance 时才从 Bean 工厂获取或创建，不在映射的计算过程中执行
+            factory = classFactoryMap.computeIfAbsent(clazz, CREATE_FACTORY);
         }
-
-        return classFactoryMap.get(clazz);
+        return factory;
     }
 
     /**
@@ -56,6 +57,20 @@ public final class FactoryBuilder {
         beanFactories.add(beanFactory);
     }
 
+    /**
+     * 注销 Bean工厂，只清除实例来自该工厂的单例工厂，之后重新查找
+     * @param beanFactory
+     */
+    public static void unregisterBeanFactory(BeanFactory beanFactory) {
+        if (beanFactories.remove(beanFactory)) {
+            for (Map.Entry<Class, SingeltonFactory> entry : classFactoryMap.entrySet()) {
+                if (entry.getValue().beanFactory == beanFactory) {
+                    classFactoryMap.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
     /**
      * 单例工厂
      * @param <T> 泛型
@@ -70,38 +85,74 @@ public final class FactoryBuilder {
          */
         private String className;
 
+        private final Class<T> clazz;
+        /**
+         * 创建实例前是否优先从 Bean 工厂集合获取
+         */
+        private final boolean lookupBeanFactories;
+        /**
+         * 实例来源的 Bean 工厂，反射创建时为空
+         */
+        private volatile BeanFactory beanFactory;
+
         public SingeltonFactory(Class<T> clazz, T instance) {
             this.className = clazz.getName();
+            this.clazz = clazz;
             this.instance = instance;
+            this.lookupBeanFactories = false;
         }
 
         public SingeltonFactory(Class<T> clazz) {
+            this(clazz, false);
+        }
+
+        SingeltonFactory(Class<T> clazz, boolean lookupBeanFactories) {
             this.className = clazz.getName();
+            this.lookupBeanFactories = lookupBeanFactories;
+            this.clazz = clazz;
         }
 
         /**
-         * 获取单例
+         * 获取单例，只在首次创建时锁住当前工厂
          * @return 单例
          */
         public T getInstance() {
 
-            if (instance == null) {
-                synchronized (SingeltonFactory.class) {
-                    if (instance == null) {
-                        try {
-                            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            T result = instance;
+            if (result == null) {
+                synchronized (this) {
+                    result = instance;
+                    if (result == null) {
+                        result = createInstance();
+                        instance = result;
+                    }
+                }
+            }
 
-                            Class<?> clazz = loader.loadClass(className);
+            return result;
+        }
 
-                            instance = (T) clazz.newInstance();
-                        } catch (Exception e) {
-                            throw new RuntimeException("Failed to create an instance of " + className, e);
-                        }
+        private T createInstance() {
+            //优先从 Bean 工厂集合 获取
+            if (lookupBeanFactories) {
+                for (BeanFactory beanFactory : beanFactories) {
+                    if (beanFactory.isFactoryOf(clazz)) {
+                        T bean = beanFactory.getBean(clazz);
+                        this.beanFactory = beanFactory;
+                        return bean;
                     }
                 }
             }
 
-            return instance;
+            try {
+                ClassLoader loader = Thread.currentThread().getContextClassLoader();
+
+                Class<?> loadedClass = loader.loadClass(className);
+
+                return (T) loadedClass.newInstance();
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to create an instance of " + className, e);
+            }
         }
 
         @Override
@@ -0,0 +1,18 @@
+package org.mengyun.tcctransaction.support;
+
+/**
+ * 直接读取 System.currentTimeMillis 的时钟，默认实现
+ */
+public final class SystemClock implements Clock {
+
+    public static final SystemClock INSTANCE = new SystemClock();
+
+    private SystemClock() {
+
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,126 @@
+package org.mengyun.tcctransaction.support;
+
+import org.mengyun.tcctransaction.SystemException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 按参与者目标类限制同时进行的 confirm / cancel 调用数，避免异步提交时压垮下游服务
+ * 超过上限的调用阻塞等待，配合虚拟线程使用时阻塞的开销很小。
+ * 限流只作用于 bind 包装过的任务：同步 confirm / cancel 和恢复任务不受影响；
+ * 持有许可期间的嵌套调用不再限流，避免同一目标的嵌套调用互相等待。
+ */
+public class TargetConcurrencyLimiter {
+
+    private static final ThreadLocal<TargetConcurrencyLimiter> CURRENT = new ThreadLocal<TargetConcurrencyLimiter>();
+
+    private final int maxConcurrencyPerTarget;
+
+    private final ConcurrentMap<Class<?>, Semaphore> semaphores = new ConcurrentHashMap<Class<?>, Semaphore>();
+
+    public TargetConcurrencyLimiter(int maxConcurrencyPerTarget) {
+        if (maxConcurrencyPerTarget <= 0) {
+            throw new IllegalArgumentException("maxConcurrencyPerTarget must be positive.");
+        }
+        this.maxConcurrencyPerTarget = maxConcurrencyPerTarget;
+    }
+
+    /**
+     * 当前线程正在执行的受限任务所用的限流器，不在受限任务中时为空
+     */
+    public static TargetConcurrencyLimiter current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 在当前线程的限流器上获取目标的许可，不在受限任务中或处于嵌套调用时返回 null
+     */
+    public static Permit enter(Class<?> targetClass) {
+
+        TargetConcurrencyLimiter limiter = CURRENT.get();
+
+        if (limiter == null) {
+            return null;
+        }
+
+        Semaphore semaphore = limiter.acquire(targetClass);
+        CURRENT.remove();
+        return new Permit(limiter, semaphore);
+    }
+
+    /**
+     * 包装任务，任务执行期间其中的参与者调用受该限流器限制
+     */
+    public Runnable bind(final Runnable task) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                TargetConcurrencyLimiter previous = CURRENT.get();
+                CURRENT.set(TargetConcurrencyLimiter.this);
+                try {
+                    task.run();
+                } finally {
+                    if (previous != null) {
+                        CURRENT.set(previous);
+                    } else {
+                        CURRENT.remove();
+                    }
+                }
+            }
+        };
+    }
+
+    public Semaphore acquire(Class<?> targetClass) {
+
+        Semaphore semaphore = semaphores.get(targetClass);
+        if (semaphore == null) {
+            Semaphore created = new Semaphore(maxConcurrencyPerTarget);
+            semaphore = semaphores.putIfAbsent(targetClass, created);
+            if (semaphore == null) {
+                semaphore = created;
+            }
+        }
+
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SystemException(e);
+        }
+        return semaphore;
+    }
+
+    public int getMaxConcurrencyPerTarget() {
+        return maxConcurrencyPerTarget;
+    }
+
+    /**
+     * 当前在该目标上进行中的调用数
+     */
+    public int getInFlight(Class<?> targetClass) {
+        Semaphore semaphore = semaphores.get(targetClass);
+        return semaphore == null ? 0 : maxConcurrencyPerTarget - semaphore.availablePermits();
+    }
+
+    /**
+     * enter 获取的许可，exit 时释放并恢复当前线程的限流器
+     */
+    public static final class Permit {
+
+        private final TargetConcurrencyLimiter limiter;
+
+        private final Semaphore semaphore;
+
+        private Permit(TargetConcurrencyLimiter limiter, Semaphore semaphore) {
+            this.limiter = limiter;
+            this.semaphore = semaphore;
+        }
+
+        public void exit() {
+            semaphore.release();
+            CURRENT.set(limiter);
+        }
+    }
+}
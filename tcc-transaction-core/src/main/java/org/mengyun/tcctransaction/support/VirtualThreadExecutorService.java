@@ -0,0 +1,133 @@
+package org.mengyun.tcctransaction.support;
+
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 每个任务一个虚拟线程的执行器，用于异步 confirm / cancel
+ * 通过反射调用 JDK 21+ 的 Thread.ofVirtual() 与 Executors.newThreadPerTaskExecutor，因此可以在 JDK 8 上编译；
+ * 运行时 JDK 不支持虚拟线程时 create 返回 null，由调用方退回平台线程池。
+ * 任务不排队、不拒绝，对下游的并发由 TransactionManager 上的 TargetConcurrencyLimiter 按参与者限制。
+ */
+public class VirtualThreadExecutorService extends AbstractExecutorService {
+
+    private static final Logger logger = Logger.getLogger(VirtualThreadExecutorService.class.getSimpleName());
+
+    private static volatile Boolean supported;
+
+    private final ExecutorService delegate;
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    private VirtualThreadExecutorService(ExecutorService delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * 实际创建一次虚拟线程构建器来探测，JDK 19 / 20 未开启 preview 时 Thread.ofVirtual() 存在但会抛出 UnsupportedOperationException
+     */
+    public static boolean isSupported() {
+        Boolean result = supported;
+        if (result == null) {
+            try {
+                Thread.class.getMethod("ofVirtual").invoke(null);
+                result = Boolean.TRUE;
+            } catch (Throwable e) {
+                result = Boolean.FALSE;
+            }
+            supported = result;
+        }
+        return result;
+    }
+
+    /**
+     * 运行时 JDK 不支持虚拟线程或创建失败时返回 null，由调用方退回平台线程池
+     */
+    public static VirtualThreadExecutorService create(String namePrefix) {
+
+        if (!isSupported()) {
+            return null;
+        }
+
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 1L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+            Method newThreadPerTaskExecutor = java.util.concurrent.Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return new VirtualThreadExecutorService((ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory));
+        } catch (Throwable e) {
+            logger.warn("create virtual thread executor failed.", e);
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+
+        activeCount.incrementAndGet();
+        try {
+            delegate.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        command.run();
+                    } finally {
+                        activeCount.decrementAndGet();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            activeCount.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * 已提交但尚未执行完的任务数
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualThreadExecutorService[active=" + activeCount.get() + "]";
+    }
+}
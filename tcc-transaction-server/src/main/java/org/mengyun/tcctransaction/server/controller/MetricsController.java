@@ -0,0 +1,24 @@
+package org.mengyun.tcctransaction.server.controller;
+
+import org.mengyun.tcctransaction.server.metrics.TransactionMetricsCollector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Prometheus 抓取入口，输出格式为 text/plain; version=0.0.4
+ */
+@Controller
+public class MetricsController {
+
+    @Autowired
+    private TransactionMetricsCollector transactionMetricsCollector;
+
+    @RequestMapping(value = "/metrics", method = RequestMethod.GET, produces = "text/plain; version=0.0.4; charset=utf-8")
+    @ResponseBody
+    public String metrics() {
+        return transactionMetricsCollector.scrape();
+    }
+}
@@ -6,20 +6,21 @@ import org.springframework.context.ApplicationContextAware;
 import org.springframework.util.CollectionUtils;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by changming.xie on 10/11/17.
  */
 public class DaoRepository implements ApplicationContextAware {
 
-    Map<String, TransactionDao> domainDaoMap = new HashMap<String, TransactionDao>();
+    Map<String, TransactionDao> domainDaoMap = new ConcurrentHashMap<String, TransactionDao>();
 
     @Override
     public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
         Map<String, TransactionDao> beans = applicationContext.getBeansOfType(TransactionDao.class);
 
         for (TransactionDao transactionDao : beans.values()) {
-            domainDaoMap.put(transactionDao.getDomain(), transactionDao);
+            addDao(transactionDao);
         }
     }
 
@@ -35,6 +36,10 @@ public class DaoRepository implements ApplicationContextAware {
     }
 
     public void addDao(TransactionDao dao) {
+        // 统一包装一层，/metrics 据此输出各 DAO 操作的耗时
+        if (!(dao instanceof MeteredTransactionDao)) {
+            dao = new MeteredTransactionDao(dao);
+        }
         domainDaoMap.put(dao.getDomain(), dao);
     }
 }
@@ -1,7 +1,9 @@
 package org.mengyun.tcctransaction.server.dao;
 
 
+import org.mengyun.tcctransaction.server.dto.DigestPageDto;
 import org.mengyun.tcctransaction.server.dto.PageDto;
+import org.mengyun.tcctransaction.server.dto.TransactionDigest;
 import org.mengyun.tcctransaction.server.vo.PageVo;
 import org.mengyun.tcctransaction.server.vo.TransactionVo;
 
@@ -11,6 +13,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -255,6 +258,46 @@ public class JdbcTransactionDao implements TransactionDao {
 
     }
 
+    @Override
+    public DigestPageDto findTransactionDigests(String cursor, int batchSize) {
+
+        Connection connection = getConnection();
+        List<TransactionDigest> digests = new ArrayList<TransactionDigest>();
+        PreparedStatement preparedStatement = null;
+        long lastId = cursor == null ? 0 : Long.parseLong(cursor);
+        try {
+            String tableName = getTableName();
+            // 按自增主键分批读取，每批只走主键索引的一段范围
+            String sql = "select TRANSACTION_ID," +
+                    "STATUS," +
+                    "RETRIED_COUNT," +
+                    "CREATE_TIME from " + tableName +
+                    " where TRANSACTION_ID > ? and IS_DELETE = 0 order by TRANSACTION_ID limit ?";
+
+            preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setLong(1, lastId);
+            preparedStatement.setInt(2, batchSize);
+
+            ResultSet resultSet = preparedStatement.executeQuery();
+
+            while (resultSet.next()) {
+                lastId = resultSet.getLong(1);
+                Timestamp createTime = resultSet.getTimestamp(4);
+                digests.add(new TransactionDigest(String.valueOf(lastId),
+                        resultSet.getInt(2),
+                        resultSet.getInt(3),
+                        createTime == null ? 0 : createTime.getTime()));
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("findTransactionDigests error", e);
+        } finally {
+            closeStatement(preparedStatement);
+            releaseConnection(connection);
+        }
+
+        return new DigestPageDto(digests, digests.size() < batchSize ? null : String.valueOf(lastId));
+    }
+
     private Integer countOfDeletedTransactions() {
         return count(IS_DELETE);
     }
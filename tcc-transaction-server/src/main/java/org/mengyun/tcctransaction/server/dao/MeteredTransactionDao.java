@@ -0,0 +1,129 @@
+package org.mengyun.tcctransaction.server.dao;
+
+import org.mengyun.tcctransaction.metrics.LatencyHistogram;
+import org.mengyun.tcctransaction.server.dto.DigestPageDto;
+import org.mengyun.tcctransaction.server.dto.PageDto;
+import org.mengyun.tcctransaction.server.vo.TransactionVo;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 统计每种 DAO 操作耗时的 TransactionDao 包装，由 DaoRepository 在注册时自动包装
+ */
+public class MeteredTransactionDao implements TransactionDao {
+
+    public enum Operation {
+        CONFIRM, CANCEL, DELETE, RESTORE, RESET_RETRY_COUNT,
+        FIND_TRANSACTIONS, FIND_DELETED_TRANSACTIONS, FIND_TRANSACTION_DIGESTS
+    }
+
+    private final TransactionDao delegate;
+
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<Operation, LatencyHistogram>(Operation.class);
+
+    public MeteredTransactionDao(TransactionDao delegate) {
+        this.delegate = delegate;
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+        }
+    }
+
+    public TransactionDao getDelegate() {
+        return delegate;
+    }
+
+    public Map<Operation, LatencyHistogram> getLatencies() {
+        return Collections.unmodifiableMap(latencies);
+    }
+
+    @Override
+    public void confirm(String globalTxId, String branchQualifier) {
+        long startNanos = System.nanoTime();
+        try {
+            delegate.confirm(globalTxId, branchQualifier);
+        } finally {
+            record(Operation.CONFIRM, startNanos);
+        }
+    }
+
+    @Override
+    public void cancel(String globalTxId, String branchQualifier) {
+        long startNanos = System.nanoTime();
+        try {
+            delegate.cancel(globalTxId, branchQualifier);
+        } finally {
+            record(Operation.CANCEL, startNanos);
+        }
+    }
+
+    @Override
+    public void delete(String globalTxId, String branchQualifier) {
+        long startNanos = System.nanoTime();
+        try {
+            delegate.delete(globalTxId, branchQualifier);
+        } finally {
+            record(Operation.DELETE, startNanos);
+        }
+    }
+
+    @Override
+    public void restore(String globalTxId, String branchQualifier) {
+        long startNanos = System.nanoTime();
+        try {
+            delegate.restore(globalTxId, branchQualifier);
+        } finally {
+            record(Operation.RESTORE, startNanos);
+        }
+    }
+
+    @Override
+    public void resetRetryCount(String globalTxId, String branchQualifier) {
+        long startNanos = System.nanoTime();
+        try {
+            delegate.resetRetryCount(globalTxId, branchQualifier);
+        } finally {
+            record(Operation.RESET_RETRY_COUNT, startNanos);
+        }
+    }
+
+    @Override
+    public String getDomain() {
+        return delegate.getDomain();
+    }
+
+    @Override
+    public PageDto<TransactionVo> findTransactions(Integer pageNum, int pageSize) {
+        long startNanos = System.nanoTime();
+        try {
+            return delegate.findTransactions(pageNum, pageSize);
+        } finally {
+            record(Operation.FIND_TRANSACTIONS, startNanos);
+        }
+    }
+
+    @Override
+    public PageDto<TransactionVo> findDeletedTransactions(Integer pageNum, int pageSize) {
+        long startNanos = System.nanoTime();
+        try {
+            return delegate.findDeletedTransactions(pageNum, pageSize);
+        } finally {
+            record(Operation.FIND_DELETED_TRANSACTIONS, startNanos);
+        }
+    }
+
+    @Override
+    public DigestPageDto findTransactionDigests(String cursor, int batchSize) {
+        long startNanos = System.nanoTime();
+        try {
+            return delegate.findTransactionDigests(cursor, batchSize);
+        } finally {
+            record(Operation.FIND_TRANSACTION_DIGESTS, startNanos);
+        }
+    }
+
+    private void record(Operation operation, long startNanos) {
+        latencies.get(operation).record(System.nanoTime() - startNanos);
+    }
+}
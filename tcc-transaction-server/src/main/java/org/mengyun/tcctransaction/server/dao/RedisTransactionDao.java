@@ -7,11 +7,14 @@ import org.mengyun.tcctransaction.repository.TransactionIOException;
 import org.mengyun.tcctransaction.repository.helper.JedisCallback;
 import org.mengyun.tcctransaction.repository.helper.RedisHelper;
 import org.mengyun.tcctransaction.server.constants.LuaScriptConstant;
+import org.mengyun.tcctransaction.server.dto.DigestPageDto;
 import org.mengyun.tcctransaction.server.dto.PageDto;
+import org.mengyun.tcctransaction.server.dto.TransactionDigest;
 import org.mengyun.tcctransaction.server.vo.TransactionVo;
 import org.mengyun.tcctransaction.utils.ByteUtils;
 import redis.clients.jedis.*;
 
+import javax.xml.bind.DatatypeConverter;
 import java.text.ParseException;
 import java.util.*;
 
@@ -58,7 +61,7 @@ public class RedisTransactionDao implements TransactionDao {
             @Override
             public Boolean doInJedis(Jedis jedis) {
 
-                byte[] key = RedisHelper.getRedisKey(getKeyPrefix(), globalTxId, branchQualifier);
+                byte[] key = resolveKey(jedis, "", globalTxId, branchQualifier);
 
                 Long result = (Long) jedis.eval(LuaScriptConstant.HSET_KEY2_IF_KKEY1_EXISTS.getBytes(),
                         3, key, key, "STATUS".getBytes(), ByteUtils.intToBytes(2));
@@ -74,7 +77,7 @@ public class RedisTransactionDao implements TransactionDao {
             @Override
             public Boolean doInJedis(Jedis jedis) {
 
-                byte[] key = RedisHelper.getRedisKey(getKeyPrefix(), globalTxId, branchQualifier);
+                byte[] key = resolveKey(jedis, "", globalTxId, branchQualifier);
 
                 Long result = (Long) jedis.eval(LuaScriptConstant.HSET_KEY2_IF_KKEY1_EXISTS.getBytes(),
                         3, key, key, "STATUS".getBytes(), ByteUtils.intToBytes(3));
@@ -89,7 +92,7 @@ public class RedisTransactionDao implements TransactionDao {
         RedisHelper.execute(jedisPool, new JedisCallback<Boolean>() {
             @Override
             public Boolean doInJedis(Jedis jedis) {
-                String key = new String(RedisHelper.getRedisKey(getKeyPrefix(), globalTxId, branchQualifier));
+                String key = new String(resolveKey(jedis, "", globalTxId, branchQualifier));
                 String delKeyName = DELETE_KEY_PREIFX + key;
                 if (jedis.del(delKeyName) > 0) {
                     return true;
@@ -106,8 +109,8 @@ public class RedisTransactionDao implements TransactionDao {
         RedisHelper.execute(jedisPool, new JedisCallback<Boolean>() {
             @Override
             public Boolean doInJedis(Jedis jedis) {
-                String restoreKeyName = new String(RedisHelper.getRedisKey(getKeyPrefix(), globalTxId, branchQualifier));
-                String deleteKeyName = DELETE_KEY_PREIFX + restoreKeyName;
+                String deleteKeyName = new String(resolveKey(jedis, DELETE_KEY_PREIFX, globalTxId, branchQualifier));
+                String restoreKeyName = deleteKeyName.substring(DELETE_KEY_PREIFX.length());
                 Long result = jedis.renamenx(deleteKeyName, restoreKeyName);
                 jedis.persist(restoreKeyName);
                 return result > 0;
@@ -122,7 +125,7 @@ public class RedisTransactionDao implements TransactionDao {
             @Override
             public Boolean doInJedis(Jedis jedis) {
 
-                byte[] key = RedisHelper.getRedisKey(getKeyPrefix(), globalTxId, branchQualifier);
+                byte[] key = resolveKey(jedis, "", globalTxId, branchQualifier);
 
 
                 Long result = (Long) jedis.eval(LuaScriptConstant.HSET_KEY2_IF_KKEY1_EXISTS.getBytes(),
@@ -224,6 +227,63 @@ public class RedisTransactionDao implements TransactionDao {
         return pageDto;
     }
 
+    @Override
+    public DigestPageDto findTransactionDigests(final String cursor, final int batchSize) {
+
+        return RedisHelper.execute(jedisPool, new JedisCallback<DigestPageDto>() {
+            @Override
+            public DigestPageDto doInJedis(Jedis jedis) {
+
+                List<String> keys;
+                String nextCursor;
+
+                if (RedisHelper.isSupportScanCommand(jedis)) {
+                    ScanParams scanParams = RedisHelper.buildDefaultScanParams(getKeyPrefix() + "*", batchSize);
+                    ScanResult<String> scanResult = jedis.scan(cursor == null ? RedisHelper.SCAN_INIT_CURSOR : cursor, scanParams);
+                    keys = scanResult.getResult();
+                    nextCursor = scanResult.getStringCursor().equals(RedisHelper.SCAN_INIT_CURSOR) ? null : scanResult.getStringCursor();
+                } else {
+                    keys = new ArrayList<String>(jedis.keys(getKeyPrefix() + "*"));
+                    nextCursor = null;
+                }
+
+                Pipeline pipeline = jedis.pipelined();
+
+                for (String key : keys) {
+                    pipeline.hmget(key.getBytes(), "STATUS".getBytes(), "RETRIED_COUNT".getBytes(), "CREATE_TIME".getBytes());
+                }
+
+                List<Object> values = pipeline.syncAndReturnAll();
+                List<TransactionDigest> digests = new ArrayList<TransactionDigest>(keys.size());
+
+                for (int i = 0; i < keys.size(); i++) {
+                    List<byte[]> fields = (List<byte[]>) values.get(i);
+
+                    // 扫描与读取之间被删除的事务
+                    if (fields.get(0) == null) {
+                        continue;
+                    }
+
+                    long createTime = 0;
+                    if (fields.get(2) != null) {
+                        try {
+                            createTime = DateUtils.parseDate(new String(fields.get(2)), "yyyy-MM-dd HH:mm:ss").getTime();
+                        } catch (ParseException e) {
+                            logger.warn("invalid CREATE_TIME of key " + keys.get(i));
+                        }
+                    }
+
+                    digests.add(new TransactionDigest(keys.get(i),
+                            ByteUtils.bytesToInt(fields.get(0)),
+                            fields.get(1) == null ? 0 : ByteUtils.bytesToInt(fields.get(1)),
+                            createTime));
+                }
+
+                return new DigestPageDto(digests, nextCursor);
+            }
+        });
+    }
+
     private List<TransactionVo> buildTransitionVos(List<Object> result) {
         List<TransactionVo> list = new ArrayList<TransactionVo>();
 
@@ -242,12 +302,12 @@ public class RedisTransactionDao implements TransactionDao {
                 TransactionVo transactionVo = new TransactionVo();
                 transactionVo.setDomain(domain);
                 if (propertyMap.get("GLOBAL_TX_ID") != null) {
-                    transactionVo.setGlobalTxId(UUID.nameUUIDFromBytes(propertyMap.get("GLOBAL_TX_ID")).toString());
+                    transactionVo.setGlobalTxId(DatatypeConverter.printHexBinary(propertyMap.get("GLOBAL_TX_ID")));
                 } else {
                     continue;
                 }
                 if (propertyMap.get("BRANCH_QUALIFIER") != null) {
-                    transactionVo.setBranchQualifier(UUID.nameUUIDFromBytes(propertyMap.get("BRANCH_QUALIFIER")).toString());
+                    transactionVo.setBranchQualifier(DatatypeConverter.printHexBinary(propertyMap.get("BRANCH_QUALIFIER")));
                 } else {
                     continue;
                 }
@@ -286,4 +346,22 @@ public class RedisTransactionDao implements TransactionDao {
         return keySuffix + ":";
     }
 
+    /**
+     * 页面上的编号为十六进制，对应新格式的键；新格式的键不存在时使用旧版本写入的键
+     */
+    private byte[] resolveKey(Jedis jedis, String prefix, String globalTxId, String branchQualifier) {
+        byte[] key = RedisHelper.getRedisKey(prefix + getKeyPrefix(), globalTxId, branchQualifier);
+        if (jedis.exists(key)) {
+            return key;
+        }
+
+        try {
+            byte[] legacyKey = RedisHelper.getLegacyRedisKey(prefix + getKeyPrefix(), globalTxId, branchQualifier);
+            return jedis.exists(legacyKey) ? legacyKey : key;
+        } catch (IllegalArgumentException e) {
+            // 编号不是十六进制，按原样使用
+            return key;
+        }
+    }
+
 }
@@ -1,5 +1,6 @@
 package org.mengyun.tcctransaction.server.dao;
 
+import org.mengyun.tcctransaction.server.dto.DigestPageDto;
 import org.mengyun.tcctransaction.server.dto.PageDto;
 import org.mengyun.tcctransaction.server.vo.TransactionVo;
 
@@ -25,5 +26,13 @@ public interface TransactionDao {
     PageDto<TransactionVo> findTransactions(Integer pageNum, int pageSize);
 
     PageDto<TransactionVo> findDeletedTransactions(Integer pageNum, int pageSize);
+
+    /**
+     * 按游标分批读取未删除事务的摘要，供 /metrics 增量统计
+     *
+     * @param cursor    上一批返回的游标，null 表示从头开始
+     * @param batchSize 每批最多返回的条数
+     */
+    DigestPageDto findTransactionDigests(String cursor, int batchSize);
 }
 
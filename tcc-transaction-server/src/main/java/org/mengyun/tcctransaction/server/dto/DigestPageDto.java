@@ -0,0 +1,27 @@
+package org.mengyun.tcctransaction.server.dto;
+
+import java.util.List;
+
+/**
+ * 按游标分批读取的事务摘要
+ * nextCursor 为 null 表示已经遍历完一轮
+ */
+public class DigestPageDto {
+
+    private final List<TransactionDigest> data;
+
+    private final String nextCursor;
+
+    public DigestPageDto(List<TransactionDigest> data, String nextCursor) {
+        this.data = data;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<TransactionDigest> getData() {
+        return data;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,38 @@
+package org.mengyun.tcctransaction.server.dto;
+
+/**
+ * 统计用的事务摘要，只包含 /metrics 需要的字段
+ */
+public class TransactionDigest {
+
+    private final String key;
+
+    private final int status;
+
+    private final int retriedCount;
+
+    private final long createTime;
+
+    public TransactionDigest(String key, int status, int retriedCount, long createTime) {
+        this.key = key;
+        this.status = status;
+        this.retriedCount = retriedCount;
+        this.createTime = createTime;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public int getRetriedCount() {
+        return retriedCount;
+    }
+
+    public long getCreateTime() {
+        return createTime;
+    }
+}
@@ -0,0 +1,175 @@
+package org.mengyun.tcctransaction.server.metrics;
+
+import org.mengyun.tcctransaction.server.dto.TransactionDigest;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 单个 domain 的未完成事务统计
+ * 每次 apply 一批摘要，按 key 增量更新状态计数和重试次数分布；
+ * 一轮遍历结束（endCycle）时，移除本轮没有再出现的事务（已完成或被删除）。
+ * 所有方法由 TransactionMetricsCollector 的刷新线程和 /metrics 请求线程调用，统一在 this 上同步。
+ */
+public class DomainTransactionStats {
+
+    static final int[] RETRY_BUCKETS = {0, 1, 2, 3, 5, 10, 20, 50};
+
+    static final long[] AGE_BUCKETS_SECONDS = {10, 60, 300, 900, 3600, 6 * 3600, 24 * 3600};
+
+    private final String domain;
+
+    private final Map<String, TransactionDigest> digests = new HashMap<String, TransactionDigest>();
+
+    private final Set<String> seenInCycle = new HashSet<String>();
+
+    private final Map<Integer, Integer> statusCounts = new TreeMap<Integer, Integer>();
+
+    private final long[] retryBucketCounts = new long[RETRY_BUCKETS.length + 1];
+
+    private long retrySum;
+
+    private String cursor;
+
+    private long completedCycles;
+
+    private long lastCycleCompletedTime;
+
+    private long scanErrors;
+
+    public DomainTransactionStats(String domain) {
+        this.domain = domain;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    synchronized String getCursor() {
+        return cursor;
+    }
+
+    synchronized void apply(Iterable<TransactionDigest> batch, String nextCursor) {
+
+        for (TransactionDigest digest : batch) {
+            seenInCycle.add(digest.getKey());
+            TransactionDigest previous = digests.put(digest.getKey(), digest);
+            if (previous != null) {
+                remove(previous);
+            }
+            add(digest);
+        }
+
+        cursor = nextCursor;
+
+        if (nextCursor == null) {
+            endCycle();
+        }
+    }
+
+    synchronized void scanFailed() {
+        scanErrors++;
+    }
+
+    private void endCycle() {
+
+        if (digests.size() != seenInCycle.size()) {
+            Iterator<TransactionDigest> iterator = digests.values().iterator();
+            while (iterator.hasNext()) {
+                TransactionDigest digest = iterator.next();
+                if (!seenInCycle.contains(digest.getKey())) {
+                    iterator.remove();
+                    remove(digest);
+                }
+            }
+        }
+
+        seenInCycle.clear();
+        completedCycles++;
+        lastCycleCompletedTime = System.currentTimeMillis();
+    }
+
+    private void add(TransactionDigest digest) {
+        Integer count = statusCounts.get(digest.getStatus());
+        statusCounts.put(digest.getStatus(), count == null ? 1 : count + 1);
+        retryBucketCounts[retryBucketOf(digest.getRetriedCount())]++;
+        retrySum += digest.getRetriedCount();
+    }
+
+    private void remove(TransactionDigest digest) {
+        Integer count = statusCounts.get(digest.getStatus());
+        if (count == 1) {
+            statusCounts.remove(digest.getStatus());
+        } else {
+            statusCounts.put(digest.getStatus(), count - 1);
+        }
+        retryBucketCounts[retryBucketOf(digest.getRetriedCount())]--;
+        retrySum -= digest.getRetriedCount();
+    }
+
+    private static int retryBucketOf(int retriedCount) {
+        for (int i = 0; i < RETRY_BUCKETS.length; i++) {
+            if (retriedCount <= RETRY_BUCKETS[i]) {
+                return i;
+            }
+        }
+        return RETRY_BUCKETS.length;
+    }
+
+    /**
+     * 拷贝当前统计，供输出使用
+     * 事务年龄随时间变化，只能在此时根据内存中的摘要计算，不会访问 DAO
+     */
+    synchronized Snapshot snapshot(long now) {
+
+        Snapshot snapshot = new Snapshot();
+        snapshot.statusCounts = new TreeMap<Integer, Integer>(statusCounts);
+        snapshot.retryBucketCounts = retryBucketCounts.clone();
+        snapshot.retrySum = retrySum;
+        snapshot.total = digests.size();
+        snapshot.ageBucketCounts = new long[AGE_BUCKETS_SECONDS.length + 1];
+
+        for (TransactionDigest digest : digests.values()) {
+            double age = Math.max(0, now - digest.getCreateTime()) / 1000.0;
+            int i = 0;
+            while (i < AGE_BUCKETS_SECONDS.length && age > AGE_BUCKETS_SECONDS[i]) {
+                i++;
+            }
+            snapshot.ageBucketCounts[i]++;
+            snapshot.ageSum += age;
+            snapshot.oldestAge = Math.max(snapshot.oldestAge, age);
+        }
+
+        snapshot.completedCycles = completedCycles;
+        snapshot.lastCycleCompletedTime = lastCycleCompletedTime;
+        snapshot.scanErrors = scanErrors;
+        return snapshot;
+    }
+
+    static class Snapshot {
+
+        Map<Integer, Integer> statusCounts;
+
+        long[] retryBucketCounts;
+
+        long retrySum;
+
+        long total;
+
+        long[] ageBucketCounts;
+
+        double ageSum;
+
+        double oldestAge;
+
+        long completedCycles;
+
+        long lastCycleCompletedTime;
+
+        long scanErrors;
+    }
+}
@@ -0,0 +1,229 @@
+package org.mengyun.tcctransaction.server.metrics;
+
+import org.apache.log4j.Logger;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.metrics.LatencyHistogram;
+import org.mengyun.tcctransaction.server.dao.DaoRepository;
+import org.mengyun.tcctransaction.server.dao.MeteredTransactionDao;
+import org.mengyun.tcctransaction.server.dao.TransactionDao;
+import org.mengyun.tcctransaction.server.dto.DigestPageDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按 domain 汇总 DaoRepository 中各 TransactionDao 的事务统计，输出 Prometheus 文本格式
+ * 后台线程每隔 refreshIntervalSeconds 秒为每个 domain 读取若干批事务摘要（findTransactionDigests），
+ * 增量更新 DomainTransactionStats；/metrics 请求只读取内存中的统计，不访问 DAO。
+ * 一个 domain 的数据遍历完一轮后，统计中才会去掉已完成的事务，刷新间隔和批大小决定了统计的滞后程度。
+ */
+@Component
+public class TransactionMetricsCollector {
+
+    private static final Logger logger = Logger.getLogger(TransactionMetricsCollector.class);
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    @Autowired
+    private DaoRepository daoRepository;
+
+    @Value("${tcc.metrics.refreshIntervalSeconds:5}")
+    private int refreshIntervalSeconds = 5;
+
+    @Value("${tcc.metrics.batchSize:500}")
+    private int batchSize = 500;
+
+    @Value("${tcc.metrics.maxBatchesPerRefresh:20}")
+    private int maxBatchesPerRefresh = 20;
+
+    private final Map<String, DomainTransactionStats> domainStats = new ConcurrentHashMap<String, DomainTransactionStats>();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "tcc-metrics-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, 0, refreshIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public void refresh() {
+        for (String domain : daoRepository.getDomains()) {
+            refresh(domain, daoRepository.getDao(domain));
+        }
+    }
+
+    private void refresh(String domain, TransactionDao dao) {
+
+        DomainTransactionStats stats = getStats(domain);
+
+        try {
+            for (int i = 0; i < maxBatchesPerRefresh; i++) {
+                DigestPageDto page = dao.findTransactionDigests(stats.getCursor(), batchSize);
+                stats.apply(page.getData(), page.getNextCursor());
+                if (page.getNextCursor() == null) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            stats.scanFailed();
+            logger.warn(String.format("refresh transaction metrics of domain %s failed", domain), e);
+        }
+    }
+
+    private DomainTransactionStats getStats(String domain) {
+        DomainTransactionStats stats = domainStats.get(domain);
+        if (stats == null) {
+            domainStats.put(domain, new DomainTransactionStats(domain));
+            stats = domainStats.get(domain);
+        }
+        return stats;
+    }
+
+    public String scrape() {
+
+        long now = System.currentTimeMillis();
+        StringBuilder builder = new StringBuilder(4096);
+
+        Map<String, DomainTransactionStats.Snapshot> snapshots = new TreeMap<String, DomainTransactionStats.Snapshot>();
+        for (String domain : daoRepository.getDomains()) {
+            snapshots.put(domain, getStats(domain).snapshot(now));
+        }
+
+        header(builder, "tcc_transactions_outstanding", "gauge", "Transactions not yet deleted, by domain and status.");
+        for (Map.Entry<String, DomainTransactionStats.Snapshot> entry : snapshots.entrySet()) {
+            for (Map.Entry<Integer, Integer> status : entry.getValue().statusCounts.entrySet()) {
+                builder.append("tcc_transactions_outstanding{domain=\"").append(escape(entry.getKey()))
+                        .append("\",status=\"").append(statusName(status.getKey())).append("\"} ")
+                        .append(status.getValue()).append('\n');
+            }
+        }
+
+        header(builder, "tcc_transaction_retries", "histogram", "Retried count of outstanding transactions.");
+        for (Map.Entry<String, DomainTransactionStats.Snapshot> entry : snapshots.entrySet()) {
+            DomainTransactionStats.Snapshot snapshot = entry.getValue();
+            long cumulative = 0;
+            for (int i = 0; i < DomainTransactionStats.RETRY_BUCKETS.length; i++) {
+                cumulative += snapshot.retryBucketCounts[i];
+                bucket(builder, "tcc_transaction_retries", entry.getKey(), String.valueOf(DomainTransactionStats.RETRY_BUCKETS[i]), cumulative);
+            }
+            bucket(builder, "tcc_transaction_retries", entry.getKey(), "+Inf", snapshot.total);
+            sample(builder, "tcc_transaction_retries_sum", entry.getKey(), snapshot.retrySum);
+            sample(builder, "tcc_transaction_retries_count", entry.getKey(), snapshot.total);
+        }
+
+        header(builder, "tcc_transaction_age_seconds", "histogram", "Age (now - create time) of outstanding transactions.");
+        for (Map.Entry<String, DomainTransactionStats.Snapshot> entry : snapshots.entrySet()) {
+            DomainTransactionStats.Snapshot snapshot = entry.getValue();
+            long cumulative = 0;
+            for (int i = 0; i < DomainTransactionStats.AGE_BUCKETS_SECONDS.length; i++) {
+                cumulative += snapshot.ageBucketCounts[i];
+                bucket(builder, "tcc_transaction_age_seconds", entry.getKey(), String.valueOf(DomainTransactionStats.AGE_BUCKETS_SECONDS[i]), cumulative);
+            }
+            bucket(builder, "tcc_transaction_age_seconds", entry.getKey(), "+Inf", snapshot.total);
+            sample(builder, "tcc_transaction_age_seconds_sum", entry.getKey(), snapshot.ageSum);
+            sample(builder, "tcc_transaction_age_seconds_count", entry.getKey(), snapshot.total);
+        }
+
+        header(builder, "tcc_transaction_oldest_age_seconds", "gauge", "Age of the oldest outstanding transaction.");
+        for (Map.Entry<String, DomainTransactionStats.Snapshot> entry : snapshots.entrySet()) {
+            sample(builder, "tcc_transaction_oldest_age_seconds", entry.getKey(), entry.getValue().oldestAge);
+        }
+
+        header(builder, "tcc_metrics_scan_cycles_total", "counter", "Completed incremental scans over the transaction log.");
+        for (Map.Entry<String, DomainTransactionStats.Snapshot> entry : snapshots.entrySet()) {
+            sample(builder, "tcc_metrics_scan_cycles_total", entry.getKey(), entry.getValue().completedCycles);
+        }
+
+        header(builder, "tcc_metrics_last_scan_cycle_timestamp_seconds", "gauge", "Time the last incremental scan completed.");
+        for (Map.Entry<String, DomainTransactionStats.Snapshot> entry : snapshots.entrySet()) {
+            sample(builder, "tcc_metrics_last_scan_cycle_timestamp_seconds", entry.getKey(), entry.getValue().lastCycleCompletedTime / 1000.0);
+        }
+
+        header(builder, "tcc_metrics_scan_errors_total", "counter", "Failed incremental scan refreshes.");
+        for (Map.Entry<String, DomainTransactionStats.Snapshot> entry : snapshots.entrySet()) {
+            sample(builder, "tcc_metrics_scan_errors_total", entry.getKey(), entry.getValue().scanErrors);
+        }
+
+        header(builder, "tcc_dao_latency_seconds", "summary", "TransactionDao call latency.");
+        for (String domain : snapshots.keySet()) {
+            TransactionDao dao = daoRepository.getDao(domain);
+            if (!(dao instanceof MeteredTransactionDao)) {
+                continue;
+            }
+            for (Map.Entry<MeteredTransactionDao.Operation, LatencyHistogram> entry : ((MeteredTransactionDao) dao).getLatencies().entrySet()) {
+                LatencyHistogram latency = entry.getValue();
+                long count = latency.getCount();
+                if (count == 0) {
+                    continue;
+                }
+                String labels = "domain=\"" + escape(domain) + "\",operation=\"" + entry.getKey().name().toLowerCase() + "\"";
+                for (double quantile : QUANTILES) {
+                    builder.append("tcc_dao_latency_seconds{").append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+                            .append(latency.getValueAtPercentile(quantile * 100, TimeUnit.SECONDS)).append('\n');
+                }
+                builder.append("tcc_dao_latency_seconds_sum{").append(labels).append("} ")
+                        .append(latency.getMean() * count / TimeUnit.SECONDS.toNanos(1)).append('\n');
+                builder.append("tcc_dao_latency_seconds_count{").append(labels).append("} ").append(count).append('\n');
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private static void header(StringBuilder builder, String name, String type, String help) {
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void bucket(StringBuilder builder, String name, String domain, String le, long value) {
+        builder.append(name).append("_bucket{domain=\"").append(escape(domain)).append("\",le=\"").append(le).append("\"} ")
+                .append(value).append('\n');
+    }
+
+    private static void sample(StringBuilder builder, String name, String domain, Object value) {
+        builder.append(name).append("{domain=\"").append(escape(domain)).append("\"} ").append(value).append('\n');
+    }
+
+    private static String statusName(int status) {
+        for (TransactionStatus transactionStatus : TransactionStatus.values()) {
+            if (transactionStatus.getId() == status) {
+                return transactionStatus.name();
+            }
+        }
+        return String.valueOf(status);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
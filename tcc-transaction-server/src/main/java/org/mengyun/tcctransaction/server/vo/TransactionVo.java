@@ -5,6 +5,7 @@ import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.mengyun.tcctransaction.api.TransactionStatus;
 
 import java.util.Date;
 
@@ -40,6 +41,18 @@ public class TransactionVo {
         logger.info("start parse contentView");
         JSONObject obj = JSON.parseObject(contentView);
 
+        // 只更新状态时不重写 CONTENT_VIEW，其中的状态、重试次数可能是旧值，以各自的字段为准
+        if (status != null) {
+            obj.put("status", TransactionStatus.valueOf(status));
+        }
+        if (retriedCount != null) {
+            obj.put("retriedCount", retriedCount);
+        }
+        if (lastUpdateTime != null) {
+            obj.put("lastUpdateTime", lastUpdateTime);
+        }
+        contentView = obj.toJSONString();
+
         // participants 复数
         JSONArray participants = obj.getJSONArray("participants");
         if (participants != null) {
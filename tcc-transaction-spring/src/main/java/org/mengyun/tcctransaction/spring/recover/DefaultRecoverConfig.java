@@ -26,6 +26,14 @@ public class DefaultRecoverConfig implements RecoverConfig {
 
     private int asyncTerminateThreadWorkQueueSize = 512;
 
+    private int maxParticipantParallelism = 1;
+
+    private boolean coalesceEnlistmentWrites = false;
+
+    private boolean asyncTerminateVirtualThreads = false;
+
+    private int asyncTerminateMaxConcurrencyPerTarget = 64;
+
     private Set<Class<? extends Exception>> delayCancelExceptions = new HashSet<Class<? extends Exception>>();
 
     public DefaultRecoverConfig() {
@@ -73,6 +81,22 @@ public class DefaultRecoverConfig implements RecoverConfig {
         this.asyncTerminateThreadWorkQueueSize = asyncTerminateThreadWorkQueueSize;
     }
 
+    public void setMaxParticipantParallelism(int maxParticipantParallelism) {
+        this.maxParticipantParallelism = maxParticipantParallelism;
+    }
+
+    public void setCoalesceEnlistmentWrites(boolean coalesceEnlistmentWrites) {
+        this.coalesceEnlistmentWrites = coalesceEnlistmentWrites;
+    }
+
+    public void setAsyncTerminateVirtualThreads(boolean asyncTerminateVirtualThreads) {
+        this.asyncTerminateVirtualThreads = asyncTerminateVirtualThreads;
+    }
+
+    public void setAsyncTerminateMaxConcurrencyPerTarget(int asyncTerminateMaxConcurrencyPerTarget) {
+        this.asyncTerminateMaxConcurrencyPerTarget = asyncTerminateMaxConcurrencyPerTarget;
+    }
+
     @Override
     public void setDelayCancelExceptions(Set<Class<? extends Exception>> delayCancelExceptions) {
         this.delayCancelExceptions.addAll(delayCancelExceptions);
@@ -98,4 +122,24 @@ public class DefaultRecoverConfig implements RecoverConfig {
         return this.asyncTerminateThreadWorkQueueSize;
     }
 
+    @Override
+    public int getMaxParticipantParallelism() {
+        return this.maxParticipantParallelism;
+    }
+
+    @Override
+    public boolean isCoalesceEnlistmentWrites() {
+        return this.coalesceEnlistmentWrites;
+    }
+
+    @Override
+    public boolean isAsyncTerminateVirtualThreads() {
+        return this.asyncTerminateVirtualThreads;
+    }
+
+    @Override
+    public int getAsyncTerminateMaxConcurrencyPerTarget() {
+        return this.asyncTerminateMaxConcurrencyPerTarget;
+    }
+
 }
@@ -3,6 +3,7 @@ package org.mengyun.tcctransaction.spring.support;
 import org.mengyun.tcctransaction.support.BeanFactory;
 import org.mengyun.tcctransaction.support.FactoryBuilder;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 
@@ -11,7 +12,7 @@ import java.util.Map;
 /**
  * Created by changmingxie on 11/22/15.
  */
-public class SpringBeanFactory implements BeanFactory, ApplicationContextAware {
+public class SpringBeanFactory implements BeanFactory, ApplicationContextAware, DisposableBean {
 
     private ApplicationContext applicationContext;
 
@@ -21,6 +22,14 @@ public class SpringBeanFactory implements BeanFactory, ApplicationContextAware {
         FactoryBuilder.registerBeanFactory(this);
     }
 
+    /**
+     * 容器关闭（包括刷新失败）时注销，避免已关闭的容器继续参与查找
+     */
+    @Override
+    public void destroy() {
+        FactoryBuilder.unregisterBeanFactory(this);
+    }
+
     @Override
     public boolean isFactoryOf(Class clazz) {
         Map map = this.applicationContext.getBeansOfType(clazz);
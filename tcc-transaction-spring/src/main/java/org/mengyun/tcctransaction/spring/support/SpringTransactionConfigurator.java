@@ -1,11 +1,24 @@
 package org.mengyun.tcctransaction.spring.support;
 
+import org.apache.log4j.Logger;
+import org.mengyun.tcctransaction.AsyncTransactionRepository;
+import org.mengyun.tcctransaction.Terminator;
+import org.mengyun.tcctransaction.Transaction;
 import org.mengyun.tcctransaction.TransactionManager;
 import org.mengyun.tcctransaction.TransactionRepository;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.api.XidGenerator;
+import org.mengyun.tcctransaction.metrics.InstrumentedThreadPoolExecutor;
+import org.mengyun.tcctransaction.metrics.ParticipantProfiler;
+import org.mengyun.tcctransaction.metrics.TransactionListener;
 import org.mengyun.tcctransaction.recover.RecoverConfig;
 import org.mengyun.tcctransaction.repository.CachableTransactionRepository;
+import org.mengyun.tcctransaction.repository.MeteredTransactionRepository;
 import org.mengyun.tcctransaction.spring.recover.DefaultRecoverConfig;
+import org.mengyun.tcctransaction.support.Clock;
+import org.mengyun.tcctransaction.support.TargetConcurrencyLimiter;
 import org.mengyun.tcctransaction.support.TransactionConfigurator;
+import org.mengyun.tcctransaction.support.VirtualThreadExecutorService;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.concurrent.*;
@@ -16,7 +29,11 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class SpringTransactionConfigurator implements TransactionConfigurator {
 
-    private static volatile ExecutorService executorService = null;
+    private static final Logger logger = Logger.getLogger(SpringTransactionConfigurator.class.getSimpleName());
+
+    private static volatile InstrumentedThreadPoolExecutor executorService = null;
+
+    private static volatile VirtualThreadExecutorService virtualThreadExecutorService = null;
 
     @Autowired
     private TransactionRepository transactionRepository;
@@ -24,21 +41,63 @@ public class SpringTransactionConfigurator implements TransactionConfigurator {
     @Autowired(required = false)
     private RecoverConfig recoverConfig = DefaultRecoverConfig.INSTANCE;
 
+    @Autowired(required = false)
+    private TransactionListener transactionListener;
+
+    @Autowired(required = false)
+    private ParticipantProfiler participantProfiler;
+
+    @Autowired(required = false)
+    private AsyncTransactionRepository asyncTransactionRepository;
+
+    @Autowired(required = false)
+    private XidGenerator xidGenerator;
+
+    @Autowired(required = false)
+    private Clock clock;
 
     private TransactionManager transactionManager;
 
     public void init() {
         transactionManager = new TransactionManager();
         transactionManager.setTransactionRepository(transactionRepository);
+        transactionManager.setTransactionListener(transactionListener);
+        transactionManager.setAsyncTransactionRepository(asyncTransactionRepository);
+
+        if (participantProfiler != null) {
+            Terminator.setParticipantProfiler(participantProfiler);
+        }
+
+        if (xidGenerator != null) {
+            TransactionXid.setXidGenerator(xidGenerator);
+        }
 
-        if (executorService == null) {
+        if (clock != null) {
+            Transaction.setClock(clock);
+        }
+
+        if (recoverConfig.isAsyncTerminateVirtualThreads() && virtualThreadExecutorService == null) {
+            synchronized (SpringTransactionConfigurator.class) {
+                if (virtualThreadExecutorService == null) {
+                    virtualThreadExecutorService = VirtualThreadExecutorService.create("tcc-async-terminate-virtual-");
+
+                    if (virtualThreadExecutorService == null) {
+                        logger.warn("virtual threads are not supported by the running JDK, async confirm / cancel uses the platform thread pool.");
+                    }
+                }
+            }
+        }
+
+        boolean useVirtualThreads = recoverConfig.isAsyncTerminateVirtualThreads() && virtualThreadExecutorService != null;
+
+        if (!useVirtualThreads && executorService == null) {
 
 
             Executors.defaultThreadFactory();
             synchronized (SpringTransactionConfigurator.class) {
 
                 if (executorService == null) {
-                    executorService = new ThreadPoolExecutor(
+                    executorService = new InstrumentedThreadPoolExecutor(
                             recoverConfig.getAsyncTerminateThreadCorePoolSize(),
                             recoverConfig.getAsyncTerminateThreadMaxPoolSize(),
                             5L,
@@ -75,10 +134,21 @@ public class SpringTransactionConfigurator implements TransactionConfigurator {
             }
         }
 
-        transactionManager.setExecutorService(executorService);
+        if (useVirtualThreads) {
+            transactionManager.setExecutorService(virtualThreadExecutorService);
+            //限流器属于当前事务管理器，只作用于提交到异步执行器的 confirm / cancel 任务
+            transactionManager.setAsyncTerminateConcurrencyLimiter(new TargetConcurrencyLimiter(recoverConfig.getAsyncTerminateMaxConcurrencyPerTarget()));
+        } else {
+            transactionManager.setExecutorService(executorService);
+        }
+        transactionManager.setMaxParticipantParallelism(recoverConfig.getMaxParticipantParallelism());
+        transactionManager.setCoalesceEnlistmentWrites(recoverConfig.isCoalesceEnlistmentWrites());
+
+        TransactionRepository repository = transactionRepository instanceof MeteredTransactionRepository
+                ? ((MeteredTransactionRepository) transactionRepository).getDelegate() : transactionRepository;
 
-        if (transactionRepository instanceof CachableTransactionRepository) {
-            ((CachableTransactionRepository) transactionRepository).setExpireDuration(recoverConfig.getRecoverDuration());
+        if (repository instanceof CachableTransactionRepository) {
+            ((CachableTransactionRepository) repository).setExpireDuration(recoverConfig.getRecoverDuration());
         }
     }
 
@@ -96,4 +166,19 @@ public class SpringTransactionConfigurator implements TransactionConfigurator {
     public RecoverConfig getRecoverConfig() {
         return recoverConfig;
     }
+
+    /**
+     * 异步 confirm / cancel 使用的线程池，所有 SpringTransactionConfigurator 共享
+     * 可查询队列深度、活动线程数、任务排队与执行时间，以及退化为调用方线程执行的次数
+     */
+    public InstrumentedThreadPoolExecutor getAsyncTerminateExecutor() {
+        return executorService;
+    }
+
+    /**
+     * 开启 asyncTerminateVirtualThreads 且 JDK 支持虚拟线程时使用的执行器，否则为空
+     */
+    public VirtualThreadExecutorService getVirtualThreadExecutor() {
+        return virtualThreadExecutorService;
+    }
 }
@@ -0,0 +1,271 @@
+package org.mengyun.tcctransaction.unittest.load;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.mengyun.tcctransaction.TransactionRepository;
+import org.mengyun.tcctransaction.metrics.InstrumentedThreadPoolExecutor;
+import org.mengyun.tcctransaction.spring.support.SpringTransactionConfigurator;
+import org.mengyun.tcctransaction.support.VirtualThreadExecutorService;
+import org.mengyun.tcctransaction.unittest.client.TransferService;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 开环压测：按固定到达速率发起 TransferService 的事务，不因系统变慢而降低发起速率。
+ * 每个请求的响应时间从计划发起时间算起，避免协调遗漏（coordinated omission）掩盖排队造成的长尾。
+ * 结束后报告吞吐量、延迟分位数，以及仓库中残留的事务数。
+ * 事务日志仓库使用内嵌 H2 或本地文件，不依赖外部服务。
+ * <p>
+ * java -cp ... org.mengyun.tcctransaction.unittest.load.LoadDriver
+ * 可选参数（系统属性）：
+ * -Drepository=h2|file -Drate=500 -Dduration=30 -Dwarmup=5 -Dthreads=64
+ * -Dscenarios=transfer,transferWithMultipleTier|all -Dquiet=true
+ * -Dtcc.load.coalesceEnlistmentWrites=true -Dtcc.load.deferredDeleteBatchSize=64
+ * -Dtcc.load.groupCommitMaxBatchSize=64（仅 h2）-Dtcc.load.asyncTerminateVirtualThreads=true
+ */
+public class LoadDriver {
+
+    private static final long FROM_ACCOUNT_ID = 1;
+
+    private static final long TO_ACCOUNT_ID = 2;
+
+    private static final int AMOUNT = 1;
+
+    private final String repositoryName;
+
+    private final TransferService transferService;
+
+    private final TransactionRepository transactionRepository;
+
+    private final Scenario[] scenarios;
+
+    private final int threads;
+
+    private final InstrumentedThreadPoolExecutor asyncTerminateExecutor;
+
+    private VirtualThreadExecutorService virtualThreadExecutor;
+
+    private final Recorder responseTime = new Recorder(3);
+
+    private final Recorder serviceTime = new Recorder(3);
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    private final AtomicLong lastCompletionNanos = new AtomicLong();
+
+    public LoadDriver(String repositoryName, TransferService transferService, TransactionRepository transactionRepository,
+                      InstrumentedThreadPoolExecutor asyncTerminateExecutor, Scenario[] scenarios, int threads) {
+        this.repositoryName = repositoryName;
+        this.transferService = transferService;
+        this.transactionRepository = transactionRepository;
+        this.asyncTerminateExecutor = asyncTerminateExecutor;
+        this.scenarios = scenarios;
+        this.threads = threads;
+    }
+
+    public static LoadDriver create(String repositoryName, ClassPathXmlApplicationContext context, Scenario[] scenarios, int threads) {
+        SpringTransactionConfigurator configurator = context.getBean(SpringTransactionConfigurator.class);
+
+        LoadDriver driver = new LoadDriver(repositoryName, context.getBean(TransferService.class),
+                context.getBean(TransactionRepository.class),
+                configurator.getAsyncTerminateExecutor(),
+                scenarios, threads);
+        driver.virtualThreadExecutor = configurator.getVirtualThreadExecutor();
+        return driver;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        String repository = System.getProperty("repository", "h2");
+        int rate = Integer.getInteger("rate", 500);
+        int durationSeconds = Integer.getInteger("duration", 30);
+        int warmupSeconds = Integer.getInteger("warmup", 5);
+        int threads = Integer.getInteger("threads", 64);
+        Scenario[] scenarios = Scenario.parse(System.getProperty("scenarios", "all"));
+        boolean quiet = Boolean.parseBoolean(System.getProperty("quiet", "true"));
+
+        ClassPathXmlApplicationContext context = createContext(repository);
+
+        try {
+            LoadDriver driver = create(repository, context, scenarios, threads);
+
+            PrintStream out = System.out;
+            if (quiet) {
+                // 示例服务在每次调用时打印日志，压测期间丢弃
+                System.setOut(new PrintStream(new DiscardOutputStream()));
+            }
+
+            try {
+                driver.run(rate, warmupSeconds);
+                LoadReport report = driver.run(rate, durationSeconds);
+
+                out.println();
+                report.print(out);
+                out.println("async terminate executor: " + (driver.virtualThreadExecutor != null ? driver.virtualThreadExecutor : driver.asyncTerminateExecutor));
+            } finally {
+                System.setOut(out);
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * @param repository h2 或 file，对应 tcc-transaction-load-test.xml 中的 profile
+     */
+    public static ClassPathXmlApplicationContext createContext(String repository) throws IOException {
+
+        if ("file".equals(repository) && System.getProperty("tcc.load.rootPath") == null) {
+            System.setProperty("tcc.load.rootPath", Files.createTempDirectory("tcc-load").toFile().getAbsolutePath());
+        }
+
+        ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext();
+        context.getEnvironment().setActiveProfiles(repository);
+        context.setConfigLocations("classpath:/tcc-transaction-load-test.xml", "classpath:/tcc-transaction.xml");
+        context.refresh();
+        return context;
+    }
+
+    /**
+     * 以目标速率发起请求 seconds 秒，等待所有请求完成后返回本轮结果
+     */
+    public LoadReport run(int rate, int seconds) throws InterruptedException {
+
+        responseTime.reset();
+        serviceTime.reset();
+        completed.set(0);
+        errors.set(0);
+
+        int residualBefore = countResidualTransactions();
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new LoadThreadFactory());
+        executor.prestartAllCoreThreads();
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + TimeUnit.SECONDS.toNanos(seconds);
+        long scheduled = 0;
+        int maxBacklog = 0;
+
+        lastCompletionNanos.set(startNanos);
+
+        while (true) {
+            long intendedStartNanos = startNanos + scheduled * intervalNanos;
+
+            if (intendedStartNanos >= endNanos) {
+                break;
+            }
+
+            long delay;
+            while ((delay = intendedStartNanos - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(delay);
+            }
+
+            executor.execute(new Request(scenarios[(int) (scheduled % scenarios.length)], intendedStartNanos));
+            scheduled++;
+
+            maxBacklog = Math.max(maxBacklog, executor.getQueue().size());
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        awaitAsyncTerminate();
+
+        return new LoadReport(repositoryName, rate, seconds, scheduled, completed.get(), errors.get(),
+                lastCompletionNanos.get() - startNanos, maxBacklog,
+                responseTime.getIntervalHistogram(), serviceTime.getIntervalHistogram(),
+                residualBefore, countResidualTransactions());
+    }
+
+    /**
+     * 异步 confirm / cancel 完成前事务日志还没有删除，统计残留前先等待线程池空闲
+     */
+    private void awaitAsyncTerminate() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (System.currentTimeMillis() < deadline) {
+            boolean poolIdle = asyncTerminateExecutor == null
+                    || asyncTerminateExecutor.getActiveCount() == 0 && asyncTerminateExecutor.getQueueDepth() == 0;
+            boolean virtualIdle = virtualThreadExecutor == null || virtualThreadExecutor.getActiveCount() == 0;
+            if (poolIdle && virtualIdle) {
+                return;
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    private int countResidualTransactions() {
+        // 未来的时间点，返回仓库中的全部事务
+        return transactionRepository.findAllUnmodifiedSince(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1))).size();
+    }
+
+    private class Request implements Runnable {
+
+        private final Scenario scenario;
+
+        private final long intendedStartNanos;
+
+        Request(Scenario scenario, long intendedStartNanos) {
+            this.scenario = scenario;
+            this.intendedStartNanos = intendedStartNanos;
+        }
+
+        @Override
+        public void run() {
+            long startNanos = System.nanoTime();
+            try {
+                scenario.execute(transferService, FROM_ACCOUNT_ID, TO_ACCOUNT_ID, AMOUNT);
+            } catch (Throwable e) {
+                errors.incrementAndGet();
+            } finally {
+                long endNanos = System.nanoTime();
+                responseTime.recordValue(endNanos - intendedStartNanos);
+                serviceTime.recordValue(endNanos - startNanos);
+                completed.incrementAndGet();
+
+                long last = lastCompletionNanos.get();
+                while (endNanos > last && !lastCompletionNanos.compareAndSet(last, endNanos)) {
+                    last = lastCompletionNanos.get();
+                }
+            }
+        }
+    }
+
+    private static class LoadThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "tcc-load-driver-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static class DiscardOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.mengyun.tcctransaction.unittest.load;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+
+/**
+ * 一轮压测的结果
+ * responseTime 从计划发起时间算起，包含请求在压测线程池中排队的时间，已修正协调遗漏（coordinated omission）；
+ * serviceTime 从实际开始执行算起，只反映单个事务的执行耗时。
+ */
+public class LoadReport {
+
+    private final String repository;
+
+    private final int targetRate;
+
+    private final int seconds;
+
+    private final long scheduled;
+
+    private final long completed;
+
+    private final long errors;
+
+    private final long elapsedNanos;
+
+    private final int maxBacklog;
+
+    private final Histogram responseTime;
+
+    private final Histogram serviceTime;
+
+    private final int residualBefore;
+
+    private final int residualAfter;
+
+    LoadReport(String repository, int targetRate, int seconds, long scheduled, long completed, long errors,
+               long elapsedNanos, int maxBacklog, Histogram responseTime, Histogram serviceTime,
+               int residualBefore, int residualAfter) {
+        this.repository = repository;
+        this.targetRate = targetRate;
+        this.seconds = seconds;
+        this.scheduled = scheduled;
+        this.completed = completed;
+        this.errors = errors;
+        this.elapsedNanos = elapsedNanos;
+        this.maxBacklog = maxBacklog;
+        this.responseTime = responseTime;
+        this.serviceTime = serviceTime;
+        this.residualBefore = residualBefore;
+        this.residualAfter = residualAfter;
+    }
+
+    public long getScheduled() {
+        return scheduled;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * 实际吞吐量：完成数 / 从第一个请求计划时间到最后一个请求完成的时间
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : completed * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * 压测线程池中排队请求数的最大值，持续增长说明系统跟不上目标速率
+     */
+    public int getMaxBacklog() {
+        return maxBacklog;
+    }
+
+    public Histogram getResponseTime() {
+        return responseTime;
+    }
+
+    public Histogram getServiceTime() {
+        return serviceTime;
+    }
+
+    /**
+     * 压测结束并等待异步 confirm / cancel 完成后，仓库中剩余的事务数
+     */
+    public int getResidualTransactions() {
+        return residualAfter;
+    }
+
+    public int getResidualTransactionsBefore() {
+        return residualBefore;
+    }
+
+    public void print(PrintStream out) {
+        out.println(String.format("# repository: %s, target rate: %d/s, duration: %ds", repository, targetRate, seconds));
+        out.println(String.format("%-10s %10s %10s %8s %14s %12s", "", "scheduled", "completed", "errors", "throughput/s", "maxBacklog"));
+        out.println(String.format("%-10s %10d %10d %8d %14.1f %12d", "requests", scheduled, completed, errors, getThroughput(), maxBacklog));
+        out.println(String.format("%-10s %10s %10s %10s %10s %10s %10s", "(ms)", "p50", "p90", "p99", "p99.9", "p99.99", "max"));
+        printLatency(out, "response", responseTime);
+        printLatency(out, "service", serviceTime);
+        out.println(String.format("transactions left in repository: %d (before run: %d)", residualAfter, residualBefore));
+    }
+
+    private static void printLatency(PrintStream out, String name, Histogram histogram) {
+        out.println(String.format("%-10s %10.2f %10.2f %10.2f %10.2f %10.2f %10.2f", name,
+                millis(histogram.getValueAtPercentile(50)),
+                millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)),
+                millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getValueAtPercentile(99.99)),
+                millis(histogram.getMaxValue())));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,83 @@
+package org.mengyun.tcctransaction.unittest.load;
+
+import org.mengyun.tcctransaction.unittest.client.TransferService;
+
+/**
+ * 压测场景，对应 TransferService 中可以独立发起的事务方法
+ */
+public enum Scenario {
+
+    TRANSFER("transfer") {
+        @Override
+        void execute(TransferService transferService, long fromAccountId, long toAccountId, int amount) {
+            transferService.transfer(fromAccountId, toAccountId, amount);
+        }
+    },
+
+    TRANSFER_WITH_MULTIPLE_TIER("transferWithMultipleTier") {
+        @Override
+        void execute(TransferService transferService, long fromAccountId, long toAccountId, int amount) {
+            transferService.transferWithMultipleTier(fromAccountId, toAccountId, amount);
+        }
+    },
+
+    TRANSFER_WITH_MULTIPLE_CONSUMER("transferWithMultipleConsumer") {
+        @Override
+        void execute(TransferService transferService, long fromAccountId, long toAccountId, int amount) {
+            transferService.transferWithMultipleConsumer(fromAccountId, toAccountId, amount);
+        }
+    },
+
+    TRANSFER_WITH_ONLY_TRY_AND_MULTIPLE_CONSUMER("transferWithOnlyTryAndMultipleConsumer") {
+        @Override
+        void execute(TransferService transferService, long fromAccountId, long toAccountId, int amount) {
+            transferService.transferWithOnlyTryAndMultipleConsumer(fromAccountId, toAccountId, amount);
+        }
+    },
+
+    TRANSFER_WITH_NO_TRANSACTION_CONTEXT("transferWithNoTransactionContext") {
+        @Override
+        void execute(TransferService transferService, long fromAccountId, long toAccountId, int amount) {
+            transferService.transferWithNoTransactionContext(fromAccountId, toAccountId, amount);
+        }
+    };
+
+    private final String methodName;
+
+    Scenario(String methodName) {
+        this.methodName = methodName;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    abstract void execute(TransferService transferService, long fromAccountId, long toAccountId, int amount);
+
+    /**
+     * @param value 逗号分隔的方法名，如 transfer,transferWithMultipleTier；all 表示全部场景
+     */
+    public static Scenario[] parse(String value) {
+
+        if ("all".equals(value.trim())) {
+            return values();
+        }
+
+        String[] names = value.split(",");
+        Scenario[] scenarios = new Scenario[names.length];
+
+        for (int i = 0; i < names.length; i++) {
+            scenarios[i] = ofMethodName(names[i].trim());
+        }
+        return scenarios;
+    }
+
+    private static Scenario ofMethodName(String methodName) {
+        for (Scenario scenario : values()) {
+            if (scenario.methodName.equals(methodName)) {
+                return scenario;
+            }
+        }
+        throw new IllegalArgumentException("unknown scenario: " + methodName);
+    }
+}
@@ -0,0 +1,96 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mengyun.tcctransaction.SystemException;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionManager;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.repository.JdbcTransactionRepository;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TransactionManager.commitAsync / rollbackAsync 使用的非阻塞仓库，使用内嵌 H2，不依赖 Redis
+ */
+public class AsyncCommitTest {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private JdbcConnectionPool pool;
+
+    private JdbcTransactionRepository repository;
+
+    private TransactionManager transactionManager;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws SQLException {
+
+        pool = JdbcConnectionPool.create("jdbc:h2:mem:tcc_async_commit_" + DATABASES.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+
+        Connection connection = pool.getConnection();
+        try {
+            connection.createStatement().execute("RUNSCRIPT FROM 'classpath:dbscripts/db.sql'");
+        } finally {
+            connection.close();
+        }
+
+        repository = new JdbcTransactionRepository();
+        repository.setDataSource(pool);
+        repository.setDomain("ASYNC");
+
+        transactionManager = new TransactionManager();
+        transactionManager.setTransactionRepository(repository);
+
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        while (transactionManager.isTransactionActive()) {
+            transactionManager.cleanAfterCompletion(transactionManager.getCurrentTransaction());
+        }
+        pool.dispose();
+    }
+
+    @Test
+    public void testCommitAsyncFailsFastWithoutExecutor() {
+
+        Transaction transaction = transactionManager.begin();
+
+        try {
+            transactionManager.commitAsync();
+            Assert.fail("commitAsync without executorService should fail");
+        } catch (SystemException e) {
+            // 未改变事务状态，事务日志保持 TRYING
+        }
+
+        Assert.assertEquals(TransactionStatus.TRYING, transaction.getStatus());
+        Assert.assertEquals(TransactionStatus.TRYING, repository.findByXid((TransactionXid) transaction.getXid()).getStatus());
+    }
+
+    @Test
+    public void testCommitAsyncDeletesTransactionLog() throws Exception {
+
+        transactionManager.setExecutorService(executor);
+
+        Transaction transaction = transactionManager.begin();
+
+        transactionManager.commitAsync().toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+        Assert.assertEquals(TransactionStatus.CONFIRMING, transaction.getStatus());
+        Assert.assertNull(repository.findByXid((TransactionXid) transaction.getXid()));
+    }
+}
@@ -0,0 +1,190 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionContextSnapshot;
+import org.mengyun.tcctransaction.TransactionManager;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.repository.JdbcTransactionRepository;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多个线程共享同一事务加入参与者：写事务日志期间不阻塞加入参与者和读取附带属性，并发写入不产生版本冲突，使用内嵌 H2，不依赖 Redis
+ */
+public class ConcurrentEnlistmentTest {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private JdbcConnectionPool pool;
+
+    private BlockingJdbcTransactionRepository repository;
+
+    private TransactionManager transactionManager;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws SQLException {
+
+        pool = JdbcConnectionPool.create("jdbc:h2:mem:tcc_concurrent_enlistment_" + DATABASES.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+
+        Connection connection = pool.getConnection();
+        try {
+            connection.createStatement().execute("RUNSCRIPT FROM 'classpath:dbscripts/db.sql'");
+        } finally {
+            connection.close();
+        }
+
+        repository = newRepository();
+
+        transactionManager = new TransactionManager();
+        transactionManager.setTransactionRepository(repository);
+
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void tearDown() {
+        repository.release();
+        executor.shutdownNow();
+        while (transactionManager.isTransactionActive()) {
+            transactionManager.cleanAfterCompletion(transactionManager.getCurrentTransaction());
+        }
+        pool.dispose();
+    }
+
+    @Test
+    public void testEnlistDoesNotWaitForLogWrite() throws Exception {
+
+        transactionManager.setCoalesceEnlistmentWrites(true);
+
+        final Transaction root = transactionManager.begin();
+        final TransactionContextSnapshot snapshot = TransactionContextSnapshot.capture();
+
+        repository.arm();
+
+        Future<?> flushing = executor.submit(snapshot.wrap(new Runnable() {
+            @Override
+            public void run() {
+                transactionManager.enlistParticipant(newParticipant(root));
+                transactionManager.flushEnlistments();
+            }
+        }));
+
+        Assert.assertTrue(repository.blocked.await(10, TimeUnit.SECONDS));
+
+        // 另一个线程正在写事务日志，加入参与者和读取附带属性立即返回
+        executor.submit(snapshot.wrap(new Callable<Object>() {
+            @Override
+            public Object call() {
+                transactionManager.enlistParticipant(newParticipant(root));
+                return root.getAttachments().put("order", "order-1");
+            }
+        })).get(5, TimeUnit.SECONDS);
+
+        repository.release();
+        flushing.get(10, TimeUnit.SECONDS);
+
+        // 写入开始前读到的待写入数量只有 1，写入期间加入的参与者仍然待写入，再次 flush 时写入
+        transactionManager.flushEnlistments();
+
+        Assert.assertEquals(2, repository.updates.get());
+        Assert.assertEquals(2, participantsInDatabase(root));
+        Assert.assertEquals("order-1", root.getAttachments().get("order"));
+    }
+
+    @Test
+    public void testConcurrentEnlistmentsWithoutVersionConflicts() throws Exception {
+
+        final Transaction root = transactionManager.begin();
+        final TransactionContextSnapshot snapshot = TransactionContextSnapshot.capture();
+
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < 32; i++) {
+            futures.add(executor.submit(snapshot.wrap(new Runnable() {
+                @Override
+                public void run() {
+                    transactionManager.enlistParticipant(newParticipant(root));
+                }
+            })));
+        }
+
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        Assert.assertEquals(32, root.getParticipantCount());
+        Assert.assertEquals(32, participantsInDatabase(root));
+    }
+
+    private int participantsInDatabase(Transaction transaction) {
+        return newRepository().findByXid((TransactionXid) transaction.getXid()).getParticipantCount();
+    }
+
+    private BlockingJdbcTransactionRepository newRepository() {
+        BlockingJdbcTransactionRepository repository = new BlockingJdbcTransactionRepository();
+        repository.setDataSource(pool);
+        repository.setDomain("ENLISTMENT");
+        return repository;
+    }
+
+    private static Participant newParticipant(Transaction transaction) {
+        return new Participant((TransactionXid) transaction.getXid(),
+                new InvocationContext(String.class, "confirm", new Class[0]),
+                new InvocationContext(String.class, "cancel", new Class[0]),
+                null);
+    }
+
+    /**
+     * arm 之后下一次 doUpdate 阻塞到 release
+     */
+    static class BlockingJdbcTransactionRepository extends JdbcTransactionRepository {
+
+        final AtomicInteger updates = new AtomicInteger();
+
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+
+        volatile CountDownLatch blocked = new CountDownLatch(1);
+
+        void arm() {
+            blocked = new CountDownLatch(1);
+            gate = new CountDownLatch(1);
+        }
+
+        void release() {
+            gate.countDown();
+        }
+
+        @Override
+        protected int doUpdate(Transaction transaction) {
+            CountDownLatch current = gate;
+            if (current.getCount() > 0) {
+                blocked.countDown();
+                try {
+                    current.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            updates.incrementAndGet();
+            return super.doUpdate(transaction);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.api.DefaultXidGenerator;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DefaultXidGenerator 的并发唯一性、同一毫秒内序号用尽和时钟回拨
+ */
+public class DefaultXidGeneratorTest {
+
+    private static final int SEQUENCE_BITS = 16;
+
+    @Test
+    public void testUniqueUnderConcurrentGeneration() throws Exception {
+
+        final DefaultXidGenerator generator = new DefaultXidGenerator(7L);
+        final int threads = 8;
+        final int perThread = 20000;
+        final Set<Long> seen = ConcurrentHashMap.newKeySet();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        start.await();
+                        long previous = Long.MIN_VALUE;
+                        boolean increasing = true;
+                        for (int j = 0; j < perThread; j++) {
+                            byte[] xid = generator.generate();
+                            long value = high(xid);
+                            increasing &= value > previous;
+                            previous = value;
+                            seen.add(value);
+                            Assert.assertEquals(7L, ByteBuffer.wrap(xid, 8, 8).getLong());
+                        }
+                        return increasing;
+                    }
+                }));
+            }
+
+            start.countDown();
+
+            for (Future<Boolean> future : futures) {
+                Assert.assertTrue("ids generated by one thread should be increasing", future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(threads * perThread, seen.size());
+    }
+
+    @Test
+    public void testSequenceRolloverBorrowsNextMillisecond() {
+
+        final AtomicLong now = new AtomicLong(1000L);
+        DefaultXidGenerator generator = newGenerator(now);
+
+        long previous = Long.MIN_VALUE;
+        int sequencePerMillis = 1 << SEQUENCE_BITS;
+
+        // 序号从 1 开始，同一毫秒内能生成 65535 个
+        for (int i = 1; i < sequencePerMillis; i++) {
+            long value = high(generator.generate());
+            Assert.assertTrue(value > previous);
+            Assert.assertEquals(1000L, value >>> SEQUENCE_BITS);
+            Assert.assertEquals(i, value & (sequencePerMillis - 1));
+            previous = value;
+        }
+
+        // 序号用尽后借用下一毫秒
+        long borrowed = high(generator.generate());
+        Assert.assertTrue(borrowed > previous);
+        Assert.assertEquals(1001L, borrowed >>> SEQUENCE_BITS);
+
+        // 时钟追上被借用的毫秒后继续递增，不会重复
+        now.set(1001L);
+        long next = high(generator.generate());
+        Assert.assertEquals(borrowed + 1, next);
+
+        // 时钟越过后从新的毫秒开始
+        now.set(1005L);
+        Assert.assertEquals((1005L << SEQUENCE_BITS) + 1, high(generator.generate()));
+    }
+
+    @Test
+    public void testClockMovingBackwardsKeepsIncreasing() {
+
+        AtomicLong now = new AtomicLong(5000L);
+        DefaultXidGenerator generator = newGenerator(now);
+
+        long before = high(generator.generate());
+        Assert.assertEquals((5000L << SEQUENCE_BITS) + 1, before);
+
+        now.set(4000L);
+
+        long previous = before;
+        for (int i = 0; i < 100; i++) {
+            long value = high(generator.generate());
+            Assert.assertTrue(value > previous);
+            Assert.assertEquals(5000L, value >>> SEQUENCE_BITS);
+            previous = value;
+        }
+
+        // 时钟恢复后回到正常的时间戳
+        now.set(5001L);
+        Assert.assertEquals((5001L << SEQUENCE_BITS) + 1, high(generator.generate()));
+    }
+
+    private static DefaultXidGenerator newGenerator(final AtomicLong now) {
+        return new DefaultXidGenerator(1L) {
+            @Override
+            protected long currentTimeMillis() {
+                return now.get();
+            }
+        };
+    }
+
+    private static long high(byte[] xid) {
+        Assert.assertEquals(16, xid.length);
+        return ByteBuffer.wrap(xid, 0, 8).getLong();
+    }
+}
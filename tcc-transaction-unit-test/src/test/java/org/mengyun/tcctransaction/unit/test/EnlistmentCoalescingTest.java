@@ -0,0 +1,83 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionManager;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.metrics.PersistenceOperation;
+import org.mengyun.tcctransaction.metrics.TransactionListenerAdapter;
+import org.mengyun.tcctransaction.spring.support.SpringTransactionConfigurator;
+import org.mengyun.tcctransaction.unittest.client.TransferService;
+import org.mengyun.tcctransaction.unittest.load.LoadDriver;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 合并参与者写入：根事务自身的参与者与远程参与者一起写入，Try 阶段只更新一次事务日志，使用内嵌 H2，不依赖 Redis
+ */
+public class EnlistmentCoalescingTest {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private ClassPathXmlApplicationContext context;
+
+    @After
+    public void tearDown() {
+        System.clearProperty("tcc.load.coalesceEnlistmentWrites");
+        System.clearProperty("tcc.load.h2Database");
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    public void testRootEnlistmentsWrittenOnce() throws Exception {
+        Assert.assertEquals(1, rootEnlistmentWrites(true));
+    }
+
+    @Test
+    public void testEnlistmentsWrittenEachTimeWithoutCoalescing() throws Exception {
+        Assert.assertEquals(2, rootEnlistmentWrites(false));
+    }
+
+    /**
+     * 执行一次 transfer（根事务自身和一个远程参与者），返回 Try 阶段根事务的完整更新次数
+     */
+    private int rootEnlistmentWrites(boolean coalesceEnlistmentWrites) throws Exception {
+
+        System.setProperty("tcc.load.coalesceEnlistmentWrites", String.valueOf(coalesceEnlistmentWrites));
+        // 每个用例使用单独的内存数据库，避免与其他加载压测配置的用例重复建表
+        System.setProperty("tcc.load.h2Database", "tcc_enlistment_" + DATABASES.incrementAndGet());
+        context = LoadDriver.createContext("h2");
+
+        TransactionManager transactionManager = context.getBean(SpringTransactionConfigurator.class).getTransactionManager();
+
+        final AtomicInteger updates = new AtomicInteger();
+        final AtomicInteger enlistments = new AtomicInteger();
+
+        transactionManager.setTransactionListener(new TransactionListenerAdapter() {
+            @Override
+            public void onEnlist(Transaction transaction, Participant participant, long elapsedNanos) {
+                if (transaction.getTransactionType() == TransactionType.ROOT) {
+                    enlistments.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void onPersist(Transaction transaction, PersistenceOperation operation, boolean success, long elapsedNanos) {
+                if (operation == PersistenceOperation.UPDATE && transaction.getTransactionType() == TransactionType.ROOT) {
+                    updates.incrementAndGet();
+                }
+            }
+        });
+
+        context.getBean(TransferService.class).transfer(1, 2, 1);
+
+        Assert.assertEquals(2, enlistments.get());
+        return updates.get();
+    }
+}
@@ -0,0 +1,76 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.support.BeanFactory;
+import org.mengyun.tcctransaction.support.FactoryBuilder;
+
+/**
+ * 注销 Bean 工厂时只清除实例来自该工厂的单例工厂，不依赖 Redis
+ */
+public class FactoryBuilderTest {
+
+    @Test
+    public void testUnregisterEvictsOnlyInstancesFromRemovedFactory() {
+
+        SingleBeanFactory closing = new SingleBeanFactory(ClosingParticipant.class, new ClosingParticipant());
+        SingleBeanFactory remaining = new SingleBeanFactory(RemainingParticipant.class, new RemainingParticipant());
+
+        FactoryBuilder.registerBeanFactory(closing);
+        FactoryBuilder.registerBeanFactory(remaining);
+
+        try {
+            FactoryBuilder.SingeltonFactory<ClosingParticipant> closingFactory = FactoryBuilder.factoryOf(ClosingParticipant.class);
+            FactoryBuilder.SingeltonFactory<RemainingParticipant> remainingFactory = FactoryBuilder.factoryOf(RemainingParticipant.class);
+            FactoryBuilder.SingeltonFactory<ReflectiveParticipant> reflectiveFactory = FactoryBuilder.factoryOf(ReflectiveParticipant.class);
+
+            Assert.assertSame(closing.bean, closingFactory.getInstance());
+            Assert.assertSame(remaining.bean, remainingFactory.getInstance());
+            ReflectiveParticipant reflective = reflectiveFactory.getInstance();
+
+            FactoryBuilder.unregisterBeanFactory(closing);
+
+            // 来自已注销工厂的实例重新查找，其余实例保持不变
+            Assert.assertNotSame(closingFactory, FactoryBuilder.factoryOf(ClosingParticipant.class));
+            Assert.assertNotSame(closing.bean, FactoryBuilder.factoryOf(ClosingParticipant.class).getInstance());
+
+            Assert.assertSame(remainingFactory, FactoryBuilder.factoryOf(RemainingParticipant.class));
+            Assert.assertSame(remaining.bean, FactoryBuilder.factoryOf(RemainingParticipant.class).getInstance());
+            Assert.assertSame(reflective, FactoryBuilder.factoryOf(ReflectiveParticipant.class).getInstance());
+        } finally {
+            FactoryBuilder.unregisterBeanFactory(closing);
+            FactoryBuilder.unregisterBeanFactory(remaining);
+        }
+    }
+
+    public static class ClosingParticipant {
+    }
+
+    public static class RemainingParticipant {
+    }
+
+    public static class ReflectiveParticipant {
+    }
+
+    private static class SingleBeanFactory implements BeanFactory {
+
+        private final Class<?> type;
+
+        private final Object bean;
+
+        SingleBeanFactory(Class<?> type, Object bean) {
+            this.type = type;
+            this.bean = bean;
+        }
+
+        @Override
+        public <T> T getBean(Class<T> clazz) {
+            return clazz.cast(bean);
+        }
+
+        @Override
+        public <T> boolean isFactoryOf(Class<T> clazz) {
+            return type == clazz;
+        }
+    }
+}
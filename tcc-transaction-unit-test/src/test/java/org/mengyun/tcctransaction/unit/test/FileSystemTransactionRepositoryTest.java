@@ -0,0 +1,315 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.SystemException;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.repository.FileSystemTransactionRepository;
+import org.mengyun.tcctransaction.repository.helper.TransactionSerializer;
+import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * FileSystemTransactionRepository 的状态原地改写、延迟批量删除及关闭、旧版本文件名的兼容和滚动升级期间按旧版本文件名写入，不依赖 Redis
+ */
+public class FileSystemTransactionRepositoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testUpdateStatusPatchesHeaderInPlace() throws IOException {
+
+        String rootPath = folder.getRoot().getAbsolutePath();
+        FileSystemTransactionRepository repository = newRepository(rootPath);
+
+        Transaction transaction = newTransaction();
+        Assert.assertEquals(1, repository.create(transaction));
+
+        File file = fileOf(rootPath, transaction);
+        byte[] before = Files.readAllBytes(file.toPath());
+
+        transaction.changeStatus(TransactionStatus.CONFIRMING);
+        transaction.addRetriedCount();
+        Assert.assertEquals(1, repository.updateStatus(transaction));
+
+        byte[] after = Files.readAllBytes(file.toPath());
+
+        // 只改写状态、重试次数、更新时间和版本号，CONTENT 保持不变
+        int contentOffset = TransactionSerializer.statusOffset(transaction) + TransactionSerializer.serializeStatus(transaction).length;
+        Assert.assertEquals(before.length, after.length);
+        Assert.assertArrayEquals(Arrays.copyOfRange(before, contentOffset, before.length), Arrays.copyOfRange(after, contentOffset, after.length));
+        Assert.assertFalse(Arrays.equals(before, after));
+
+        // 新的仓库实例没有缓存，直接从文件读取
+        Transaction reloaded = newRepository(rootPath).findByXid((TransactionXid) transaction.getXid());
+
+        Assert.assertNotNull(reloaded);
+        Assert.assertEquals(TransactionStatus.CONFIRMING, reloaded.getStatus());
+        Assert.assertEquals(2, reloaded.getVersion());
+        Assert.assertEquals(1, reloaded.getRetriedCount());
+        Assert.assertEquals(transaction.getLastUpdateTimeMillis(), reloaded.getLastUpdateTimeMillis());
+        Assert.assertEquals(1, reloaded.getParticipants().size());
+    }
+
+    @Test
+    public void testFindByXidHidesPendingDelete() {
+
+        String rootPath = folder.getRoot().getAbsolutePath();
+        FileSystemTransactionRepository repository = newRepository(rootPath);
+        repository.setDeferredDeleteBatchSize(16);
+        repository.setDeferredDeleteIntervalMillis(60000);
+
+        Transaction transaction = newTransaction();
+        repository.create(transaction);
+
+        File file = fileOf(rootPath, transaction);
+
+        Assert.assertEquals(1, repository.delete(transaction));
+
+        // 文件还在，但已经对查询不可见
+        Assert.assertTrue(file.exists());
+        Assert.assertEquals(1, repository.getPendingDeleteCount());
+        Assert.assertNull(repository.findByXid((TransactionXid) transaction.getXid()));
+        Assert.assertTrue(repository.findAllUnmodifiedSince(new Date(System.currentTimeMillis() + 60000)).isEmpty());
+
+        repository.flushDeletes();
+
+        Assert.assertFalse(file.exists());
+        Assert.assertEquals(0, repository.getPendingDeleteCount());
+        Assert.assertNull(repository.findByXid((TransactionXid) transaction.getXid()));
+    }
+
+    @Test
+    public void testDeferredDeletesPurgedWhenBatchIsFull() {
+
+        String rootPath = folder.getRoot().getAbsolutePath();
+        FileSystemTransactionRepository repository = newRepository(rootPath);
+        repository.setDeferredDeleteBatchSize(2);
+        repository.setDeferredDeleteIntervalMillis(60000);
+
+        Transaction first = newTransaction();
+        Transaction second = newTransaction();
+        Transaction remaining = newTransaction();
+        repository.create(first);
+        repository.create(second);
+        repository.create(remaining);
+
+        repository.delete(first);
+        Assert.assertTrue(fileOf(rootPath, first).exists());
+
+        repository.delete(second);
+
+        Assert.assertFalse(fileOf(rootPath, first).exists());
+        Assert.assertFalse(fileOf(rootPath, second).exists());
+        Assert.assertTrue(fileOf(rootPath, remaining).exists());
+        Assert.assertEquals(0, repository.getPendingDeleteCount());
+        Assert.assertNotNull(repository.findByXid((TransactionXid) remaining.getXid()));
+    }
+
+    @Test
+    public void testCloseStopsPurgeThreadAndFlushesPendingDeletes() throws InterruptedException {
+
+        String rootPath = folder.getRoot().getAbsolutePath();
+        FileSystemTransactionRepository repository = newRepository(rootPath);
+        repository.setDeferredDeleteBatchSize(16);
+        repository.setDeferredDeleteIntervalMillis(60000);
+
+        Set<Thread> existing = purgeThreads();
+
+        Transaction pending = newTransaction();
+        repository.create(pending);
+        repository.delete(pending);
+        Assert.assertTrue(fileOf(rootPath, pending).exists());
+
+        Set<Thread> started = purgeThreads();
+        started.removeAll(existing);
+        Assert.assertEquals(1, started.size());
+        Thread purgeThread = started.iterator().next();
+
+        repository.close();
+
+        Assert.assertFalse(fileOf(rootPath, pending).exists());
+        Assert.assertEquals(0, repository.getPendingDeleteCount());
+
+        // close 之后的删除立即完成，不再启动后台线程
+        Transaction afterClose = newTransaction();
+        repository.create(afterClose);
+        repository.delete(afterClose);
+        Assert.assertFalse(fileOf(rootPath, afterClose).exists());
+
+        purgeThread.join(5000);
+        Assert.assertFalse(purgeThread.isAlive());
+    }
+
+    @Test
+    public void testLegacyFileIsReadAndUpdatedWithoutRename() throws IOException {
+
+        String rootPath = folder.getRoot().getAbsolutePath();
+
+        Transaction transaction = newTransaction();
+        File legacyFile = writeLegacyFile(rootPath, transaction);
+
+        FileSystemTransactionRepository repository = newRepository(rootPath);
+        Transaction found = repository.findByXid((TransactionXid) transaction.getXid());
+
+        // 读取不改名，旧版本节点仍然按旧文件名读到
+        Assert.assertNotNull(found);
+        Assert.assertTrue(legacyFile.exists());
+        Assert.assertFalse(fileOf(rootPath, transaction).exists());
+
+        found.changeStatus(TransactionStatus.CONFIRMING);
+        Assert.assertEquals(1, repository.update(found));
+
+        Assert.assertTrue(legacyFile.exists());
+        Assert.assertFalse(fileOf(rootPath, transaction).exists());
+
+        Transaction reloaded = newRepository(rootPath).findByXid((TransactionXid) transaction.getXid());
+        Assert.assertEquals(TransactionStatus.CONFIRMING, reloaded.getStatus());
+        Assert.assertEquals(2, reloaded.getVersion());
+
+        Assert.assertEquals(1, repository.delete(found));
+        Assert.assertFalse(legacyFile.exists());
+        Assert.assertNull(newRepository(rootPath).findByXid((TransactionXid) transaction.getXid()));
+    }
+
+    @Test
+    public void testLegacyFileFoundByRecoveryScanIsUpdatedInPlace() throws IOException {
+
+        String rootPath = folder.getRoot().getAbsolutePath();
+
+        Transaction transaction = newTransaction();
+        File legacyFile = writeLegacyFile(rootPath, transaction);
+
+        FileSystemTransactionRepository repository = newRepository(rootPath);
+        List<Transaction> transactions = repository.findAllUnmodifiedSince(new Date(System.currentTimeMillis() + 60000));
+
+        Assert.assertEquals(1, transactions.size());
+        Assert.assertTrue(legacyFile.exists());
+
+        Transaction found = transactions.get(0);
+        found.addRetriedCount();
+        Assert.assertEquals(1, repository.update(found));
+
+        Assert.assertFalse(fileOf(rootPath, transaction).exists());
+        Assert.assertEquals(1, newRepository(rootPath).findByXid((TransactionXid) transaction.getXid()).getRetriedCount());
+    }
+
+    @Test
+    public void testWritesLegacyFileNamesDuringRollingUpgrade() {
+
+        String rootPath = folder.getRoot().getAbsolutePath();
+
+        // 默认配置：滚动升级期间按旧版本的文件名写入
+        FileSystemTransactionRepository repository = new FileSystemTransactionRepository();
+        repository.setRootPath(rootPath);
+
+        Transaction transaction = newTransaction();
+        Assert.assertEquals(1, repository.create(transaction));
+
+        File legacyFile = new File(rootPath, TransactionXid.legacyKeyOf(transaction.getXid()));
+        Assert.assertTrue(legacyFile.exists());
+        Assert.assertFalse(fileOf(rootPath, transaction).exists());
+
+        transaction.changeStatus(TransactionStatus.CONFIRMING);
+        Assert.assertEquals(1, repository.updateStatus(transaction));
+        Assert.assertFalse(fileOf(rootPath, transaction).exists());
+        Assert.assertEquals(TransactionStatus.CONFIRMING, newRepository(rootPath).findByXid((TransactionXid) transaction.getXid()).getStatus());
+
+        try {
+            repository.migrateLegacyFiles();
+            Assert.fail("migrating while still writing legacy file names should fail");
+        } catch (SystemException e) {
+            Assert.assertTrue(legacyFile.exists());
+        }
+
+        Assert.assertEquals(1, repository.delete(transaction));
+        Assert.assertFalse(legacyFile.exists());
+    }
+
+    @Test
+    public void testMigrateLegacyFiles() throws IOException {
+
+        String rootPath = folder.getRoot().getAbsolutePath();
+
+        FileSystemTransactionRepository repository = newRepository(rootPath);
+
+        Transaction legacy = newTransaction();
+        File legacyFile = writeLegacyFile(rootPath, legacy);
+
+        Transaction current = newTransaction();
+        repository.create(current);
+
+        Assert.assertNotNull(repository.findByXid((TransactionXid) legacy.getXid()));
+
+        Assert.assertEquals(1, repository.migrateLegacyFiles());
+
+        Assert.assertFalse(legacyFile.exists());
+        Assert.assertTrue(fileOf(rootPath, legacy).exists());
+        Assert.assertTrue(fileOf(rootPath, current).exists());
+
+        // 迁移后仍在使用的事务对象写到新文件名
+        Transaction found = repository.findByXid((TransactionXid) legacy.getXid());
+        found.changeStatus(TransactionStatus.CANCELLING);
+        Assert.assertEquals(1, repository.update(found));
+        Assert.assertFalse(legacyFile.exists());
+        Assert.assertEquals(TransactionStatus.CANCELLING, newRepository(rootPath).findByXid((TransactionXid) legacy.getXid()).getStatus());
+
+        // 再次执行没有需要迁移的文件
+        Assert.assertEquals(0, repository.migrateLegacyFiles());
+    }
+
+    private static File writeLegacyFile(String rootPath, Transaction transaction) throws IOException {
+        File legacyFile = new File(rootPath, TransactionXid.legacyKeyOf(transaction.getXid()));
+        Files.write(legacyFile.toPath(), TransactionSerializer.serialize(new KryoPoolSerializer(), transaction));
+        return legacyFile;
+    }
+
+    private static Set<Thread> purgeThreads() {
+        Set<Thread> threads = new HashSet<Thread>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("tcc-transaction-purge".equals(thread.getName())) {
+                threads.add(thread);
+            }
+        }
+        return threads;
+    }
+
+    /**
+     * 所有节点升级完成后的配置，新事务使用新格式的文件名
+     */
+    private static FileSystemTransactionRepository newRepository(String rootPath) {
+        FileSystemTransactionRepository repository = new FileSystemTransactionRepository();
+        repository.setRootPath(rootPath);
+        repository.setWriteLegacyKeys(false);
+        return repository;
+    }
+
+    private static Transaction newTransaction() {
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+        transaction.enlistParticipant(new Participant((TransactionXid) transaction.getXid(),
+                new InvocationContext(String.class, "confirm", new Class[0]),
+                new InvocationContext(String.class, "cancel", new Class[0]),
+                null));
+        return transaction;
+    }
+
+    private static File fileOf(String rootPath, Transaction transaction) {
+        return new File(rootPath, TransactionXid.keyOf(transaction.getXid()));
+    }
+}
@@ -0,0 +1,581 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mengyun.tcctransaction.ConcurrentTransactionException;
+import org.mengyun.tcctransaction.OptimisticLockException;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionContext;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.repository.JdbcTransactionRepository;
+import org.mengyun.tcctransaction.repository.WriteRequest;
+import org.mengyun.tcctransaction.spring.repository.SpringJdbcTransactionRepository;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * JdbcTransactionRepository 的组提交：并发写合并成批、批量失败回滚后逐条重放、版本号恢复，使用内嵌 H2，不依赖 Redis
+ * 第一次获取连接时阻塞 leader，其他线程的写请求在此期间排队，放行后作为一批写入。
+ */
+public class GroupCommitTest {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private JdbcConnectionPool pool;
+
+    private GatedDataSource dataSource;
+
+    private RecordingJdbcTransactionRepository repository;
+
+    @Before
+    public void setUp() throws SQLException {
+
+        pool = JdbcConnectionPool.create("jdbc:h2:mem:tcc_group_commit_" + DATABASES.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+
+        Connection connection = pool.getConnection();
+        try {
+            connection.createStatement().execute("RUNSCRIPT FROM 'classpath:dbscripts/db.sql'");
+        } finally {
+            connection.close();
+        }
+
+        dataSource = new GatedDataSource(pool);
+        repository = newRepository(4);
+    }
+
+    @After
+    public void tearDown() {
+        pool.dispose();
+    }
+
+    @Test
+    public void testConcurrentWritersCoalesceIntoBatches() throws Exception {
+
+        final List<Transaction> transactions = new ArrayList<Transaction>();
+        for (int i = 0; i < 8; i++) {
+            transactions.add(new Transaction(TransactionType.ROOT));
+        }
+
+        List<Write> followers = new ArrayList<Write>();
+        for (int i = 1; i < transactions.size(); i++) {
+            final Transaction transaction = transactions.get(i);
+            followers.add(new Write() {
+                @Override
+                public void run() {
+                    repository.create(transaction);
+                }
+            });
+        }
+
+        List<Throwable> failures = runCoalesced(new Write() {
+            @Override
+            public void run() {
+                repository.create(transactions.get(0));
+            }
+        }, followers);
+
+        Assert.assertEquals(Collections.<Throwable>nCopies(8, null), failures);
+        // leader 自己的请求单独成批，排队的 7 个请求按 groupCommitMaxBatchSize=4 分成两批
+        Assert.assertEquals(Arrays.asList(1, 4, 3), repository.batchSizes);
+
+        for (Transaction transaction : transactions) {
+            Assert.assertEquals(Long.valueOf(1), versionInDatabase(transaction));
+        }
+    }
+
+    @Test
+    public void testFailedRequestDoesNotFailOthersAfterReplay() throws Exception {
+
+        repository = newRepository(8);
+
+        final Transaction first = new Transaction(TransactionType.ROOT);
+        final Transaction second = new Transaction(TransactionType.ROOT);
+        final Transaction stale = new Transaction(TransactionType.ROOT);
+        repository.create(first);
+        repository.create(second);
+        repository.create(stale);
+
+        // 另一个副本先完成更新，stale 持有的版本号已经过期
+        final Transaction current = newRepository(0).findByXid((TransactionXid) stale.getXid());
+        newRepository(0).update(current);
+
+        // 与 first 编号相同，批量插入时违反唯一约束，整批回滚后逐条重放
+        final Transaction duplicated = new Transaction(new TransactionContext((TransactionXid) first.getXid(), TransactionStatus.TRYING.getId()));
+
+        repository.batchSizes.clear();
+
+        List<Throwable> failures = runCoalesced(new Write() {
+            @Override
+            public void run() {
+                repository.create(new Transaction(TransactionType.ROOT));
+            }
+        }, Arrays.asList(
+                new Write() {
+                    @Override
+                    public void run() {
+                        repository.update(first);
+                    }
+                },
+                new Write() {
+                    @Override
+                    public void run() {
+                        repository.update(stale);
+                    }
+                },
+                new Write() {
+                    @Override
+                    public void run() {
+                        second.changeStatus(TransactionStatus.CONFIRMING);
+                        repository.updateStatus(second);
+                    }
+                },
+                new Write() {
+                    @Override
+                    public void run() {
+                        repository.create(duplicated);
+                    }
+                }));
+
+        Assert.assertEquals(Arrays.asList(1, 4), repository.batchSizes);
+
+        Assert.assertNull(failures.get(0));
+        Assert.assertNull(failures.get(1));
+        Assert.assertTrue(failures.get(2) instanceof OptimisticLockException);
+        Assert.assertNull(failures.get(3));
+        Assert.assertTrue(failures.get(4) instanceof ConcurrentTransactionException);
+
+        Assert.assertEquals(2, first.getVersion());
+        Assert.assertEquals(Long.valueOf(2), versionInDatabase(first));
+        Assert.assertEquals(2, second.getVersion());
+        Assert.assertEquals(Long.valueOf(2), versionInDatabase(second));
+        Assert.assertEquals(TransactionStatus.CONFIRMING, newRepository(0).findByXid((TransactionXid) second.getXid()).getStatus());
+        Assert.assertEquals(1, stale.getVersion());
+        Assert.assertEquals(Long.valueOf(2), versionInDatabase(stale));
+    }
+
+    @Test
+    public void testVersionsRestoredAfterBatchRollback() throws Exception {
+
+        repository = newRepository(8);
+
+        final Transaction first = new Transaction(TransactionType.ROOT);
+        final Transaction second = new Transaction(TransactionType.ROOT);
+        final Transaction stale = new Transaction(TransactionType.ROOT);
+        repository.create(first);
+        repository.create(second);
+        repository.create(stale);
+
+        Transaction current = newRepository(0).findByXid((TransactionXid) stale.getXid());
+        newRepository(0).update(current);
+
+        final long staleLastUpdateTime = stale.getLastUpdateTimeMillis();
+
+        // 整批的 UPDATE / UPDATE_STATUS 都已执行、版本号都已递增之后提交失败
+        dataSource.failNextCommit.set(true);
+        repository.batchSizes.clear();
+
+        List<Throwable> failures = runCoalesced(new Write() {
+            @Override
+            public void run() {
+                repository.create(new Transaction(TransactionType.ROOT));
+            }
+        }, Arrays.asList(
+                new Write() {
+                    @Override
+                    public void run() {
+                        repository.update(first);
+                    }
+                },
+                new Write() {
+                    @Override
+                    public void run() {
+                        second.changeStatus(TransactionStatus.CANCELLING);
+                        repository.updateStatus(second);
+                    }
+                },
+                new Write() {
+                    @Override
+                    public void run() {
+                        repository.update(stale);
+                    }
+                }));
+
+        Assert.assertEquals(1, dataSource.failedCommits.get());
+        Assert.assertEquals(Arrays.asList(1, 3), repository.batchSizes);
+
+        Assert.assertNull(failures.get(1));
+        Assert.assertNull(failures.get(2));
+        Assert.assertTrue(failures.get(3) instanceof OptimisticLockException);
+
+        // 回滚时恢复为写入前的版本号，重放只递增一次
+        Assert.assertEquals(2, first.getVersion());
+        Assert.assertEquals(Long.valueOf(2), versionInDatabase(first));
+        Assert.assertEquals(2, second.getVersion());
+        Assert.assertEquals(Long.valueOf(2), versionInDatabase(second));
+
+        Assert.assertEquals(1, stale.getVersion());
+        Assert.assertEquals(staleLastUpdateTime, stale.getLastUpdateTimeMillis());
+        Assert.assertEquals(Long.valueOf(2), versionInDatabase(stale));
+    }
+
+    @Test
+    public void testNonPositiveBatchSizeWritesDirectly() throws Exception {
+
+        for (int maxBatchSize : new int[]{0, -1}) {
+
+            repository = newRepository(4);
+            repository.setGroupCommitMaxBatchSize(maxBatchSize);
+
+            final List<Transaction> transactions = new ArrayList<Transaction>();
+            for (int i = 0; i < 4; i++) {
+                transactions.add(new Transaction(TransactionType.ROOT));
+            }
+
+            dataSource.arm();
+
+            Thread leader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    repository.create(transactions.get(0));
+                }
+            });
+            leader.start();
+            Assert.assertTrue(dataSource.blocked.await(10, TimeUnit.SECONDS));
+
+            // 第一个写入被阻塞时，其他写入不排队，各自直接完成
+            for (int i = 1; i < transactions.size(); i++) {
+                repository.create(transactions.get(i));
+            }
+
+            dataSource.release();
+            leader.join(10000);
+
+            Assert.assertTrue(repository.batchSizes.isEmpty());
+            for (Transaction transaction : transactions) {
+                Assert.assertEquals(Long.valueOf(1), versionInDatabase(transaction));
+            }
+        }
+    }
+
+    @Test
+    public void testBusinessRollbackDoesNotLoseGroupCommitWrites() throws Exception {
+
+        final SpringJdbcTransactionRepository repository = new SpringJdbcTransactionRepository();
+        repository.setDataSource(dataSource);
+        repository.setDomain("GROUP_COMMIT");
+        repository.setGroupCommitMaxBatchSize(8);
+
+        final TransactionTemplate template = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        final Transaction existing = new Transaction(TransactionType.ROOT);
+        repository.create(existing);
+
+        final Transaction leaderTransaction = new Transaction(TransactionType.ROOT);
+        final Transaction created = new Transaction(TransactionType.ROOT);
+        final Transaction duplicated = new Transaction(new TransactionContext((TransactionXid) existing.getXid(), TransactionStatus.TRYING.getId()));
+
+        final CountDownLatch inTransaction = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+
+        final Throwable[] failures = new Throwable[4];
+
+        // leader 在自己的业务事务中写事务日志，业务事务最后回滚
+        Thread leader = start(inRollbackOnlyTransaction(template, new Write() {
+            @Override
+            public void run() {
+                inTransaction.countDown();
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                repository.create(leaderTransaction);
+            }
+        }), failures, 0);
+
+        // 业务事务已经占用连接后再阻塞下一次获取连接，即组提交的独立连接
+        Assert.assertTrue(inTransaction.await(10, TimeUnit.SECONDS));
+        dataSource.arm();
+        proceed.countDown();
+        Assert.assertTrue(dataSource.blocked.await(10, TimeUnit.SECONDS));
+
+        // 其他线程的写请求在 leader 写入期间排队，重复的创建让这一批整体回滚后逐条重放
+        List<Thread> followers = Arrays.asList(
+                start(inRollbackOnlyTransaction(template, new Write() {
+                    @Override
+                    public void run() {
+                        repository.create(created);
+                    }
+                }), failures, 1),
+                start(inRollbackOnlyTransaction(template, new Write() {
+                    @Override
+                    public void run() {
+                        repository.update(existing);
+                    }
+                }), failures, 2),
+                start(inRollbackOnlyTransaction(template, new Write() {
+                    @Override
+                    public void run() {
+                        repository.create(duplicated);
+                    }
+                }), failures, 3));
+
+        awaitWaiting(followers);
+
+        dataSource.release();
+
+        leader.join(10000);
+        for (Thread thread : followers) {
+            thread.join(10000);
+            Assert.assertFalse(thread.isAlive());
+        }
+
+        Assert.assertNull(failures[0]);
+        Assert.assertNull(failures[1]);
+        Assert.assertNull(failures[2]);
+        Assert.assertTrue(failures[3] instanceof ConcurrentTransactionException);
+
+        // 所有业务事务都已回滚，已经返回成功的事务日志写入仍然存在
+        Assert.assertEquals(Long.valueOf(1), versionInDatabase(leaderTransaction));
+        Assert.assertEquals(Long.valueOf(1), versionInDatabase(created));
+        Assert.assertEquals(Long.valueOf(2), versionInDatabase(existing));
+    }
+
+    private static Write inRollbackOnlyTransaction(final TransactionTemplate template, final Write write) {
+        return new Write() {
+            @Override
+            public void run() {
+                template.execute(new TransactionCallbackWithoutResult() {
+                    @Override
+                    protected void doInTransactionWithoutResult(org.springframework.transaction.TransactionStatus status) {
+                        write.run();
+                        status.setRollbackOnly();
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * leader 在获取连接时阻塞，等其余写请求都在组提交队列中等待后放行；返回每个写请求的异常，leader 在第 0 个
+     */
+    private List<Throwable> runCoalesced(Write leader, List<Write> followers) throws InterruptedException {
+
+        dataSource.arm();
+
+        final Throwable[] failures = new Throwable[followers.size() + 1];
+
+        Thread leaderThread = start(leader, failures, 0);
+        Assert.assertTrue(dataSource.blocked.await(10, TimeUnit.SECONDS));
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < followers.size(); i++) {
+            threads.add(start(followers.get(i), failures, i + 1));
+        }
+
+        awaitWaiting(threads);
+
+        dataSource.release();
+
+        leaderThread.join(10000);
+        for (Thread thread : threads) {
+            thread.join(10000);
+            Assert.assertFalse(thread.isAlive());
+        }
+
+        return Arrays.asList(failures);
+    }
+
+    private static Thread start(final Write write, final Throwable[] failures, final int index) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write.run();
+                } catch (Throwable e) {
+                    failures[index] = e;
+                }
+            }
+        }, "group-commit-writer-" + index);
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitWaiting(List<Thread> threads) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        int stableRounds = 0;
+        while (stableRounds < 5) {
+            Assert.assertTrue("writers did not queue up in time", System.currentTimeMillis() < deadline);
+            boolean allWaiting = true;
+            for (Thread thread : threads) {
+                if (thread.getState() != Thread.State.WAITING) {
+                    allWaiting = false;
+                }
+            }
+            stableRounds = allWaiting ? stableRounds + 1 : 0;
+            Thread.sleep(20);
+        }
+    }
+
+    private RecordingJdbcTransactionRepository newRepository(int groupCommitMaxBatchSize) {
+        RecordingJdbcTransactionRepository repository = new RecordingJdbcTransactionRepository();
+        repository.setDataSource(dataSource);
+        repository.setDomain("GROUP_COMMIT");
+        repository.setGroupCommitMaxBatchSize(groupCommitMaxBatchSize);
+        return repository;
+    }
+
+    private Long versionInDatabase(Transaction transaction) throws SQLException {
+        Connection connection = pool.getConnection();
+        try {
+            PreparedStatement stmt = connection.prepareStatement("SELECT VERSION FROM TCC_TRANSACTION WHERE GLOBAL_TX_ID = ? AND BRANCH_QUALIFIER = ?");
+            stmt.setBytes(1, transaction.getXid().getGlobalTransactionId());
+            stmt.setBytes(2, transaction.getXid().getBranchQualifier());
+            ResultSet resultSet = stmt.executeQuery();
+            return resultSet.next() ? resultSet.getLong(1) : null;
+        } finally {
+            connection.close();
+        }
+    }
+
+    interface Write {
+        void run();
+    }
+
+    static class RecordingJdbcTransactionRepository extends JdbcTransactionRepository {
+
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+        @Override
+        protected void doWriteBatch(List<WriteRequest> requests) {
+            batchSizes.add(requests.size());
+            super.doWriteBatch(requests);
+        }
+    }
+
+    /**
+     * arm 之后第一次获取连接阻塞到 release；failNextCommit 为 true 时下一次 commit 抛出 SQLException
+     */
+    static class GatedDataSource implements DataSource {
+
+        private final DataSource delegate;
+
+        private final AtomicBoolean armed = new AtomicBoolean();
+
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+
+        volatile CountDownLatch blocked = new CountDownLatch(1);
+
+        final AtomicBoolean failNextCommit = new AtomicBoolean();
+
+        final AtomicInteger failedCommits = new AtomicInteger();
+
+        GatedDataSource(DataSource delegate) {
+            this.delegate = delegate;
+        }
+
+        void arm() {
+            gate = new CountDownLatch(1);
+            blocked = new CountDownLatch(1);
+            armed.set(true);
+        }
+
+        void release() {
+            gate.countDown();
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (armed.compareAndSet(true, false)) {
+                blocked.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    throw new SQLException(e);
+                }
+            }
+            final Connection connection = delegate.getConnection();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class[]{Connection.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if ("commit".equals(method.getName()) && failNextCommit.compareAndSet(true, false)) {
+                        failedCommits.incrementAndGet();
+                        throw new SQLException("injected commit failure");
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return getConnection();
+        }
+
+        @Override
+        public PrintWriter getLogWriter() throws SQLException {
+            return delegate.getLogWriter();
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) throws SQLException {
+            delegate.setLogWriter(out);
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) throws SQLException {
+            delegate.setLoginTimeout(seconds);
+        }
+
+        @Override
+        public int getLoginTimeout() throws SQLException {
+            return delegate.getLoginTimeout();
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            return delegate.unwrap(iface);
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return delegate.isWrapperFor(iface);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.unittest.load.LoadDriver;
+import org.mengyun.tcctransaction.unittest.load.LoadReport;
+import org.mengyun.tcctransaction.unittest.load.Scenario;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * 以较低的速率短时间运行开环压测，使用内嵌 H2，不依赖 Redis
+ */
+public class LoadDriverTest {
+
+    @Test
+    public void testOpenLoopLoadOnH2() throws Exception {
+
+        ClassPathXmlApplicationContext context = LoadDriver.createContext("h2");
+
+        try {
+            LoadDriver driver = LoadDriver.create("h2", context, Scenario.values(), 8);
+
+            LoadReport report = driver.run(100, 2);
+
+            report.print(System.out);
+
+            Assert.assertEquals(200, report.getScheduled());
+            Assert.assertEquals(report.getScheduled(), report.getCompleted());
+            Assert.assertEquals(0, report.getErrors());
+            Assert.assertEquals(report.getCompleted(), report.getResponseTime().getTotalCount());
+            Assert.assertTrue(report.getResponseTime().getMaxValue() >= report.getServiceTime().getMaxValue());
+            Assert.assertEquals(0, report.getResidualTransactions());
+        } finally {
+            context.close();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.common.TransactionType;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transaction.commit(Executor, int) / rollback(Executor, int) 并发调用参与者，不依赖 Redis
+ */
+public class ParallelTerminateTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testFailureSurfacesAfterAllParticipantsAttempted() {
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+
+        AtomicInteger attempts = new AtomicInteger();
+        Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        RecordingParticipant failing = new RecordingParticipant(attempts, threads, new IllegalStateException("confirm failed"));
+        RecordingParticipant anotherFailing = new RecordingParticipant(attempts, threads, new IllegalArgumentException("confirm failed again"));
+
+        transaction.enlistParticipant(new RecordingParticipant(attempts, threads, null));
+        transaction.enlistParticipant(failing);
+        transaction.enlistParticipant(new RecordingParticipant(attempts, threads, null));
+        transaction.enlistParticipant(anotherFailing);
+        transaction.enlistParticipant(new RecordingParticipant(attempts, threads, null));
+        transaction.enlistParticipant(new RecordingParticipant(attempts, threads, null));
+
+        try {
+            transaction.commit(executor, 3);
+            Assert.fail("participant failure should surface");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e == failing.failure || e == anotherFailing.failure);
+            Assert.assertEquals(1, e.getSuppressed().length);
+            Throwable other = e == failing.failure ? anotherFailing.failure : failing.failure;
+            Assert.assertSame(other, e.getSuppressed()[0]);
+        }
+
+        Assert.assertEquals(6, attempts.get());
+
+        for (Participant participant : transaction.getParticipants()) {
+            Assert.assertEquals(1, ((RecordingParticipant) participant).commits.get());
+            Assert.assertEquals(0, ((RecordingParticipant) participant).rollbacks.get());
+        }
+    }
+
+    @Test
+    public void testParallelismLargerThanParticipantCount() {
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+
+        AtomicInteger attempts = new AtomicInteger();
+        Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        transaction.enlistParticipant(new RecordingParticipant(attempts, threads, null));
+        transaction.enlistParticipant(new RecordingParticipant(attempts, threads, null));
+
+        transaction.rollback(executor, 16);
+
+        Assert.assertEquals(2, attempts.get());
+
+        for (Participant participant : transaction.getParticipants()) {
+            Assert.assertEquals(0, ((RecordingParticipant) participant).commits.get());
+            Assert.assertEquals(1, ((RecordingParticipant) participant).rollbacks.get());
+        }
+
+        // 最多使用参与者数量个线程（含当前线程）
+        Assert.assertTrue(threads.size() <= 2);
+    }
+
+    @Test
+    public void testSingleParticipantRunsOnCallerThread() {
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+
+        AtomicInteger attempts = new AtomicInteger();
+        Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        transaction.enlistParticipant(new RecordingParticipant(attempts, threads, null));
+
+        transaction.commit(executor, 8);
+
+        Assert.assertEquals(1, attempts.get());
+        Assert.assertEquals(Collections.singleton(Thread.currentThread().getName()), threads);
+    }
+
+    static class RecordingParticipant extends Participant {
+
+        private final AtomicInteger attempts;
+
+        private final Set<String> threads;
+
+        private final RuntimeException failure;
+
+        private final AtomicInteger commits = new AtomicInteger();
+
+        private final AtomicInteger rollbacks = new AtomicInteger();
+
+        RecordingParticipant(AtomicInteger attempts, Set<String> threads, RuntimeException failure) {
+            this.attempts = attempts;
+            this.threads = threads;
+            this.failure = failure;
+        }
+
+        @Override
+        public void commit() {
+            commits.incrementAndGet();
+            attempt();
+        }
+
+        @Override
+        public void rollback() {
+            rollbacks.incrementAndGet();
+            attempt();
+        }
+
+        private void attempt() {
+            attempts.incrementAndGet();
+            threads.add(Thread.currentThread().getName());
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mengyun.tcctransaction.ConcurrentTransactionException;
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.SystemException;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.repository.RedisTransactionRepository;
+import org.mengyun.tcctransaction.repository.helper.ExpandTransactionSerializer;
+import org.mengyun.tcctransaction.repository.helper.RedisHelper;
+import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
+import org.mengyun.tcctransaction.utils.ByteUtils;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * RedisTransactionRepository 对旧版本键的兼容：读取不改名，更新、删除写回旧键，滚动升级期间按旧格式写键，migrateLegacyKeys 显式迁移
+ * 使用内存中的 Jedis 替身，脚本只模拟仓库使用的创建和带版本检查的更新两种
+ */
+public class RedisTransactionRepositoryTest {
+
+    private static final String KEY_PREFIX = "TCC:";
+
+    private static final Pattern EXPECTED_VERSION = Pattern.compile("'VERSION'\\) == '(-?\\d+)'");
+
+    private InMemoryJedis jedis;
+
+    @Before
+    public void setUp() {
+        jedis = new InMemoryJedis();
+    }
+
+    @Test
+    public void testLegacyKeyIsReadAndUpdatedWithoutRename() {
+
+        Transaction transaction = newTransaction();
+        String legacyKey = writeLegacy(transaction);
+        String key = new String(RedisHelper.getRedisKey(KEY_PREFIX, transaction.getXid()));
+
+        RedisTransactionRepository repository = newRepository();
+        Transaction found = repository.findByXid((TransactionXid) transaction.getXid());
+
+        // 读取不改名，旧版本节点仍然按旧键读到
+        Assert.assertNotNull(found);
+        Assert.assertTrue(jedis.contains(legacyKey));
+        Assert.assertFalse(jedis.contains(key));
+
+        found.changeStatus(TransactionStatus.CONFIRMING);
+        Assert.assertEquals(1, repository.update(found));
+
+        Assert.assertFalse(jedis.contains(key));
+        Assert.assertEquals("2", jedis.field(legacyKey, "VERSION"));
+
+        Transaction reloaded = newRepository().findByXid((TransactionXid) transaction.getXid());
+        Assert.assertEquals(TransactionStatus.CONFIRMING, reloaded.getStatus());
+
+        Assert.assertEquals(1, repository.delete(found));
+        Assert.assertFalse(jedis.contains(legacyKey));
+    }
+
+    @Test
+    public void testNewTransactionsUseNewKey() {
+
+        RedisTransactionRepository repository = newRepository();
+
+        Transaction transaction = newTransaction();
+        Assert.assertEquals(1, repository.create(transaction));
+
+        String key = KEY_PREFIX + transaction.getXid().toString();
+        Assert.assertTrue(jedis.contains(key));
+        Assert.assertFalse(jedis.contains(KEY_PREFIX + TransactionXid.legacyKeyOf(transaction.getXid())));
+
+        transaction.changeStatus(TransactionStatus.CONFIRMING);
+        Assert.assertEquals(1, repository.update(transaction));
+        Assert.assertEquals("2", jedis.field(key, "VERSION"));
+    }
+
+    @Test
+    public void testUpdateStatusWritesOnlyStatusFields() {
+
+        RedisTransactionRepository repository = newRepository();
+
+        Transaction transaction = newTransaction();
+        repository.create(transaction);
+
+        String key = KEY_PREFIX + transaction.getXid().toString();
+        String content = jedis.field(key, "CONTENT");
+        String contentView = jedis.field(key, "CONTENT_VIEW");
+
+        transaction.changeStatus(TransactionStatus.CONFIRMING);
+        Assert.assertEquals(1, repository.updateStatus(transaction));
+
+        Assert.assertEquals(content, jedis.field(key, "CONTENT"));
+        Assert.assertEquals(contentView, jedis.field(key, "CONTENT_VIEW"));
+        Assert.assertEquals(TransactionStatus.CONFIRMING, newRepository().findByXid((TransactionXid) transaction.getXid()).getStatus());
+    }
+
+    @Test
+    public void testWritesLegacyKeysDuringRollingUpgrade() {
+
+        RedisTransactionRepository repository = newLegacyWritingRepository();
+
+        Transaction transaction = newTransaction();
+        Assert.assertEquals(1, repository.create(transaction));
+
+        String legacyKey = KEY_PREFIX + TransactionXid.legacyKeyOf(transaction.getXid());
+        String key = KEY_PREFIX + transaction.getXid().toString();
+        Assert.assertTrue(jedis.contains(legacyKey));
+        Assert.assertFalse(jedis.contains(key));
+
+        // 已按新格式的键写入的事务不会再以旧版本的键重复创建
+        Transaction written = newTransaction();
+        newRepository().create(written);
+        try {
+            repository.create(written);
+            Assert.fail("duplicated transaction should not be created");
+        } catch (ConcurrentTransactionException e) {
+            Assert.assertFalse(jedis.contains(KEY_PREFIX + TransactionXid.legacyKeyOf(written.getXid())));
+        }
+
+        transaction.changeStatus(TransactionStatus.CONFIRMING);
+        Assert.assertEquals(1, repository.updateStatus(transaction));
+        Assert.assertFalse(jedis.contains(key));
+        Assert.assertEquals("2", jedis.field(legacyKey, "VERSION"));
+
+        try {
+            repository.migrateLegacyKeys();
+            Assert.fail("migrating while still writing legacy keys should fail");
+        } catch (SystemException e) {
+            Assert.assertTrue(jedis.contains(legacyKey));
+        }
+
+        Assert.assertEquals(1, repository.delete(transaction));
+        Assert.assertFalse(jedis.contains(legacyKey));
+    }
+
+    @Test
+    public void testMigrateLegacyKeys() {
+
+        RedisTransactionRepository repository = newRepository();
+
+        Transaction legacy = newTransaction();
+        String legacyKey = writeLegacy(legacy);
+
+        Transaction current = newTransaction();
+        repository.create(current);
+
+        // 已经读到、仍在使用的事务对象
+        Transaction found = repository.findByXid((TransactionXid) legacy.getXid());
+
+        Assert.assertEquals(1, repository.migrateLegacyKeys());
+
+        String key = new String(RedisHelper.getRedisKey(KEY_PREFIX, legacy.getXid()));
+        Assert.assertFalse(jedis.contains(legacyKey));
+        Assert.assertTrue(jedis.contains(key));
+        Assert.assertTrue(jedis.contains(new String(RedisHelper.getRedisKey(KEY_PREFIX, current.getXid()))));
+
+        found.changeStatus(TransactionStatus.CANCELLING);
+        Assert.assertEquals(1, repository.update(found));
+        Assert.assertFalse(jedis.contains(legacyKey));
+        Assert.assertEquals(TransactionStatus.CANCELLING, newRepository().findByXid((TransactionXid) legacy.getXid()).getStatus());
+
+        Assert.assertEquals(0, repository.migrateLegacyKeys());
+    }
+
+    @Test
+    public void testMigrateKeepsLegacyKeyWhenNewKeyExists() {
+
+        RedisTransactionRepository repository = newRepository();
+
+        Transaction transaction = newTransaction();
+        String legacyKey = writeLegacy(transaction);
+        repository.create(transaction);
+
+        Assert.assertEquals(0, repository.migrateLegacyKeys());
+        Assert.assertTrue(jedis.contains(legacyKey));
+    }
+
+    /**
+     * 所有节点升级完成后的配置，新事务使用新格式的键
+     */
+    private RedisTransactionRepository newRepository() {
+        RedisTransactionRepository repository = newLegacyWritingRepository();
+        repository.setWriteLegacyKeys(false);
+        return repository;
+    }
+
+    /**
+     * 默认配置，滚动升级期间新事务按旧版本的格式写键
+     */
+    private RedisTransactionRepository newLegacyWritingRepository() {
+        RedisTransactionRepository repository = new RedisTransactionRepository();
+        repository.setKeyPrefix(KEY_PREFIX);
+        repository.setJedisPool(new JedisPool() {
+            @Override
+            public Jedis getResource() {
+                return jedis;
+            }
+        });
+        return repository;
+    }
+
+    private String writeLegacy(Transaction transaction) {
+        String legacyKey = KEY_PREFIX + TransactionXid.legacyKeyOf(transaction.getXid());
+        jedis.put(legacyKey, ExpandTransactionSerializer.serialize(new KryoPoolSerializer(), transaction));
+        return legacyKey;
+    }
+
+    private static Transaction newTransaction() {
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+        transaction.enlistParticipant(new Participant((TransactionXid) transaction.getXid(),
+                new InvocationContext(String.class, "confirm", new Class[0]),
+                new InvocationContext(String.class, "cancel", new Class[0]),
+                null));
+        return transaction;
+    }
+
+    /**
+     * 只实现仓库用到的命令，哈希的字段名以字符串保存
+     */
+    private static final class InMemoryJedis extends Jedis {
+
+        private final Map<String, Map<String, byte[]>> hashes = new ConcurrentHashMap<String, Map<String, byte[]>>();
+
+        boolean contains(String key) {
+            return hashes.containsKey(key);
+        }
+
+        String field(String key, String field) {
+            return new String(hashes.get(key).get(field));
+        }
+
+        void put(String key, Map<byte[], byte[]> content) {
+            Map<String, byte[]> hash = new HashMap<String, byte[]>();
+            for (Map.Entry<byte[], byte[]> entry : content.entrySet()) {
+                hash.put(new String(entry.getKey()), entry.getValue());
+            }
+            hashes.put(key, hash);
+        }
+
+        @Override
+        public ScanResult<String> scan(String cursor, ScanParams params) {
+            return new ScanResult<String>(ScanParams.SCAN_POINTER_START, new ArrayList<String>(hashes.keySet()));
+        }
+
+        @Override
+        public Map<byte[], byte[]> hgetAll(byte[] key) {
+            Map<byte[], byte[]> result = new HashMap<byte[], byte[]>();
+            Map<String, byte[]> hash = hashes.get(new String(key));
+            if (hash != null) {
+                for (Map.Entry<String, byte[]> entry : hash.entrySet()) {
+                    result.put(entry.getKey().getBytes(), entry.getValue());
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public byte[] hget(byte[] key, byte[] field) {
+            Map<String, byte[]> hash = hashes.get(new String(key));
+            return hash == null ? null : hash.get(new String(field));
+        }
+
+        @Override
+        public Boolean exists(byte[] key) {
+            return hashes.containsKey(new String(key));
+        }
+
+        @Override
+        public Long renamenx(byte[] oldKey, byte[] newKey) {
+            if (hashes.containsKey(new String(newKey))) {
+                return 0L;
+            }
+            hashes.put(new String(newKey), hashes.remove(new String(oldKey)));
+            return 1L;
+        }
+
+        @Override
+        public Long del(byte[]... keys) {
+            long deleted = 0;
+            for (byte[] key : keys) {
+                if (hashes.remove(new String(key)) != null) {
+                    deleted++;
+                }
+            }
+            return deleted;
+        }
+
+        @Override
+        public Object eval(byte[] script, List<byte[]> keys, List<byte[]> args) {
+
+            String text = new String(script);
+            String key = new String(keys.get(0));
+
+            Matcher matcher = EXPECTED_VERSION.matcher(text);
+
+            if (!matcher.find()) {
+                // 创建脚本，任一键存在时不创建
+                for (byte[] each : keys) {
+                    if (hashes.containsKey(new String(each))) {
+                        return 0L;
+                    }
+                }
+                hmset(key, args);
+                return 1L;
+            }
+
+            if (keys.size() > 1 && !hashes.containsKey(key)) {
+                key = new String(keys.get(1));
+            }
+
+            Map<String, byte[]> hash = hashes.get(key);
+            if (hash == null || !matcher.group(1).equals(new String(hash.get("VERSION")))) {
+                return 0L;
+            }
+            hmset(key, args);
+            return 1L;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private void hmset(String key, List<byte[]> args) {
+            Map<String, byte[]> hash = hashes.get(key);
+            if (hash == null) {
+                hash = new HashMap<String, byte[]>();
+                hashes.put(key, hash);
+            }
+            for (int i = 0; i < args.size(); i += 2) {
+                hash.put(new String(args.get(i)), args.get(i + 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.support.TargetConcurrencyLimiter;
+import org.mengyun.tcctransaction.support.VirtualThreadExecutorService;
+
+/**
+ * TargetConcurrencyLimiter 只限制 bind 包装的任务，嵌套调用不再获取许可
+ */
+public class TargetConcurrencyLimiterTest {
+
+    @Test
+    public void testUnboundCallsAreNotLimited() {
+
+        TargetConcurrencyLimiter limiter = new TargetConcurrencyLimiter(1);
+
+        Assert.assertNull(TargetConcurrencyLimiter.current());
+        Assert.assertNull(TargetConcurrencyLimiter.enter(String.class));
+        Assert.assertEquals(0, limiter.getInFlight(String.class));
+    }
+
+    @Test
+    public void testBoundTaskAcquiresPermitAndSkipsNestedCalls() {
+
+        final TargetConcurrencyLimiter limiter = new TargetConcurrencyLimiter(1);
+        final boolean[] ran = new boolean[1];
+
+        limiter.bind(new Runnable() {
+            @Override
+            public void run() {
+                Assert.assertSame(limiter, TargetConcurrencyLimiter.current());
+
+                TargetConcurrencyLimiter.Permit permit = TargetConcurrencyLimiter.enter(String.class);
+                Assert.assertNotNull(permit);
+                Assert.assertEquals(1, limiter.getInFlight(String.class));
+
+                // 上限为 1，嵌套调用同一目标如果再次获取许可会永远阻塞
+                Assert.assertNull(TargetConcurrencyLimiter.enter(String.class));
+
+                permit.exit();
+                Assert.assertEquals(0, limiter.getInFlight(String.class));
+                Assert.assertSame(limiter, TargetConcurrencyLimiter.current());
+
+                TargetConcurrencyLimiter.enter(String.class).exit();
+                ran[0] = true;
+            }
+        }).run();
+
+        Assert.assertTrue(ran[0]);
+        Assert.assertNull(TargetConcurrencyLimiter.current());
+    }
+
+    @Test
+    public void testVirtualThreadProbeDoesNotThrow() {
+
+        boolean supported = VirtualThreadExecutorService.isSupported();
+        Assert.assertEquals(supported, VirtualThreadExecutorService.isSupported());
+
+        VirtualThreadExecutorService executor = VirtualThreadExecutorService.create("test-virtual-");
+        Assert.assertEquals(supported, executor != null);
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
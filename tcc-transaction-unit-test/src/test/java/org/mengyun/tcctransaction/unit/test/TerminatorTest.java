@@ -0,0 +1,67 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.SystemException;
+import org.mengyun.tcctransaction.Terminator;
+import org.mengyun.tcctransaction.api.Compensable;
+import org.mengyun.tcctransaction.api.TransactionContext;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.support.FactoryBuilder;
+
+/**
+ * Terminator 每次调用从 FactoryBuilder 获取参与者对象，并把事务上下文设置到方法参数，不依赖 Redis
+ */
+public class TerminatorTest {
+
+    @Test
+    public void testInvokesFactoryInstanceWithTransactionContext() {
+
+        TransactionContext transactionContext = new TransactionContext(new TransactionXid(), TransactionStatus.CONFIRMING.getId());
+
+        Object result = Terminator.invoke(transactionContext,
+                new InvocationContext(PublicParticipant.class, "confirm", new Class[]{TransactionContext.class, String.class}, null, "order-1"),
+                Compensable.DefaultTransactionContextEditor.class);
+
+        PublicParticipant participant = FactoryBuilder.factoryOf(PublicParticipant.class).getInstance();
+
+        Assert.assertEquals("order-1", result);
+        Assert.assertSame(transactionContext, participant.lastContext);
+
+        // 第二次调用走缓存的调用器，参数位置不变
+        TransactionContext another = new TransactionContext(new TransactionXid(), TransactionStatus.CONFIRMING.getId());
+        Assert.assertEquals("order-2", Terminator.invoke(another,
+                new InvocationContext(PublicParticipant.class, "confirm", new Class[]{TransactionContext.class, String.class}, null, "order-2"),
+                Compensable.DefaultTransactionContextEditor.class));
+        Assert.assertSame(another, participant.lastContext);
+    }
+
+    @Test
+    public void testBusinessExceptionIsWrapped() {
+
+        try {
+            Terminator.invoke(new TransactionContext(new TransactionXid(), TransactionStatus.CONFIRMING.getId()),
+                    new InvocationContext(PublicParticipant.class, "fail", new Class[0]),
+                    Compensable.DefaultTransactionContextEditor.class);
+            Assert.fail("business exception should surface");
+        } catch (SystemException e) {
+            Assert.assertTrue(e.getCause().getCause() instanceof IllegalStateException);
+        }
+    }
+
+    public static class PublicParticipant {
+
+        private volatile TransactionContext lastContext;
+
+        public String confirm(TransactionContext transactionContext, String orderNo) {
+            this.lastContext = transactionContext;
+            return orderNo;
+        }
+
+        public void fail() {
+            throw new IllegalStateException("confirm failed");
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionContextSnapshot;
+import org.mengyun.tcctransaction.TransactionExecutors;
+import org.mengyun.tcctransaction.TransactionManager;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.repository.FileSystemTransactionRepository;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * TransactionContextSnapshot 在提交线程上捕获活动事务，在工作线程上恢复，执行完后还原工作线程原来的事务，不依赖 Redis
+ */
+public class TransactionContextSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TransactionManager transactionManager;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        FileSystemTransactionRepository repository = new FileSystemTransactionRepository();
+        repository.setRootPath(folder.getRoot().getAbsolutePath());
+
+        transactionManager = new TransactionManager();
+        transactionManager.setTransactionRepository(repository);
+
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        while (transactionManager.isTransactionActive()) {
+            transactionManager.cleanAfterCompletion(transactionManager.getCurrentTransaction());
+        }
+    }
+
+    @Test
+    public void testBindOnWorkerRestoresPreviousStack() throws Exception {
+
+        final Transaction root = transactionManager.begin();
+        final TransactionContextSnapshot snapshot = TransactionContextSnapshot.capture();
+
+        Assert.assertFalse(snapshot.isEmpty());
+
+        Boolean restored = executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+
+                // 工作线程上原本就有自己的活动事务
+                Transaction own = transactionManager.begin();
+
+                Transaction seen = snapshot.wrap(new Callable<Transaction>() {
+                    @Override
+                    public Transaction call() {
+                        transactionManager.enlistParticipant(newParticipant(transactionManager.getCurrentTransaction()));
+                        return transactionManager.getCurrentTransaction();
+                    }
+                }).call();
+
+                Assert.assertSame(root, seen);
+
+                boolean result = transactionManager.getCurrentTransaction() == own;
+                transactionManager.cleanAfterCompletion(own);
+                return result && !transactionManager.isTransactionActive();
+            }
+        }).get();
+
+        Assert.assertTrue(restored);
+        Assert.assertSame(root, transactionManager.getCurrentTransaction());
+        Assert.assertEquals(1, root.getParticipants().size());
+    }
+
+    @Test
+    public void testWorkerWithoutTransactionIsClearedAfterTask() throws Exception {
+
+        final Transaction root = transactionManager.begin();
+
+        Boolean cleared = TransactionExecutors.propagating(executor).submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return transactionManager.getCurrentTransaction() == root;
+            }
+        }).get();
+
+        Assert.assertTrue(cleared);
+
+        Boolean active = executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return transactionManager.isTransactionActive();
+            }
+        }).get();
+
+        Assert.assertFalse(active);
+    }
+
+    @Test
+    public void testNestedTransactionOnWorkerDoesNotChangeCapturedStack() throws Exception {
+
+        final Transaction root = transactionManager.begin();
+        final TransactionContextSnapshot snapshot = TransactionContextSnapshot.capture();
+
+        executor.submit(snapshot.wrap(new Runnable() {
+            @Override
+            public void run() {
+                Transaction nested = transactionManager.begin();
+                Assert.assertSame(nested, transactionManager.getCurrentTransaction());
+                transactionManager.cleanAfterCompletion(nested);
+                Assert.assertSame(root, transactionManager.getCurrentTransaction());
+            }
+        })).get();
+
+        Assert.assertSame(root, transactionManager.getCurrentTransaction());
+
+        transactionManager.cleanAfterCompletion(root);
+        Assert.assertFalse(transactionManager.isTransactionActive());
+    }
+
+    @Test
+    public void testEmptySnapshotClearsWorkerStackDuringTask() throws Exception {
+
+        final TransactionContextSnapshot snapshot = TransactionContextSnapshot.capture();
+
+        Assert.assertTrue(snapshot.isEmpty());
+
+        Boolean restored = executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+
+                Transaction own = transactionManager.begin();
+
+                Object previous = snapshot.attach();
+                boolean activeDuringTask = transactionManager.isTransactionActive();
+                snapshot.detach(previous);
+
+                boolean result = !activeDuringTask && transactionManager.getCurrentTransaction() == own;
+                transactionManager.cleanAfterCompletion(own);
+                return result;
+            }
+        }).get();
+
+        Assert.assertTrue(restored);
+    }
+
+    private static Participant newParticipant(Transaction transaction) {
+        return new Participant((TransactionXid) transaction.getXid(),
+                new InvocationContext(String.class, "confirm", new Class[0]),
+                new InvocationContext(String.class, "cancel", new Class[0]),
+                null);
+    }
+}
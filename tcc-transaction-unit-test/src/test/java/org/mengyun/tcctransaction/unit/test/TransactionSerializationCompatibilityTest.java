@@ -0,0 +1,153 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.Compensable;
+import org.mengyun.tcctransaction.api.TransactionContext;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+
+/**
+ * 旧版本 Transaction（Date 时间戳、ArrayList 参与者、ConcurrentHashMap 附件）写入的 JDK / Kryo 数据，
+ * 新版本可以读取，读取后再序列化、反序列化内容不变
+ * serialization/transaction-baseline.* 由改动之前的 Transaction 生成，不要重新生成
+ */
+public class TransactionSerializationCompatibilityTest {
+
+    private static final long CREATE_TIME = 1700000000000L;
+
+    private static final long LAST_UPDATE_TIME = 1700000005000L;
+
+    @Test
+    public void testDecodeBaselineJdkBlob() throws Exception {
+
+        Transaction transaction = jdkDeserialize(read("serialization/transaction-baseline.jdk"));
+
+        assertBaseline(transaction);
+        assertBaseline(jdkDeserialize(jdkSerialize(transaction)));
+    }
+
+    @Test
+    public void testDecodeBaselineKryoBlob() {
+
+        KryoPoolSerializer serializer = new KryoPoolSerializer(1);
+
+        Transaction transaction = serializer.deserialize(read("serialization/transaction-baseline.kryo"));
+
+        assertBaseline(transaction);
+        assertBaseline(serializer.deserialize(serializer.serialize(transaction)));
+    }
+
+    @Test
+    public void testDecodedTransactionIsUsable() throws Exception {
+
+        Transaction transaction = jdkDeserialize(read("serialization/transaction-baseline.jdk"));
+
+        transaction.getAttachments().put("retry", "true");
+        transaction.changeStatus(TransactionStatus.CANCELLING);
+        transaction.updateVersion();
+
+        Transaction reloaded = new KryoPoolSerializer(1).deserialize(new KryoPoolSerializer(1).serialize(transaction));
+
+        Assert.assertEquals(TransactionStatus.CANCELLING, reloaded.getStatus());
+        Assert.assertEquals(4, reloaded.getVersion());
+        Assert.assertEquals("true", reloaded.getAttachments().get("retry"));
+        Assert.assertEquals("order-1", reloaded.getAttachments().get("order"));
+    }
+
+    private static void assertBaseline(Transaction transaction) {
+
+        Assert.assertEquals(new TransactionXid(bytes(0), bytes(16)), transaction.getXid());
+        Assert.assertEquals(TransactionStatus.CONFIRMING, transaction.getStatus());
+        Assert.assertEquals(TransactionType.ROOT, transaction.getTransactionType());
+        Assert.assertEquals(2, transaction.getRetriedCount());
+        Assert.assertEquals(3, transaction.getVersion());
+        Assert.assertEquals(CREATE_TIME, transaction.getCreateTimeMillis());
+        Assert.assertEquals(LAST_UPDATE_TIME, transaction.getLastUpdateTimeMillis());
+        Assert.assertEquals(CREATE_TIME, transaction.getCreateTime().getTime());
+        Assert.assertEquals(LAST_UPDATE_TIME, transaction.getLastUpdateTime().getTime());
+
+        Assert.assertEquals(1, transaction.getAttachments().size());
+        Assert.assertEquals("order-1", transaction.getAttachments().get("order"));
+
+        List<Participant> participants = transaction.getParticipants();
+        Assert.assertEquals(2, participants.size());
+
+        Participant first = participants.get(0);
+        Assert.assertEquals(new TransactionXid(bytes(0), bytes(32)), first.getXid());
+        assertInvocation(first.getConfirmInvocationContext(), "confirm", new Class[]{String.class}, "order-1");
+        assertInvocation(first.getCancelInvocationContext(), "cancel", new Class[]{String.class}, "order-1");
+
+        Participant second = participants.get(1);
+        Assert.assertEquals(new TransactionXid(bytes(0), bytes(48)), second.getXid());
+        assertInvocation(second.getConfirmInvocationContext(), "confirmRecord", new Class[]{TransactionContext.class, long.class}, null, 42L);
+        assertInvocation(second.getCancelInvocationContext(), "cancelRecord", new Class[]{TransactionContext.class, long.class}, null, 42L);
+    }
+
+    private static void assertInvocation(InvocationContext context, String methodName, Class[] parameterTypes, Object... args) {
+        Assert.assertEquals(String.class, context.getTargetClass());
+        Assert.assertEquals(methodName, context.getMethodName());
+        Assert.assertArrayEquals(parameterTypes, context.getParameterTypes());
+        Assert.assertArrayEquals(args, context.getArgs());
+    }
+
+    private static byte[] bytes(int start) {
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (start + i);
+        }
+        return bytes;
+    }
+
+    private static byte[] read(String resource) {
+        InputStream in = TransactionSerializationCompatibilityTest.class.getClassLoader().getResourceAsStream(resource);
+        Assert.assertNotNull(resource, in);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private static byte[] jdkSerialize(Transaction transaction) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(transaction);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static Transaction jdkDeserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+            return (Transaction) in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.mengyun.tcctransaction.unit.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.api.TransactionXid;
+
+import javax.transaction.xa.Xid;
+import java.util.UUID;
+
+/**
+ * TransactionXid 的存储键格式、fromKey / legacyKeyOf 还原，以及创建后不可修改
+ */
+public class TransactionXidTest {
+
+    @Test
+    public void testKeyIsUpperCaseHex() {
+
+        TransactionXid xid = new TransactionXid(new byte[]{0x0a, (byte) 0xff, 0x00}, new byte[]{0x01, (byte) 0xbc});
+
+        Assert.assertEquals("0AFF00:01BC", xid.toKey());
+        Assert.assertEquals(xid.toKey(), xid.toString());
+        Assert.assertEquals(xid.toKey(), TransactionXid.keyOf(xid));
+        Assert.assertArrayEquals("TCC:0AFF00:01BC".getBytes(), xid.toKeyBytes("TCC:"));
+    }
+
+    @Test
+    public void testGeneratedKeyMatchesFormat() {
+
+        TransactionXid xid = new TransactionXid();
+
+        Assert.assertTrue(xid.toKey(), xid.toKey().matches("[0-9A-F]{32}:[0-9A-F]{32}"));
+    }
+
+    @Test
+    public void testFromKeyRoundTrip() {
+
+        TransactionXid xid = new TransactionXid();
+
+        TransactionXid parsed = TransactionXid.fromKey(xid.toKey());
+
+        Assert.assertEquals(xid, parsed);
+        Assert.assertEquals(xid.hashCode(), parsed.hashCode());
+        Assert.assertEquals(xid.toKey(), parsed.toKey());
+
+        // 小写十六进制同样可以还原
+        Assert.assertEquals(xid, TransactionXid.fromKey(xid.toKey().toLowerCase()));
+    }
+
+    @Test
+    public void testFromKeyRejectsInvalidKeys() {
+
+        for (String key : new String[]{"0AFF", "0AF:01", "0AFG:01"}) {
+            try {
+                TransactionXid.fromKey(key);
+                Assert.fail("invalid key should be rejected: " + key);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testLegacyKeyRoundTrip() {
+
+        TransactionXid xid = new TransactionXid();
+
+        String expected = UUID.nameUUIDFromBytes(xid.getGlobalTransactionId()) + ":" + UUID.nameUUIDFromBytes(xid.getBranchQualifier());
+
+        Assert.assertEquals(expected, xid.toLegacyKey());
+        Assert.assertEquals(expected, TransactionXid.legacyKeyOf(xid));
+
+        // 由新格式的键还原出旧版本的键，服务端按页面上的十六进制编号查找旧数据时使用
+        String key = xid.toKey();
+        int separator = key.indexOf(':');
+        Assert.assertEquals(expected, TransactionXid.legacyKeyOf(key.substring(0, separator), key.substring(separator + 1)));
+        Assert.assertEquals(expected, TransactionXid.fromKey(key).toLegacyKey());
+
+        // 非 TransactionXid 的 Xid 得到相同的键
+        Xid foreign = new ForeignXid(xid.getGlobalTransactionId(), xid.getBranchQualifier());
+        Assert.assertEquals(expected, TransactionXid.legacyKeyOf(foreign));
+        Assert.assertEquals(key, TransactionXid.keyOf(foreign));
+    }
+
+    @Test
+    public void testLegacyKeyOfUniqueIdentity() {
+
+        TransactionXid xid = new TransactionXid("order-1");
+
+        Assert.assertEquals("UniqueIdentity:order-1", xid.toLegacyKey());
+        Assert.assertEquals(xid, TransactionXid.fromKey(xid.toKey()));
+    }
+
+    @Test
+    public void testArraysAreNotShared() {
+
+        byte[] globalTransactionId = new byte[]{1, 2, 3};
+        byte[] branchQualifier = new byte[]{4, 5, 6};
+
+        TransactionXid xid = new TransactionXid(globalTransactionId, branchQualifier);
+        String key = xid.toKey();
+        int hash = xid.hashCode();
+
+        globalTransactionId[0] = 9;
+        xid.getGlobalTransactionId()[0] = 9;
+        xid.getBranchQualifier()[0] = 9;
+
+        Assert.assertEquals(key, xid.toKey());
+        Assert.assertEquals(hash, xid.hashCode());
+        Assert.assertEquals(new TransactionXid(new byte[]{1, 2, 3}, new byte[]{4, 5, 6}), xid);
+        Assert.assertEquals(xid, xid.clone());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testDeprecatedSettersResetCaches() {
+
+        TransactionXid xid = new TransactionXid(new byte[]{1}, new byte[]{2});
+        Assert.assertEquals("01:02", xid.toKey());
+        Assert.assertArrayEquals("P01:02".getBytes(), xid.toKeyBytes("P"));
+        int hash = xid.hashCode();
+
+        xid.setGlobalTransactionId(new byte[]{3});
+        xid.setBranchQualifier(new byte[]{4});
+
+        Assert.assertEquals("03:04", xid.toKey());
+        Assert.assertArrayEquals("P03:04".getBytes(), xid.toKeyBytes("P"));
+        Assert.assertNotEquals(hash, xid.hashCode());
+        Assert.assertEquals(new TransactionXid(new byte[]{3}, new byte[]{4}).hashCode(), xid.hashCode());
+    }
+
+    private static final class ForeignXid implements Xid {
+
+        private final byte[] globalTransactionId;
+
+        private final byte[] branchQualifier;
+
+        ForeignXid(byte[] globalTransactionId, byte[] branchQualifier) {
+            this.globalTransactionId = globalTransactionId;
+            this.branchQualifier = branchQualifier;
+        }
+
+        @Override
+        public int getFormatId() {
+            return 1;
+        }
+
+        @Override
+        public byte[] getGlobalTransactionId() {
+            return globalTransactionId;
+        }
+
+        @Override
+        public byte[] getBranchQualifier() {
+            return branchQualifier;
+        }
+    }
+}